@@ -14,10 +14,10 @@
  */
 package org.ow2.chameleon.eclipse.ipojo.classpath;
 
-import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.Status;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
+import org.ow2.chameleon.eclipse.ipojo.PluginLogger;
+import org.ow2.chameleon.eclipse.ipojo.classpath.container.AnnotationContainer;
 
 /**
  * Activator of the iPOJO annotations class path provider
@@ -29,6 +29,9 @@ public class IPojoClasspathPlugin extends AbstractUIPlugin {
 	/** The plug-in ID **/
 	public static final String PLUGIN_ID = "org.ow2.chameleon.eclipse.ipojo.classpath";
 
+	/** The plug-in logger */
+	private static PluginLogger sLogger;
+
 	/** The shared instance */
 	private static IPojoClasspathPlugin sPlugin;
 
@@ -52,21 +55,32 @@ public class IPojoClasspathPlugin extends AbstractUIPlugin {
 	public static void logError(final String aMessage,
 			final Throwable aThrowable) {
 
-		sPlugin.getLog().log(
-				new Status(IStatus.ERROR, PLUGIN_ID, aMessage, aThrowable));
+		sLogger.error(aMessage, aThrowable);
 	}
 
 	/**
-	 * Logs an information
+	 * Logs an information, if the "log/info" debug option is on
 	 * 
-	 * @param aProject
-	 *            Current manipulated project
 	 * @param aMessage
 	 *            Message to log
 	 */
 	public static void logInfo(final String aMessage) {
 
-		sPlugin.getLog().log(new Status(IStatus.INFO, PLUGIN_ID, aMessage));
+		sLogger.info(aMessage);
+	}
+
+	/**
+	 * Logs an information, if the "log/info" debug option is on. The message
+	 * is formatted only in that case.
+	 * 
+	 * @param aFormat
+	 *            Message format (see {@link String#format(String, Object...)})
+	 * @param aArgs
+	 *            Format arguments
+	 */
+	public static void logInfo(final String aFormat, final Object... aArgs) {
+
+		sLogger.info(aFormat, aArgs);
 	}
 
 	/**
@@ -80,8 +94,7 @@ public class IPojoClasspathPlugin extends AbstractUIPlugin {
 	public static void logWarning(final String aMessage,
 			final Throwable aThrowable) {
 
-		sPlugin.getLog().log(
-				new Status(IStatus.WARNING, PLUGIN_ID, aMessage, aThrowable));
+		sLogger.warning(aMessage, aThrowable);
 	}
 
 	/*
@@ -96,6 +109,9 @@ public class IPojoClasspathPlugin extends AbstractUIPlugin {
 
 		sPlugin = this;
 		super.start(context);
+
+		sLogger = new PluginLogger(PLUGIN_ID, getLog()::log);
+		sLogger.register(context);
 	}
 
 	/*
@@ -108,6 +124,8 @@ public class IPojoClasspathPlugin extends AbstractUIPlugin {
 	@Override
 	public void stop(final BundleContext context) throws Exception {
 
+		AnnotationContainer.reset();
+		sLogger.unregister();
 		sPlugin = null;
 		super.stop(context);
 	}
@@ -26,54 +26,99 @@ import org.ow2.chameleon.eclipse.ipojo.classpath.IPojoClasspathPlugin;
 /**
  * Implementation of the annotation class path container.
  *
- * Uses {@link BundleURLConnection} to find the JAR file.
+ * Uses {@link BundleURLConnection} to find the JAR file. The container doesn't
+ * depend on the project: a single immutable instance, returned by
+ * {@link #getShared()}, is given to all the projects and the JAR location is
+ * resolved once per plug-in life. A failed resolution is not kept: it is tried
+ * again on the next call.
  *
  * @author Thomas Calmant
  */
-public class AnnotationContainer implements IClasspathContainer {
+public final class AnnotationContainer implements IClasspathContainer {
 
-	/** The found annotation library path */
-	private String pAnnotationLibraryPath;
+	/** The shared instance, null until first needed */
+	private static AnnotationContainer sShared;
 
 	/**
-	 * Retrieves the computed annotation library path
+	 * Retrieves the container shared by all projects, resolving the annotation
+	 * library location until it is found
 	 *
-	 * @return The computed path
+	 * @return The shared container, or a new empty container if the library
+	 *         can't be found
 	 */
-	public String getAnnotationLibraryPath() {
+	public static synchronized AnnotationContainer getShared() {
 
-		if (pAnnotationLibraryPath == null) {
-			pAnnotationLibraryPath = new BundleClassFinder()
-					.getJarFile(Component.class);
+		if (sShared != null) {
+			return sShared;
 		}
 
-		return pAnnotationLibraryPath;
+		final AnnotationContainer container = new AnnotationContainer(
+				new BundleClassFinder().getJarFile(Component.class));
+		if (container.hasAnnotationLibrary()) {
+			// Only share a successful resolution
+			sShared = container;
+		}
+
+		return container;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see org.eclipse.jdt.core.IClasspathContainer#getClasspathEntries()
+	/**
+	 * Forgets the shared instance (called when the plug-in stops)
 	 */
-	@Override
-	public IClasspathEntry[] getClasspathEntries() {
+	public static synchronized void reset() {
+
+		sShared = null;
+	}
+
+	/** The found annotation library path, or null */
+	private final String pAnnotationLibraryPath;
+
+	/** The class path entries */
+	private final IClasspathEntry[] pEntries;
+
+	/**
+	 * Sets up the container
+	 *
+	 * @param aAnnotationLibraryPath
+	 *            Path to the annotation library, or null
+	 */
+	private AnnotationContainer(final String aAnnotationLibraryPath) {
 
-		if (!hasAnnotationLibrary()) {
+		pAnnotationLibraryPath = aAnnotationLibraryPath;
+
+		if (aAnnotationLibraryPath == null) {
 			// JAR not found
 			IPojoClasspathPlugin.logWarning(
 					"iPOJO Annotations library not found.", null);
 
-			return new IClasspathEntry[0];
+			pEntries = new IClasspathEntry[0];
+
+		} else {
+			// Create the corresponding entry
+			pEntries = new IClasspathEntry[] { JavaCore.newLibraryEntry(
+					new Path(aAnnotationLibraryPath), null, null) };
 		}
+	}
 
-		// Prepare a path
-		final IPath annotationPath = new Path(pAnnotationLibraryPath);
+	/**
+	 * Retrieves the computed annotation library path
+	 *
+	 * @return The computed path, or null
+	 */
+	public String getAnnotationLibraryPath() {
 
-		// Create the corresponding entry
-		final IClasspathEntry annotationEntry = JavaCore.newLibraryEntry(
-				annotationPath, null, null);
+		return pAnnotationLibraryPath;
+	}
 
-		return new IClasspathEntry[] { annotationEntry };
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jdt.core.IClasspathContainer#getClasspathEntries()
+	 */
+	@Override
+	public IClasspathEntry[] getClasspathEntries() {
+
+		return pEntries.clone();
 	}
 
 	/*
@@ -110,13 +155,11 @@ public class AnnotationContainer implements IClasspathContainer {
 	}
 
 	/**
-	 * Tries to find the iPOJO annotations library path.
-	 *
-	 * Does nothing if the path has already been found
+	 * Tests if the iPOJO annotations library has been found
 	 *
 	 * @return True if the path has been found, else false
 	 */
-	protected boolean hasAnnotationLibrary() {
+	public boolean hasAnnotationLibrary() {
 
 		return getAnnotationLibraryPath() != null;
 	}
@@ -14,22 +14,90 @@
  */
 package org.ow2.chameleon.eclipse.ipojo.classpath.container;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.jdt.core.ClasspathContainerInitializer;
 import org.eclipse.jdt.core.IClasspathContainer;
+import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
 import org.ow2.chameleon.eclipse.ipojo.classpath.IPojoClasspathPlugin;
 
 /**
- * Simple container initializer, setting up a project class path
+ * Simple container initializer, setting up a project class path.
+ *
+ * All the projects use the shared {@link AnnotationContainer}: when JDT asks
+ * for the container of a project, it is also given to all the other projects
+ * referencing it and not yet initialized, in a single call. This avoids one
+ * class path update per project when a workspace is opened.
  * 
  * @author Thomas Calmant
  */
 public class AnnotationContainerInitializer extends
 		ClasspathContainerInitializer {
 
+	/** Names of the projects already initialized by a batch */
+	private final Set<String> pInitialized = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Lists the Java projects referencing the given container which haven't
+	 * been initialized yet
+	 * 
+	 * @param aContainerPath
+	 *            Path of the container
+	 * @param aProject
+	 *            Project being initialized, always part of the result
+	 * @return The projects to initialize
+	 */
+	private List<IJavaProject> findProjectsToInitialize(
+			final IPath aContainerPath, final IJavaProject aProject) {
+
+		final List<IJavaProject> projects = new ArrayList<IJavaProject>();
+		projects.add(aProject);
+
+		final IJavaProject[] javaProjects;
+		try {
+			javaProjects = JavaCore.create(
+					ResourcesPlugin.getWorkspace().getRoot()).getJavaProjects();
+
+		} catch (final JavaModelException ex) {
+			IPojoClasspathPlugin.logWarning("Can't list the Java projects", ex);
+			return projects;
+		}
+
+		for (final IJavaProject javaProject : javaProjects) {
+			if (javaProject.equals(aProject)
+					|| pInitialized.contains(javaProject.getElementName())
+					|| !javaProject.getProject().isOpen()) {
+				continue;
+			}
+
+			try {
+				// The raw class path is read from .classpath: no resolution
+				for (final IClasspathEntry entry : javaProject.getRawClasspath()) {
+					if (entry.getEntryKind() == IClasspathEntry.CPE_CONTAINER
+							&& aContainerPath.equals(entry.getPath())) {
+						projects.add(javaProject);
+						break;
+					}
+				}
+
+			} catch (final JavaModelException ex) {
+				// Ignore this project: it will be initialized by its own call
+			}
+		}
+
+		return projects;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -69,20 +137,35 @@ public class AnnotationContainerInitializer extends
 	public void initialize(final IPath aContainerPath,
 			final IJavaProject aProject) throws CoreException {
 
-		// The container
-		final AnnotationContainer annotationContainer = new AnnotationContainer();
-
-		if (annotationContainer.hasAnnotationLibrary()) {
-			// JAR found : setup the project class path
-			JavaCore.setClasspathContainer(aContainerPath,
-					new IJavaProject[] { aProject },
-					new IClasspathContainer[] { annotationContainer }, null);
+		// The shared container
+		final AnnotationContainer annotationContainer = AnnotationContainer
+				.getShared();
 
-		} else {
+		if (!annotationContainer.hasAnnotationLibrary()) {
 			// Nothing available
 			IPojoClasspathPlugin.logWarning(
 					"iPOJO Annotations JAR file not found.", null);
+			return;
+		}
+
+		// JAR found : setup the class path of all the waiting projects
+		final List<IJavaProject> projects = findProjectsToInitialize(
+				aContainerPath, aProject);
+
+		final IClasspathContainer[] containers = new IClasspathContainer[projects
+				.size()];
+		Arrays.fill(containers, annotationContainer);
+
+		JavaCore.setClasspathContainer(aContainerPath,
+				projects.toArray(new IJavaProject[projects.size()]),
+				containers, null);
+
+		for (final IJavaProject project : projects) {
+			pInitialized.add(project.getElementName());
 		}
+
+		IPojoClasspathPlugin.logInfo(
+				"Annotations container set for %d project(s)", projects.size());
 	}
 
 	/*
@@ -114,8 +114,8 @@ public class BundleClassFinder {
 			return ((JarURLConnection) urlConn).getJarFileURL().getPath();
 		}
 
-		IPojoClasspathPlugin.logInfo("Not a JarURLConnection : "
-				+ urlConn.getClass().getName());
+		IPojoClasspathPlugin.logInfo("Not a JarURLConnection : %s",
+				urlConn.getClass().getName());
 
 		return null;
 	}
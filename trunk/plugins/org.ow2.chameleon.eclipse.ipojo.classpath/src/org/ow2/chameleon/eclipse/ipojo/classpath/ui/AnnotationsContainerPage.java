@@ -23,6 +23,7 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.ow2.chameleon.eclipse.ipojo.Activator;
 import org.ow2.chameleon.eclipse.ipojo.IClasspathConstants;
 import org.ow2.chameleon.eclipse.ipojo.IImagesConstants;
@@ -40,8 +41,9 @@ public class AnnotationsContainerPage extends WizardPage implements
 	 * Default constructor, called when instantiating plug-in
 	 */
 	public AnnotationsContainerPage() {
-		super("iPOJO Annotations", "iPOJO Annotations", Activator
-				.getImageDescriptor(IImagesConstants.LOGO_IPOJO_SMALL));
+		super("iPOJO Annotations", "iPOJO Annotations", AbstractUIPlugin
+				.imageDescriptorFromPlugin(Activator.PLUGIN_ID,
+						IImagesConstants.LOGO_IPOJO_SMALL));
 
 		setPageComplete(true);
 	}
@@ -64,7 +66,7 @@ public class AnnotationsContainerPage extends WizardPage implements
 		pageRoot.setLayout(layout);
 
 		// Prepare the label text : JAR file path
-		final String annotationJarPath = new AnnotationContainer()
+		final String annotationJarPath = AnnotationContainer.getShared()
 				.getAnnotationLibraryPath();
 
 		final StringBuilder builder = new StringBuilder();
@@ -14,10 +14,9 @@
  */
 package org.ow2.chameleon.eclipse.ipojo.exporter;
 
-import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.Status;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
+import org.ow2.chameleon.eclipse.ipojo.PluginLogger;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -29,6 +28,9 @@ public class IPojoExporterPlugin extends AbstractUIPlugin {
 	/** The plug-in ID **/
 	public static final String PLUGIN_ID = "org.ow2.chameleon.eclipse.ipojo.exporter";
 
+	/** The plug-in logger */
+	private static PluginLogger sLogger;
+
 	/** The shared instance */
 	private static IPojoExporterPlugin sPlugin;
 
@@ -53,21 +55,32 @@ public class IPojoExporterPlugin extends AbstractUIPlugin {
 	public static void logError(final String aMessage,
 			final Throwable aThrowable) {
 
-		sPlugin.getLog().log(
-				new Status(IStatus.ERROR, PLUGIN_ID, aMessage, aThrowable));
+		sLogger.error(aMessage, aThrowable);
 	}
 
 	/**
-	 * Logs an information
+	 * Logs an information, if the "log/info" debug option is on
 	 * 
-	 * @param aProject
-	 *            Current manipulated project
 	 * @param aMessage
 	 *            Message to log
 	 */
 	public static void logInfo(final String aMessage) {
 
-		sPlugin.getLog().log(new Status(IStatus.INFO, PLUGIN_ID, aMessage));
+		sLogger.info(aMessage);
+	}
+
+	/**
+	 * Logs an information, if the "log/info" debug option is on. The message
+	 * is formatted only in that case.
+	 * 
+	 * @param aFormat
+	 *            Message format (see {@link String#format(String, Object...)})
+	 * @param aArgs
+	 *            Format arguments
+	 */
+	public static void logInfo(final String aFormat, final Object... aArgs) {
+
+		sLogger.info(aFormat, aArgs);
 	}
 
 	/**
@@ -81,8 +94,7 @@ public class IPojoExporterPlugin extends AbstractUIPlugin {
 	public static void logWarning(final String aMessage,
 			final Throwable aThrowable) {
 
-		sPlugin.getLog().log(
-				new Status(IStatus.WARNING, PLUGIN_ID, aMessage, aThrowable));
+		sLogger.warning(aMessage, aThrowable);
 	}
 
 	/*
@@ -97,6 +109,9 @@ public class IPojoExporterPlugin extends AbstractUIPlugin {
 
 		super.start(context);
 		sPlugin = this;
+
+		sLogger = new PluginLogger(PLUGIN_ID, getLog()::log);
+		sLogger.register(context);
 	}
 
 	/*
@@ -109,6 +124,7 @@ public class IPojoExporterPlugin extends AbstractUIPlugin {
 	@Override
 	public void stop(final BundleContext context) throws Exception {
 
+		sLogger.unregister();
 		sPlugin = null;
 		super.stop(context);
 	}
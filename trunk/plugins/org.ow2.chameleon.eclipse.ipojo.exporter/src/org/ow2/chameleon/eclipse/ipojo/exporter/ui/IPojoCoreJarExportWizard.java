@@ -201,8 +201,8 @@ public class IPojoCoreJarExportWizard extends Wizard implements IExportWizard {
 		}
 
 		// No error
-		Activator.logInfo(null, "iPOJO Core JAR file exported to: "
-				+ outputFile);
+		Activator.logInfo(null, "iPOJO Core JAR file exported to: %s",
+				outputFile);
 		return true;
 	}
 }
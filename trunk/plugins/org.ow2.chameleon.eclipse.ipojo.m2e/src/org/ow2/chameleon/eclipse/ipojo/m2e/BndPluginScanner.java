@@ -0,0 +1,419 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.m2e;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks for a Bnd plug-in declaration in Bnd files, following their
+ * <code>-include</code> instructions.
+ *
+ * The files are read line by line, until the plug-in is found. The result of
+ * the scan of each file is kept until its modification date or size changes.
+ *
+ * @author Thomas Calmant
+ */
+public class BndPluginScanner {
+
+	/**
+	 * Result of the scan of a single file
+	 */
+	private static final class ScannedFile {
+
+		/** The file declares the plug-in */
+		private final boolean pDeclaresPlugin;
+
+		/** Files included by the scanned one */
+		private final List<File> pIncludes;
+
+		/** Size of the file when scanned */
+		private final long pLength;
+
+		/** Modification date of the file when scanned */
+		private final long pLastModified;
+
+		/**
+		 * Sets up the result
+		 *
+		 * @param aLastModified
+		 *            Modification date of the file
+		 * @param aLength
+		 *            Size of the file
+		 * @param aDeclaresPlugin
+		 *            The file declares the plug-in
+		 * @param aIncludes
+		 *            Included files
+		 */
+		private ScannedFile(final long aLastModified, final long aLength,
+				final boolean aDeclaresPlugin, final List<File> aIncludes) {
+
+			pLastModified = aLastModified;
+			pLength = aLength;
+			pDeclaresPlugin = aDeclaresPlugin;
+			pIncludes = aIncludes;
+		}
+
+		/**
+		 * Tests if the scan result is still valid for the given file
+		 *
+		 * @param aFile
+		 *            The scanned file
+		 * @return True if the file didn't change
+		 */
+		private boolean isUpToDate(final File aFile) {
+
+			return aFile.lastModified() == pLastModified
+					&& aFile.length() == pLength;
+		}
+	}
+
+	/** Bnd files character set */
+	private static final String CHARSET = "ISO-8859-1";
+
+	/** Include instructions */
+	private static final String[] INCLUDE_KEYS = { "-include", "_include" };
+
+	/** Plug-in instructions */
+	private static final String[] PLUGIN_KEYS = { "-plugin", "_plugin" };
+
+	/** Scanned files: canonical path -&gt; scan result */
+	private final Map<String, ScannedFile> pCache = new ConcurrentHashMap<String, ScannedFile>();
+
+	/** Name of the plug-in class to look for */
+	private final String pPluginClass;
+
+	/**
+	 * Sets up the scanner
+	 *
+	 * @param aPluginClass
+	 *            Name of the plug-in class to look for
+	 */
+	public BndPluginScanner(final String aPluginClass) {
+
+		pPluginClass = aPluginClass;
+	}
+
+	/**
+	 * Returns the canonical form of a file
+	 *
+	 * @param aFile
+	 *            A file
+	 * @return The canonical file, or the absolute one on error
+	 */
+	private File canonical(final File aFile) {
+
+		try {
+			return aFile.getCanonicalFile();
+
+		} catch (final IOException ex) {
+			return aFile.getAbsoluteFile();
+		}
+	}
+
+	/**
+	 * Forgets all the scan results
+	 */
+	public void clear() {
+
+		pCache.clear();
+	}
+
+	/**
+	 * Retrieves the scan result of the given file, reading it if it is unknown
+	 * or has changed since its last scan
+	 *
+	 * @param aFile
+	 *            A canonical file
+	 * @return The scan result, or null if the file can't be read
+	 */
+	private ScannedFile getScanResult(final File aFile) {
+
+		final String key = aFile.getPath();
+		if (!aFile.isFile()) {
+			pCache.remove(key);
+			return null;
+		}
+
+		ScannedFile scanned = pCache.get(key);
+		if (scanned == null || !scanned.isUpToDate(aFile)) {
+			try {
+				scanned = scan(aFile);
+				pCache.put(key, scanned);
+
+			} catch (final IOException ex) {
+				pCache.remove(key);
+				return null;
+			}
+		}
+
+		return scanned;
+	}
+
+	/**
+	 * Tests if the given key is one of the given instructions
+	 *
+	 * @param aKeys
+	 *            Instruction names
+	 * @param aKey
+	 *            A property key
+	 * @return True if the key is one of the instructions, or a merged form of
+	 *         it (e.g. <code>-plugin.ipojo</code>)
+	 */
+	private boolean isInstruction(final String[] aKeys, final String aKey) {
+
+		for (final String key : aKeys) {
+			if (aKey.equals(key)
+					|| (aKey.startsWith(key) && aKey.charAt(key.length()) == '.')) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Parses the value of an include instruction
+	 *
+	 * @param aBaseDir
+	 *            Directory the relative paths are resolved against
+	 * @param aValue
+	 *            Comma-separated list of files
+	 * @return The included files (never null)
+	 */
+	public List<File> parseIncludes(final File aBaseDir, final String aValue) {
+
+		if (aValue == null) {
+			return Collections.emptyList();
+		}
+
+		final List<File> files = new ArrayList<File>();
+		for (final String part : aValue.split(",")) {
+			String path = part.trim();
+
+			// Optional (-) and non-overriding (~) include markers
+			while (path.startsWith("-") || path.startsWith("~")) {
+				path = path.substring(1);
+			}
+
+			if (aBaseDir != null) {
+				path = path.replace("${.}", aBaseDir.getPath());
+			}
+
+			if (path.isEmpty() || path.contains("${")
+					|| path.contains("://")) {
+				// Unresolvable macro or remote file
+				continue;
+			}
+
+			File file = new File(path);
+			if (!file.isAbsolute() && aBaseDir != null) {
+				file = new File(aBaseDir, path);
+			}
+			files.add(file);
+		}
+
+		return files;
+	}
+
+	/**
+	 * Reads a Bnd file until it finds the plug-in
+	 *
+	 * @param aFile
+	 *            A Bnd file
+	 * @return The scan result
+	 * @throws IOException
+	 *             Error reading the file
+	 */
+	private ScannedFile scan(final File aFile) throws IOException {
+
+		// Get the stamp before reading, to detect concurrent modifications
+		final long lastModified = aFile.lastModified();
+		final long length = aFile.length();
+
+		final List<File> includes = new ArrayList<File>();
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(aFile), CHARSET));
+		try {
+			final StringBuilder logicalLine = new StringBuilder();
+			String line;
+			while ((line = reader.readLine()) != null) {
+
+				final String trimmed = trimLeading(line);
+				if (logicalLine.length() == 0
+						&& (trimmed.isEmpty() || trimmed.charAt(0) == '#' || trimmed
+								.charAt(0) == '!')) {
+					// Comment or empty line
+					continue;
+				}
+
+				if (isContinued(trimmed)) {
+					// Line continues on the next one
+					logicalLine.append(trimmed, 0, trimmed.length() - 1);
+					continue;
+				}
+
+				logicalLine.append(trimmed);
+				final String property = logicalLine.toString();
+				logicalLine.setLength(0);
+
+				// Split the property
+				final int keyEnd = findKeyEnd(property);
+				final String key = property.substring(0, keyEnd);
+				final String value = stripSeparator(property.substring(keyEnd));
+
+				if (isInstruction(PLUGIN_KEYS, key)
+						&& value.contains(pPluginClass)) {
+					// Found it: no need to read further
+					return new ScannedFile(lastModified, length, true,
+							includes);
+
+				} else if (isInstruction(INCLUDE_KEYS, key)) {
+					includes.addAll(parseIncludes(aFile.getParentFile(), value));
+				}
+			}
+
+		} finally {
+			reader.close();
+		}
+
+		return new ScannedFile(lastModified, length, false, includes);
+	}
+
+	/**
+	 * Finds the end of the key of a property line
+	 *
+	 * @param aLine
+	 *            A logical property line
+	 * @return The index of the first key separator
+	 */
+	private int findKeyEnd(final String aLine) {
+
+		for (int i = 0; i < aLine.length(); i++) {
+			final char character = aLine.charAt(i);
+			if (character == '\\') {
+				// Escaped character
+				i++;
+
+			} else if (character == ':' || character == '='
+					|| Character.isWhitespace(character)) {
+				return i;
+			}
+		}
+
+		return aLine.length();
+	}
+
+	/**
+	 * Tests if a line ends with an odd number of backslashes
+	 *
+	 * @param aLine
+	 *            A physical line
+	 * @return True if the property continues on the next line
+	 */
+	private boolean isContinued(final String aLine) {
+
+		int count = 0;
+		for (int i = aLine.length() - 1; i >= 0 && aLine.charAt(i) == '\\'; i--) {
+			count++;
+		}
+
+		return count % 2 == 1;
+	}
+
+	/**
+	 * Removes the separator between a property key and its value
+	 *
+	 * @param aValue
+	 *            The property line after its key
+	 * @return The property value
+	 */
+	private String stripSeparator(final String aValue) {
+
+		String value = aValue.trim();
+		if (!value.isEmpty()
+				&& (value.charAt(0) == ':' || value.charAt(0) == '=')) {
+			value = value.substring(1).trim();
+		}
+
+		return value;
+	}
+
+	/**
+	 * Removes the leading white spaces of a line
+	 *
+	 * @param aLine
+	 *            A line
+	 * @return The line without leading white spaces
+	 */
+	private String trimLeading(final String aLine) {
+
+		int start = 0;
+		while (start < aLine.length()
+				&& Character.isWhitespace(aLine.charAt(start))) {
+			start++;
+		}
+
+		return aLine.substring(start);
+	}
+
+	/**
+	 * Tests if the given Bnd file, or one of the files it includes, declares
+	 * the plug-in
+	 *
+	 * @param aFile
+	 *            A Bnd file
+	 * @param aVisited
+	 *            The files already visited during this analysis, completed
+	 *            with the files read by this call
+	 * @return True if the plug-in is declared
+	 */
+	public boolean usesPlugin(final File aFile, final Collection<File> aVisited) {
+
+		final File file = canonical(aFile);
+		if (aVisited.contains(file)) {
+			// Already checked, or include loop
+			return false;
+		}
+		aVisited.add(file);
+
+		final ScannedFile scanned = getScanResult(file);
+		if (scanned == null) {
+			// Missing file
+			return false;
+		}
+
+		if (scanned.pDeclaresPlugin) {
+			return true;
+		}
+
+		for (final File include : scanned.pIncludes) {
+			if (usesPlugin(include, aVisited)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
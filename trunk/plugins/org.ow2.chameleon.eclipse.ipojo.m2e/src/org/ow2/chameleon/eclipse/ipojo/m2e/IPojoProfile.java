@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.m2e;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Result of the analysis of the effective POM of a Maven project: does it use
+ * iPOJO, and its annotations ?
+ *
+ * A profile keeps the fingerprint of the parts of the effective model it has
+ * been computed from, and the modification dates of the Bnd files read by the
+ * analysis, to be reused until they change.
+ *
+ * @author Thomas Calmant
+ */
+public final class IPojoProfile {
+
+	/**
+	 * Computes the fingerprint of the parts of the effective model used by the
+	 * analysis: build plug-ins, their executions and configuration, and
+	 * dependencies
+	 *
+	 * @param aMavenProject
+	 *            A Maven project
+	 * @return A 64-bit fingerprint
+	 */
+	public static long fingerprint(final MavenProject aMavenProject) {
+
+		long hash = 1125899906842597L;
+
+		final List<Plugin> plugins = aMavenProject.getBuildPlugins();
+		if (plugins != null) {
+			for (final Plugin plugin : plugins) {
+				hash = mix(hash, plugin.getKey());
+				hash = mix(hash, plugin.getExecutions().size());
+
+				final Object configuration = plugin.getConfiguration();
+				if (configuration != null) {
+					hash = mix(hash, configuration.toString());
+				}
+			}
+		}
+
+		final List<Dependency> dependencies = aMavenProject.getDependencies();
+		if (dependencies != null) {
+			for (final Dependency dependency : dependencies) {
+				hash = mix(hash, dependency.getManagementKey());
+			}
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Mixes an integer in a hash
+	 *
+	 * @param aHash
+	 *            Current hash
+	 * @param aValue
+	 *            Value to add
+	 * @return The new hash
+	 */
+	private static long mix(final long aHash, final int aValue) {
+
+		return 31 * aHash + aValue;
+	}
+
+	/**
+	 * Mixes a string in a hash
+	 *
+	 * @param aHash
+	 *            Current hash
+	 * @param aValue
+	 *            Value to add (can be null)
+	 * @return The new hash
+	 */
+	private static long mix(final long aHash, final String aValue) {
+
+		if (aValue == null) {
+			return mix(aHash, 0);
+		}
+
+		long hash = aHash;
+		for (int i = 0; i < aValue.length(); i++) {
+			hash = 31 * hash + aValue.charAt(i);
+		}
+
+		return hash;
+	}
+
+	/** Bnd files read by the analysis -&gt; modification date */
+	private final Map<File, Long> pBndFiles = new LinkedHashMap<File, Long>();
+
+	/** Fingerprint of the analyzed model */
+	private final long pFingerprint;
+
+	/** The project depends on the iPOJO annotations */
+	private final boolean pUsesAnnotations;
+
+	/** The project is manipulated by iPOJO */
+	private final boolean pUsesIPojo;
+
+	/**
+	 * Sets up the profile
+	 *
+	 * @param aFingerprint
+	 *            Fingerprint of the analyzed model
+	 * @param aUsesIPojo
+	 *            The project is manipulated by iPOJO
+	 * @param aUsesAnnotations
+	 *            The project depends on the iPOJO annotations
+	 * @param aBndFiles
+	 *            Bnd files read by the analysis
+	 */
+	public IPojoProfile(final long aFingerprint, final boolean aUsesIPojo,
+			final boolean aUsesAnnotations, final Collection<File> aBndFiles) {
+
+		pFingerprint = aFingerprint;
+		pUsesIPojo = aUsesIPojo;
+		pUsesAnnotations = aUsesAnnotations;
+
+		for (final File bndFile : aBndFiles) {
+			pBndFiles.put(bndFile, Long.valueOf(bndFile.lastModified()));
+		}
+	}
+
+	/**
+	 * Returns the fingerprint of the analyzed model
+	 *
+	 * @return the fingerprint
+	 */
+	public long getFingerprint() {
+
+		return pFingerprint;
+	}
+
+	/**
+	 * Tests if the profile is still valid
+	 *
+	 * @param aFingerprint
+	 *            Fingerprint of the current model
+	 * @return True if neither the model nor the Bnd files changed
+	 */
+	public boolean isUpToDate(final long aFingerprint) {
+
+		if (aFingerprint != pFingerprint) {
+			return false;
+		}
+
+		for (final Map.Entry<File, Long> entry : pBndFiles.entrySet()) {
+			if (entry.getKey().lastModified() != entry.getValue().longValue()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Tests if the project depends on the iPOJO annotations
+	 *
+	 * @return True if the annotations are used
+	 */
+	public boolean usesAnnotations() {
+
+		return pUsesAnnotations;
+	}
+
+	/**
+	 * Tests if the project is manipulated by iPOJO
+	 *
+	 * @return True if iPOJO is used
+	 */
+	public boolean usesIPojo() {
+
+		return pUsesIPojo;
+	}
+}
@@ -15,18 +15,23 @@
 package org.ow2.chameleon.eclipse.ipojo.m2e;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.eclipse.m2e.core.project.configurator.AbstractProjectConfigurator;
 import org.eclipse.m2e.core.project.configurator.ProjectConfigurationRequest;
-import org.ow2.chameleon.eclipse.ipojo.core.ProjectUtilities;
 
 /**
  * Sets up the iPOJO Nature to Maven projects using the iPOJO manipulation
@@ -63,8 +68,15 @@ public class IPojoProjectConfigurator extends AbstractProjectConfigurator {
 
 	private static final String MAVEN_BUNDLE_INSTRUCTIONS_TAG = "instructions";
 
-	/** Project manipulation utility bean */
-	private final ProjectUtilities pUtilities = new ProjectUtilities();
+	/** Looks for the iPOJO plug-in in the Bnd files */
+	private final BndPluginScanner pBndScanner = new BndPluginScanner(
+			IPOJO_BND_PLUGIN_ID);
+
+	/** Batch conversion of the configured projects */
+	private final NatureConversionJob pConversionJob = new NatureConversionJob();
+
+	/** Profiles of the analyzed projects: project path -&gt; profile */
+	private final Map<IPath, IPojoProfile> pProfiles = new ConcurrentHashMap<IPath, IPojoProfile>();
 
 	/*
 	 * (non-Javadoc)
@@ -82,15 +94,46 @@ public class IPojoProjectConfigurator extends AbstractProjectConfigurator {
 		final IMavenProjectFacade facade = request.mavenProjectFacade();
 		final IProject project = request.mavenProjectFacade().getProject();
 
-		if (isIPojoMavenProject(facade, monitor)) {
-			// iPOJO Project -> Add the iPOJO Nature
-			pUtilities.addNature(project);
+		final IPojoProfile profile = getProfile(facade, monitor);
+		if (profile.usesIPojo()) {
+			// iPOJO Project -> Add the iPOJO Nature, and the annotations if
+			// needed, with the other imported projects
+			pConversionJob.enqueue(project, profile.usesAnnotations());
+		}
+	}
 
-			if (usesAnnotations(facade, monitor)) {
-				// Also add iPOJO annotations
-				pUtilities.addAnnotations(project);
-			}
+	/**
+	 * Retrieves the iPOJO profile of the given project, analyzing its
+	 * effective model only if it changed since the last call
+	 * 
+	 * @param aFacade
+	 *            A Maven project facade
+	 * @param aMonitor
+	 *            The progression monitor
+	 * @return The iPOJO profile of the project
+	 * @throws CoreException
+	 *             Error reading the Maven project
+	 */
+	public IPojoProfile getProfile(final IMavenProjectFacade aFacade,
+			final IProgressMonitor aMonitor) throws CoreException {
+
+		final MavenProject mavenProject = aFacade.getMavenProject(aMonitor);
+		final long fingerprint = IPojoProfile.fingerprint(mavenProject);
+		final IPath key = aFacade.getProject().getFullPath();
+
+		IPojoProfile profile = pProfiles.get(key);
+		if (profile == null || !profile.isUpToDate(fingerprint)) {
+			// Unknown or modified model
+			final Collection<File> bndFiles = new LinkedHashSet<File>();
+			final boolean usesIPojo = isIPojoMavenProject(aFacade,
+					mavenProject, bndFiles);
+
+			profile = new IPojoProfile(fingerprint, usesIPojo,
+					usesAnnotations(mavenProject), bndFiles);
+			pProfiles.put(key, profile);
 		}
+
+		return profile;
 	}
 
 	/**
@@ -100,12 +143,18 @@ public class IPojoProjectConfigurator extends AbstractProjectConfigurator {
 	 *            A Maven project facade
 	 * @param plugin
 	 *            A project plug-in
+	 * @param bndFiles
+	 *            Completed with the Bnd files read during the test
 	 * @return True if the project uses the Bnd iPOJO plugin
 	 */
 	private boolean hasIpojoBndPlugin(final IMavenProjectFacade facade,
-			final Plugin plugin) {
+			final Plugin plugin, final Collection<File> bndFiles) {
 
 		final Xpp3Dom configuration = (Xpp3Dom) plugin.getConfiguration();
+		if (configuration == null) {
+			return false;
+		}
+
 		final Xpp3Dom instructions = configuration
 				.getChild(MAVEN_BUNDLE_INSTRUCTIONS_TAG);
 		if (instructions != null) {
@@ -127,7 +176,7 @@ public class IPojoProjectConfigurator extends AbstractProjectConfigurator {
 			if (includes != null) {
 				for (final Xpp3Dom i : includes) {
 					final String fileName = i.getValue();
-					if (usesBndPlugin(facade.getPomFile(), fileName)) {
+					if (usesBndPlugin(facade.getPomFile(), fileName, bndFiles)) {
 						return true;
 					}
 				}
@@ -150,11 +199,28 @@ public class IPojoProjectConfigurator extends AbstractProjectConfigurator {
 	public boolean isIPojoMavenProject(final IMavenProjectFacade facade,
 			final IProgressMonitor monitor) throws CoreException {
 
-		final List<Plugin> plugins = facade.getMavenProject(monitor)
-				.getBuildPlugins();
+		return isIPojoMavenProject(facade, facade.getMavenProject(monitor),
+				new LinkedHashSet<File>());
+	}
+
+	/**
+	 * Tests if the given Maven project uses the iPOJO plugin
+	 * 
+	 * @param aFacade
+	 *            A Maven project facade
+	 * @param aMavenProject
+	 *            The loaded Maven project of the facade
+	 * @param aBndFiles
+	 *            Completed with the Bnd files read during the test
+	 * @return True if the project uses iPOJO
+	 */
+	private boolean isIPojoMavenProject(final IMavenProjectFacade aFacade,
+			final MavenProject aMavenProject, final Collection<File> aBndFiles) {
+
+		final List<Plugin> plugins = aMavenProject.getBuildPlugins();
 		if (plugins != null) {
 			for (final Plugin plugin : plugins) {
-				if (isIPojoMavenProject(facade, plugin)
+				if (isIPojoMavenProject(aFacade, plugin, aBndFiles)
 						&& !plugin.getExecutions().isEmpty()) {
 					return true;
 				}
@@ -176,9 +242,26 @@ public class IPojoProjectConfigurator extends AbstractProjectConfigurator {
 	public boolean isIPojoMavenProject(final IMavenProjectFacade facade,
 			final Plugin plugin) {
 
+		return isIPojoMavenProject(facade, plugin, new LinkedHashSet<File>());
+	}
+
+	/**
+	 * Tests if the given plugin is the iPOJO one
+	 * 
+	 * @param facade
+	 *            A Maven project facade
+	 * @param plugin
+	 *            A Maven plugin
+	 * @param bndFiles
+	 *            Completed with the Bnd files read during the test
+	 * @return True if the given plugin is the iPOJO manipulator
+	 */
+	private boolean isIPojoMavenProject(final IMavenProjectFacade facade,
+			final Plugin plugin, final Collection<File> bndFiles) {
+
 		return isMavenIPojoPluginMojo(plugin)
 				|| (isMavenBundlePluginMojo(plugin) && hasIpojoBndPlugin(
-						facade, plugin));
+						facade, plugin, bndFiles));
 	}
 
 	/**
@@ -259,7 +342,19 @@ public class IPojoProjectConfigurator extends AbstractProjectConfigurator {
 	public boolean usesAnnotations(final IMavenProjectFacade aFacade,
 			final IProgressMonitor aMonitor) throws CoreException {
 
-		final List<Dependency> dependencies = aFacade.getMavenProject(aMonitor).getDependencies();
+		return usesAnnotations(aFacade.getMavenProject(aMonitor));
+	}
+
+	/**
+	 * Tests if the project depends on iPOJO Annotations
+	 * 
+	 * @param aMavenProject
+	 *            A loaded Maven project
+	 * @return True if the projects uses annotations
+	 */
+	private boolean usesAnnotations(final MavenProject aMavenProject) {
+
+		final List<Dependency> dependencies = aMavenProject.getDependencies();
 		for (final Dependency dependency : dependencies) {
 			if (ANNOTATIONS_GROUP_ID.equals(dependency.getGroupId())
 					&& ANNOTATIONS_ARTIFACT_ID.equals(dependency.getArtifactId())) {
@@ -272,17 +367,27 @@ public class IPojoProjectConfigurator extends AbstractProjectConfigurator {
 	}
 
 	/**
-	 * Tests if the Bnd Ipojo Plugin is defined in a bnd descriptor.
-	 * 
-	 * <b>NOT IMPLEMENTENTED</b>
+	 * Tests if the Bnd Ipojo Plugin is defined in a bnd descriptor, or in one
+	 * of the files it includes.
 	 * 
 	 * @param pomFile
+	 *            The POM file, the include paths are relative to its folder
 	 * @param fileName
-	 * @return
+	 *            Value of an include instruction of the POM
+	 * @param bndFiles
+	 *            Completed with the Bnd files read during the test
+	 * @return True if the plug-in is declared
 	 */
-	private boolean usesBndPlugin(final File pomFile, final String fileName) {
+	private boolean usesBndPlugin(final File pomFile, final String fileName,
+			final Collection<File> bndFiles) {
+
+		final File baseDir = pomFile == null ? null : pomFile.getParentFile();
+		for (final File bndFile : pBndScanner.parseIncludes(baseDir, fileName)) {
+			if (pBndScanner.usesPlugin(bndFile, bndFiles)) {
+				return true;
+			}
+		}
 
-		// If you need this feature, please implement it!
 		return false;
 	}
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.m2e;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.JavaCore;
+import org.ow2.chameleon.eclipse.ipojo.core.NatureConverter;
+
+/**
+ * Adds the iPOJO nature to the projects configured by m2e, in batches.
+ *
+ * m2e configures the imported projects one by one: the projects are queued
+ * and converted together, in a single workspace operation, once no project
+ * has been queued for {@link #DEBOUNCE_DELAY} milliseconds.
+ *
+ * @author Thomas Calmant
+ */
+public class NatureConversionJob extends Job {
+
+	/** Delay without new project before the conversion (milliseconds) */
+	public static final long DEBOUNCE_DELAY = 500;
+
+	/** Projects to convert -&gt; add the annotations container */
+	private final Map<IProject, Boolean> pPending = new LinkedHashMap<IProject, Boolean>();
+
+	/**
+	 * Sets up the job
+	 */
+	public NatureConversionJob() {
+
+		super("iPOJO nature configuration");
+		setRule(ResourcesPlugin.getWorkspace().getRoot());
+	}
+
+	/**
+	 * Queues a project to convert and (re)schedules the job
+	 *
+	 * @param aProject
+	 *            A Java project
+	 * @param aAddAnnotations
+	 *            Add the annotations container to the project
+	 */
+	public void enqueue(final IProject aProject, final boolean aAddAnnotations) {
+
+		synchronized (pPending) {
+			pPending.put(aProject, Boolean.valueOf(aAddAnnotations));
+		}
+
+		schedule(DEBOUNCE_DELAY);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.
+	 * IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(final IProgressMonitor aMonitor) {
+
+		// Drain the queue
+		final List<IProject> withAnnotations = new ArrayList<IProject>();
+		final List<IProject> withoutAnnotations = new ArrayList<IProject>();
+
+		synchronized (pPending) {
+			for (final Map.Entry<IProject, Boolean> entry : pPending.entrySet()) {
+				if (!entry.getKey().isAccessible()) {
+					// Closed or deleted in the meantime
+					continue;
+				}
+
+				if (entry.getValue().booleanValue()) {
+					withAnnotations.add(entry.getKey());
+				} else {
+					withoutAnnotations.add(entry.getKey());
+				}
+			}
+
+			pPending.clear();
+		}
+
+		if (withAnnotations.isEmpty() && withoutAnnotations.isEmpty()) {
+			return Status.OK_STATUS;
+		}
+
+		final List<IProject> converted = new ArrayList<IProject>(withAnnotations);
+		converted.addAll(withoutAnnotations);
+
+		try {
+			// Both conversions in a single operation
+			JavaCore.run(new IWorkspaceRunnable() {
+
+				@Override
+				public void run(final IProgressMonitor aRunMonitor)
+						throws CoreException {
+
+					if (!withAnnotations.isEmpty()) {
+						converted.removeAll(new NatureConverter(true, false)
+								.convert(true, withAnnotations, aRunMonitor));
+					}
+
+					if (!withoutAnnotations.isEmpty()) {
+						converted.removeAll(new NatureConverter(false, false)
+								.convert(true, withoutAnnotations, aRunMonitor));
+					}
+				}
+			}, getRule(), aMonitor);
+
+		} catch (final CoreException ex) {
+			return ex.getStatus();
+		}
+
+		// A single build for both conversions
+		NatureConverter.scheduleBuild(converted);
+		return Status.OK_STATUS;
+	}
+}
@@ -14,34 +14,78 @@
  */
 package org.ow2.chameleon.eclipse.ipojo;
 
+import java.io.IOException;
+import java.util.function.Supplier;
+
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.jface.resource.ImageDescriptor;
-import org.eclipse.ui.plugin.AbstractUIPlugin;
-import org.eclipse.ui.statushandlers.StatusManager;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Plugin;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.ow2.chameleon.eclipse.ipojo.core.IManipulationService;
+import org.ow2.chameleon.eclipse.ipojo.core.ManipulationCache;
+import org.ow2.chameleon.eclipse.ipojo.core.ManipulationJournal;
+import org.ow2.chameleon.eclipse.ipojo.core.ManipulationService;
+import org.ow2.chameleon.eclipse.ipojo.core.OutputWatcher;
+import org.ow2.chameleon.eclipse.ipojo.core.WarmUpJob;
+import org.ow2.chameleon.eclipse.ipojo.ui.WorkbenchStatusPresenter;
 
 /**
- * The activator class controlling the plug-in life cycle
+ * The activator class controlling the plug-in life cycle.
+ * 
+ * The activator doesn't depend on the workbench: statuses are given to an
+ * {@link IStatusPresenter}, using the workbench status manager only once the
+ * UI bundle is active.
  * 
  * @author Thomas Calmant
  */
-public class Activator extends AbstractUIPlugin {
+public class Activator extends Plugin {
 
 	/** Log info messages */
-	public static final String LOG_INFO = Activator.PLUGIN_ID + "/log/info";
+	public static final String LOG_INFO = Activator.PLUGIN_ID + PluginLogger.OPTION_LOG_INFO;
 
 	/** Log trace messages */
-	public static final String LOG_TRACES = Activator.PLUGIN_ID + "/log/traces";
+	public static final String LOG_TRACES = Activator.PLUGIN_ID + PluginLogger.OPTION_LOG_TRACES;
 
 	/** The plug-in ID */
 	public static final String PLUGIN_ID = "org.ow2.chameleon.eclipse.ipojo.nature"; //$NON-NLS-1$
 
+	/** Status presenter used without workbench */
+	private static final IStatusPresenter sLogPresenter = new LogStatusPresenter();
+
+	/** The plug-in logger, using the status presenter */
+	private static final PluginLogger sLogger = new PluginLogger(PLUGIN_ID,
+			aStatus -> getStatusPresenter().log(aStatus));
+
+	/** The UI bundle ID */
+	private static final String UI_BUNDLE_ID = "org.eclipse.ui"; //$NON-NLS-1$
+
+	/** Workbench status presenter, created on first use with the UI */
+	private static volatile IStatusPresenter sWorkbenchPresenter;
+
 	/** The shared instance */
 	private static Activator pPluginInstance;
 
+	/** The shared store of manipulated classes, null until first needed */
+	private ManipulationCache pManipulationCache;
+
+	/** The shared manipulation service */
+	private ManipulationService pManipulationService;
+
+	/** Watcher of the output folders filled by external tools */
+	private OutputWatcher pOutputWatcher;
+
+	/** The manipulation service registration */
+	private ServiceRegistration<IManipulationService> pManipulationServiceRegistration;
+
 	/**
 	 * Checks if information messages must be logged
 	 * 
@@ -52,7 +96,7 @@ public class Activator extends AbstractUIPlugin {
 	 */
 	public static boolean areInfoOn() {
 
-		return "true".equalsIgnoreCase(Platform.getDebugOption(LOG_INFO));
+		return sLogger.isInfoOn();
 	}
 
 	/**
@@ -65,20 +109,7 @@ public class Activator extends AbstractUIPlugin {
 	 */
 	public static boolean areTracesOn() {
 
-		return "true".equalsIgnoreCase(Platform.getDebugOption(LOG_TRACES));
-	}
-
-	/**
-	 * Returns an image descriptor for the image file at the given plug-in
-	 * relative path
-	 * 
-	 * @param path
-	 *            the path
-	 * @return the image descriptor
-	 */
-	public static ImageDescriptor getImageDescriptor(final String path) {
-
-		return imageDescriptorFromPlugin(PLUGIN_ID, path);
+		return sLogger.isTracesOn();
 	}
 
 	/**
@@ -98,6 +129,103 @@ public class Activator extends AbstractUIPlugin {
 		return "";
 	}
 
+	/**
+	 * Returns the plug-in logger
+	 * 
+	 * @return the plug-in logger
+	 */
+	public static PluginLogger getLogger() {
+
+		return sLogger;
+	}
+
+	/**
+	 * Returns the shared manipulation service
+	 * 
+	 * @return the manipulation service, or null if the plug-in is stopped
+	 */
+	public static IManipulationService getManipulationService() {
+
+		final Activator plugin = pPluginInstance;
+		if (plugin == null) {
+			return null;
+		}
+
+		return plugin.pManipulationService;
+	}
+
+	/**
+	 * Returns the shared store of manipulated classes, loading its index on
+	 * first call
+	 * 
+	 * @return the store, or null if the plug-in is stopped or the store is
+	 *         deactivated
+	 */
+	public static ManipulationCache getManipulationCache() {
+
+		final Activator plugin = pPluginInstance;
+		if (plugin == null) {
+			return null;
+		}
+
+		synchronized (plugin) {
+			if (plugin.pManipulationCache == null) {
+				final long maxSize = Platform.getPreferencesService().getLong(PLUGIN_ID,
+						ManipulationCache.PREFERENCE_CACHE_SIZE, ManipulationCache.DEFAULT_CACHE_SIZE, null);
+				if (maxSize <= 0) {
+					return null;
+				}
+
+				plugin.pManipulationCache = new ManipulationCache(
+						plugin.getStateLocation().append(ManipulationCache.CACHE_FOLDER).toFile(),
+						maxSize * 1024 * 1024);
+				plugin.pManipulationCache.load();
+			}
+
+			return plugin.pManipulationCache;
+		}
+	}
+
+	/**
+	 * Returns the watcher of the output folders
+	 * 
+	 * @return the output watcher, or null if the plug-in is stopped or the
+	 *         watcher couldn't start
+	 */
+	public static OutputWatcher getOutputWatcher() {
+
+		final Activator plugin = pPluginInstance;
+		if (plugin == null) {
+			return null;
+		}
+
+		return plugin.pOutputWatcher;
+	}
+
+	/**
+	 * Returns the status presenter: the workbench one if the UI bundle is
+	 * active, else the plug-in log
+	 * 
+	 * @return the status presenter
+	 */
+	public static IStatusPresenter getStatusPresenter() {
+
+		IStatusPresenter presenter = sWorkbenchPresenter;
+		if (presenter == null) {
+			final Bundle uiBundle = Platform.getBundle(UI_BUNDLE_ID);
+			if (uiBundle == null || uiBundle.getState() != Bundle.ACTIVE) {
+				// Headless, or workbench not started yet
+				return sLogPresenter;
+			}
+
+			// Only load the workbench classes now
+			presenter = new WorkbenchStatusPresenter();
+			sWorkbenchPresenter = presenter;
+		}
+
+		return presenter;
+	}
+
 	/**
 	 * Returns the shared instance
 	 * 
@@ -121,9 +249,7 @@ public class Activator extends AbstractUIPlugin {
 	public static void logError(final IProject aProject, final String aMessage,
 			final Throwable aThrowable) {
 
-		StatusManager.getManager().handle(
-				new Status(IStatus.ERROR, PLUGIN_ID, getLogPrefix(aProject)
-						+ aMessage, aThrowable));
+		sLogger.error(getLogPrefix(aProject) + aMessage, aThrowable);
 	}
 
 	/**
@@ -136,13 +262,41 @@ public class Activator extends AbstractUIPlugin {
 	 */
 	public static void logInfo(final IProject aProject, final String aMessage) {
 
-		if (areInfoOn()) {
-			StatusManager.getManager().handle(
-					new Status(IStatus.INFO, PLUGIN_ID, getLogPrefix(aProject)
-							+ aMessage));
+		if (sLogger.isInfoOn()) {
+			sLogger.info(getLogPrefix(aProject) + aMessage);
+		}
+	}
+
+	/**
+	 * Logs an information. The message is formatted only if information
+	 * messages are activated.
+	 * 
+	 * @param aProject
+	 *            Current manipulated project
+	 * @param aFormat
+	 *            Message format (see {@link String#format(String, Object...)})
+	 * @param aArgs
+	 *            Format arguments
+	 */
+	public static void logInfo(final IProject aProject, final String aFormat,
+			final Object... aArgs) {
+
+		if (sLogger.isInfoOn()) {
+			sLogger.info(getLogPrefix(aProject) + String.format(aFormat, aArgs));
 		}
 	}
 
+	/**
+	 * Logs a status (usually a manipulation report)
+	 * 
+	 * @param aStatus
+	 *            Status to log
+	 */
+	public static void logStatus(final IStatus aStatus) {
+
+		sLogger.log(aStatus);
+	}
+
 	/**
 	 * Logs a trace
 	 * 
@@ -153,10 +307,45 @@ public class Activator extends AbstractUIPlugin {
 	 */
 	public static void logTrace(final IProject aProject, final String aMessage) {
 
-		if (areTracesOn()) {
-			StatusManager.getManager().handle(
-					new Status(IStatus.INFO, PLUGIN_ID, getLogPrefix(aProject)
-							+ aMessage));
+		if (sLogger.isTracesOn()) {
+			sLogger.trace(getLogPrefix(aProject) + aMessage);
+		}
+	}
+
+	/**
+	 * Logs a trace. The message is formatted only if trace messages are
+	 * activated.
+	 * 
+	 * @param aProject
+	 *            Current manipulated project
+	 * @param aFormat
+	 *            Message format (see {@link String#format(String, Object...)})
+	 * @param aArgs
+	 *            Format arguments
+	 */
+	public static void logTrace(final IProject aProject, final String aFormat,
+			final Object... aArgs) {
+
+		if (sLogger.isTracesOn()) {
+			sLogger.trace(getLogPrefix(aProject)
+					+ String.format(aFormat, aArgs));
+		}
+	}
+
+	/**
+	 * Logs a trace. The message is computed only if trace messages are
+	 * activated.
+	 * 
+	 * @param aProject
+	 *            Current manipulated project
+	 * @param aMessage
+	 *            Message supplier
+	 */
+	public static void logTrace(final IProject aProject,
+			final Supplier<String> aMessage) {
+
+		if (sLogger.isTracesOn()) {
+			sLogger.trace(getLogPrefix(aProject) + aMessage.get());
 		}
 	}
 
@@ -186,9 +375,7 @@ public class Activator extends AbstractUIPlugin {
 	public static void logWarning(final IProject aProject,
 			final String aMessage, final Throwable aThrowable) {
 
-		StatusManager.getManager().handle(
-				new Status(IStatus.WARNING, PLUGIN_ID, getLogPrefix(aProject)
-						+ aMessage, aThrowable));
+		sLogger.warning(getLogPrefix(aProject) + aMessage, aThrowable);
 	}
 
 	/**
@@ -204,16 +391,27 @@ public class Activator extends AbstractUIPlugin {
 	public static void showError(final IProject aProject,
 			final String aMessage, final Throwable aThrowable) {
 
-		StatusManager.getManager().handle(
-				new Status(IStatus.ERROR, PLUGIN_ID, getLogPrefix(aProject)
-						+ aMessage, aThrowable), StatusManager.SHOW);
+		showStatus(new Status(IStatus.ERROR, PLUGIN_ID, getLogPrefix(aProject)
+				+ aMessage, aThrowable));
+	}
+
+	/**
+	 * Shows a status in the UI (doesn't log it), or logs it when running
+	 * without workbench
+	 * 
+	 * @param aStatus
+	 *            Status to show
+	 */
+	public static void showStatus(final IStatus aStatus) {
+
+		getStatusPresenter().show(aStatus);
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see
-	 * org.eclipse.ui.plugin.AbstractUIPlugin#start(org.osgi.framework.BundleContext
+	 * org.eclipse.core.runtime.Plugin#start(org.osgi.framework.BundleContext
 	 * )
 	 */
 	@Override
@@ -221,18 +419,67 @@ public class Activator extends AbstractUIPlugin {
 
 		super.start(context);
 		pPluginInstance = this;
+
+		// Load and follow the debug options
+		sLogger.register(context);
+
+		// Share the manipulation service
+		pManipulationService = new ManipulationService();
+		JavaCore.addElementChangedListener(pManipulationService,
+				ElementChangedEvent.POST_CHANGE);
+		pManipulationServiceRegistration = context.registerService(
+				IManipulationService.class, pManipulationService, null);
+
+		// Undo the manipulations interrupted by a crash
+		final Job recoveryJob = new Job("Recover interrupted iPOJO manipulations") {
+
+			@Override
+			protected IStatus run(final IProgressMonitor aMonitor) {
+
+				ManipulationJournal.recoverAll();
+				return Status.OK_STATUS;
+			}
+		};
+		recoveryJob.setSystem(true);
+		recoveryJob.setRule(ResourcesPlugin.getWorkspace().getRoot());
+		recoveryJob.schedule();
+
+		// Watch the output folders filled by external tools (registered by a job)
+		final OutputWatcher outputWatcher = new OutputWatcher();
+		try {
+			outputWatcher.start(ResourcesPlugin.getWorkspace());
+			pOutputWatcher = outputWatcher;
+
+		} catch (final IOException ex) {
+			logWarning(null, "Can't watch the output folders", ex);
+		}
+
+		// Prepare the first build
+		WarmUpJob.start();
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see
-	 * org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext
+	 * org.eclipse.core.runtime.Plugin#stop(org.osgi.framework.BundleContext
 	 * )
 	 */
 	@Override
 	public void stop(final BundleContext context) throws Exception {
 
+		if (pOutputWatcher != null) {
+			pOutputWatcher.stop(ResourcesPlugin.getWorkspace());
+			pOutputWatcher = null;
+		}
+
+		pManipulationServiceRegistration.unregister();
+		pManipulationServiceRegistration = null;
+		JavaCore.removeElementChangedListener(pManipulationService);
+		pManipulationService.shutdown();
+		pManipulationService = null;
+
+		sLogger.unregister();
 		pPluginInstance = null;
 		super.stop(context);
 	}
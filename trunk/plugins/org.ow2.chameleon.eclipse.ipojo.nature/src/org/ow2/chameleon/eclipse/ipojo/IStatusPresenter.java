@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo;
+
+import org.eclipse.core.runtime.IStatus;
+
+/**
+ * Sends the plug-in statuses to the user. The workbench implementation is only
+ * loaded when the UI is running, so that headless builds don't need it.
+ * 
+ * @author Thomas Calmant
+ */
+public interface IStatusPresenter {
+
+	/**
+	 * Logs a status
+	 * 
+	 * @param aStatus
+	 *            Status to log
+	 */
+	void log(IStatus aStatus);
+
+	/**
+	 * Shows a status to the user, if possible, without logging it
+	 * 
+	 * @param aStatus
+	 *            Status to show
+	 */
+	void show(IStatus aStatus);
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+
+/**
+ * Status presenter used without workbench: all statuses go to the plug-in log
+ * 
+ * @author Thomas Calmant
+ */
+public class LogStatusPresenter implements IStatusPresenter {
+
+	/**
+	 * Retrieves the log of the plug-in
+	 * 
+	 * @return The plug-in log
+	 */
+	private ILog getLog() {
+
+		return Platform.getLog(Platform.getBundle(Activator.PLUGIN_ID));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.ow2.chameleon.eclipse.ipojo.IStatusPresenter#log(org.eclipse.core.
+	 * runtime.IStatus)
+	 */
+	@Override
+	public void log(final IStatus aStatus) {
+
+		getLog().log(aStatus);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.ow2.chameleon.eclipse.ipojo.IStatusPresenter#show(org.eclipse.core.
+	 * runtime.IStatus)
+	 */
+	@Override
+	public void show(final IStatus aStatus) {
+
+		// Nobody to show it to
+		getLog().log(aStatus);
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.osgi.service.debug.DebugOptions;
+import org.eclipse.osgi.service.debug.DebugOptionsListener;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Logging facade shared by the iPOJO plug-ins.
+ *
+ * The "log/info" and "log/traces" debug options of the plug-in are cached and
+ * refreshed by the {@link DebugOptions} service, so checking them costs a
+ * field read. Messages are given either as a {@link Supplier} or as a format
+ * and its arguments: nothing is built while the matching option is off.
+ *
+ * @author Thomas Calmant
+ */
+public class PluginLogger implements DebugOptionsListener {
+
+	/** Suffix of the information messages option */
+	public static final String OPTION_LOG_INFO = "/log/info";
+
+	/** Suffix of the trace messages option */
+	public static final String OPTION_LOG_TRACES = "/log/traces";
+
+	/** Cached state of the information messages option */
+	private volatile boolean pInfoOn;
+
+	/** Name of the information messages option */
+	private final String pInfoOption;
+
+	/** The plug-in ID */
+	private final String pPluginId;
+
+	/** Debug options listener registration */
+	private ServiceRegistration<DebugOptionsListener> pRegistration;
+
+	/** Where the statuses are sent */
+	private final Consumer<IStatus> pSink;
+
+	/** Name of the trace messages option */
+	private final String pTracesOption;
+
+	/** Cached state of the trace messages option */
+	private volatile boolean pTracesOn;
+
+	/**
+	 * Sets up the logger. The options are considered off until the logger is
+	 * registered.
+	 *
+	 * @param aPluginId
+	 *            The plug-in ID, used as status plug-in and options prefix
+	 * @param aSink
+	 *            Consumer of the statuses (log, status manager, ...)
+	 */
+	public PluginLogger(final String aPluginId, final Consumer<IStatus> aSink) {
+
+		pPluginId = aPluginId;
+		pSink = aSink;
+		pInfoOption = aPluginId + OPTION_LOG_INFO;
+		pTracesOption = aPluginId + OPTION_LOG_TRACES;
+	}
+
+	/**
+	 * Logs an error
+	 *
+	 * @param aMessage
+	 *            Context description
+	 * @param aThrowable
+	 *            Exception caught (can be null)
+	 */
+	public void error(final String aMessage, final Throwable aThrowable) {
+
+		log(new Status(IStatus.ERROR, pPluginId, aMessage, aThrowable));
+	}
+
+	/**
+	 * Formats a message, if arguments are given
+	 *
+	 * @param aFormat
+	 *            Message format
+	 * @param aArgs
+	 *            Format arguments
+	 * @return The formatted message
+	 */
+	private String format(final String aFormat, final Object[] aArgs) {
+
+		if (aArgs == null || aArgs.length == 0) {
+			return aFormat;
+		}
+
+		return String.format(aFormat, aArgs);
+	}
+
+	/**
+	 * Logs an information message, if the information option is on
+	 *
+	 * @param aFormat
+	 *            Message format (see {@link String#format(String, Object...)})
+	 * @param aArgs
+	 *            Format arguments
+	 */
+	public void info(final String aFormat, final Object... aArgs) {
+
+		if (pInfoOn) {
+			log(new Status(IStatus.INFO, pPluginId, format(aFormat, aArgs)));
+		}
+	}
+
+	/**
+	 * Logs an information message, if the information option is on
+	 *
+	 * @param aMessage
+	 *            Message supplier, called only if the message is logged
+	 */
+	public void info(final Supplier<String> aMessage) {
+
+		if (pInfoOn) {
+			log(new Status(IStatus.INFO, pPluginId, aMessage.get()));
+		}
+	}
+
+	/**
+	 * Checks if information messages must be logged
+	 *
+	 * @return True if information messages are activated
+	 */
+	public boolean isInfoOn() {
+
+		return pInfoOn;
+	}
+
+	/**
+	 * Checks if trace messages must be logged
+	 *
+	 * @return True if trace messages are activated
+	 */
+	public boolean isTracesOn() {
+
+		return pTracesOn;
+	}
+
+	/**
+	 * Sends a status to the sink
+	 *
+	 * @param aStatus
+	 *            Status to log
+	 */
+	public void log(final IStatus aStatus) {
+
+		pSink.accept(aStatus);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.eclipse.osgi.service.debug.DebugOptionsListener#optionsChanged(org
+	 * .eclipse.osgi.service.debug.DebugOptions)
+	 */
+	@Override
+	public void optionsChanged(final DebugOptions aOptions) {
+
+		pInfoOn = aOptions.getBooleanOption(pInfoOption, false);
+		pTracesOn = aOptions.getBooleanOption(pTracesOption, false);
+	}
+
+	/**
+	 * Registers the logger as a debug options listener. The options are
+	 * loaded by the framework during the registration.
+	 *
+	 * @param aContext
+	 *            The plug-in bundle context
+	 */
+	public void register(final BundleContext aContext) {
+
+		final Dictionary<String, Object> properties = new Hashtable<String, Object>();
+		properties.put(DebugOptions.LISTENER_SYMBOLICNAME, pPluginId);
+
+		pRegistration = aContext.registerService(DebugOptionsListener.class,
+				this, properties);
+	}
+
+	/**
+	 * Logs a trace message, if the trace option is on
+	 *
+	 * @param aFormat
+	 *            Message format (see {@link String#format(String, Object...)})
+	 * @param aArgs
+	 *            Format arguments
+	 */
+	public void trace(final String aFormat, final Object... aArgs) {
+
+		if (pTracesOn) {
+			log(new Status(IStatus.INFO, pPluginId, format(aFormat, aArgs)));
+		}
+	}
+
+	/**
+	 * Logs a trace message, if the trace option is on
+	 *
+	 * @param aMessage
+	 *            Message supplier, called only if the message is logged
+	 */
+	public void trace(final Supplier<String> aMessage) {
+
+		if (pTracesOn) {
+			log(new Status(IStatus.INFO, pPluginId, aMessage.get()));
+		}
+	}
+
+	/**
+	 * Unregisters the debug options listener
+	 */
+	public void unregister() {
+
+		if (pRegistration != null) {
+			pRegistration.unregister();
+			pRegistration = null;
+		}
+
+		pInfoOn = false;
+		pTracesOn = false;
+	}
+
+	/**
+	 * Logs a warning
+	 *
+	 * @param aMessage
+	 *            Context description
+	 * @param aThrowable
+	 *            Exception caught (can be null)
+	 */
+	public void warning(final String aMessage, final Throwable aThrowable) {
+
+		log(new Status(IStatus.WARNING, pPluginId, aMessage, aThrowable));
+	}
+}
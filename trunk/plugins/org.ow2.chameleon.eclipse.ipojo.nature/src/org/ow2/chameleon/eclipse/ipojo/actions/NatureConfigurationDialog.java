@@ -27,6 +27,7 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.ow2.chameleon.eclipse.ipojo.Activator;
 import org.ow2.chameleon.eclipse.ipojo.IImagesConstants;
 
@@ -86,8 +87,9 @@ public class NatureConfigurationDialog extends TitleAreaDialog {
 		setTitle("iPOJO Nature configuration");
 
 		// Set the image
-		setTitleImage(Activator.getImageDescriptor(
-				IImagesConstants.LOGO_IPOJO_SMALL).createImage());
+		setTitleImage(AbstractUIPlugin.imageDescriptorFromPlugin(
+				Activator.PLUGIN_ID, IImagesConstants.LOGO_IPOJO_SMALL)
+				.createImage());
 
 		// Set the message
 		final StringBuilder builder = new StringBuilder(
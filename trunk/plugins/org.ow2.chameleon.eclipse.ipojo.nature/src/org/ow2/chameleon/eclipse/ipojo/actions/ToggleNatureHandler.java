@@ -14,7 +14,6 @@
  */
 package org.ow2.chameleon.eclipse.ipojo.actions;
 
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -22,9 +21,7 @@ import java.util.Set;
 
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
-import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jface.window.Window;
@@ -32,8 +29,7 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.PlatformUI;
 import org.ow2.chameleon.eclipse.ipojo.Activator;
 import org.ow2.chameleon.eclipse.ipojo.builder.IPojoNature;
-import org.ow2.chameleon.eclipse.ipojo.core.ManifestUpdater;
-import org.ow2.chameleon.eclipse.ipojo.core.ProjectUtilities;
+import org.ow2.chameleon.eclipse.ipojo.core.NatureConverter;
 
 /**
  * Add/Remove iPOJO nature popup menu action handler
@@ -42,38 +38,6 @@ import org.ow2.chameleon.eclipse.ipojo.core.ProjectUtilities;
  */
 public class ToggleNatureHandler extends AbstractProjectActionHandler {
 
-	/** iPOJO Nature handler */
-	private final IPojoNature pNature = new IPojoNature();
-
-	/**
-	 * Creates the template metadata.xml file
-	 * 
-	 * @param aProject
-	 *            Project where the metadata.xml file must be created
-	 */
-	private void createMetadataTemplate(final IProject aProject) {
-
-		// Get the metadata.xml Eclipse file
-		final IFile metadataFile = aProject.getFile("/metadata.xml");
-		if (metadataFile.exists()) {
-			// Do nothing if the file already exists
-			return;
-		}
-
-		// Get the metadata.xml template
-		final InputStream inStream = getClass().getResourceAsStream(
-				"/templates/metadata.xml");
-
-		// Set the file content
-		try {
-			metadataFile.create(inStream, true, null);
-
-		} catch (final CoreException e) {
-			Activator.logError(aProject,
-					"Error creating the metadata.xml file", e);
-		}
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -169,16 +133,6 @@ public class ToggleNatureHandler extends AbstractProjectActionHandler {
 		boolean addAnnotations = false;
 		boolean createMetadataTemplate = false;
 
-		// Manifest updater, to clean the manifest on nature removal
-		final ManifestUpdater manifestUpdater;
-		if (!aSetNature) {
-			// Only instantiate the updater on removal
-			manifestUpdater = new ManifestUpdater();
-
-		} else {
-			manifestUpdater = null;
-		}
-
 		if (aSetNature) {
 			// Get the shell
 			final Shell shell = PlatformUI.getWorkbench().getActiveWorkbenchWindow().getShell();
@@ -197,86 +151,40 @@ public class ToggleNatureHandler extends AbstractProjectActionHandler {
 			createMetadataTemplate = configDialog.isCreateMetadataBoxChecked();
 		}
 
-		// Prepare the error message, just in case
-		boolean hasError = false;
-
-		final StringBuilder errorBuilder = new StringBuilder("Error ");
-		if (aSetNature) {
-			errorBuilder.append("setting");
+		// Convert all the projects in a single workspace operation
+		List<IProject> failed;
+		try {
+			failed = new NatureConverter(addAnnotations, createMetadataTemplate)
+					.convert(aSetNature, aProjects, null);
 
-		} else {
-			errorBuilder.append("removing");
+		} catch (final CoreException e) {
+			Activator.logError(null, "Error running the nature conversion", e);
+			failed = new ArrayList<IProject>(aProjects);
 		}
-		errorBuilder.append(" iPOJO nature to :\n");
-
-		// Utility class
-		final ProjectUtilities utilities = new ProjectUtilities();
 
-		for (final IProject project : aProjects) {
-
-			try {
-				// Set the nature
-				pNature.setProject(project);
-
-				if (aSetNature) {
-					// Set the nature
-					pNature.configure();
-
-					if (addAnnotations) {
-						// Adds the annotation library
-						utilities.addAnnotations(project);
-					}
-
-					if (createMetadataTemplate) {
-						// Add the metadata.xml file template
-						createMetadataTemplate(project);
-					}
-
-				} else {
-					// Remove the nature
-					pNature.deconfigure();
-
-					// Remove the annotation container
-					utilities.removeAnnotations(project);
-
-					// Clean up the manifest
-					manifestUpdater.removeManifestEntry(project);
-				}
-
-			} catch (final CoreException e) {
-				// Log the error
-				final StringBuilder builder = new StringBuilder("Can't ");
-				if (aSetNature) {
-					builder.append("set");
+		if (aSetNature) {
+			// Build the converted projects once
+			final List<IProject> converted = new ArrayList<IProject>(aProjects);
+			converted.removeAll(failed);
+			NatureConverter.scheduleBuild(converted);
+		}
 
-				} else {
-					builder.append("remove");
-				}
-				builder.append(" the project nature");
+		// Last word, if necessary
+		if (!failed.isEmpty()) {
+			final StringBuilder errorBuilder = new StringBuilder("Error ");
+			if (aSetNature) {
+				errorBuilder.append("setting");
 
-				Activator.logError(project, builder.toString(), e);
+			} else {
+				errorBuilder.append("removing");
+			}
+			errorBuilder.append(" iPOJO nature to :\n");
 
-				// Add it to the message
+			for (final IProject project : failed) {
 				errorBuilder.append("\t").append(project.getName())
 						.append("\n");
-
-				hasError = true;
 			}
-		}
 
-		// Refresh modified projects
-		for (final IProject project : aProjects) {
-			try {
-				project.refreshLocal(IResource.DEPTH_ONE, null);
-
-			} catch (final CoreException e) {
-				// Just log...
-				Activator.logWarning(project, "Error refreshing project.", e);
-			}
-		}
-
-		// Last word, if necessary
-		if (hasError) {
 			errorBuilder.append("\n(See the logs)");
 
 			// Show the error
@@ -19,11 +19,8 @@ import java.util.Set;
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IStatus;
-import org.eclipse.ui.statushandlers.StatusManager;
 import org.ow2.chameleon.eclipse.ipojo.Activator;
-import org.ow2.chameleon.eclipse.ipojo.core.ManifestUpdater;
+import org.ow2.chameleon.eclipse.ipojo.core.IManipulationService;
 
 /**
  * "Update Manifest" action in MANIFEST.MF file context menu, in the navigator
@@ -33,9 +30,6 @@ import org.ow2.chameleon.eclipse.ipojo.core.ManifestUpdater;
  */
 public class UpdateManifestHandler extends AbstractProjectActionHandler {
 
-	/** iPOJO Manifest updater */
-	private final ManifestUpdater pManifestUpdater = new ManifestUpdater();
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -50,21 +44,20 @@ public class UpdateManifestHandler extends AbstractProjectActionHandler {
 		// Get the selected projects
 		final Set<IProject> selectedProjects = getSelectedProjects(aEvent);
 
+		final IManipulationService service = Activator.getManipulationService();
 		for (final IProject project : selectedProjects) {
-			try {
-				// Update projects manifests
-				final IStatus result = pManifestUpdater.updateManifest(project,
-						null);
-				if (!result.isOK()) {
-					// Errors have already been logged, so just pop a dialog
-					StatusManager.getManager().handle(result,
-							StatusManager.SHOW);
-				}
+			// Update projects manifests, without blocking the UI
+			service.submit(project).whenComplete((aResult, aError) -> {
+				if (aError != null) {
+					// Error manipulating file
+					Activator.logError(project, "Error updating Manifest file",
+							aError);
 
-			} catch (final CoreException ex) {
-				// Error manipulating file
-				Activator.logError(project, "Error updating Manifest file", ex);
-			}
+				} else if (!aResult.isOK()) {
+					// Problems are logged by the reporter, so just pop a dialog
+					Activator.showStatus(aResult);
+				}
+			});
 		}
 
 		return null;
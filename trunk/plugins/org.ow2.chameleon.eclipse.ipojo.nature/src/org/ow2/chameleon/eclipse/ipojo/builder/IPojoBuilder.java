@@ -25,9 +25,8 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
-import org.eclipse.ui.statushandlers.StatusManager;
 import org.ow2.chameleon.eclipse.ipojo.Activator;
-import org.ow2.chameleon.eclipse.ipojo.core.ManifestUpdater;
+import org.ow2.chameleon.eclipse.ipojo.core.IManipulationService;
 import org.ow2.chameleon.eclipse.ipojo.core.Utilities;
 
 /**
@@ -42,9 +41,6 @@ public class IPojoBuilder extends IncrementalProjectBuilder {
 	/** Plugin Builder ID */
 	public static final String BUILDER_ID = "org.ow2.chameleon.eclipse.ipojo.ipojoBuilder";
 
-	/** iPOJO Manifest updater */
-	private final ManifestUpdater pManifestUpdater = new ManifestUpdater();
-
 	/**
 	 * Updates the project manifest if an iPOJO meta-data file has been modified
 	 * 
@@ -95,7 +91,8 @@ public class IPojoBuilder extends IncrementalProjectBuilder {
 
 		// Remove the iPOJO-Component Manifest entry
 		try {
-			pManifestUpdater.removeManifestEntry(getProject());
+			Activator.getManipulationService().removeManifestEntry(
+					getProject());
 
 		} catch (final CoreException ex) {
 			Activator
@@ -148,8 +145,8 @@ public class IPojoBuilder extends IncrementalProjectBuilder {
 	}
 
 	/**
-	 * Calls {@link ManifestUpdater#updateManifest(IProject)} on the current
-	 * project
+	 * Calls {@link IManipulationService#manipulate(IProject, IProgressMonitor)}
+	 * on the current project
 	 * 
 	 * @param aMonitor
 	 *            Progress monitor
@@ -170,17 +167,18 @@ public class IPojoBuilder extends IncrementalProjectBuilder {
 		}
 
 		// Do the job
-		final IStatus result = pManifestUpdater.updateManifest(getProject(),
-				monitor);
+		final IStatus result = Activator.getManipulationService().manipulate(
+				getProject(), monitor);
 
 		// Log the result
 		if (result.isOK()) {
 			// No problem : full success
 			Activator.logInfo(getProject(), "Manipulation done");
 
-		} else {
-			// Errors have already been logged, so just pop a dialog
-			StatusManager.getManager().handle(result, StatusManager.SHOW);
+		} else if (result.getSeverity() == IStatus.ERROR) {
+			// Problems are logged and shown as markers by the reporter, so
+			// just pop a dialog on errors
+			Activator.showStatus(result);
 		}
 	}
 }
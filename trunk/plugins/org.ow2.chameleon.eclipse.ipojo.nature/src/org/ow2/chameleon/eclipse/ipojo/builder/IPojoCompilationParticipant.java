@@ -28,9 +28,8 @@ import org.eclipse.jdt.core.IJavaModelMarker;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.compiler.BuildContext;
 import org.eclipse.jdt.core.compiler.CompilationParticipant;
-import org.eclipse.ui.statushandlers.StatusManager;
 import org.ow2.chameleon.eclipse.ipojo.Activator;
-import org.ow2.chameleon.eclipse.ipojo.core.ManifestUpdater;
+import org.ow2.chameleon.eclipse.ipojo.core.IManipulationService;
 
 /**
  * iPOJO Manifest Updater, as a JDT compilation participant.
@@ -49,9 +48,6 @@ import org.ow2.chameleon.eclipse.ipojo.core.ManifestUpdater;
  */
 public class IPojoCompilationParticipant extends CompilationParticipant {
 
-	/** iPOJO Manifest updater */
-	private final ManifestUpdater pManifestUpdater = new ManifestUpdater();
-
 	/** Projects to be compiled */
 	private final Set<IProject> pProjectsToCompile = new HashSet<IProject>();
 
@@ -124,7 +120,7 @@ public class IPojoCompilationParticipant extends CompilationParticipant {
 		final IProject project = aProject.getProject();
 
 		try {
-			pManifestUpdater.removeManifestEntry(project);
+			Activator.getManipulationService().removeManifestEntry(project);
 
 		} catch (final CoreException ex) {
 			Activator.logError(project, "Error cleaning project", ex);
@@ -195,8 +191,8 @@ public class IPojoCompilationParticipant extends CompilationParticipant {
 	}
 
 	/**
-	 * Calls {@link ManifestUpdater#updateManifest(IProject)} on the current
-	 * project
+	 * Calls {@link IManipulationService#manipulate(IProject, IProgressMonitor)}
+	 * on the current project
 	 * 
 	 * @param aProject
 	 *            Project to manipulate
@@ -209,17 +205,18 @@ public class IPojoCompilationParticipant extends CompilationParticipant {
 		final IProgressMonitor monitor = new NullProgressMonitor();
 
 		// Do the job
-		final IStatus result = pManifestUpdater.updateManifest(aProject,
-				monitor);
+		final IStatus result = Activator.getManipulationService().manipulate(
+				aProject, monitor);
 
 		// Log the result
 		if (result.isOK()) {
 			// No problem : full success
 			Activator.logInfo(aProject, "Manipulation done");
 
-		} else {
-			// Errors have already been logged, so just pop a dialog
-			StatusManager.getManager().handle(result, StatusManager.SHOW);
+		} else if (result.getSeverity() == IStatus.ERROR) {
+			// Problems are logged and shown as markers by the reporter, so
+			// just pop a dialog on errors
+			Activator.showStatus(result);
 		}
 	}
 }
@@ -30,22 +30,21 @@ public class IPojoNature implements IProjectNature {
 	/** ID of this project nature */
 	public static final String NATURE_ID = "org.ow2.chameleon.eclipse.ipojo.iPojoNature";
 
-	/** The associated project */
-	private IProject pProject;
-
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Adds the iPOJO nature and builder to the given project description
 	 * 
-	 * @see org.eclipse.core.resources.IProjectNature#configure()
+	 * @param aDescription
+	 *            A project description
+	 * @return True if the description has been modified
 	 */
-	@Override
-	public void configure() throws CoreException {
+	public static boolean addToDescription(
+			final IProjectDescription aDescription) {
 
-		final IProjectDescription description = pProject.getDescription();
+		boolean modified = false;
 
 		// Look for the builder
 		boolean builderFound = false;
-		final ICommand[] commands = description.getBuildSpec();
+		final ICommand[] commands = aDescription.getBuildSpec();
 		for (ICommand command : commands) {
 			if (IPojoBuilder.BUILDER_ID.equals(command.getBuilderName())) {
 				builderFound = true;
@@ -56,16 +55,17 @@ public class IPojoNature implements IProjectNature {
 			// Builder not found : add it
 			ICommand[] newCommands = new ICommand[commands.length + 1];
 			System.arraycopy(commands, 0, newCommands, 0, commands.length);
-			ICommand command = description.newCommand();
+			ICommand command = aDescription.newCommand();
 			command.setBuilderName(IPojoBuilder.BUILDER_ID);
 			newCommands[newCommands.length - 1] = command;
-			description.setBuildSpec(newCommands);
+			aDescription.setBuildSpec(newCommands);
+			modified = true;
 		}
 
 		// Add the nature at the top position : the project image is the one
 		// of the first nature with an icon
 		boolean natureFound = false;
-		final String[] natures = description.getNatureIds();
+		final String[] natures = aDescription.getNatureIds();
 
 		for (String nature : natures) {
 			if (NATURE_ID.equals(nature)) {
@@ -78,25 +78,27 @@ public class IPojoNature implements IProjectNature {
 			String[] newNatures = new String[natures.length + 1];
 			newNatures[0] = NATURE_ID;
 			System.arraycopy(natures, 0, newNatures, 1, natures.length);
-			description.setNatureIds(newNatures);
+			aDescription.setNatureIds(newNatures);
+			modified = true;
 		}
 
-		// Update the project description
-		pProject.setDescription(description, null);
+		return modified;
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Removes the iPOJO nature and builder from the given project description
 	 * 
-	 * @see org.eclipse.core.resources.IProjectNature#deconfigure()
+	 * @param aDescription
+	 *            A project description
+	 * @return True if the description has been modified
 	 */
-	@Override
-	public void deconfigure() throws CoreException {
+	public static boolean removeFromDescription(
+			final IProjectDescription aDescription) {
 
-		final IProjectDescription description = getProject().getDescription();
+		boolean modified = false;
 
 		// Remove the builder from the description
-		final ICommand[] commands = description.getBuildSpec();
+		final ICommand[] commands = aDescription.getBuildSpec();
 		for (int i = 0; i < commands.length; ++i) {
 
 			if (IPojoBuilder.BUILDER_ID.equals(commands[i].getBuilderName())) {
@@ -105,13 +107,14 @@ public class IPojoNature implements IProjectNature {
 				System.arraycopy(commands, 0, newCommands, 0, i);
 				System.arraycopy(commands, i + 1, newCommands, i,
 						commands.length - i - 1);
-				description.setBuildSpec(newCommands);
+				aDescription.setBuildSpec(newCommands);
+				modified = true;
 				break;
 			}
 		}
 
 		// Remove the nature from the description
-		final String[] natures = description.getNatureIds();
+		final String[] natures = aDescription.getNatureIds();
 		for (int i = 0; i < natures.length; ++i) {
 
 			if (NATURE_ID.equals(natures[i])) {
@@ -120,13 +123,47 @@ public class IPojoNature implements IProjectNature {
 				System.arraycopy(natures, 0, newNatures, 0, i);
 				System.arraycopy(natures, i + 1, newNatures, i, natures.length
 						- i - 1);
-				description.setNatureIds(newNatures);
+				aDescription.setNatureIds(newNatures);
+				modified = true;
 				break;
 			}
 		}
 
-		// Update the project description at once
-		pProject.setDescription(description, null);
+		return modified;
+	}
+
+	/** The associated project */
+	private IProject pProject;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.core.resources.IProjectNature#configure()
+	 */
+	@Override
+	public void configure() throws CoreException {
+
+		final IProjectDescription description = pProject.getDescription();
+		if (addToDescription(description)) {
+			// Update the project description, only if needed: this method is
+			// also called by the platform once the nature is set
+			pProject.setDescription(description, null);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.core.resources.IProjectNature#deconfigure()
+	 */
+	@Override
+	public void deconfigure() throws CoreException {
+
+		final IProjectDescription description = getProject().getDescription();
+		if (removeFromDescription(description)) {
+			// Update the project description at once
+			pProject.setDescription(description, null);
+		}
 	}
 
 	/*
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream reading a byte buffer, to parse a mapped file or to write a
+ * staged file without copying it to the heap
+ *
+ * @author Thomas Calmant
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	/** The read buffer */
+	private final ByteBuffer pBuffer;
+
+	/**
+	 * Sets up the stream
+	 *
+	 * @param aBuffer The buffer to read, from its position
+	 */
+	public ByteBufferInputStream(final ByteBuffer aBuffer) {
+
+		pBuffer = aBuffer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.InputStream#available()
+	 */
+	@Override
+	public int available() {
+
+		return pBuffer.remaining();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.InputStream#read()
+	 */
+	@Override
+	public int read() {
+
+		if (!pBuffer.hasRemaining()) {
+			return -1;
+		}
+
+		return pBuffer.get() & 0xFF;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	@Override
+	public int read(final byte[] aBuffer, final int aOffset, final int aLength) {
+
+		if (!pBuffer.hasRemaining()) {
+			return -1;
+		}
+
+		final int length = Math.min(aLength, pBuffer.remaining());
+		pBuffer.get(aBuffer, aOffset, length);
+		return length;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+/**
+ * Class loader of the output and class folders of a project: the classes of
+ * the folders are loaded before the ones of the parent class loader, which
+ * holds the JAR files of the classpath.
+ *
+ * This class only depends on the JDK.
+ *
+ * @author Thomas Calmant
+ */
+public final class ChildFirstClassLoader extends URLClassLoader {
+
+	/**
+	 * Converts the given paths to URLs
+	 *
+	 * @param aPaths Paths of folders or files
+	 * @return The URLs of the paths
+	 */
+	private static URL[] toUrls(final List<String> aPaths) {
+
+		final URL[] urls = new URL[aPaths.size()];
+		for (int i = 0; i < urls.length; i++) {
+			try {
+				urls[i] = new File(aPaths.get(i)).toURI().toURL();
+
+			} catch (final MalformedURLException ex) {
+				throw new IllegalArgumentException("Invalid classpath entry: " + aPaths.get(i), ex);
+			}
+		}
+
+		return urls;
+	}
+
+	/**
+	 * Sets up the class loader
+	 *
+	 * @param aPaths  Paths of the folders, in classpath order
+	 * @param aParent The class loader used when a class isn't in the folders
+	 */
+	public ChildFirstClassLoader(final List<String> aPaths, final ClassLoader aParent) {
+
+		super(toUrls(aPaths), aParent);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.ClassLoader#loadClass(java.lang.String, boolean)
+	 */
+	@Override
+	protected Class<?> loadClass(final String aName, final boolean aResolve) throws ClassNotFoundException {
+
+		synchronized (getClassLoadingLock(aName)) {
+			Class<?> loaded = findLoadedClass(aName);
+			if (loaded == null) {
+				try {
+					loaded = findClass(aName);
+
+				} catch (final ClassNotFoundException ex) {
+					// Not in the folders
+					return super.loadClass(aName, aResolve);
+				}
+			}
+
+			if (aResolve) {
+				resolveClass(loaded);
+			}
+
+			return loaded;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.felix.ipojo.manipulator.ResourceVisitor;
+import org.apache.felix.ipojo.metadata.Element;
+import org.ow2.chameleon.eclipse.ipojo.core.SortedManifestStreamer.Attribute;
+
+/**
+ * Resource store decorator which never writes: the manipulated classes and
+ * the updated manifest are compared with the current files, and the
+ * differences are stored in a {@link ManipulationDiff}.
+ *
+ * As nothing is written, no resource delta is fired and no scheduling rule is
+ * needed: the check can run next to the builds.
+ *
+ * @author Thomas Calmant
+ */
+public class DryRunResourceStore implements StagedResourceStore {
+
+	/** The decorated store, used to read the project */
+	private final EclipseResourceStore pDelegate;
+
+	/** The differences found */
+	private final ManipulationDiff pDiff;
+
+	/**
+	 * Sets up the decorator
+	 *
+	 * @param aDelegate The project resource store
+	 * @param aDiff     The diff to fill
+	 */
+	public DryRunResourceStore(final EclipseResourceStore aDelegate, final ManipulationDiff aDiff) {
+
+		pDelegate = aDelegate;
+		pDiff = aDiff;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.felix.ipojo.manipulator.ResourceStore#accept(org.apache.felix
+	 * .ipojo.manipulator.ResourceVisitor)
+	 */
+	@Override
+	public void accept(final ResourceVisitor aVisitor) {
+
+		pDelegate.accept(aVisitor);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.felix.ipojo.manipulator.ResourceStore#close()
+	 */
+	@Override
+	public void close() throws IOException {
+
+		// Nothing to write
+		pDelegate.checkCanceled();
+	}
+
+	/**
+	 * Returns the value of a manifest header
+	 *
+	 * @param aAttribute A manifest attribute (can be null)
+	 * @return The attribute value, or null
+	 */
+	private String getValue(final Attribute aAttribute) {
+
+		return aAttribute != null ? aAttribute.getStringValue() : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.felix.ipojo.manipulator.ResourceStore#open()
+	 */
+	@Override
+	public void open() throws IOException {
+
+		pDelegate.checkCanceled();
+
+		final SortedManifestStreamer current = pDelegate.createManifestStreamer();
+		final SortedManifestStreamer updated = new SortedManifestStreamer(pDelegate.buildManifest());
+		if (current.isIPojoAttributesSameAsIn(updated)) {
+			return;
+		}
+
+		if (!current.isIPojoAttributeSameAsIn(updated)) {
+			pDiff.addChangedHeader(SortedManifestStreamer.ATTRIBUTE_IPOJO_NAME, getValue(updated.getIPojoAttribute()));
+		}
+
+		if (!current.isImportPackageAttributeSameAsIn(updated)) {
+			pDiff.addChangedHeader(SortedManifestStreamer.ATTRIBUTE_IMPORT_PACKAGE,
+					getValue(updated.getImportPackageAttribute()));
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.felix.ipojo.manipulator.ResourceStore#read(java.lang.String)
+	 */
+	@Override
+	public byte[] read(final String aPath) throws IOException {
+
+		return pDelegate.read(aPath);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.felix.ipojo.manipulator.ResourceStore#write(java.lang.String,
+	 * byte[])
+	 */
+	@Override
+	public void write(final String aPath, final byte[] aResourceContent) throws IOException {
+
+		write(aPath, ByteBuffer.wrap(aResourceContent));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.ow2.chameleon.eclipse.ipojo.core.StagedResourceStore#write(java.lang.
+	 * String, java.nio.ByteBuffer)
+	 */
+	@Override
+	public void write(final String aPath, final ByteBuffer aContent) throws IOException {
+
+		pDelegate.checkCanceled();
+
+		byte[] currentContent;
+		try {
+			currentContent = pDelegate.readFile(aPath);
+
+		} catch (final IOException ex) {
+			// New file
+			currentContent = null;
+		}
+
+		if (currentContent == null || !ByteBuffer.wrap(currentContent).equals(aContent)) {
+			pDiff.addChangedClass(aPath);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.apache.felix.ipojo.manipulator.ResourceStore#writeMetadata(org.apache
+	 * .felix.ipojo.metadata.Element)
+	 */
+	@Override
+	public void writeMetadata(final Element aMetadata) {
+
+		pDelegate.writeMetadata(aMetadata);
+	}
+}
@@ -14,31 +14,148 @@
  */
 package org.ow2.chameleon.eclipse.ipojo.core;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.felix.ipojo.manipulator.Reporter;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Status;
 import org.ow2.chameleon.eclipse.ipojo.Activator;
 
 /**
- * The error reporter used by the manipulator
+ * The error reporter used by the manipulator.
+ * 
+ * Errors and warnings are kept unformatted until they are needed, then
+ * aggregated in a {@link MultiStatus}. The whole report of a manipulation is
+ * logged and converted into problem markers once, by {@link #flush()}, in a
+ * background job.
  * 
  * @author Thomas Calmant
  */
 public class EclipseReporter implements Reporter {
 
+	/**
+	 * A reported message, formatted on first access
+	 * 
+	 * @author Thomas Calmant
+	 */
+	protected static class ReportEntry {
+
+		/** Message format arguments */
+		private final Object[] pArguments;
+
+		/** Message format */
+		private final String pFormat;
+
+		/** Formatted message, computed on first access */
+		private String pMessage;
+
+		/** Associated exception (can be null) */
+		private final Throwable pThrowable;
+
+		/**
+		 * Stores a reported message
+		 * 
+		 * @param aFormat
+		 *            Message format
+		 * @param aArguments
+		 *            Message format arguments (without the throwable)
+		 * @param aThrowable
+		 *            Associated exception (can be null)
+		 */
+		protected ReportEntry(final String aFormat, final Object[] aArguments,
+				final Throwable aThrowable) {
+
+			pFormat = aFormat;
+			pArguments = aArguments;
+			pThrowable = aThrowable;
+		}
+
+		/**
+		 * Formats the message, the first time this method is called
+		 * 
+		 * @return The formatted message
+		 */
+		public String getMessage() {
+
+			if (pMessage == null) {
+				pMessage = String.format(pFormat, pArguments);
+			}
+
+			return pMessage;
+		}
+
+		/**
+		 * Prepares the status representing this entry
+		 * 
+		 * @param aSeverity
+		 *            Status severity
+		 * @return An Eclipse status
+		 */
+		public IStatus toStatus(final int aSeverity) {
+
+			return new Status(aSeverity, Activator.PLUGIN_ID, getMessage(),
+					pThrowable);
+		}
+	}
+
+	/**
+	 * Read-only view of the messages of a list of entries, formatting them
+	 * only when they are accessed
+	 * 
+	 * @author Thomas Calmant
+	 */
+	private static class MessagesView extends AbstractList<String> {
+
+		/** The viewed entries */
+		private final List<ReportEntry> pEntries;
+
+		/**
+		 * Sets up the view
+		 * 
+		 * @param aEntries
+		 *            The viewed entries
+		 */
+		MessagesView(final List<ReportEntry> aEntries) {
+
+			pEntries = aEntries;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractList#get(int)
+		 */
+		@Override
+		public String get(final int aIndex) {
+
+			return pEntries.get(aIndex).getMessage();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.AbstractCollection#size()
+		 */
+		@Override
+		public int size() {
+
+			return pEntries.size();
+		}
+	}
+
 	/** Errors list */
-	private final List<String> pErrorsList = new LinkedList<String>();
+	private final List<ReportEntry> pErrorsList = new ArrayList<ReportEntry>();
 
 	/** Manipulated project */
 	private final IProject pProject;
 
 	/** Warning list */
-	private final List<String> pWarningsList = new LinkedList<String>();
+	private final List<ReportEntry> pWarningsList = new ArrayList<ReportEntry>();
 
 	/**
 	 * Sets up the reporter
@@ -60,53 +177,53 @@ public class EclipseReporter implements Reporter {
 	@Override
 	public void error(final String aMessage, final Object... aFormatArgs) {
 
-		final Throwable throwable = getThrowable(aFormatArgs);
-		final String formattedMessage = String.format(aMessage,
-				getMessageArguments(aFormatArgs));
+		pErrorsList.add(new ReportEntry(aMessage,
+				getMessageArguments(aFormatArgs), getThrowable(aFormatArgs)));
+	}
+
+	/**
+	 * Logs the report and updates the iPOJO problem markers of the project.
+	 * This is done once per manipulation, in a background job.
+	 */
+	public void flush() {
 
-		pErrorsList.add(formattedMessage);
-		Activator.logError(pProject, formattedMessage, throwable);
+		ProblemReporterJob.report(pProject, getEclipseStatus());
 	}
 
 	/**
 	 * Prepares an Eclipse IStatus object to represent the current errors and
-	 * warnings stored. Returns an "OK" status if no errors nor warnings were
-	 * stored
+	 * warnings stored: errors come first, then warnings. Returns an "OK"
+	 * status if no errors nor warnings were stored
 	 * 
-	 * @return An Eclipse IStatus
+	 * @return An Eclipse MultiStatus
 	 */
 	public IStatus getEclipseStatus() {
 
-		// Compute the severity level
-		int severity = IStatus.OK;
-		if (!pErrorsList.isEmpty()) {
-			severity = IStatus.ERROR;
+		final IStatus[] children = new IStatus[pErrorsList.size()
+				+ pWarningsList.size()];
 
-		} else if (!pWarningsList.isEmpty()) {
-			severity = IStatus.WARNING;
+		int idx = 0;
+		for (final ReportEntry error : pErrorsList) {
+			children[idx++] = error.toStatus(IStatus.ERROR);
+		}
+
+		for (final ReportEntry warning : pWarningsList) {
+			children[idx++] = warning.toStatus(IStatus.WARNING);
 		}
 
 		// Prepare the message
 		final StringBuilder message = new StringBuilder();
-		message.append(pProject.getName()).append(" :\n");
-
-		if (!pErrorsList.isEmpty()) {
-			// Print errors first
-			for (final String error : pErrorsList) {
-				message.append("- ").append(error).append("\n");
-			}
-
-			message.append("\n");
-		}
+		message.append(pProject.getName()).append(" : ");
+		if (children.length == 0) {
+			message.append("iPOJO manipulation done");
 
-		if (!pWarningsList.isEmpty()) {
-			// Print warnings
-			for (final String warning : pWarningsList) {
-				message.append("- ").append(warning).append("\n");
-			}
+		} else {
+			message.append(pErrorsList.size()).append(" error(s), ")
+					.append(pWarningsList.size()).append(" warning(s)");
 		}
 
-		return new Status(severity, Activator.PLUGIN_ID, message.toString());
+		return new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, children,
+				message.toString(), null);
 	}
 
 	/*
@@ -117,7 +234,7 @@ public class EclipseReporter implements Reporter {
 	@Override
 	public List<String> getErrors() {
 
-		return pErrorsList;
+		return new MessagesView(pErrorsList);
 	}
 
 	/**
@@ -164,7 +281,7 @@ public class EclipseReporter implements Reporter {
 	@Override
 	public List<String> getWarnings() {
 
-		return pWarningsList;
+		return new MessagesView(pWarningsList);
 	}
 
 	/*
@@ -176,9 +293,11 @@ public class EclipseReporter implements Reporter {
 	@Override
 	public void info(final String aMessage, final Object... aFormatArgs) {
 
-		// Just log it
-		Activator.logInfo(pProject,
-				String.format(aMessage, getMessageArguments(aFormatArgs)));
+		// Just log it, if it will be visible
+		if (Activator.areInfoOn()) {
+			Activator.logInfo(pProject, aMessage,
+					getMessageArguments(aFormatArgs));
+		}
 	}
 
 	/*
@@ -190,9 +309,11 @@ public class EclipseReporter implements Reporter {
 	@Override
 	public void trace(final String aMessage, final Object... aFormatArgs) {
 
-		// Just trace it
-		Activator.logTrace(pProject,
-				String.format(aMessage, getMessageArguments(aFormatArgs)));
+		// Just trace it, if it will be visible
+		if (Activator.areTracesOn()) {
+			Activator.logTrace(pProject, aMessage,
+					getMessageArguments(aFormatArgs));
+		}
 	}
 
 	/*
@@ -204,11 +325,7 @@ public class EclipseReporter implements Reporter {
 	@Override
 	public void warn(final String aMessage, final Object... aFormatArgs) {
 
-		final Throwable throwable = getThrowable(aFormatArgs);
-		final String formattedMessage = String.format(aMessage,
-				getMessageArguments(aFormatArgs));
-
-		pWarningsList.add(formattedMessage);
-		Activator.logWarning(pProject, formattedMessage, throwable);
+		pWarningsList.add(new ReportEntry(aMessage,
+				getMessageArguments(aFormatArgs), getThrowable(aFormatArgs)));
 	}
 }
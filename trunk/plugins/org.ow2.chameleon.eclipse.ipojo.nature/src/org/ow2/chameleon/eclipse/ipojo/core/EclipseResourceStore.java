@@ -16,10 +16,23 @@ package org.ow2.chameleon.eclipse.ipojo.core;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Manifest;
 
-import org.apache.felix.ipojo.manipulator.ResourceStore;
 import org.apache.felix.ipojo.manipulator.ResourceVisitor;
 import org.apache.felix.ipojo.manipulator.store.ManifestBuilder;
 import org.apache.felix.ipojo.manipulator.util.Metadatas;
@@ -29,43 +42,129 @@ import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.IResourceRuleFactory;
+import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.MultiRule;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.ow2.chameleon.eclipse.ipojo.Activator;
 
 /**
- * Eclipse resource store interface for the iPOJO Manipulator
+ * Eclipse resource store interface for the iPOJO Manipulator.
+ * 
+ * The manipulated files and the manifest are staged and written at
+ * {@link #close()}, in a single workspace operation, with the workspace API.
+ * The local files are journaled by a {@link ManipulationJournal}, which puts
+ * the previous files back if the commit fails.
+ * 
+ * The files given back unchanged by the manipulator, like the classes already
+ * manipulated and their inner classes, are not written.
+ * 
+ * In direct I/O mode, the output folder is read with java.nio, bypassing the
+ * resource tree, and its class files are swapped with their new content by
+ * the journal. The output folder is refreshed once after the writes.
+ * 
+ * Only the class files accepted by the {@link ClassFilePrefilter} are visited
+ * by the manipulator, the verdicts being cached in a {@link PrefilterCache}.
+ * 
+ * When a {@link ManipulationCache} is set, a class already manipulated with
+ * the same class path, in this project or another one, is given to the
+ * manipulator in its manipulated form, which won't be transformed again, if
+ * the types loaded to manipulate it still have the same hierarchy. The
+ * classes manipulated by a successful commit are added to the cache.
+ * 
+ * Cancellation is checked for each class read, manipulated or written: an
+ * {@link OperationCanceledException} aborts the manipulator and the staged
+ * content is dropped, leaving the output folder and the manifest untouched.
  * 
  * @author Thomas Calmant
  */
-public class EclipseResourceStore implements ResourceStore {
+public class EclipseResourceStore implements StagedResourceStore {
+
+	/** Class files extension */
+	private static final String CLASS_FILE_EXTENSION = ".class";
 
 	/** Base progress monitor */
 	private SubMonitor pBaseMonitor;
 
+	/** Cached manipulated classes given to the manipulator: path -&gt; content */
+	private final Map<String, byte[]> pCachedClasses = new HashMap<String, byte[]>();
+
+	/** Class loader of the manipulation, null if not recording */
+	private RecordingClassLoader pClassLoader;
+
+	/** Fingerprint of the manipulation class path */
+	private long pClasspathFingerprint;
+
 	/** Current progress monitor */
 	private IProgressMonitor pCurrentMonitor;
 
+	/**
+	 * File system location of the output folder when using direct I/O, null
+	 * to use the workspace API
+	 */
+	private Path pDirectOutputPath;
+
+	/** Hashes of the original classes read by the manipulator: path -&gt; hash */
+	private final Map<String, byte[]> pInputHashes = new HashMap<String, byte[]>();
+
 	/** The bundle manifest */
 	private Manifest pManifest;
 
+	/** Raw content of the manifest file, null if unknown */
+	private byte[] pManifestContent;
+
 	/** The manifest builder */
 	private ManifestBuilder pManifestBuilder;
 
+	/** Types loaded to manipulate each class: path -&gt; type names */
+	private final Map<String, Set<String>> pLoadedTypes = new HashMap<String, Set<String>>();
+
+	/** Store of the manipulated classes, null if deactivated */
+	private ManipulationCache pManipulationCache;
+
 	/** Number of {@link #writeMetadata(Element)} calls, for progress monitor */
 	private int pNbStoredMetadata;
 
 	/** Project output directory, relative to the project's workspace */
 	private final IPath pOutputLocation;
 
+	/** New manifest content, null if it doesn't have to be written */
+	private byte[] pPendingManifest;
+
+	/** Content of the last candidate read by the prefilter */
+	private byte[] pPrefetchedContent;
+
+	/** Path of the last candidate read by the prefilter */
+	private String pPrefetchedPath;
+
 	/** Current manipulated project */
 	private final IProject pProject;
 
+	/**
+	 * Manipulated files to write: path -&gt; content, in the
+	 * {@link StagingArea} of the writer until {@link #close()} returns
+	 */
+	private final Map<String, ByteBuffer> pStagedFiles = new LinkedHashMap<String, ByteBuffer>();
+
+	/** The class files are being visited, before the manipulation */
+	private boolean pVisiting;
+
+	/** Prefix of the inner classes of the class being manipulated */
+	private String pUnitInnerPrefix;
+
 	/** Current project workspace root */
 	private final IWorkspaceRoot pWorkspaceRoot;
 
@@ -95,22 +194,48 @@ public class EclipseResourceStore implements ResourceStore {
 	@Override
 	public void accept(final ResourceVisitor aVisitor) {
 
+		pVisiting = true;
 		try {
 			final IFolder outputFolder = pWorkspaceRoot.getFolder(pOutputLocation);
 
-			// Count files
-			final int nbFiles = countFiles(outputFolder);
+			// List the class files, in a single traversal
+			final List<String> classFiles = listClassFiles(outputFolder);
+			final PrefilterCache verdicts = PrefilterCache.get(pProject);
+
+			// The verdicts are only cached for local files
+			final IPath outputPath = outputFolder.getLocation();
+			final Path outputDir = outputPath != null ? outputPath.toFile().toPath() : null;
 
 			// Prepare the read monitor
 			pNbStoredMetadata = 0;
-			pCurrentMonitor = SubMonitor.convert(pBaseMonitor.newChild(1), nbFiles);
+			pCurrentMonitor = SubMonitor.convert(pBaseMonitor.newChild(1), classFiles.size());
 			pCurrentMonitor.setTaskName("Read class files");
 
-			// Visit the folder
-			visitFolder(outputFolder, aVisitor);
+			// Visit the candidates
+			for (final String classFile : classFiles) {
+
+				checkCanceled();
+
+				if (isCandidate(classFile, outputDir, verdicts)) {
+					aVisitor.visit(classFile);
+				}
+
+				// File handled
+				pCurrentMonitor.worked(1);
+			}
+
+			// Forget the removed classes
+			verdicts.retainAll(classFiles);
+			verdicts.save();
 
 		} catch (final CoreException e) {
 			Activator.logError(pProject, "Can't visit the binary output folder", e);
+
+		} catch (final IOException e) {
+			Activator.logWarning(pProject, "Can't store the class files prefilter cache", e);
+
+		} finally {
+			pVisiting = false;
 		}
 	}
 
@@ -121,35 +246,370 @@ public class EclipseResourceStore implements ResourceStore {
 	 */
 	@Override
 	public void close() throws IOException {
-		// Nothing to release / to do
+
+		try {
+			// Last chance: nothing has been written yet
+			checkCanceled();
+
+			if (pStagedFiles.isEmpty() && pPendingManifest == null) {
+				// Nothing to do
+				return;
+			}
+
+			// Journal and swap the files under the write rule
+			try {
+				pProject.getWorkspace().run(new IWorkspaceRunnable() {
+
+					@Override
+					public void run(final IProgressMonitor aMonitor) throws CoreException {
+
+						commitStagedFiles();
+					}
+				}, getWriteRule(), IWorkspace.AVOID_UPDATE, null);
+
+			} catch (final CoreException ex) {
+				throw new IOException("Can't write the manipulated files", ex);
+			}
+
+			// All files written
+			storeManipulatedClasses();
+
+		} finally {
+			// Release the staged content
+			pStagedFiles.clear();
+			pPendingManifest = null;
+			pCachedClasses.clear();
+			pInputHashes.clear();
+			pLoadedTypes.clear();
+			if (pClassLoader != null) {
+				pClassLoader.record(null);
+			}
+		}
 	}
 
 	/**
-	 * Recursively count the number of files in a container
+	 * Computes the manifest updated with the metadata written by the
+	 * manipulator, without storing it
 	 * 
-	 * @param aContainer A container
-	 * @return The number of files in the container
+	 * @return The updated manifest
 	 */
-	protected int countFiles(final IContainer aContainer) {
+	protected Manifest buildManifest() {
+
+		return pManifestBuilder.build(pManifest);
+	}
+
+	/**
+	 * Aborts the manipulation if it has been cancelled, dropping the staged
+	 * content
+	 * 
+	 * @throws OperationCanceledException The manipulation has been cancelled
+	 */
+	protected void checkCanceled() {
+
+		if (pBaseMonitor != null && pBaseMonitor.isCanceled()) {
+			pStagedFiles.clear();
+			pPendingManifest = null;
+			pPrefetchedPath = null;
+			pPrefetchedContent = null;
+			pCachedClasses.clear();
+			pInputHashes.clear();
+			pLoadedTypes.clear();
+			throw new OperationCanceledException();
+		}
+	}
 
-		int nbMembers = 0;
+	/**
+	 * Writes the staged files and the manifest, journaled by a
+	 * {@link ManipulationJournal}. In direct I/O mode, the local class files are
+	 * swapped with their new content, then refreshed. The other files,
+	 * including the manifest, are written with the workspace API, after a
+	 * backup of their local content. Must be called in a workspace operation
+	 * holding the {@link #getWriteRule()}.
+	 * 
+	 * @throws CoreException Error writing a file, after the rollback
+	 */
+	protected void commitStagedFiles() throws CoreException {
+
+		final IFolder outputFolder = pWorkspaceRoot.getFolder(pOutputLocation);
+		IFile manifestFile = null;
+		if (pPendingManifest != null) {
+			manifestFile = Utilities.INSTANCE.getManifestFile(pProject, false);
+			if (manifestFile != null) {
+				// Let the team provider check out the manifest
+				final IStatus status = pProject.getWorkspace().validateEdit(new IFile[] { manifestFile }, null);
+				if (!status.isOK()) {
+					throw new CoreException(status);
+				}
+			}
+		}
 
+		final ManipulationJournal journal;
 		try {
-			for (final IResource member : aContainer.members()) {
+			journal = ManipulationJournal.begin(pProject);
 
-				if (member instanceof IContainer) {
-					nbMembers += countFiles((IContainer) member);
+		} catch (final IOException ex) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID,
+					pProject.getName() + " : Can't create the manipulation journal", ex));
+		}
 
-				} else if (member instanceof IFile) {
-					nbMembers++;
-				}
+		// Journal all the local files before writing any of them
+		final List<String> swappedPaths = new ArrayList<String>();
+		final List<String> writtenPaths = new ArrayList<String>();
+		final List<IFile> journaledFiles = new ArrayList<IFile>();
+		for (final String path : pStagedFiles.keySet()) {
+
+			final IFile file = outputFolder.getFile(path);
+			if (file.getLocation() != null && isUnchanged(file.getLocation(), pStagedFiles.get(path))) {
+				// Given back as is by the manipulator: don't touch it
+				pCurrentMonitor.worked(1);
+				continue;
 			}
 
-		} catch (final CoreException e) {
-			Activator.logError(pProject, "Error counting members", e);
+			if (file.getLocation() != null) {
+				journal.add(file.getLocation().toFile());
+				journaledFiles.add(file);
+			}
+
+			if (pDirectOutputPath != null && file.getLocation() != null) {
+				swappedPaths.add(path);
+			} else {
+				writtenPaths.add(path);
+			}
 		}
 
-		return nbMembers;
+		if (manifestFile != null && manifestFile.getLocation() != null) {
+			journal.add(manifestFile.getLocation().toFile());
+			journaledFiles.add(manifestFile);
+		}
+
+		try {
+			journal.save();
+
+			// Swap the local class files in direct I/O mode
+			for (final String path : swappedPaths) {
+				journal.stage(outputFolder.getFile(path).getLocation().toFile(), pStagedFiles.get(path));
+				pCurrentMonitor.worked(1);
+			}
+
+			journal.apply();
+
+			// Write the other ones with the workspace API
+			final Set<IContainer> knownFolders = new HashSet<IContainer>();
+			for (final String path : writtenPaths) {
+				writeJournaled(journal, outputFolder.getFile(path), pStagedFiles.get(path), knownFolders,
+						IResource.FORCE);
+				pCurrentMonitor.worked(1);
+			}
+
+			if (manifestFile != null) {
+				writeJournaled(journal, manifestFile, ByteBuffer.wrap(pPendingManifest), knownFolders,
+						IResource.FORCE | IResource.KEEP_HISTORY);
+
+			} else if (pPendingManifest != null) {
+				Utilities.INSTANCE.setManifestContent(pProject, pPendingManifest);
+			}
+
+		} catch (final CoreException | IOException | RuntimeException ex) {
+			Activator.logError(pProject, "Error writing the manipulated files: rolling back", ex);
+			try {
+				journal.rollback();
+				refreshFiles(outputFolder, journaledFiles);
+
+			} catch (final CoreException | IOException | RuntimeException rollbackEx) {
+				Activator.logError(pProject, "Can't roll back the manipulated files", rollbackEx);
+			}
+
+			if (ex instanceof CoreException) {
+				throw (CoreException) ex;
+			}
+
+			throw new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID,
+					pProject.getName() + " : Can't write the manipulated files", ex));
+		}
+
+		// All files written: the backups are deleted before the refresh
+		journal.commit();
+		if (!swappedPaths.isEmpty()) {
+			refreshFiles(outputFolder, journaledFiles);
+		}
+	}
+
+	/**
+	 * Parses the initial bundle manifest, with all its sections. The raw
+	 * manifest file content is used if known, avoiding a serialization of the
+	 * {@link Manifest} object.
+	 * 
+	 * @return A new manifest streamer
+	 * @throws IOException Error parsing the manifest
+	 */
+	protected SortedManifestStreamer createManifestStreamer() throws IOException {
+
+		if (pManifestContent != null) {
+			return new SortedManifestStreamer(pManifestContent);
+		}
+
+		return new SortedManifestStreamer(pManifest);
+	}
+
+	/**
+	 * Computes the scheduling rule of the write phase: the binary output folder
+	 * and the manifest file
+	 * 
+	 * @return The write phase scheduling rule
+	 * @throws CoreException Error looking for the manifest file
+	 */
+	protected ISchedulingRule getWriteRule() throws CoreException {
+
+		final IResourceRuleFactory ruleFactory = pProject.getWorkspace().getRuleFactory();
+
+		// Output folder
+		final IFolder outputFolder = pWorkspaceRoot.getFolder(pOutputLocation);
+		final ISchedulingRule outputRule;
+		if (pDirectOutputPath != null) {
+			// The output folder will be refreshed
+			outputRule = ruleFactory.refreshRule(outputFolder);
+
+		} else if (outputFolder.exists()) {
+			outputRule = outputFolder;
+		} else {
+			outputRule = ruleFactory.createRule(outputFolder);
+		}
+
+		if (pPendingManifest == null) {
+			return outputRule;
+		}
+
+		// Manifest file
+		final IFile manifestFile = Utilities.INSTANCE.getManifestFile(pProject, false);
+		final ISchedulingRule manifestRule;
+		if (manifestFile != null) {
+			// Written with the workspace API, refreshed on rollback
+			manifestRule = MultiRule.combine(ruleFactory.refreshRule(manifestFile),
+					ruleFactory.modifyRule(manifestFile));
+		} else {
+			// The manifest will be created
+			manifestRule = pProject;
+		}
+
+		return MultiRule.combine(outputRule, manifestRule);
+	}
+
+	/**
+	 * Tells if a class file must be given to the manipulator, using the cached
+	 * verdict if the local time stamp and the size of the file didn't change.
+	 * The content of a candidate read here is kept for the next
+	 * {@link #read(String)} call.
+	 * 
+	 * @param aPath      Output-relative class path
+	 * @param aOutputDir Local output folder, null if it is not on the local file
+	 *                   system
+	 * @param aVerdicts  Verdicts cache of the project
+	 * @return True if the class can describe a component
+	 */
+	protected boolean isCandidate(final String aPath, final Path aOutputDir, final PrefilterCache aVerdicts) {
+
+		BasicFileAttributes attributes = null;
+		if (aOutputDir != null) {
+			try {
+				attributes = Files.readAttributes(aOutputDir.resolve(aPath), BasicFileAttributes.class);
+
+			} catch (final IOException ex) {
+				// Unknown state: don't use the cache
+			}
+		}
+
+		if (attributes != null) {
+			final Boolean cachedVerdict = aVerdicts.getVerdict(aPath,
+					attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), attributes.size());
+			if (cachedVerdict != null) {
+				return cachedVerdict;
+			}
+		}
+
+		final byte[] content;
+		try {
+			content = read(aPath);
+
+		} catch (final IOException ex) {
+			// Let the manipulator report the error
+			return true;
+		}
+
+		final boolean candidate = ClassFilePrefilter.isCandidate(content);
+		if (candidate) {
+			// The manipulator will read it right after
+			pPrefetchedPath = aPath;
+			pPrefetchedContent = content;
+		}
+
+		if (attributes != null) {
+			// Stored with the state read before the content: a concurrent change
+			// can only invalidate it
+			aVerdicts.putVerdict(aPath, attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), attributes.size(),
+					candidate);
+		}
+
+		return candidate;
+	}
+
+	/**
+	 * Tells if a local file already has the given content
+	 * 
+	 * @param aLocation Location of the file
+	 * @param aContent  Its new content
+	 * @return True if the file content is the same
+	 */
+	protected boolean isUnchanged(final IPath aLocation, final ByteBuffer aContent) {
+
+		final Path file = aLocation.toFile().toPath();
+		try {
+			// Most of the manipulated classes change size
+			if (Files.size(file) != aContent.remaining()) {
+				return false;
+			}
+
+			return ByteBuffer.wrap(Files.readAllBytes(file)).equals(aContent);
+
+		} catch (final IOException ex) {
+			// Missing or unreadable: write it
+			return false;
+		}
+	}
+
+	/**
+	 * Lists the class files of the given output folder, using a single
+	 * resource proxy traversal
+	 * 
+	 * @param aOutputFolder The binary output folder
+	 * @return The paths of the class files, relative to the output folder
+	 * @throws CoreException Error visiting the folder
+	 */
+	protected List<String> listClassFiles(final IFolder aOutputFolder) throws CoreException {
+
+		final List<String> classFiles = new ArrayList<String>();
+		if (!aOutputFolder.exists()) {
+			return classFiles;
+		}
+
+		aOutputFolder.accept(new IResourceProxyVisitor() {
+
+			@Override
+			public boolean visit(final IResourceProxy aProxy) throws CoreException {
+
+				if (aProxy.getType() == IResource.FILE) {
+					if (aProxy.getName().endsWith(CLASS_FILE_EXTENSION)) {
+						// Make a relative path
+						classFiles.add(aProxy.requestFullPath().makeRelativeTo(pOutputLocation).toString());
+					}
+					return false;
+				}
+
+				// Visit folders
+				return true;
+			}
+		}, IResource.NONE);
+
+		return classFiles;
 	}
 
 	/*
@@ -162,20 +622,17 @@ public class EclipseResourceStore implements ResourceStore {
 	@Override
 	public void open() throws IOException {
 
-		if (pCurrentMonitor.isCanceled()) {
-			// Test cancellation
-			return;
-		}
+		checkCanceled();
 
 		// Prepare the write part monitor
 		pCurrentMonitor = SubMonitor.convert(pBaseMonitor.newChild(1), pNbStoredMetadata);
 		pCurrentMonitor.setTaskName("Write manipulated files");
 
 		// new SortedManifestStreamer instance => clone of the original manifest
-		SortedManifestStreamer wSortedManifestStreamer = new SortedManifestStreamer(pManifest);
+		SortedManifestStreamer wSortedManifestStreamer = createManifestStreamer();
 
 		// Update manifest
-		final Manifest updateManifest = pManifestBuilder.build(pManifest);
+		final Manifest updateManifest = buildManifest();
 
 		// test if the attributes are modified
 		boolean wSame = wSortedManifestStreamer.isIPojoAttributesSameAsIn(updateManifest);
@@ -185,15 +642,9 @@ public class EclipseResourceStore implements ResourceStore {
 			// replace all the iPojo attributes with those generated by iPojo
 			wSortedManifestStreamer.replaceAllIPojoAttributes(updateManifest);
 
-			// Write the binary produces by the SortedManifestStreamer instance in the
-			// manifest file
-			try {
-				Utilities.INSTANCE.setManifestContent(pProject, wSortedManifestStreamer.toBytes());
-
-			} catch (final CoreException ex) {
-				Activator.logError(pProject, "Error writing the manifest file", ex);
-				throw new IOException("Can't write the manifest file", ex);
-			}
+			// Keep the binary produced by the SortedManifestStreamer instance, it will
+			// be written in the manifest file with the manipulated files
+			pPendingManifest = wSortedManifestStreamer.toBytes();
 		}
 	}
 
@@ -205,6 +656,37 @@ public class EclipseResourceStore implements ResourceStore {
 	@Override
 	public byte[] read(final String aPath) throws IOException {
 
+		checkCanceled();
+
+		if (aPath.equals(pPrefetchedPath)) {
+			// Read by the prefilter
+			final byte[] content = pPrefetchedContent;
+			pPrefetchedPath = null;
+			pPrefetchedContent = null;
+			return content;
+		}
+
+		if (pManipulationCache != null && !pVisiting) {
+			return readThroughCache(aPath);
+		}
+
+		return readFile(aPath);
+	}
+
+	/**
+	 * Reads a file of the output folder
+	 * 
+	 * @param aPath Output-relative file path
+	 * @return The file content
+	 * @throws IOException Error reading the file
+	 */
+	protected byte[] readFile(final String aPath) throws IOException {
+
+		if (pDirectOutputPath != null) {
+			// Direct read
+			return Files.readAllBytes(pDirectOutputPath.resolve(aPath));
+		}
+
 		// Compute the file path
 		final IFile file = pWorkspaceRoot.getFile(pOutputLocation.append(aPath));
 
@@ -217,6 +699,125 @@ public class EclipseResourceStore implements ResourceStore {
 		}
 	}
 
+	/**
+	 * Reads a class for the manipulator, replacing it by its cached
+	 * manipulated form if the class and all its inner classes are identical to
+	 * a stored manipulation result, and if the types loaded to manipulate it
+	 * still have the same hierarchy
+	 * 
+	 * @param aPath Output-relative class path
+	 * @return The class to manipulate
+	 * @throws IOException Error reading the file
+	 */
+	protected byte[] readThroughCache(final String aPath) throws IOException {
+
+		if (aPath.endsWith(CLASS_FILE_EXTENSION)
+				&& (pUnitInnerPrefix == null || !aPath.startsWith(pUnitInnerPrefix))) {
+			// Not an inner class of the previous one: the manipulator starts
+			// working on this class
+			startUnit(aPath);
+		}
+
+		final byte[] cachedClass = pCachedClasses.get(aPath);
+		if (cachedClass != null) {
+			// Outer or inner class of a cache hit
+			return cachedClass;
+		}
+
+		final byte[] content = readFile(aPath);
+		if (!aPath.endsWith(CLASS_FILE_EXTENSION) || ManipulationCache.isManipulated(content)) {
+			return content;
+		}
+
+		final byte[] inputHash = ManipulationCache.hash(content);
+		pInputHashes.put(aPath, inputHash);
+
+		final ManipulationCache.Entry entry = pManipulationCache
+				.get(ManipulationCache.key(inputHash, pClasspathFingerprint));
+		if (entry == null) {
+			return content;
+		}
+
+		// The inner classes must be identical too
+		final Map<String, byte[]> inners = new HashMap<String, byte[]>();
+		for (final ManipulationCache.InnerEntry inner : entry.getInners()) {
+			final byte[] innerContent;
+			try {
+				innerContent = readFile(inner.getPath());
+
+			} catch (final IOException ex) {
+				return content;
+			}
+
+			if (!Arrays.equals(ManipulationCache.hash(innerContent), inner.getInputHash())) {
+				return content;
+			}
+
+			inners.put(inner.getPath(), inner.getOutput());
+		}
+
+		// The frames were computed from the hierarchy of the loaded types
+		if (pClassLoader == null) {
+			return content;
+		}
+
+		for (final Map.Entry<String, String> hierarchy : entry.getHierarchies().entrySet()) {
+			if (!hierarchy.getValue().equals(pClassLoader.describe(hierarchy.getKey()))) {
+				return content;
+			}
+		}
+
+		pCachedClasses.putAll(inners);
+		pCachedClasses.put(aPath, entry.getOutput());
+		return entry.getOutput();
+	}
+
+	/**
+	 * Wraps the class loader of the manipulation, to record the types loaded
+	 * for each class when the {@link ManipulationCache} is set
+	 * 
+	 * @param aClassLoader The class loader of the manipulation class path
+	 * @return The class loader to give to the manipulator
+	 */
+	public ClassLoader recordLoadedTypes(final ClassLoader aClassLoader) {
+
+		if (pManipulationCache == null) {
+			return aClassLoader;
+		}
+
+		pClassLoader = new RecordingClassLoader(aClassLoader);
+		return pClassLoader;
+	}
+
+	/**
+	 * Activates or deactivates the direct I/O mode. The workspace API is still
+	 * used if the output folder is not on the local file system.
+	 * 
+	 * @param aDirectIO If true, read and write the output folder using java.nio
+	 */
+	public void setDirectIO(final boolean aDirectIO) {
+
+		pDirectOutputPath = null;
+		if (aDirectIO) {
+			final IPath location = pWorkspaceRoot.getFolder(pOutputLocation).getLocation();
+			if (location != null) {
+				pDirectOutputPath = location.toFile().toPath();
+			}
+		}
+	}
+
+	/**
+	 * Sets the store of manipulated classes to reuse and fill
+	 * 
+	 * @param aCache       The manipulated classes store, null to deactivate it
+	 * @param aFingerprint Fingerprint of the manipulation class path
+	 */
+	public void setManipulationCache(final ManipulationCache aCache, final long aFingerprint) {
+
+		pManipulationCache = aCache;
+		pClasspathFingerprint = aFingerprint;
+	}
+
 	/**
 	 * Sets the initial bundle manifest content
 	 * 
@@ -224,6 +825,18 @@ public class EclipseResourceStore implements ResourceStore {
 	 */
 	public void setManifest(final Manifest aManifest) {
 		pManifest = aManifest;
+		pManifestContent = null;
+	}
+
+	/**
+	 * Sets the initial bundle manifest from the content of the manifest file
+	 * 
+	 * @param aContent The raw manifest file content
+	 * @throws IOException Invalid manifest content
+	 */
+	public void setManifestContent(final byte[] aContent) throws IOException {
+		pManifest = new Manifest(new ByteArrayInputStream(aContent));
+		pManifestContent = aContent;
 	}
 
 	/**
@@ -245,34 +858,89 @@ public class EclipseResourceStore implements ResourceStore {
 	}
 
 	/**
-	 * Recursively visits the project binary output folder
-	 * 
-	 * @param aContainer Container to visit
-	 * @param aVisitor   Manipulator resource visitor
-	 * @throws CoreException An error occurred while retrieving a folder content
+	 * Adds the classes manipulated by this run to the {@link ManipulationCache},
+	 * each one with its inner classes and the hierarchy of the types loaded to
+	 * manipulate it
 	 */
-	protected void visitFolder(final IContainer aContainer, final ResourceVisitor aVisitor) throws CoreException {
+	protected void storeManipulatedClasses() {
 
-		if (pCurrentMonitor.isCanceled()) {
-			// Test cancellation
+		if (pManipulationCache == null) {
 			return;
 		}
 
-		for (final IResource resource : aContainer.members()) {
+		final Set<String> stagedPaths = pStagedFiles.keySet();
+		int nbStored = 0;
+		outer: for (final String path : stagedPaths) {
 
-			if (resource instanceof IContainer) {
-				// Recursive visit
-				visitFolder((IContainer) resource, aVisitor);
+			final byte[] inputHash = pInputHashes.get(path);
+			final Set<String> loadedTypes = pLoadedTypes.get(path);
+			if (inputHash == null || loadedTypes == null || pCachedClasses.containsKey(path)) {
+				// Not read in its original form, loaded types unknown or
+				// already stored
+				continue;
+			}
 
-			} else if (resource instanceof IFile) {
-				// Make a relative path
-				final IPath path = resource.getFullPath();
-				aVisitor.visit(path.makeRelativeTo(pOutputLocation).toString());
+			final String innerPrefix = path.substring(0, path.length() - CLASS_FILE_EXTENSION.length()) + '$';
+			final List<ManipulationCache.InnerEntry> inners = new ArrayList<ManipulationCache.InnerEntry>();
+			for (final String innerPath : stagedPaths) {
+				if (innerPath.startsWith(innerPrefix)) {
+					final byte[] innerHash = pInputHashes.get(innerPath);
+					if (innerHash == null) {
+						// Can't be checked on reuse
+						continue outer;
+					}
+
+					inners.add(new ManipulationCache.InnerEntry(innerPath, innerHash,
+							toBytes(pStagedFiles.get(innerPath))));
+				}
+			}
 
-				// File handled
-				pCurrentMonitor.worked(1);
+			final Map<String, String> hierarchies = new TreeMap<String, String>();
+			for (final String type : loadedTypes) {
+				hierarchies.put(type, pClassLoader.describe(type));
+			}
+
+			try {
+				pManipulationCache.put(ManipulationCache.key(inputHash, pClasspathFingerprint),
+						new ManipulationCache.Entry(toBytes(pStagedFiles.get(path)), inners, hierarchies));
+				nbStored++;
+
+			} catch (final IOException ex) {
+				Activator.logWarning(pProject, "Can't store the manipulated class " + path, ex);
 			}
 		}
+
+		Activator.logTrace(pProject, "Manipulation cache: %d classes reused, %d stored", pCachedClasses.size(),
+				nbStored);
+	}
+
+	/**
+	 * Copies the content of a staged file on the heap
+	 * 
+	 * @param aContent A staged file content
+	 * @return The file content
+	 */
+	private static byte[] toBytes(final ByteBuffer aContent) {
+
+		final byte[] content = new byte[aContent.remaining()];
+		aContent.duplicate().get(content);
+		return content;
+	}
+
+	/**
+	 * Starts recording the types loaded by the manipulator for the given class
+	 * and its inner classes
+	 * 
+	 * @param aPath Output-relative path of a class read by the manipulator
+	 */
+	protected void startUnit(final String aPath) {
+
+		pUnitInnerPrefix = aPath.substring(0, aPath.length() - CLASS_FILE_EXTENSION.length()) + '$';
+		if (pClassLoader != null) {
+			final Set<String> types = new HashSet<String>();
+			pLoadedTypes.put(aPath, types);
+			pClassLoader.record(types);
+		}
 	}
 
 	/*
@@ -284,39 +952,95 @@ public class EclipseResourceStore implements ResourceStore {
 	@Override
 	public void write(final String aPath, final byte[] aResourceContent) throws IOException {
 
-		if (pCurrentMonitor.isCanceled()) {
-			// Test cancellation
-			return;
+		write(aPath, ByteBuffer.wrap(aResourceContent));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.ow2.chameleon.eclipse.ipojo.core.StagedResourceStore#write(java.lang.
+	 * String, java.nio.ByteBuffer)
+	 */
+	@Override
+	public void write(final String aPath, final ByteBuffer aContent) throws IOException {
+
+		checkCanceled();
+
+		// Stage the file, it will be written on close()
+		pStagedFiles.put(aPath, aContent);
+	}
+
+	/**
+	 * Refreshes the files written by the journal. In direct I/O mode, the
+	 * whole output folder is refreshed.
+	 * 
+	 * @param aOutputFolder The binary output folder
+	 * @param aFiles        The journaled files
+	 * @throws CoreException Error refreshing a file
+	 */
+	protected void refreshFiles(final IFolder aOutputFolder, final List<IFile> aFiles) throws CoreException {
+
+		if (pDirectOutputPath != null) {
+			aOutputFolder.refreshLocal(IResource.DEPTH_INFINITE, null);
 		}
 
-		// Compute the file path
-		final IFile file = pWorkspaceRoot.getFile(pOutputLocation.append(aPath));
+		for (final IFile file : aFiles) {
+			if (pDirectOutputPath == null || !aOutputFolder.getFullPath().isPrefixOf(file.getFullPath())) {
+				file.refreshLocal(IResource.DEPTH_ZERO, null);
+			}
+		}
+	}
 
-		// Prepare the input stream
-		final ByteArrayInputStream byteStream = new ByteArrayInputStream(aResourceContent);
+	/**
+	 * Writes a journaled file with the workspace API, after the backup of its
+	 * local content
+	 * 
+	 * @param aJournal      The journal of the commit
+	 * @param aFile         The file to write
+	 * @param aContent      Its new content
+	 * @param aKnownFolders Folders already checked during this run
+	 * @param aUpdateFlags  The flags of {@link IFile#setContents}
+	 * @throws CoreException Error writing the file
+	 * @throws IOException   Error copying the local content
+	 */
+	protected void writeJournaled(final ManipulationJournal aJournal, final IFile aFile, final ByteBuffer aContent,
+			final Set<IContainer> aKnownFolders, final int aUpdateFlags) throws CoreException, IOException {
 
-		if (!file.exists()) {
-			// Create the file
-			try {
-				Utilities.INSTANCE.mkdirs(file.getParent());
-				file.create(byteStream, true, null);
+		final IPath location = aFile.getLocation();
+		if (location != null) {
+			aJournal.backup(location.toFile());
+		}
+
+		writeResource(aFile, aContent, aKnownFolders, aUpdateFlags);
+	}
 
-			} catch (final CoreException e) {
-				throw new IOException("Could not create the file '" + file + "'", e);
+	/**
+	 * Writes a file with the workspace API
+	 * 
+	 * @param aFile         The file to write
+	 * @param aContent      Its new content
+	 * @param aKnownFolders Folders already checked during this run
+	 * @param aUpdateFlags  The flags of {@link IFile#setContents}
+	 * @throws CoreException Error writing the file
+	 */
+	protected void writeResource(final IFile aFile, final ByteBuffer aContent, final Set<IContainer> aKnownFolders,
+			final int aUpdateFlags) throws CoreException {
+
+		final ByteBufferInputStream byteStream = new ByteBufferInputStream(aContent.duplicate());
+		if (!aFile.exists()) {
+			// Create the file
+			final IContainer parent = aFile.getParent();
+			if (aKnownFolders.add(parent)) {
+				Utilities.INSTANCE.mkdirs(parent);
 			}
 
+			aFile.create(byteStream, true, null);
+
 		} else {
 			// Set the file content
-			try {
-				file.setContents(byteStream, IResource.FORCE, null);
-
-			} catch (final CoreException e) {
-				throw new IOException("Couldn't set the file content '" + file + "'", e);
-			}
+			aFile.setContents(byteStream, aUpdateFlags, null);
 		}
-
-		// Done
-		pCurrentMonitor.worked(1);
 	}
 
 	/*
@@ -329,6 +1053,8 @@ public class EclipseResourceStore implements ResourceStore {
 	@Override
 	public void writeMetadata(final Element aMetadata) {
 
+		checkCanceled();
+
 		pManifestBuilder.addMetada(Collections.singletonList(aMetadata));
 		pManifestBuilder.addReferredPackage(Metadatas.findReferredPackages(aMetadata));
 
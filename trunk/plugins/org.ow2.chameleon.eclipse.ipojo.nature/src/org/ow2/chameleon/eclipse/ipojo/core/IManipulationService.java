@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+
+/**
+ * Workspace-wide iPOJO manipulation service, shared by the builder, the JDT
+ * compilation participant and the UI actions.
+ *
+ * Two requests for the same project made while a manipulation is running
+ * share its result.
+ *
+ * @author Thomas Calmant
+ */
+public interface IManipulationService {
+
+	/**
+	 * Runs the manipulation of the given project in the caller thread, without
+	 * writing anything, to know what a real manipulation would change
+	 *
+	 * @param aProject An iPOJO Java project
+	 * @param aMonitor Progress monitor (can be null)
+	 * @return The class files and manifest headers which would change
+	 * @throws CoreException An error occurred during the manipulation
+	 */
+	ManipulationDiff check(IProject aProject, IProgressMonitor aMonitor) throws CoreException;
+
+	/**
+	 * Manipulates the given project and waits for the result. If the caller
+	 * holds a scheduling rule (during a build), the manipulation is done in
+	 * the caller thread, as it needs the rule to write the output folder,
+	 * unless a worker already started it.
+	 *
+	 * @param aProject An iPOJO Java project
+	 * @param aMonitor Progress monitor (can be null)
+	 * @return The manipulation status
+	 * @throws CoreException An error occurred during the manipulation
+	 */
+	IStatus manipulate(IProject aProject, IProgressMonitor aMonitor) throws CoreException;
+
+	/**
+	 * Removes the iPOJO-Components entry from the manifest of the given project
+	 *
+	 * @param aProject An iPOJO Java project
+	 * @throws CoreException An error occurred clearing the Manifest file
+	 */
+	void removeManifestEntry(IProject aProject) throws CoreException;
+
+	/**
+	 * Queues the manipulation of the given project, or returns the one already
+	 * running for it
+	 *
+	 * @param aProject An iPOJO Java project
+	 * @return The future result of the manipulation
+	 */
+	CompletableFuture<IStatus> submit(IProject aProject);
+
+	/**
+	 * Fills the caches used to manipulate the given project: classpath, class
+	 * files prefilter verdicts, checked against the output folder, and parsed
+	 * metadata
+	 *
+	 * @param aProject An iPOJO Java project
+	 * @throws CoreException Error resolving the project classpath
+	 */
+	void warmUp(IProject aProject) throws CoreException;
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Encodes a manifest attribute ("Name: value") as the lines written by
+ * {@link java.util.jar.Manifest#write(OutputStream)}.
+ *
+ * The attribute is encoded in UTF-8 and cut in lines of 72 bytes: the first
+ * line holds 72 bytes, the continuation lines a space and 71 bytes. As in the
+ * JDK, the lines are cut on byte boundaries, even inside a multibyte sequence:
+ * the manifest readers join the continuation lines before decoding them. A
+ * lone surrogate is encoded as '?', like {@link String#getBytes(String)} does.
+ *
+ * The bytes are written in a buffer reused from an attribute to the other: an
+ * encoder is not thread-safe.
+ *
+ * This class only depends on the JDK.
+ *
+ * @author Thomas Calmant
+ */
+public final class ManifestLineEncoder {
+
+	/** Size of the first line, without the line break */
+	private static final int FIRST_LINE_SIZE = 72;
+
+	/** Size of the continuation lines, without the leading space */
+	private static final int FOLLOW_LINE_SIZE = 71;
+
+	/** Initial size of the buffer: the iPOJO-Components header is large */
+	private static final int INITIAL_SIZE = 1024;
+
+	/** Separator between the attribute name and its value */
+	private static final String SEPARATOR = ": ";
+
+	/** The encoded lines */
+	private byte[] pBuffer = new byte[INITIAL_SIZE];
+
+	/** Number of bytes used in the buffer */
+	private int pLength;
+
+	/** Number of bytes of the attribute written, line breaks excluded */
+	private int pWritten;
+
+	/**
+	 * Appends a byte of the attribute, preceded by a line break if the current
+	 * line is full
+	 *
+	 * @param aByte The byte to append
+	 */
+	private void appendByte(final int aByte) {
+
+		if (pWritten >= FIRST_LINE_SIZE && (pWritten - FIRST_LINE_SIZE) % FOLLOW_LINE_SIZE == 0) {
+			appendRaw('\r');
+			appendRaw('\n');
+			appendRaw(' ');
+		}
+
+		appendRaw(aByte);
+		pWritten++;
+	}
+
+	/**
+	 * Appends the UTF-8 encoding of the given characters
+	 *
+	 * @param aChars The characters to encode
+	 */
+	private void appendChars(final CharSequence aChars) {
+
+		final int length = aChars.length();
+		for (int i = 0; i < length; i++) {
+			final char current = aChars.charAt(i);
+			if (current < 0x80) {
+				appendByte(current);
+
+			} else if (current < 0x800) {
+				appendByte(0xC0 | current >> 6);
+				appendByte(0x80 | current & 0x3F);
+
+			} else if (Character.isHighSurrogate(current) && i + 1 < length
+					&& Character.isLowSurrogate(aChars.charAt(i + 1))) {
+				final int codePoint = Character.toCodePoint(current, aChars.charAt(++i));
+				appendByte(0xF0 | codePoint >> 18);
+				appendByte(0x80 | codePoint >> 12 & 0x3F);
+				appendByte(0x80 | codePoint >> 6 & 0x3F);
+				appendByte(0x80 | codePoint & 0x3F);
+
+			} else if (Character.isSurrogate(current)) {
+				// Malformed input: replaced like the JDK encoder does
+				appendByte('?');
+
+			} else {
+				appendByte(0xE0 | current >> 12);
+				appendByte(0x80 | current >> 6 & 0x3F);
+				appendByte(0x80 | current & 0x3F);
+			}
+		}
+	}
+
+	/**
+	 * Appends a byte to the buffer, growing it if necessary
+	 *
+	 * @param aByte The byte to append
+	 */
+	private void appendRaw(final int aByte) {
+
+		if (pLength == pBuffer.length) {
+			pBuffer = Arrays.copyOf(pBuffer, pBuffer.length * 2);
+		}
+		pBuffer[pLength++] = (byte) aByte;
+	}
+
+	/**
+	 * Encodes an attribute, replacing the previous one. The name is not
+	 * checked: use {@link java.util.jar.Attributes.Name} for that.
+	 *
+	 * @param aName  The attribute name
+	 * @param aValue The attribute value
+	 * @return This encoder
+	 */
+	public ManifestLineEncoder encode(final String aName, final String aValue) {
+
+		pLength = 0;
+		pWritten = 0;
+
+		appendChars(aName);
+		appendChars(SEPARATOR);
+		appendChars(String.valueOf(aValue));
+
+		appendRaw('\r');
+		appendRaw('\n');
+		return this;
+	}
+
+	/**
+	 * Returns the number of bytes of the encoded attribute
+	 *
+	 * @return The size of the encoded lines, line breaks included
+	 */
+	public int length() {
+
+		return pLength;
+	}
+
+	/**
+	 * Returns a copy of the encoded attribute
+	 *
+	 * @return The encoded lines, ending with a line break
+	 */
+	public byte[] toByteArray() {
+
+		return Arrays.copyOf(pBuffer, pLength);
+	}
+
+	/**
+	 * Writes the encoded attribute, without copying it
+	 *
+	 * @param aOutputStream The output stream
+	 * @throws IOException Error writing to the stream
+	 */
+	public void writeTo(final OutputStream aOutputStream) throws IOException {
+
+		aOutputStream.write(pBuffer, 0, pLength);
+	}
+}
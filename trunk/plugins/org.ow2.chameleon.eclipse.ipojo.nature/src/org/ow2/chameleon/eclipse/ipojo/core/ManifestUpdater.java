@@ -14,10 +14,9 @@
  */
 package org.ow2.chameleon.eclipse.ipojo.core;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.jar.Attributes;
-import java.util.jar.Manifest;
 
 import org.apache.felix.ipojo.manipulator.ManipulationVisitor;
 import org.apache.felix.ipojo.manipulator.MetadataProvider;
@@ -25,16 +24,15 @@ import org.apache.felix.ipojo.manipulator.Pojoization;
 import org.apache.felix.ipojo.manipulator.Reporter;
 import org.apache.felix.ipojo.manipulator.ResourceStore;
 import org.apache.felix.ipojo.manipulator.metadata.EmptyMetadataProvider;
-import org.apache.felix.ipojo.manipulator.metadata.StreamMetadataProvider;
 import org.apache.felix.ipojo.manipulator.render.MetadataRenderer;
 import org.apache.felix.ipojo.manipulator.util.Classpath;
 import org.apache.felix.ipojo.manipulator.visitor.check.CheckFieldConsistencyVisitor;
-import org.apache.felix.ipojo.manipulator.visitor.writer.ManipulatedResourcesWriter;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jdt.core.IJavaProject;
@@ -52,6 +50,34 @@ public class ManifestUpdater {
 	/** iPOJO Manifest entry */
 	public static final String IPOJO_HEADER = "iPOJO-Components";
 
+	/**
+	 * Resolves the classpath used by iPOJO to compute the bytecode frames and
+	 * marks it as used. It must be given back to
+	 * {@link #releaseClasspath(ManipulationClasspath)}.
+	 *
+	 * @param aProject An Eclipse project
+	 * @return The acquired project classpath
+	 * @throws JavaModelException Error reading project classpath
+	 */
+	protected ManipulationClasspath acquireClasspath(final IProject aProject) throws JavaModelException {
+
+		final ManipulationClasspath classpath = new ManipulationClasspath(prepareClasspath(aProject));
+		classpath.acquire();
+		return classpath;
+	}
+
+	/**
+	 * Releases a classpath returned by {@link #acquireClasspath(IProject)}
+	 *
+	 * @param aClasspath The classpath used by a manipulation
+	 */
+	protected void releaseClasspath(final ManipulationClasspath aClasspath) {
+
+		// Not shared: close its JAR files
+		aClasspath.release();
+		aClasspath.dispose();
+	}
+
 	/**
 	 * Prepares an iPOJO {@link Classpath} object
 	 *
@@ -71,18 +97,17 @@ public class ManifestUpdater {
 	/**
 	 * Prepares the manipulation visitor. Based on
 	 * org.apache.felix.ipojo.manipulator.Pojoization.createDefaultVisitorChain
-	 * (ManifestProvider,ResourceStore).
+	 * (ManifestProvider,ResourceStore), with a writer staging the manipulated
+	 * classes off-heap.
 	 *
 	 * @param aReporter      Status reporter
 	 * @param aResourceStore Resource store
 	 * @return The manipulation visitor
 	 */
 	protected ManipulationVisitor prepareManipulationVisitor(final Reporter aReporter,
-			final ResourceStore aResourceStore) {
+			final StagedResourceStore aResourceStore) {
 
-		final ManipulatedResourcesWriter resourcesWriter = new ManipulatedResourcesWriter();
-		resourcesWriter.setResourceStore(aResourceStore);
-		resourcesWriter.setReporter(aReporter);
+		final StagedResourcesWriter resourcesWriter = new StagedResourcesWriter(aResourceStore, aReporter);
 
 		// Finish with this one, as in default Pojoization implementation
 		final CheckFieldConsistencyVisitor checkConsistencyVisitor = new CheckFieldConsistencyVisitor(resourcesWriter);
@@ -104,15 +129,23 @@ public class ManifestUpdater {
 			final ResourceStore aResourceStore) {
 
 		// Find the metadata.xml file
+		final File metadataFile = Utilities.INSTANCE.getMetadataFile(aProject);
+		if (metadataFile != null) {
+			try {
+				// Parse it only if it changed
+				return MetadataCache.getProvider(aProject, metadataFile, aReporter);
+
+			} catch (final IOException ex) {
+				Activator.logWarning(aProject, "Can't read the metadata file through the cache", ex);
+			}
+		}
+
+		// Not a local file
 		final InputStream metadataStream = Utilities.INSTANCE.getMetadataStream(aProject);
 		if (metadataStream != null) {
 
-			// Return the found meta data
-			final StreamMetadataProvider provider = new StreamMetadataProvider(metadataStream, aReporter);
-
-			// Use local schemas, to avoid Internet connections
-			provider.setValidateUsingLocalSchemas(true);
-			return provider;
+			// Return the found meta data, validated with the shared schema
+			return new ValidatingMetadataProvider(metadataStream, aReporter);
 		}
 
 		// Return an empty provider if no meta data is found
@@ -122,11 +155,15 @@ public class ManifestUpdater {
 	/**
 	 * Prepares the resource store
 	 *
-	 * @param aProject Currently modified project
+	 * @param aProject              Currently modified project
+	 * @param aClasspathFingerprint Fingerprint of the manipulation classpath
+	 * @param aDryRun               If true, a missing manifest file is read as
+	 *                              empty instead of being created
 	 * @return The resource store
 	 * @throws CoreException An error occurred while preparing the resource store
 	 */
-	protected ResourceStore prepareResourceStore(final IProject aProject) throws CoreException {
+	protected ResourceStore prepareResourceStore(final IProject aProject, final long aClasspathFingerprint,
+			final boolean aDryRun) throws CoreException {
 
 		// Manifest builder (default one)
 		final MetadataRenderer metadataRenderer = new MetadataRenderer();
@@ -137,8 +174,22 @@ public class ManifestUpdater {
 
 		// Resource store
 		final EclipseResourceStore resourceStore = new EclipseResourceStore(aProject);
-		resourceStore.setManifest(Utilities.INSTANCE.getManifestContent(aProject));
+		try {
+			// Keep the raw content: the manifest sections are parsed once
+			resourceStore.setManifestContent(Utilities.INSTANCE.getManifestBytes(aProject, !aDryRun));
+
+		} catch (final IOException ex) {
+			throw new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID,
+					aProject.getName() + " : Can't read the project's manifest file", ex));
+		}
 		resourceStore.setManifestBuilder(manifestBuilder);
+		resourceStore.setDirectIO(Utilities.INSTANCE.isDirectIO(aProject));
+
+		// Reuse the classes manipulated in other projects
+		final ManipulationCache manipulationCache = Activator.getManipulationCache();
+		if (manipulationCache != null) {
+			resourceStore.setManipulationCache(manipulationCache, aClasspathFingerprint);
+		}
 
 		return resourceStore;
 	}
@@ -160,10 +211,11 @@ public class ManifestUpdater {
 			return;
 		}
 
-		// Read the current manifest content
-		final Manifest manifestContent;
+		// Read the current manifest content, with all its sections
+		final SortedManifestStreamer wSortedManifestStreamer;
 		try {
-			manifestContent = new Manifest(manifestFile.getContents(true));
+			wSortedManifestStreamer = new SortedManifestStreamer(
+					Utilities.INSTANCE.inputStreamToBytes(manifestFile.getContents(true)));
 
 		} catch (final IOException ex) {
 			throw new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID,
@@ -171,17 +223,10 @@ public class ManifestUpdater {
 		}
 
 		// Remove the iPOJO-Component entry
-		final Attributes.Name entryName = new Attributes.Name(IPOJO_HEADER);
-		final Object previousValue = manifestContent.getMainAttributes().remove(entryName);
-
-		if (previousValue != null) {
+		if (wSortedManifestStreamer.removeIPojoAttribute() != null) {
 
 			// java 17
 			try {
-				// Use a sorted manifest streamer object to control the ordering of the
-				// attribute in the stream
-				SortedManifestStreamer wSortedManifestStreamer = new SortedManifestStreamer(manifestContent);
-
 				// There was something before, so write the new manifest
 				Utilities.INSTANCE.setManifestContent(aProject, wSortedManifestStreamer.toBytes());
 
@@ -194,17 +239,39 @@ public class ManifestUpdater {
 	}
 
 	/**
-	 * Applies a full iPOJO update on the project Manifest. Returns an IStatus
-	 * representing the result.
+	 * Runs the manipulation of the project without writing anything: the
+	 * manipulated classes and the updated manifest are compared with the
+	 * current files. No resource delta is fired and no problem marker is
+	 * updated.
 	 *
 	 * @param aProject Eclipse Java project containing the Manifest
 	 * @param aMonitor Progress monitor
 	 *
+	 * @return The class files and manifest headers a manipulation would change
+	 *
+	 * @throws CoreException An error occurred during file treatments
+	 */
+	public ManipulationDiff checkManifest(final IProject aProject, final IProgressMonitor aMonitor)
+			throws CoreException {
+
+		final ManipulationDiff diff = new ManipulationDiff(aProject);
+		diff.setStatus(manipulate(aProject, diff, aMonitor));
+		return diff;
+	}
+
+	/**
+	 * Runs the iPOJO manipulation of the project.
+	 *
+	 * @param aProject Eclipse Java project containing the Manifest
+	 * @param aDiff    Diff to fill in a dry run, null to write the results
+	 * @param aMonitor Progress monitor
+	 *
 	 * @return Returns an Eclipse IStatus
 	 *
 	 * @throws CoreException An error occurred during file treatments
 	 */
-	public IStatus updateManifest(final IProject aProject, final IProgressMonitor aMonitor) throws CoreException {
+	private IStatus manipulate(final IProject aProject, final ManipulationDiff aDiff, final IProgressMonitor aMonitor)
+			throws CoreException {
 
 		if (!Utilities.INSTANCE.isJavaProject(aProject)) {
 			Activator.logWarning(aProject, "Not a Java project");
@@ -220,50 +287,105 @@ public class ManifestUpdater {
 		final EclipseReporter reporter = new EclipseReporter(aProject);
 		preparationMonitor.worked(1);
 
-		// Prepare the resource store
-		final ResourceStore resourceStore = prepareResourceStore(aProject);
-		preparationMonitor.worked(1);
-
-		// Prepare the meta data provider
-		final MetadataProvider metadataProvider = prepareMetadataProvider(aProject, reporter, resourceStore);
-		preparationMonitor.worked(1);
-
-		// Manipulation visitor
-		final ManipulationVisitor manipulationVisitor = prepareManipulationVisitor(reporter, resourceStore);
-		preparationMonitor.worked(1);
+		// Cancelled runs keep the previous problem markers
+		boolean canceled = false;
+		try {
+			// Resolve the project classpath, once for the whole manipulation
+			final ManipulationClasspath classpath;
+			try {
+				classpath = acquireClasspath(aProject);
 
-		// Test cancellation
-		if (preparationMonitor.isCanceled()) {
-			return new Status(IStatus.OK, Activator.PLUGIN_ID, "Manipulation cancelled");
-		}
+			} catch (final JavaModelException ex) {
+				return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Project classpath can't be computed", ex);
+			}
 
-		// New progression
-		final IProgressMonitor pojoizationMonitor = subMonitor.newChild(96);
-		pojoizationMonitor.setTaskName("Manipulation");
+			try {
+				// Prepare the resource store
+				final EclipseResourceStore eclipseStore = (EclipseResourceStore) prepareResourceStore(aProject,
+						classpath.getFingerprint(), aDiff != null);
+				final StagedResourceStore resourceStore;
+				if (aDiff != null) {
+					// Capture the results instead of writing them
+					resourceStore = new DryRunResourceStore(eclipseStore, aDiff);
+				} else {
+					resourceStore = eclipseStore;
+				}
+				preparationMonitor.worked(1);
+
+				// Prepare the meta data provider
+				final MetadataProvider metadataProvider = prepareMetadataProvider(aProject, reporter, resourceStore);
+				preparationMonitor.worked(1);
+
+				// Manipulation visitor
+				final ManipulationVisitor manipulationVisitor = prepareManipulationVisitor(reporter, resourceStore);
+				preparationMonitor.worked(1);
+
+				// Test cancellation
+				if (preparationMonitor.isCanceled()) {
+					canceled = true;
+					return Status.CANCEL_STATUS;
+				}
+
+				// New progression
+				final IProgressMonitor pojoizationMonitor = subMonitor.newChild(96);
+				pojoizationMonitor.setTaskName("Manipulation");
+
+				// Set the resource store progress monitor
+				eclipseStore.setProgressMonitor(pojoizationMonitor);
+
+				// Pojoization API
+				final Pojoization pojoization = new Pojoization(reporter);
+				pojoization.setUseLocalXSD();
+
+				// The output folders are read by a class loader of this run
+				final ClassLoader classLoader = classpath.createClassLoader();
+				try {
+					pojoization.pojoization(resourceStore, metadataProvider, manipulationVisitor,
+							eclipseStore.recordLoadedTypes(classLoader));
+
+				} catch (final OperationCanceledException ex) {
+					// Aborted by the resource store: nothing has been written, keep
+					// the previous markers
+					canceled = true;
+					return Status.CANCEL_STATUS;
+
+				} finally {
+					ManipulationClasspath.close(classLoader);
+				}
+
+			} finally {
+				releaseClasspath(classpath);
+			}
 
-		// Set the resource store progress monitor
-		((EclipseResourceStore) resourceStore).setProgressMonitor(pojoizationMonitor);
+			// Update progress monitor
+			if (aMonitor != null) {
+				aMonitor.done();
+			}
 
-		// Get the project class path
-		final Classpath ipojoClasspath;
-		try {
-			ipojoClasspath = prepareClasspath(aProject);
+			return reporter.getEclipseStatus();
 
-		} catch (final JavaModelException ex) {
-			return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Project classpath can't be computed", ex);
+		} finally {
+			if (aDiff == null && !canceled) {
+				// Log the report and update the problem markers in background,
+				// even if the manipulation failed
+				reporter.flush();
+			}
 		}
+	}
 
-		// Pojoization API
-		final Pojoization pojoization = new Pojoization(reporter);
-		pojoization.setUseLocalXSD();
-		pojoization.pojoization(resourceStore, metadataProvider, manipulationVisitor,
-				ipojoClasspath.createClassLoader());
-
-		// Update progress monitor
-		if (aMonitor != null) {
-			aMonitor.done();
-		}
+	/**
+	 * Applies a full iPOJO update on the project Manifest. Returns an IStatus
+	 * representing the result.
+	 *
+	 * @param aProject Eclipse Java project containing the Manifest
+	 * @param aMonitor Progress monitor
+	 *
+	 * @return Returns an Eclipse IStatus
+	 *
+	 * @throws CoreException An error occurred during file treatments
+	 */
+	public IStatus updateManifest(final IProject aProject, final IProgressMonitor aMonitor) throws CoreException {
 
-		return reporter.getEclipseStatus();
+		return manipulate(aProject, null, aMonitor);
 	}
 }
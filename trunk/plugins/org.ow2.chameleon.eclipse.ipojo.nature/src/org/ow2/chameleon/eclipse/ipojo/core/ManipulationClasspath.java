@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.felix.ipojo.manipulator.Pojoization;
+import org.apache.felix.ipojo.manipulator.util.Classpath;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * A resolved project classpath, split between its JAR files, opened once in a
+ * shared class loader, and its output and class folders, read by a new class
+ * loader on each manipulation.
+ *
+ * The manipulations using the classpath acquire it and release it when they
+ * are done. A disposed classpath can't be acquired anymore: its JAR files are
+ * closed once its last user released it.
+ *
+ * @author Thomas Calmant
+ */
+public final class ManipulationClasspath {
+
+	/** The classpath has been disposed */
+	private boolean pDisposed;
+
+	/** Fingerprint of the JAR files, for the manipulation cache */
+	private final long pFingerprint;
+
+	/** Output and class folders of the classpath */
+	private final List<String> pFolders;
+
+	/** Class loader of the JAR files of the classpath */
+	private final ClassLoader pJarLoader;
+
+	/** Number of manipulations using the classpath */
+	private int pUsers;
+
+	/**
+	 * Splits the given classpath and opens its JAR files
+	 *
+	 * @param aClasspath A resolved project classpath
+	 */
+	public ManipulationClasspath(final Classpath aClasspath) {
+
+		final List<String> jars = new ArrayList<String>();
+		final List<String> folders = new ArrayList<String>();
+		for (final String entry : aClasspath) {
+			if (new File(entry).isDirectory()) {
+				folders.add(entry);
+			} else {
+				jars.add(entry);
+			}
+		}
+
+		pFolders = folders;
+		pFingerprint = ManipulationCache.fingerprint(jars, getManipulatorVersion());
+		pJarLoader = new Classpath(jars).createClassLoader();
+	}
+
+	/**
+	 * Closes the given class loader, if it holds files
+	 *
+	 * @param aClassLoader A class loader created from a {@link Classpath}
+	 */
+	public static void close(final ClassLoader aClassLoader) {
+
+		if (aClassLoader instanceof Closeable) {
+			try {
+				((Closeable) aClassLoader).close();
+
+			} catch (final IOException ex) {
+				// Nothing more can be done
+			}
+		}
+	}
+
+	/**
+	 * Returns the version of the bundle providing the manipulator
+	 *
+	 * @return The manipulator version, or null if it isn't in a bundle
+	 */
+	private static String getManipulatorVersion() {
+
+		final Bundle manipulatorBundle = FrameworkUtil.getBundle(Pojoization.class);
+		if (manipulatorBundle == null) {
+			return null;
+		}
+
+		return manipulatorBundle.getVersion().toString();
+	}
+
+	/**
+	 * Marks the classpath as used by a manipulation
+	 *
+	 * @return False if the classpath has been disposed
+	 */
+	public synchronized boolean acquire() {
+
+		if (pDisposed) {
+			return false;
+		}
+
+		pUsers++;
+		return true;
+	}
+
+	/**
+	 * Creates the class loader of a manipulation: the classes of the folders
+	 * hide the ones of the JAR files. The caller must
+	 * {@link #close(ClassLoader)} it.
+	 *
+	 * @return A class loader of the project classpath
+	 */
+	public ClassLoader createClassLoader() {
+
+		return new ChildFirstClassLoader(pFolders, pJarLoader);
+	}
+
+	/**
+	 * Forbids new uses of the classpath. The JAR files are closed after the
+	 * release of the last user.
+	 */
+	public void dispose() {
+
+		synchronized (this) {
+			pDisposed = true;
+			if (pUsers > 0) {
+				return;
+			}
+		}
+
+		close(pJarLoader);
+	}
+
+	/**
+	 * Returns the fingerprint of the JAR files of the classpath
+	 *
+	 * @return The classpath fingerprint
+	 */
+	public long getFingerprint() {
+
+		return pFingerprint;
+	}
+
+	/**
+	 * Marks the end of a manipulation using the classpath
+	 */
+	public void release() {
+
+		synchronized (this) {
+			pUsers--;
+			if (pUsers > 0 || !pDisposed) {
+				return;
+			}
+		}
+
+		close(pJarLoader);
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * Result of a dry-run manipulation (see
+ * {@link ManifestUpdater#checkManifest(IProject, org.eclipse.core.runtime.IProgressMonitor)}):
+ * the class files and the manifest headers a real manipulation would change.
+ *
+ * @author Thomas Calmant
+ */
+public class ManipulationDiff {
+
+	/** Output-relative paths of the class files which would change */
+	private final List<String> pChangedClasses = new ArrayList<String>();
+
+	/** Manifest headers which would change: name -&gt; new value (or null) */
+	private final Map<String, String> pChangedHeaders = new LinkedHashMap<String, String>();
+
+	/** The checked project */
+	private final IProject pProject;
+
+	/** Status of the manipulation */
+	private IStatus pStatus = Status.OK_STATUS;
+
+	/**
+	 * Sets up the diff
+	 *
+	 * @param aProject The checked project
+	 */
+	public ManipulationDiff(final IProject aProject) {
+
+		pProject = aProject;
+	}
+
+	/**
+	 * Adds a class file which would change
+	 *
+	 * @param aPath Output-relative path of the class file
+	 */
+	void addChangedClass(final String aPath) {
+
+		pChangedClasses.add(aPath);
+	}
+
+	/**
+	 * Adds a manifest header which would change
+	 *
+	 * @param aName  Header name
+	 * @param aValue New header value, null if it would be removed
+	 */
+	void addChangedHeader(final String aName, final String aValue) {
+
+		pChangedHeaders.put(aName, aValue);
+	}
+
+	/**
+	 * Returns the class files which would change
+	 *
+	 * @return the output-relative paths of the changed class files
+	 */
+	public List<String> getChangedClasses() {
+
+		return Collections.unmodifiableList(pChangedClasses);
+	}
+
+	/**
+	 * Returns the manifest headers which would change
+	 *
+	 * @return the changed headers: name -&gt; new value (null if removed)
+	 */
+	public Map<String, String> getChangedHeaders() {
+
+		return Collections.unmodifiableMap(pChangedHeaders);
+	}
+
+	/**
+	 * Returns the checked project
+	 *
+	 * @return the project
+	 */
+	public IProject getProject() {
+
+		return pProject;
+	}
+
+	/**
+	 * Returns the status of the manipulation: the errors and warnings it
+	 * reported
+	 *
+	 * @return the manipulation status
+	 */
+	public IStatus getStatus() {
+
+		return pStatus;
+	}
+
+	/**
+	 * Tests if the project is up to date: a manipulation wouldn't change
+	 * anything
+	 *
+	 * @return True if neither class files nor manifest headers would change
+	 */
+	public boolean isEmpty() {
+
+		return pChangedClasses.isEmpty() && pChangedHeaders.isEmpty();
+	}
+
+	/**
+	 * Sets the status of the manipulation
+	 *
+	 * @param aStatus The manipulation status
+	 */
+	void setStatus(final IStatus aStatus) {
+
+		pStatus = aStatus;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+
+		final StringBuilder builder = new StringBuilder();
+		builder.append(pProject.getName()).append(" : ");
+		if (isEmpty()) {
+			builder.append("up to date");
+			return builder.toString();
+		}
+
+		builder.append(pChangedClasses.size()).append(" class(es), ").append(pChangedHeaders.size())
+				.append(" header(s) to update");
+		for (final String path : pChangedClasses) {
+			builder.append("\n  ").append(path);
+		}
+		for (final String header : pChangedHeaders.keySet()) {
+			builder.append("\n  ").append(header);
+		}
+
+		return builder.toString();
+	}
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.ow2.chameleon.eclipse.ipojo.Activator;
+
+/**
+ * Journal of the commit of a manipulation.
+ *
+ * The list of the files to write is first saved in a journal file, in the
+ * plug-in state location, before any other file is created. Each file is then
+ * either swapped with its new content, written in a sibling temporary file, by
+ * renaming: the previous file is moved aside as a backup, the temporary file
+ * takes its place. Or its previous content is copied aside as a backup, before
+ * the file is written by the caller, with the workspace API. No file content
+ * is copied in the journal.
+ *
+ * Once all the files have been written, the journal is marked as done and the
+ * backups are deleted. If the commit fails, or if Eclipse stopped in the
+ * middle of it, the backups are moved back in place and the files created by
+ * the commit are deleted.
+ *
+ * Each commit has its own journal file: the caller must hold the scheduling
+ * rule of the written files.
+ *
+ * @author Thomas Calmant
+ */
+public final class ManipulationJournal {
+
+	/** Suffix of the previous content of a swapped file */
+	private static final String BACKUP_FILE_SUFFIX = ".ipojo-bak";
+
+	/** Extension of a journal whose files have all been swapped */
+	private static final String DONE_FILE_EXTENSION = ".done";
+
+	/** Name of the journals folder, in the plug-in state location */
+	private static final String JOURNAL_FOLDER = "journal";
+
+	/** Journal file extension */
+	private static final String JOURNAL_FILE_EXTENSION = ".undo";
+
+	/** Prefix of the journal files */
+	private static final String JOURNAL_FILE_PREFIX = "commit-";
+
+	/** Journal file format version */
+	private static final int FORMAT_VERSION = 3;
+
+	/** Suffix of the new content or of the backup of a file, before its move */
+	private static final String TEMP_FILE_SUFFIX = ".ipojo-tmp";
+
+	/**
+	 * Prepares the journal of a new commit, in its own file
+	 *
+	 * @param aProject Manipulated project
+	 * @return The journal of the commit
+	 * @throws IOException Error creating the journal file
+	 */
+	public static ManipulationJournal begin(final IProject aProject) throws IOException {
+
+		final File journalFolder = getJournalFolder();
+		if (journalFolder == null) {
+			// No state location: work without journal file
+			return new ManipulationJournal(aProject, null);
+		}
+
+		journalFolder.mkdirs();
+		return new ManipulationJournal(aProject,
+				File.createTempFile(JOURNAL_FILE_PREFIX, JOURNAL_FILE_EXTENSION, journalFolder));
+	}
+
+	/**
+	 * Computes the location of the journal files
+	 *
+	 * @return The journals folder, or null if the state location is unavailable
+	 */
+	private static File getJournalFolder() {
+
+		final Activator plugin = Activator.getPluginInstance();
+		if (plugin == null) {
+			return null;
+		}
+
+		return plugin.getStateLocation().append(JOURNAL_FOLDER).toFile();
+	}
+
+	/**
+	 * Moves a file, atomically if possible
+	 *
+	 * @param aSource The file to move
+	 * @param aTarget The file to replace
+	 * @throws IOException Error moving the file
+	 */
+	private static void move(final Path aSource, final Path aTarget) throws IOException {
+
+		try {
+			Files.move(aSource, aTarget, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		} catch (final AtomicMoveNotSupportedException ex) {
+			Files.move(aSource, aTarget, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Reads a journal file
+	 *
+	 * @param aFile A journal file
+	 * @return The journal, or null if it is incomplete or of an unknown format
+	 * @throws IOException Error reading the journal
+	 */
+	private static ManipulationJournal read(final File aFile) throws IOException {
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(aFile)))) {
+
+			if (input.readInt() != FORMAT_VERSION) {
+				return null;
+			}
+
+			final ManipulationJournal journal = new ManipulationJournal(
+					ResourcesPlugin.getWorkspace().getRoot().getProject(input.readUTF()), aFile);
+
+			final int nbFiles = input.readInt();
+			for (int i = 0; i < nbFiles; i++) {
+				final File target = new File(input.readUTF());
+				journal.pTargets.add(target);
+				if (input.readBoolean()) {
+					journal.pExisting.add(target);
+				}
+			}
+			return journal;
+
+		} catch (final EOFException ex) {
+			// Incomplete journal: no file has been written
+			return null;
+		}
+	}
+
+	/**
+	 * Finishes the commits and rolls back the swaps interrupted by a crash,
+	 * usually at workspace startup
+	 */
+	public static void recoverAll() {
+
+		final File journalFolder = getJournalFolder();
+		if (journalFolder == null) {
+			return;
+		}
+
+		final File[] journals = journalFolder.listFiles();
+		if (journals == null) {
+			return;
+		}
+
+		for (final File journalFile : journals) {
+			final String name = journalFile.getName();
+			final boolean done = name.endsWith(DONE_FILE_EXTENSION);
+			if (!done && !name.endsWith(JOURNAL_FILE_EXTENSION)) {
+				continue;
+			}
+
+			try {
+				final ManipulationJournal journal = read(journalFile);
+				if (journal == null) {
+					// Nothing has been written
+					Files.deleteIfExists(journalFile.toPath());
+
+				} else if (done) {
+					// All the files were written: only the backups are left
+					journal.commit();
+
+				} else {
+					journal.rollback();
+					Activator.logInfo(journal.pProject, "Interrupted manipulation rolled back");
+					journal.refreshProject();
+				}
+
+			} catch (final IOException ex) {
+				Activator.logError(null, "Can't recover the interrupted manipulation " + journalFile, ex);
+			}
+		}
+	}
+
+	/** The written files which existed before the commit */
+	private final Set<File> pExisting = new HashSet<File>();
+
+	/** The journal file, null if not journaling */
+	private File pFile;
+
+	/** The manipulated project */
+	private final IProject pProject;
+
+	/** The journal file has been saved */
+	private boolean pSaved;
+
+	/** The files to swap with their staged content */
+	private final List<File> pStaged = new ArrayList<File>();
+
+	/** The written files, in journal order */
+	private final Set<File> pTargets = new LinkedHashSet<File>();
+
+	/**
+	 * Sets up the journal
+	 *
+	 * @param aProject Manipulated project
+	 * @param aFile    The journal file (can be null)
+	 */
+	private ManipulationJournal(final IProject aProject, final File aFile) {
+
+		pProject = aProject;
+		pFile = aFile;
+	}
+
+	/**
+	 * Adds a file to write to the journal, before {@link #save()}
+	 *
+	 * @param aTarget The file to write
+	 */
+	public void add(final File aTarget) {
+
+		if (pSaved) {
+			throw new IllegalStateException("Journal already saved");
+		}
+
+		pTargets.add(aTarget);
+	}
+
+	/**
+	 * Swaps the staged files with their new content
+	 *
+	 * @throws IOException Error swapping a file
+	 */
+	public void apply() throws IOException {
+
+		for (final File target : pStaged) {
+			final Path targetPath = target.toPath();
+			if (Files.exists(targetPath)) {
+				move(targetPath, sibling(target, BACKUP_FILE_SUFFIX));
+			}
+
+			move(sibling(target, TEMP_FILE_SUFFIX), targetPath);
+		}
+	}
+
+	/**
+	 * Copies the current content of a file aside, before the caller writes it
+	 *
+	 * @param aTarget A file of the saved journal
+	 * @throws IOException Error copying the file
+	 */
+	public void backup(final File aTarget) throws IOException {
+
+		checkSaved(aTarget);
+		if (!pExisting.contains(aTarget)) {
+			// Deleted by the rollback
+			return;
+		}
+
+		// The backup is only used once complete
+		final Path tempFile = sibling(aTarget, TEMP_FILE_SUFFIX);
+		Files.copy(aTarget.toPath(), tempFile, StandardCopyOption.REPLACE_EXISTING);
+		move(tempFile, sibling(aTarget, BACKUP_FILE_SUFFIX));
+	}
+
+	/**
+	 * Checks that the journal has been saved with the given file
+	 *
+	 * @param aTarget A file to write
+	 */
+	private void checkSaved(final File aTarget) {
+
+		if (!pSaved || !pTargets.contains(aTarget)) {
+			throw new IllegalStateException("Not in the saved journal: " + aTarget);
+		}
+	}
+
+	/**
+	 * Forgets the journal: all the files have been written
+	 */
+	public void commit() {
+
+		if (pFile != null && !pFile.getName().endsWith(DONE_FILE_EXTENSION)) {
+			// Don't roll back after a crash from here
+			final File doneFile = new File(pFile.getPath() + DONE_FILE_EXTENSION);
+			if (pFile.renameTo(doneFile)) {
+				pFile = doneFile;
+			}
+		}
+
+		try {
+			deleteBackups();
+			if (pFile != null) {
+				Files.deleteIfExists(pFile.toPath());
+			}
+
+		} catch (final IOException ex) {
+			Activator.logWarning(pProject, "Can't delete the manipulation journal " + pFile, ex);
+		}
+	}
+
+	/**
+	 * Deletes the previous content of the written files
+	 *
+	 * @throws IOException Error deleting a file
+	 */
+	private void deleteBackups() throws IOException {
+
+		for (final File target : pTargets) {
+			Files.deleteIfExists(sibling(target, BACKUP_FILE_SUFFIX));
+		}
+	}
+
+	/**
+	 * Lists the files written by the commit
+	 *
+	 * @return The journaled files
+	 */
+	public Set<File> getTargets() {
+
+		return pTargets;
+	}
+
+	/**
+	 * Refreshes the project after the rollback of an interrupted commit
+	 */
+	private void refreshProject() {
+
+		if (pProject.isAccessible()) {
+			try {
+				pProject.refreshLocal(IResource.DEPTH_INFINITE, null);
+
+			} catch (final CoreException ex) {
+				Activator.logWarning(pProject, "Can't refresh the project after the rollback", ex);
+			}
+		}
+	}
+
+	/**
+	 * Restores the previous content of the written files, removes the files
+	 * created by the commit, then deletes the journal. The caller must refresh
+	 * the restored files.
+	 *
+	 * @throws IOException Error restoring a file
+	 */
+	public void rollback() throws IOException {
+
+		for (final File target : pTargets) {
+			final Path backupFile = sibling(target, BACKUP_FILE_SUFFIX);
+
+			if (Files.exists(backupFile)) {
+				// Replaced by the commit
+				move(backupFile, target.toPath());
+
+			} else if (!pExisting.contains(target)) {
+				// Created by the commit, if written
+				Files.deleteIfExists(target.toPath());
+			}
+
+			Files.deleteIfExists(sibling(target, TEMP_FILE_SUFFIX));
+		}
+
+		if (pFile != null) {
+			Files.deleteIfExists(pFile.toPath());
+		}
+	}
+
+	/**
+	 * Saves the list of the files to write in the journal file, synchronized
+	 * on disk before any temporary file or backup is created
+	 *
+	 * @throws IOException Error writing the journal
+	 */
+	public void save() throws IOException {
+
+		for (final File target : pTargets) {
+			if (target.exists()) {
+				pExisting.add(target);
+			}
+		}
+
+		if (pFile != null) {
+			try (FileOutputStream fileOutput = new FileOutputStream(pFile);
+					DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput))) {
+
+				output.writeInt(FORMAT_VERSION);
+				output.writeUTF(pProject.getName());
+				output.writeInt(pTargets.size());
+				for (final File target : pTargets) {
+					output.writeUTF(target.getAbsolutePath());
+					output.writeBoolean(pExisting.contains(target));
+				}
+
+				output.flush();
+				fileOutput.getFD().sync();
+			}
+		}
+
+		pSaved = true;
+	}
+
+	/**
+	 * Computes the path of a sibling of the given file
+	 *
+	 * @param aTarget A swapped file
+	 * @param aSuffix The sibling suffix
+	 * @return The sibling path
+	 */
+	private Path sibling(final File aTarget, final String aSuffix) {
+
+		return new File(aTarget.getPath() + aSuffix).toPath();
+	}
+
+	/**
+	 * Writes the new content of a file in a temporary sibling, swapped by
+	 * {@link #apply()}
+	 *
+	 * @param aTarget  A file of the saved journal
+	 * @param aContent Its new content, read from its position
+	 * @throws IOException Error writing the temporary file
+	 */
+	public void stage(final File aTarget, final ByteBuffer aContent) throws IOException {
+
+		checkSaved(aTarget);
+
+		final Path tempFile = sibling(aTarget, TEMP_FILE_SUFFIX);
+		Files.createDirectories(tempFile.getParent());
+
+		try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			final ByteBuffer buffer = aContent.duplicate();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+
+		pStaged.add(aTarget);
+	}
+}
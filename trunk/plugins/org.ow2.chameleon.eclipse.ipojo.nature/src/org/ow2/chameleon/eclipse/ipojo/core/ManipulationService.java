@@ -0,0 +1,466 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceRuleFactory;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobManager;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
+import org.ow2.chameleon.eclipse.ipojo.Activator;
+
+/**
+ * Shared implementation of the {@link IManipulationService}.
+ *
+ * Asynchronous manipulations run in a work-stealing pool, one worker per
+ * processor. The JAR files of the project classpaths are kept in a cached class
+ * loader, closed when a Java classpath changes. Output folders are read by a
+ * new class loader on each manipulation, as their content changes on every
+ * build.
+ *
+ * A run is shared by all the callers asking for the same project while it is
+ * pending, including the runs done in the caller thread. A worker holds the
+ * rules of the project commit during its whole run: a caller holding a
+ * conflicting rule, during a build, does the pending run itself instead of
+ * waiting for the worker.
+ *
+ * @author Thomas Calmant
+ */
+public class ManipulationService implements IManipulationService, IElementChangedListener {
+
+	/** Delay between two checks of the progress monitor, in milliseconds */
+	private static final long CANCEL_POLL_DELAY = 100;
+
+	/** Java element delta flags invalidating the class loaders */
+	private static final int CLASSPATH_FLAGS = IJavaElementDelta.F_CLASSPATH_CHANGED
+			| IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED | IJavaElementDelta.F_CLOSED
+			| IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED;
+
+	/**
+	 * A pending manipulation, shared by its callers
+	 */
+	private static final class Run {
+
+		/** Set by the thread doing the manipulation */
+		private final AtomicBoolean pClaimed = new AtomicBoolean();
+
+		/** The manipulation result */
+		private final CompletableFuture<IStatus> pFuture = new CompletableFuture<IStatus>();
+	}
+
+	/**
+	 * Manifest updater using the cached class loaders
+	 */
+	private final class SharedManifestUpdater extends ManifestUpdater {
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.ow2.chameleon.eclipse.ipojo.core.ManifestUpdater#
+		 * acquireClasspath(org.eclipse.core.resources.IProject)
+		 */
+		@Override
+		protected ManipulationClasspath acquireClasspath(final IProject aProject) throws JavaModelException {
+
+			while (true) {
+				ManipulationClasspath classpath = pClasspaths.get(aProject.getName());
+				if (classpath == null) {
+					final ManipulationClasspath resolved = new ManipulationClasspath(prepareClasspath(aProject));
+
+					classpath = pClasspaths.putIfAbsent(aProject.getName(), resolved);
+					if (classpath == null) {
+						classpath = resolved;
+					} else {
+						// Resolved by another thread in the meantime
+						resolved.dispose();
+					}
+				}
+
+				if (classpath.acquire()) {
+					return classpath;
+				}
+
+				// Evicted before being acquired: resolve it again
+				pClasspaths.remove(aProject.getName(), classpath);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.ow2.chameleon.eclipse.ipojo.core.ManifestUpdater#
+		 * releaseClasspath(org.ow2.chameleon.eclipse.ipojo.core.
+		 * ManipulationClasspath)
+		 */
+		@Override
+		protected void releaseClasspath(final ManipulationClasspath aClasspath) {
+
+			// Kept in the cache until evicted
+			aClasspath.release();
+		}
+	}
+
+	/** Cached classpaths: project name -&gt; classpath */
+	private final Map<String, ManipulationClasspath> pClasspaths = new ConcurrentHashMap<String, ManipulationClasspath>();
+
+	/** Pending manipulations */
+	private final Map<IProject, Run> pInFlight = new ConcurrentHashMap<IProject, Run>();
+
+	/** The manipulation pool */
+	private final ExecutorService pPool;
+
+	/** The manifest updater shared by all the manipulations */
+	private final ManifestUpdater pUpdater = new SharedManifestUpdater();
+
+	/**
+	 * Sets up the service, with one worker per available processor
+	 */
+	public ManipulationService() {
+
+		pPool = Executors.newWorkStealingPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.ow2.chameleon.eclipse.ipojo.core.IManipulationService#check(org.
+	 * eclipse.core.resources.IProject,
+	 * org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	public ManipulationDiff check(final IProject aProject, final IProgressMonitor aMonitor) throws CoreException {
+
+		// Nothing is written: no need to share the run nor to hold a rule
+		return pUpdater.checkManifest(aProject, aMonitor);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.eclipse.jdt.core.IElementChangedListener#elementChanged(org.eclipse.
+	 * jdt.core.ElementChangedEvent)
+	 */
+	@Override
+	public void elementChanged(final ElementChangedEvent aEvent) {
+
+		if (!pClasspaths.isEmpty() && hasClasspathChanged(aEvent.getDelta())) {
+			// Classpaths can be exported: forget them all
+			evictClasspaths();
+		}
+	}
+
+	/**
+	 * Forgets the cached classpaths. Their JAR files are closed once the
+	 * running manipulations are done with them.
+	 */
+	private void evictClasspaths() {
+
+		for (final String projectName : pClasspaths.keySet()) {
+			final ManipulationClasspath classpath = pClasspaths.remove(projectName);
+			if (classpath != null) {
+				classpath.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Runs a claimed manipulation in the caller thread and gives its result to
+	 * the callers sharing it
+	 *
+	 * @param aProject The manipulated project
+	 * @param aRun     The claimed run
+	 * @param aMonitor Progress monitor (can be null)
+	 */
+	private void execute(final IProject aProject, final Run aRun, final IProgressMonitor aMonitor) {
+
+		IStatus result = null;
+		Throwable error = null;
+		try {
+			result = pUpdater.updateManifest(aProject, aMonitor);
+
+		} catch (final Throwable ex) {
+			error = ex;
+		}
+
+		// Later requests must start a new run
+		pInFlight.remove(aProject, aRun);
+		if (error != null) {
+			aRun.pFuture.completeExceptionally(error);
+		} else {
+			aRun.pFuture.complete(result);
+		}
+	}
+
+	/**
+	 * Computes the scheduling rule held by a worker during a manipulation: the
+	 * project and the rules needed to write its output folder and its manifest
+	 *
+	 * @param aProject The manipulated project
+	 * @return The scheduling rule of the manipulation
+	 */
+	private ISchedulingRule getRunRule(final IProject aProject) {
+
+		final IResourceRuleFactory ruleFactory = aProject.getWorkspace().getRuleFactory();
+		ISchedulingRule rule = aProject;
+		try {
+			final IPath outputLocation = Utilities.INSTANCE.getJavaProject(aProject).getOutputLocation();
+			rule = MultiRule.combine(rule,
+					ruleFactory.refreshRule(aProject.getWorkspace().getRoot().getFolder(outputLocation)));
+
+			final IFile manifestFile = Utilities.INSTANCE.getManifestFile(aProject, false);
+			if (manifestFile != null) {
+				rule = MultiRule.combine(rule, MultiRule.combine(ruleFactory.refreshRule(manifestFile),
+						ruleFactory.modifyRule(manifestFile)));
+			}
+
+		} catch (final CoreException | RuntimeException ex) {
+			// Let the manipulation report the error
+		}
+
+		return rule;
+	}
+
+	/**
+	 * Tests if the given delta changes the classpath of a project
+	 *
+	 * @param aDelta A Java element delta
+	 * @return True if a project classpath must be resolved again
+	 */
+	private boolean hasClasspathChanged(final IJavaElementDelta aDelta) {
+
+		final int type = aDelta.getElement().getElementType();
+		if (type == IJavaElement.JAVA_PROJECT && aDelta.getKind() == IJavaElementDelta.REMOVED) {
+			return true;
+		}
+
+		if ((aDelta.getFlags() & CLASSPATH_FLAGS) != 0) {
+			return true;
+		}
+
+		if (type == IJavaElement.JAVA_MODEL || type == IJavaElement.JAVA_PROJECT) {
+			// Look for projects and package fragment roots
+			for (final IJavaElementDelta child : aDelta.getAffectedChildren()) {
+				if (hasClasspathChanged(child)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.ow2.chameleon.eclipse.ipojo.core.IManipulationService#manipulate(
+	 * org.eclipse.core.resources.IProject,
+	 * org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	public IStatus manipulate(final IProject aProject, final IProgressMonitor aMonitor) throws CoreException {
+
+		if (Job.getJobManager().currentRule() == null) {
+			return waitFor(submit(aProject), aMonitor);
+		}
+
+		// A worker may wait for the rule we hold: do the pending run here
+		final Run run = new Run();
+		Run pending = pInFlight.putIfAbsent(aProject, run);
+		if (pending == null) {
+			pending = run;
+		}
+
+		if (pending.pClaimed.compareAndSet(false, true)) {
+			execute(aProject, pending, aMonitor);
+		}
+
+		// Else, the worker holds the project rules: our rule doesn't conflict
+		return waitFor(pending.pFuture, aMonitor);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.ow2.chameleon.eclipse.ipojo.core.IManipulationService#removeManifestEntry
+	 * (org.eclipse.core.resources.IProject)
+	 */
+	@Override
+	public void removeManifestEntry(final IProject aProject) throws CoreException {
+
+		pUpdater.removeManifestEntry(aProject);
+	}
+
+	/**
+	 * Stops the manipulation pool. Running manipulations are not interrupted.
+	 */
+	public void shutdown() {
+
+		pPool.shutdown();
+		evictClasspaths();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.ow2.chameleon.eclipse.ipojo.core.IManipulationService#submit(org.eclipse
+	 * .core.resources.IProject)
+	 */
+	@Override
+	public CompletableFuture<IStatus> submit(final IProject aProject) {
+
+		final Run run = new Run();
+		final Run pending = pInFlight.putIfAbsent(aProject, run);
+		if (pending != null) {
+			// Share the pending run
+			return pending.pFuture;
+		}
+
+		try {
+			pPool.execute(() -> {
+				// Keep the commit rules until the end of the run
+				final IJobManager jobManager = Job.getJobManager();
+				final ISchedulingRule rule = getRunRule(aProject);
+				jobManager.beginRule(rule, null);
+				try {
+					if (run.pClaimed.compareAndSet(false, true)) {
+						execute(aProject, run, null);
+					}
+
+				} finally {
+					jobManager.endRule(rule);
+				}
+			});
+
+		} catch (final RejectedExecutionException ex) {
+			// Service stopped
+			pInFlight.remove(aProject, run);
+			run.pFuture.completeExceptionally(ex);
+		}
+
+		return run.pFuture;
+	}
+
+	/**
+	 * Waits for the result of a manipulation, checking the progress monitor
+	 *
+	 * @param aFuture  The manipulation result
+	 * @param aMonitor Progress monitor (can be null)
+	 * @return The manipulation status, or a cancel status
+	 * @throws CoreException The manipulation failed
+	 */
+	private IStatus waitFor(final CompletableFuture<IStatus> aFuture, final IProgressMonitor aMonitor)
+			throws CoreException {
+
+		try {
+			while (true) {
+				try {
+					return aFuture.get(CANCEL_POLL_DELAY, TimeUnit.MILLISECONDS);
+
+				} catch (final TimeoutException ex) {
+					if (aMonitor != null && aMonitor.isCanceled()) {
+						// The manipulation goes on for the other callers
+						return Status.CANCEL_STATUS;
+					}
+				}
+			}
+
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return Status.CANCEL_STATUS;
+
+		} catch (final ExecutionException ex) {
+			final Throwable cause = ex.getCause();
+			if (cause instanceof CoreException) {
+				throw (CoreException) cause;
+			}
+
+			throw new CoreException(
+					new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Error manipulating the project", cause));
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.ow2.chameleon.eclipse.ipojo.core.IManipulationService#warmUp(org.eclipse
+	 * .core.resources.IProject)
+	 */
+	@Override
+	public void warmUp(final IProject aProject) throws CoreException {
+
+		// Resolve the classpath and open the JAR files, without class loader
+		pUpdater.releaseClasspath(pUpdater.acquireClasspath(aProject));
+
+		// Load the prefilter verdicts and check them against the class files
+		final IJavaProject javaProject = Utilities.INSTANCE.getJavaProject(aProject);
+		if (javaProject != null) {
+			final IPath outputLocation = aProject.getWorkspace().getRoot()
+					.getFolder(javaProject.getOutputLocation()).getLocation();
+			if (outputLocation != null) {
+				final PrefilterCache verdicts = PrefilterCache.get(aProject);
+				try {
+					final int nbComputed = verdicts.validate(outputLocation.toFile().toPath());
+					verdicts.save();
+					Activator.logTrace(aProject, "Prefilter cache checked: %d verdicts computed", nbComputed);
+
+				} catch (final IOException ex) {
+					Activator.logWarning(aProject, "Can't check the class files prefilter cache", ex);
+				}
+			}
+		}
+
+		// Parse the metadata file
+		final File metadataFile = Utilities.INSTANCE.getMetadataFile(aProject);
+		if (metadataFile != null) {
+			try {
+				// The provider is not used: the reporter is not needed
+				MetadataCache.getProvider(aProject, metadataFile, null);
+
+			} catch (final IOException ex) {
+				Activator.logWarning(aProject, "Can't read the metadata file", ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.apache.felix.ipojo.manipulator.MetadataProvider;
+import org.apache.felix.ipojo.manipulator.Reporter;
+import org.apache.felix.ipojo.metadata.Attribute;
+import org.apache.felix.ipojo.metadata.Element;
+import org.eclipse.core.resources.IProject;
+
+/**
+ * Cache of the parsed metadata.xml files, one entry per project.
+ *
+ * An entry is reused while the file keeps its modification time and size.
+ * If they changed, the content hash is compared before parsing the file
+ * again. The parse and validation messages are stored with the elements and
+ * replayed on each use. As the manipulator modifies the elements it is given,
+ * each build gets its own copy.
+ *
+ * @author Thomas Calmant
+ */
+public final class MetadataCache {
+
+	/** Files bigger than this are read through a mapped buffer */
+	private static final int MAPPED_READ_THRESHOLD = 64 * 1024;
+
+	/** Cache entries: project name -&gt; parsed metadata */
+	private static final Map<String, MetadataCache> sEntries = new ConcurrentHashMap<String, MetadataCache>();
+
+	/**
+	 * A metadata provider giving a copy of the cached elements
+	 */
+	private static final class CachedMetadataProvider implements MetadataProvider {
+
+		/** The cache entry */
+		private final MetadataCache pEntry;
+
+		/** The build reporter */
+		private final Reporter pReporter;
+
+		/**
+		 * Sets up the provider
+		 *
+		 * @param aEntry    The cache entry
+		 * @param aReporter The build reporter
+		 */
+		private CachedMetadataProvider(final MetadataCache aEntry, final Reporter aReporter) {
+
+			pEntry = aEntry;
+			pReporter = aReporter;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.apache.felix.ipojo.manipulator.MetadataProvider#getMetadatas()
+		 */
+		@Override
+		public List<Element> getMetadatas() throws IOException {
+
+			// Replay the parse messages
+			for (final RecordedMessage message : pEntry.pMessages) {
+				message.replay(pReporter);
+			}
+
+			final List<Element> copies = new ArrayList<Element>(pEntry.pElements.size());
+			for (final Element element : pEntry.pElements) {
+				copies.add(copyElement(element));
+			}
+
+			return copies;
+		}
+	}
+
+	/**
+	 * A reporter message, replayed on each use of the cached metadata
+	 */
+	private static final class RecordedMessage {
+
+		/** Message arguments */
+		private final Object[] pArgs;
+
+		/** True for an error, false for a warning */
+		private final boolean pError;
+
+		/** Message format */
+		private final String pMessage;
+
+		/**
+		 * Stores the message
+		 *
+		 * @param aError   True for an error, false for a warning
+		 * @param aMessage Message format
+		 * @param aArgs    Message arguments
+		 */
+		private RecordedMessage(final boolean aError, final String aMessage, final Object[] aArgs) {
+
+			pError = aError;
+			pMessage = aMessage;
+			pArgs = aArgs;
+		}
+
+		/**
+		 * Sends the message to the given reporter
+		 *
+		 * @param aReporter A build reporter
+		 */
+		private void replay(final Reporter aReporter) {
+
+			if (pError) {
+				aReporter.error(pMessage, pArgs);
+			} else {
+				aReporter.warn(pMessage, pArgs);
+			}
+		}
+	}
+
+	/**
+	 * Reporter keeping the warnings and errors of the parser
+	 */
+	private static final class RecordingReporter implements Reporter {
+
+		/** The recorded messages */
+		private final List<RecordedMessage> pRecorded = new ArrayList<RecordedMessage>();
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.apache.felix.ipojo.manipulator.Reporter#error(java.lang.String,
+		 * java.lang.Object[])
+		 */
+		@Override
+		public void error(final String aMessage, final Object... aArgs) {
+
+			pRecorded.add(new RecordedMessage(true, aMessage, aArgs));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.apache.felix.ipojo.manipulator.Reporter#getErrors()
+		 */
+		@Override
+		public List<String> getErrors() {
+
+			return Collections.emptyList();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.apache.felix.ipojo.manipulator.Reporter#getWarnings()
+		 */
+		@Override
+		public List<String> getWarnings() {
+
+			return Collections.emptyList();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.apache.felix.ipojo.manipulator.Reporter#info(java.lang.String,
+		 * java.lang.Object[])
+		 */
+		@Override
+		public void info(final String aMessage, final Object... aArgs) {
+
+			// Not recorded
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.apache.felix.ipojo.manipulator.Reporter#trace(java.lang.String,
+		 * java.lang.Object[])
+		 */
+		@Override
+		public void trace(final String aMessage, final Object... aArgs) {
+
+			// Not recorded
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.apache.felix.ipojo.manipulator.Reporter#warn(java.lang.String,
+		 * java.lang.Object[])
+		 */
+		@Override
+		public void warn(final String aMessage, final Object... aArgs) {
+
+			pRecorded.add(new RecordedMessage(false, aMessage, aArgs));
+		}
+	}
+
+	/**
+	 * Deep copy of an element and its children
+	 *
+	 * @param aElement An element
+	 * @return A copy of the element
+	 */
+	private static Element copyElement(final Element aElement) {
+
+		final Element copy = new Element(aElement.getName(), aElement.getNameSpace());
+		for (final Attribute attribute : aElement.getAttributes()) {
+			copy.addAttribute(new Attribute(attribute.getName(), attribute.getNameSpace(), attribute.getValue()));
+		}
+
+		for (final Element child : aElement.getElements()) {
+			copy.addElement(copyElement(child));
+		}
+
+		return copy;
+	}
+
+	/**
+	 * Returns a provider of the metadata described in the given file, parsing
+	 * it only if it changed since the previous call for this project
+	 *
+	 * @param aProject      Manipulated project
+	 * @param aMetadataFile The metadata.xml file
+	 * @param aReporter     The build reporter
+	 * @return A metadata provider
+	 * @throws IOException Error reading the file
+	 */
+	public static MetadataProvider getProvider(final IProject aProject, final File aMetadataFile,
+			final Reporter aReporter) throws IOException {
+
+		final String path = aMetadataFile.getAbsolutePath();
+		final long lastModified = aMetadataFile.lastModified();
+		final long size = aMetadataFile.length();
+
+		MetadataCache entry = sEntries.get(aProject.getName());
+		if (entry != null && entry.pPath.equals(path) && entry.pLastModified == lastModified
+				&& entry.pSize == size) {
+			// Untouched file
+			return new CachedMetadataProvider(entry, aReporter);
+		}
+
+		try (FileChannel channel = FileChannel.open(aMetadataFile.toPath(), StandardOpenOption.READ)) {
+
+			final ByteBuffer content;
+			if (channel.size() > MAPPED_READ_THRESHOLD) {
+				content = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			} else {
+				content = ByteBuffer.allocate((int) channel.size());
+				while (content.hasRemaining() && channel.read(content) != -1) {
+					// Read until the end
+				}
+				content.flip();
+			}
+
+			final CRC32 crc = new CRC32();
+			crc.update(content.duplicate());
+			final long hash = crc.getValue();
+
+			if (entry != null && entry.pPath.equals(path) && entry.pHash == hash) {
+				// Touched, but same content
+				entry = new MetadataCache(path, lastModified, size, hash, entry.pElements, entry.pMessages);
+
+			} else {
+				// Parse it
+				final RecordingReporter recorder = new RecordingReporter();
+				final ValidatingMetadataProvider parser = new ValidatingMetadataProvider(
+						new ByteBufferInputStream(content), recorder);
+				entry = new MetadataCache(path, lastModified, size, hash, parser.getMetadatas(), recorder.pRecorded);
+			}
+		}
+
+		sEntries.put(aProject.getName(), entry);
+		return new CachedMetadataProvider(entry, aReporter);
+	}
+
+	/** The parsed elements (never given to the manipulator) */
+	private final List<Element> pElements;
+
+	/** CRC-32 of the file content */
+	private final long pHash;
+
+	/** File modification time */
+	private final long pLastModified;
+
+	/** Parse and validation messages */
+	private final List<RecordedMessage> pMessages;
+
+	/** Absolute path of the file */
+	private final String pPath;
+
+	/** File size */
+	private final long pSize;
+
+	/**
+	 * Stores a parsed file
+	 *
+	 * @param aPath         Absolute path of the file
+	 * @param aLastModified File modification time
+	 * @param aSize         File size
+	 * @param aHash         CRC-32 of the file content
+	 * @param aElements     Parsed elements
+	 * @param aMessages     Parse and validation messages
+	 */
+	private MetadataCache(final String aPath, final long aLastModified, final long aSize, final long aHash,
+			final List<Element> aElements, final List<RecordedMessage> aMessages) {
+
+		pPath = aPath;
+		pLastModified = aLastModified;
+		pSize = aSize;
+		pHash = aHash;
+		pElements = Collections.unmodifiableList(aElements);
+		pMessages = Collections.unmodifiableList(aMessages);
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.core.resources.IBuildConfiguration;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.JavaCore;
+import org.ow2.chameleon.eclipse.ipojo.Activator;
+import org.ow2.chameleon.eclipse.ipojo.builder.IPojoNature;
+
+/**
+ * Adds or removes the iPOJO nature of many projects at once.
+ *
+ * All the project descriptions, class paths and manifests are modified in a
+ * single Java model operation: the resource and Java deltas are merged. When
+ * auto-build is off, the caller builds the converted projects once, with
+ * {@link #scheduleBuild(Collection)}, after all its conversions.
+ *
+ * @author Thomas Calmant
+ */
+public class NatureConverter {
+
+	/** Path of the metadata.xml template, in this bundle */
+	private static final String METADATA_TEMPLATE = "/templates/metadata.xml";
+
+	/** Add the annotations container to the converted projects */
+	private final boolean pAddAnnotations;
+
+	/** Create a metadata.xml template in the converted projects */
+	private final boolean pCreateMetadataTemplate;
+
+	/** Project utilities */
+	private final ProjectUtilities pUtilities = new ProjectUtilities();
+
+	/**
+	 * Sets up the converter
+	 *
+	 * @param aAddAnnotations         Add the annotations container when adding
+	 *                                the nature
+	 * @param aCreateMetadataTemplate Create a metadata.xml template when adding
+	 *                                the nature
+	 */
+	public NatureConverter(final boolean aAddAnnotations, final boolean aCreateMetadataTemplate) {
+
+		pAddAnnotations = aAddAnnotations;
+		pCreateMetadataTemplate = aCreateMetadataTemplate;
+	}
+
+	/**
+	 * Schedules a single build of the given projects, if auto-build is off
+	 *
+	 * @param aProjects Converted projects
+	 */
+	public static void scheduleBuild(final Collection<IProject> aProjects) {
+
+		if (aProjects.isEmpty()) {
+			return;
+		}
+
+		final IWorkspace workspace = aProjects.iterator().next().getWorkspace();
+		if (workspace.isAutoBuilding()) {
+			// Auto-build builds them at the end of the conversion operation
+			return;
+		}
+
+		final List<IProject> projects = new ArrayList<IProject>(aProjects);
+		final WorkspaceJob buildJob = new WorkspaceJob("Build the iPOJO projects") {
+
+			@Override
+			public IStatus runInWorkspace(final IProgressMonitor aMonitor) throws CoreException {
+
+				final List<IBuildConfiguration> configs = new ArrayList<IBuildConfiguration>(projects.size());
+				for (final IProject project : projects) {
+					if (project.isAccessible()) {
+						configs.add(project.getActiveBuildConfig());
+					}
+				}
+
+				workspace.build(configs.toArray(new IBuildConfiguration[configs.size()]),
+						IncrementalProjectBuilder.INCREMENTAL_BUILD, true, aMonitor);
+				return Status.OK_STATUS;
+			}
+		};
+
+		buildJob.setRule(workspace.getRuleFactory().buildRule());
+		buildJob.schedule();
+	}
+
+	/**
+	 * Adds or removes the iPOJO nature of the given projects. The projects
+	 * aren't built: see {@link #scheduleBuild(Collection)}.
+	 *
+	 * @param aSetNature If true, add the nature, else remove it
+	 * @param aProjects  Projects to convert
+	 * @param aMonitor   Progress monitor (can be null)
+	 * @return The projects which couldn't be converted (errors are logged)
+	 * @throws CoreException Error running the workspace operation
+	 */
+	public List<IProject> convert(final boolean aSetNature, final Collection<IProject> aProjects,
+			final IProgressMonitor aMonitor) throws CoreException {
+
+		final List<IProject> failed = new ArrayList<IProject>();
+		final IWorkspace workspace = aProjects.iterator().next().getWorkspace();
+
+		JavaCore.run(aRunMonitor -> {
+
+			final SubMonitor monitor = SubMonitor.convert(aRunMonitor, aProjects.size());
+			for (final IProject project : aProjects) {
+				try {
+					if (aSetNature) {
+						addNature(project);
+					} else {
+						removeNature(project);
+					}
+
+				} catch (final CoreException ex) {
+					Activator.logError(project, aSetNature ? "Can't set the project nature"
+							: "Can't remove the project nature", ex);
+					failed.add(project);
+				}
+
+				try {
+					project.refreshLocal(IResource.DEPTH_ONE, null);
+
+				} catch (final CoreException ex) {
+					// Just log...
+					Activator.logWarning(project, "Error refreshing project.", ex);
+				}
+
+				monitor.worked(1);
+			}
+		}, workspace.getRoot(), aMonitor);
+
+		return failed;
+	}
+
+	/**
+	 * Adds the nature to a project: description, class path and metadata
+	 * template
+	 *
+	 * @param aProject A Java project
+	 * @throws CoreException Error updating the project description
+	 */
+	private void addNature(final IProject aProject) throws CoreException {
+
+		final IProjectDescription description = aProject.getDescription();
+		if (IPojoNature.addToDescription(description)) {
+			aProject.setDescription(description, null);
+		}
+
+		if (pAddAnnotations) {
+			// Adds the annotation library
+			pUtilities.addAnnotations(aProject);
+		}
+
+		if (pCreateMetadataTemplate) {
+			// Add the metadata.xml file template
+			createMetadataTemplate(aProject);
+		}
+	}
+
+	/**
+	 * Creates the template metadata.xml file
+	 *
+	 * @param aProject Project where the metadata.xml file must be created
+	 */
+	private void createMetadataTemplate(final IProject aProject) {
+
+		// Get the metadata.xml Eclipse file
+		final IFile metadataFile = aProject.getFile("/metadata.xml");
+		if (metadataFile.exists()) {
+			// Do nothing if the file already exists
+			return;
+		}
+
+		// Get the metadata.xml template
+		final InputStream inStream = getClass().getResourceAsStream(METADATA_TEMPLATE);
+
+		// Set the file content
+		try {
+			metadataFile.create(inStream, true, null);
+
+		} catch (final CoreException e) {
+			Activator.logError(aProject, "Error creating the metadata.xml file", e);
+		}
+	}
+
+	/**
+	 * Removes the nature of a project: description, class path and manifest
+	 * entry
+	 *
+	 * @param aProject An iPOJO project
+	 * @throws CoreException Error updating the project description or the
+	 *                       manifest
+	 */
+	private void removeNature(final IProject aProject) throws CoreException {
+
+		final IProjectDescription description = aProject.getDescription();
+		if (IPojoNature.removeFromDescription(description)) {
+			aProject.setDescription(description, null);
+		}
+
+		// Remove the annotation container
+		pUtilities.removeAnnotations(aProject);
+
+		// Clean up the manifest
+		Activator.getManipulationService().removeManifestEntry(aProject);
+	}
+}
@@ -0,0 +1,604 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
+import org.ow2.chameleon.eclipse.ipojo.Activator;
+import org.ow2.chameleon.eclipse.ipojo.builder.IPojoNature;
+
+/**
+ * Watches the output folders of the iPOJO projects which are filled by
+ * external tools (see {@link Utilities#isWatchOutput(IResource)}).
+ *
+ * The class file events are collected until no event has been received for
+ * {@link #DEBOUNCE_DELAY} milliseconds. Then, only the changed files are
+ * refreshed in the workspace and the whole project is given to the
+ * manipulation service: the iPOJO-Components header needs the metadata of all
+ * the components, so the manipulation can't be limited to the changed files.
+ * The other classes are already manipulated: they are skipped by their
+ * prefilter verdict or read from the manipulation cache, and only the changed
+ * classes are transformed.
+ *
+ * The classes which are already manipulated, and the inner classes of an
+ * already manipulated class, are ignored: the manipulation gives them back
+ * unchanged. As the unchanged files aren't written (see
+ * {@link EclipseResourceStore}), the classes written by the manipulation are
+ * ignored when they come back as events, and the watcher doesn't trigger
+ * itself again.
+ *
+ * The output folders are registered by a system job, out of the plug-in
+ * activation.
+ *
+ * @author Thomas Calmant
+ */
+public class OutputWatcher implements IResourceChangeListener {
+
+	/**
+	 * Manipulation of a project after a burst of changes. The whole project
+	 * goes through the manipulation pipeline, the changed files are only used
+	 * to refresh the workspace.
+	 */
+	private static final class ManipulationJob extends WorkspaceJob {
+
+		/** Changed files and folders */
+		private final Set<Path> pChanges;
+
+		/** The watched output folder */
+		private final WatchedRoot pRoot;
+
+		/**
+		 * Sets up the job
+		 *
+		 * @param aRoot    The watched output folder
+		 * @param aChanges Changed files and folders
+		 */
+		private ManipulationJob(final WatchedRoot aRoot, final Set<Path> aChanges) {
+
+			super("iPOJO manipulation of " + aRoot.pProject.getName());
+			pRoot = aRoot;
+			pChanges = aChanges;
+			setRule(aRoot.pProject);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.eclipse.core.resources.WorkspaceJob#runInWorkspace(org.eclipse
+		 * .core.runtime.IProgressMonitor)
+		 */
+		@Override
+		public IStatus runInWorkspace(final IProgressMonitor aMonitor) throws CoreException {
+
+			final IManipulationService service = Activator.getManipulationService();
+			if (service == null || !pRoot.pProject.isOpen()) {
+				return Status.OK_STATUS;
+			}
+
+			final SubMonitor monitor = SubMonitor.convert(aMonitor, getName(), pChanges.size() + 10);
+			final IFolder outputFolder = pRoot.pProject.getWorkspace().getRoot().getFolder(pRoot.pOutputLocation);
+
+			// Make the workspace see the changed files only
+			for (final Path changed : pChanges) {
+				final IPath relativePath = org.eclipse.core.runtime.Path
+						.fromOSString(pRoot.pRoot.relativize(changed).toString());
+
+				final IResource resource;
+				if (relativePath.isEmpty()) {
+					resource = outputFolder;
+				} else if (Files.isDirectory(changed)) {
+					resource = outputFolder.getFolder(relativePath);
+				} else {
+					resource = outputFolder.getFile(relativePath);
+				}
+
+				resource.refreshLocal(resource.getType() == IResource.FILE ? IResource.DEPTH_ZERO
+						: IResource.DEPTH_INFINITE, monitor.newChild(1));
+			}
+
+			// Same pipeline as the builder: the unchanged classes are skipped
+			final IStatus status = service.manipulate(pRoot.pProject, monitor.newChild(10));
+			if (status.matches(IStatus.CANCEL)) {
+				return Status.CANCEL_STATUS;
+			}
+
+			return Status.OK_STATUS;
+		}
+	}
+
+	/**
+	 * A watched directory
+	 */
+	private static final class WatchedDirectory {
+
+		/** The directory */
+		private final Path pDirectory;
+
+		/** The output folder it belongs to */
+		private final WatchedRoot pRoot;
+
+		/**
+		 * Sets up the bean
+		 *
+		 * @param aRoot      The output folder
+		 * @param aDirectory The directory
+		 */
+		private WatchedDirectory(final WatchedRoot aRoot, final Path aDirectory) {
+
+			pRoot = aRoot;
+			pDirectory = aDirectory;
+		}
+	}
+
+	/**
+	 * A watched output folder
+	 */
+	private static final class WatchedRoot {
+
+		/** Output folder, in the workspace */
+		private final IPath pOutputLocation;
+
+		/** The project */
+		private final IProject pProject;
+
+		/** Output folder, on the file system */
+		private final Path pRoot;
+
+		/**
+		 * Sets up the bean
+		 *
+		 * @param aProject        The project
+		 * @param aOutputLocation Output folder, in the workspace
+		 * @param aRoot           Output folder, on the file system
+		 */
+		private WatchedRoot(final IProject aProject, final IPath aOutputLocation, final Path aRoot) {
+
+			pProject = aProject;
+			pOutputLocation = aOutputLocation;
+			pRoot = aRoot;
+		}
+	}
+
+	/** Class files extension */
+	private static final String CLASS_FILE_EXTENSION = ".class";
+
+	/** Delay without event before the manipulation (milliseconds) */
+	public static final long DEBOUNCE_DELAY = 300;
+
+	/** Changes received since the last manipulation (watcher thread only) */
+	private final Map<WatchedRoot, Set<Path>> pChanges = new HashMap<WatchedRoot, Set<Path>>();
+
+	/** Watched directories */
+	private final Map<WatchKey, WatchedDirectory> pDirectories = new ConcurrentHashMap<WatchKey, WatchedDirectory>();
+
+	/** Watched output folders */
+	private final Map<IProject, WatchedRoot> pRoots = new ConcurrentHashMap<IProject, WatchedRoot>();
+
+	/** Registration of the output folders at startup */
+	private Job pRegistrationJob;
+
+	/** The watcher thread, null once stopped */
+	private Thread pThread;
+
+	/** The watch service */
+	private WatchService pWatchService;
+
+	/**
+	 * Stores a change
+	 *
+	 * @param aRoot The output folder
+	 * @param aPath The changed file or folder
+	 */
+	private void addChange(final WatchedRoot aRoot, final Path aPath) {
+
+		Set<Path> changes = pChanges.get(aRoot);
+		if (changes == null) {
+			changes = new LinkedHashSet<Path>();
+			pChanges.put(aRoot, changes);
+		}
+
+		changes.add(aPath);
+	}
+
+	/**
+	 * Schedules the manipulation of the projects which received changes
+	 */
+	private void flushChanges() {
+
+		for (final Entry<WatchedRoot, Set<Path>> entry : pChanges.entrySet()) {
+
+			final WatchedRoot root = entry.getKey();
+			if (pRoots.get(root.pProject) != root) {
+				// Not watched anymore
+				continue;
+			}
+
+			final Set<Path> changes = entry.getValue();
+			final Iterator<Path> iterator = changes.iterator();
+			while (iterator.hasNext()) {
+				final Path changed = iterator.next();
+				if (changed.toString().endsWith(CLASS_FILE_EXTENSION) && isManipulated(getUnitClass(changed))) {
+					// Nothing new for the manipulator
+					iterator.remove();
+				}
+			}
+
+			if (!changes.isEmpty()) {
+				Activator.logTrace(root.pProject, "%d output change(s) to manipulate", changes.size());
+				new ManipulationJob(root, changes).schedule();
+			}
+		}
+
+		pChanges.clear();
+	}
+
+	/**
+	 * Returns the class file manipulated with the given one: its outer class
+	 * if it is an inner class
+	 *
+	 * @param aClassFile A class file
+	 * @return The class file of the top-level class
+	 */
+	private Path getUnitClass(final Path aClassFile) {
+
+		final String name = aClassFile.getFileName().toString();
+		final int innerSeparator = name.indexOf('$');
+		if (innerSeparator <= 0) {
+			return aClassFile;
+		}
+
+		return aClassFile.resolveSibling(name.substring(0, innerSeparator) + CLASS_FILE_EXTENSION);
+	}
+
+	/**
+	 * Handles the events of a watch key
+	 *
+	 * @param aKey A signaled watch key
+	 */
+	private void handleEvents(final WatchKey aKey) {
+
+		final WatchedDirectory directory = pDirectories.get(aKey);
+		if (directory == null) {
+			// Not watched anymore
+			aKey.cancel();
+			return;
+		}
+
+		for (final WatchEvent<?> event : aKey.pollEvents()) {
+
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				// Lost events: refresh the whole folder
+				addChange(directory.pRoot, directory.pRoot.pRoot);
+				continue;
+			}
+
+			final Path changed = directory.pDirectory.resolve((Path) event.context());
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+				// New package: watch it and refresh it
+				registerTree(directory.pRoot, changed);
+				addChange(directory.pRoot, changed);
+
+			} else if (changed.toString().endsWith(CLASS_FILE_EXTENSION)) {
+				addChange(directory.pRoot, changed);
+			}
+		}
+
+		if (!aKey.reset()) {
+			// Directory deleted
+			pDirectories.remove(aKey);
+		}
+	}
+
+	/**
+	 * Tells if a class file is already manipulated
+	 *
+	 * @param aClassFile A class file
+	 * @return True if the file exists and is manipulated
+	 */
+	private boolean isManipulated(final Path aClassFile) {
+
+		if (!Files.isRegularFile(aClassFile)) {
+			return false;
+		}
+
+		try {
+			return ManipulationCache.isManipulated(Files.readAllBytes(aClassFile));
+
+		} catch (final IOException ex) {
+			// Let the manipulation handle it
+			return false;
+		}
+	}
+
+	/**
+	 * Registers the given directory and its sub-directories
+	 *
+	 * @param aRoot      The output folder
+	 * @param aDirectory The directory to watch
+	 */
+	private void registerTree(final WatchedRoot aRoot, final Path aDirectory) {
+
+		try {
+			Files.walkFileTree(aDirectory, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult preVisitDirectory(final Path aDir, final BasicFileAttributes aAttrs)
+						throws IOException {
+
+					final WatchKey key = aDir.register(pWatchService, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+					pDirectories.put(key, new WatchedDirectory(aRoot, aDir));
+					return FileVisitResult.CONTINUE;
+				}
+			});
+
+		} catch (final IOException | ClosedWatchServiceException ex) {
+			Activator.logWarning(aRoot.pProject, "Can't watch the output folder " + aDirectory, ex);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.core.resources.IResourceChangeListener#resourceChanged(org
+	 * .eclipse.core.resources.IResourceChangeEvent)
+	 */
+	@Override
+	public void resourceChanged(final IResourceChangeEvent aEvent) {
+
+		switch (aEvent.getType()) {
+		case IResourceChangeEvent.PRE_CLOSE:
+		case IResourceChangeEvent.PRE_DELETE:
+			if (aEvent.getResource() instanceof IProject) {
+				unwatch((IProject) aEvent.getResource());
+			}
+			break;
+
+		case IResourceChangeEvent.POST_CHANGE:
+			if (aEvent.getDelta() == null) {
+				break;
+			}
+
+			// New and opened projects, description changes (nature added)
+			for (final IResourceDelta delta : aEvent.getDelta().getAffectedChildren()) {
+				if (delta.getKind() == IResourceDelta.ADDED
+						|| (delta.getFlags() & (IResourceDelta.OPEN | IResourceDelta.DESCRIPTION)) != 0) {
+					update((IProject) delta.getResource());
+				}
+			}
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Watcher thread loop
+	 */
+	private void run() {
+
+		try {
+			while (true) {
+				final WatchKey key;
+				if (pChanges.isEmpty()) {
+					key = pWatchService.take();
+				} else {
+					key = pWatchService.poll(DEBOUNCE_DELAY, TimeUnit.MILLISECONDS);
+				}
+
+				if (key == null) {
+					// End of the burst
+					flushChanges();
+				} else {
+					handleEvents(key);
+				}
+			}
+
+		} catch (final ClosedWatchServiceException | InterruptedException ex) {
+			// Watcher stopped
+		}
+	}
+
+	/**
+	 * Starts the watcher. The output folders of the configured projects are
+	 * registered by a system job: walking them can take a while.
+	 *
+	 * @param aWorkspace The workspace
+	 * @throws IOException Can't create the watch service
+	 */
+	public synchronized void start(final IWorkspace aWorkspace) throws IOException {
+
+		pWatchService = FileSystems.getDefault().newWatchService();
+
+		pThread = new Thread(this::run, "iPOJO output watcher");
+		pThread.setDaemon(true);
+		pThread.start();
+
+		aWorkspace.addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.PRE_CLOSE
+				| IResourceChangeEvent.PRE_DELETE);
+
+		pRegistrationJob = new Job("Watch the iPOJO output folders") {
+
+			@Override
+			protected IStatus run(final IProgressMonitor aMonitor) {
+
+				final IProject[] projects = aWorkspace.getRoot().getProjects();
+				final SubMonitor monitor = SubMonitor.convert(aMonitor, getName(), projects.length);
+				for (final IProject project : projects) {
+					if (monitor.isCanceled()) {
+						return Status.CANCEL_STATUS;
+					}
+
+					update(project);
+					monitor.worked(1);
+				}
+
+				return Status.OK_STATUS;
+			}
+		};
+		pRegistrationJob.setSystem(true);
+		pRegistrationJob.schedule();
+	}
+
+	/**
+	 * Stops the watcher
+	 *
+	 * @param aWorkspace The workspace
+	 */
+	public void stop(final IWorkspace aWorkspace) {
+
+		aWorkspace.removeResourceChangeListener(this);
+
+		synchronized (this) {
+			if (pRegistrationJob != null) {
+				pRegistrationJob.cancel();
+				pRegistrationJob = null;
+			}
+
+			if (pThread == null) {
+				// Not started
+				return;
+			}
+
+			try {
+				pWatchService.close();
+
+			} catch (final IOException ex) {
+				Activator.logWarning(null, "Error closing the output watch service", ex);
+			}
+
+			pThread.interrupt();
+			pThread = null;
+
+			pDirectories.clear();
+			pRoots.clear();
+		}
+	}
+
+	/**
+	 * Stops watching the output folder of a project
+	 *
+	 * @param aProject A project
+	 */
+	private synchronized void unwatch(final IProject aProject) {
+
+		final WatchedRoot root = pRoots.remove(aProject);
+		if (root == null) {
+			return;
+		}
+
+		final Iterator<Entry<WatchKey, WatchedDirectory>> iterator = pDirectories.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Entry<WatchKey, WatchedDirectory> entry = iterator.next();
+			if (entry.getValue().pRoot == root) {
+				entry.getKey().cancel();
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Starts or stops watching the output folder of the given project,
+	 * according to its nature and its configuration
+	 *
+	 * @param aProject A project
+	 */
+	public synchronized void update(final IProject aProject) {
+
+		if (pThread == null) {
+			// Stopped
+			return;
+		}
+
+		IPath outputLocation = null;
+		Path outputRoot = null;
+
+		try {
+			if (aProject.isOpen() && aProject.hasNature(IPojoNature.NATURE_ID)
+					&& Utilities.INSTANCE.isWatchOutput(aProject)) {
+
+				final IJavaProject javaProject = Utilities.INSTANCE.getJavaProject(aProject);
+				if (javaProject != null) {
+					outputLocation = javaProject.getOutputLocation();
+
+					final IPath location = aProject.getWorkspace().getRoot().getFolder(outputLocation)
+							.getLocation();
+					if (location != null) {
+						outputRoot = location.toFile().toPath();
+					}
+				}
+			}
+
+		} catch (final JavaModelException ex) {
+			Activator.logWarning(aProject, "Can't get the output folder to watch", ex);
+
+		} catch (final CoreException ex) {
+			// Closed in the meantime
+		}
+
+		final WatchedRoot current = pRoots.get(aProject);
+		if (current != null && current.pRoot.equals(outputRoot)) {
+			// No change
+			return;
+		}
+
+		unwatch(aProject);
+
+		if (outputRoot != null && Files.isDirectory(outputRoot)) {
+			final WatchedRoot root = new WatchedRoot(aProject, outputLocation, outputRoot);
+			pRoots.put(aProject, root);
+			registerTree(root, outputRoot);
+
+			Activator.logInfo(aProject, "Watching the output folder %s", outputRoot);
+		}
+	}
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IProject;
+import org.ow2.chameleon.eclipse.ipojo.Activator;
+
+/**
+ * Persistent cache of the {@link ClassFilePrefilter} verdicts of a project.
+ *
+ * A verdict is valid as long as the local time stamp and the size of its class
+ * file don't change. The workspace modification stamp isn't used: it can take
+ * the same value again when a clean build deletes and re-creates the file. The
+ * verdicts are stored in the plug-in state location, one file per project.
+ *
+ * @author Thomas Calmant
+ */
+public final class PrefilterCache {
+
+	/** Name of the cache folder, in the plug-in state location */
+	private static final String CACHE_FOLDER = "prefilter";
+
+	/** Cache file extension */
+	private static final String CACHE_FILE_EXTENSION = ".verdicts";
+
+	/** Cache file format version */
+	private static final int FORMAT_VERSION = 2;
+
+	/** Class files extension */
+	private static final String CLASS_FILE_EXTENSION = ".class";
+
+	/** Caches of the projects: project name -&gt; cache */
+	private static final Map<String, PrefilterCache> sCaches = new ConcurrentHashMap<String, PrefilterCache>();
+
+	/**
+	 * Retrieves the verdicts cache of the given project, loading it on first
+	 * access
+	 *
+	 * @param aProject A Java project
+	 * @return The verdicts cache of the project
+	 */
+	public static PrefilterCache get(final IProject aProject) {
+
+		return sCaches.computeIfAbsent(aProject.getName(), aName -> {
+			final PrefilterCache cache = new PrefilterCache(getCacheFile(aName));
+			cache.load(aProject);
+			return cache;
+		});
+	}
+
+	/**
+	 * Computes the location of the cache file of the given project
+	 *
+	 * @param aProjectName Project name
+	 * @return The cache file, or null if the state location is unavailable
+	 */
+	private static File getCacheFile(final String aProjectName) {
+
+		final Activator plugin = Activator.getPluginInstance();
+		if (plugin == null) {
+			return null;
+		}
+
+		return plugin.getStateLocation().append(CACHE_FOLDER).append(aProjectName + CACHE_FILE_EXTENSION)
+				.toFile();
+	}
+
+	/**
+	 * A prefilter verdict
+	 */
+	private static final class Verdict {
+
+		/** True if the class must be given to the manipulator */
+		private final boolean pCandidate;
+
+		/** Size of the class file */
+		private final long pSize;
+
+		/** Local time stamp of the class file */
+		private final long pTimeStamp;
+
+		/**
+		 * Stores the verdict
+		 *
+		 * @param aTimeStamp Local time stamp of the class file
+		 * @param aSize      Size of the class file
+		 * @param aCandidate Prefilter verdict
+		 */
+		private Verdict(final long aTimeStamp, final long aSize, final boolean aCandidate) {
+
+			pTimeStamp = aTimeStamp;
+			pSize = aSize;
+			pCandidate = aCandidate;
+		}
+
+		/**
+		 * Tests if the verdict applies to the current state of the class file
+		 *
+		 * @param aTimeStamp Current local time stamp of the class file
+		 * @param aSize      Current size of the class file
+		 * @return True if the class file didn't change
+		 */
+		private boolean matches(final long aTimeStamp, final long aSize) {
+
+			return pTimeStamp == aTimeStamp && pSize == aSize;
+		}
+	}
+
+	/** Set when the verdicts must be saved */
+	private boolean pDirty;
+
+	/** The cache file (can be null) */
+	private final File pFile;
+
+	/** Verdicts: output-relative class path -&gt; verdict */
+	private final Map<String, Verdict> pVerdicts = new HashMap<String, Verdict>();
+
+	/**
+	 * Sets up the cache
+	 *
+	 * @param aFile The cache file (can be null)
+	 */
+	private PrefilterCache(final File aFile) {
+
+		pFile = aFile;
+	}
+
+	/**
+	 * Retrieves the verdict of a class file
+	 *
+	 * @param aPath      Output-relative class path
+	 * @param aTimeStamp Current local time stamp of the class file
+	 * @param aSize      Current size of the class file
+	 * @return The verdict, or null if it is unknown or outdated
+	 */
+	public synchronized Boolean getVerdict(final String aPath, final long aTimeStamp, final long aSize) {
+
+		final Verdict verdict = pVerdicts.get(aPath);
+		if (verdict == null || !verdict.matches(aTimeStamp, aSize)) {
+			return null;
+		}
+
+		return verdict.pCandidate;
+	}
+
+	/**
+	 * Loads the verdicts from the cache file. An unreadable cache is ignored.
+	 *
+	 * @param aProject Project of the cache (for logs)
+	 */
+	private synchronized void load(final IProject aProject) {
+
+		if (pFile == null || !pFile.isFile()) {
+			return;
+		}
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(pFile)))) {
+
+			if (input.readInt() != FORMAT_VERSION) {
+				return;
+			}
+
+			final int nbVerdicts = input.readInt();
+			for (int i = 0; i < nbVerdicts; i++) {
+				final String path = input.readUTF();
+				final long timeStamp = input.readLong();
+				final long size = input.readLong();
+				pVerdicts.put(path, new Verdict(timeStamp, size, input.readBoolean()));
+			}
+
+		} catch (final IOException ex) {
+			Activator.logWarning(aProject, "Can't read the class files prefilter cache", ex);
+			pVerdicts.clear();
+		}
+	}
+
+	/**
+	 * Stores the verdict of a class file
+	 *
+	 * @param aPath      Output-relative class path
+	 * @param aTimeStamp Local time stamp of the class file
+	 * @param aSize      Size of the class file
+	 * @param aCandidate Prefilter verdict
+	 */
+	public synchronized void putVerdict(final String aPath, final long aTimeStamp, final long aSize,
+			final boolean aCandidate) {
+
+		pVerdicts.put(aPath, new Verdict(aTimeStamp, aSize, aCandidate));
+		pDirty = true;
+	}
+
+	/**
+	 * Forgets the verdicts of the class files which are not in the given
+	 * collection
+	 *
+	 * @param aPaths Paths of the current class files
+	 */
+	public synchronized void retainAll(final Collection<String> aPaths) {
+
+		if (pVerdicts.keySet().retainAll(aPaths)) {
+			pDirty = true;
+		}
+	}
+
+	/**
+	 * Writes the verdicts to the cache file, if they changed
+	 *
+	 * @throws IOException Error writing the cache file
+	 */
+	public synchronized void save() throws IOException {
+
+		if (!pDirty || pFile == null) {
+			return;
+		}
+
+		pFile.getParentFile().mkdirs();
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pFile)))) {
+
+			output.writeInt(FORMAT_VERSION);
+			output.writeInt(pVerdicts.size());
+			for (final Entry<String, Verdict> entry : pVerdicts.entrySet()) {
+				output.writeUTF(entry.getKey());
+				output.writeLong(entry.getValue().pTimeStamp);
+				output.writeLong(entry.getValue().pSize);
+				output.writeBoolean(entry.getValue().pCandidate);
+			}
+		}
+
+		pDirty = false;
+	}
+
+	/**
+	 * Checks the verdicts against the class files of the given output folder:
+	 * the verdicts of the removed files are forgotten, those of the modified
+	 * and new files are computed.
+	 *
+	 * @param aOutputDir Local output folder
+	 * @return The number of computed verdicts
+	 * @throws IOException Error visiting the output folder
+	 */
+	public int validate(final Path aOutputDir) throws IOException {
+
+		// Output-relative class path -> state of the file
+		final Map<String, BasicFileAttributes> classFiles = new HashMap<String, BasicFileAttributes>();
+		if (Files.isDirectory(aOutputDir)) {
+			Files.walkFileTree(aOutputDir, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult visitFile(final Path aFile, final BasicFileAttributes aAttributes) {
+
+					if (aAttributes.isRegularFile() && aFile.getFileName().toString().endsWith(CLASS_FILE_EXTENSION)) {
+						// Same separator as the workspace paths
+						classFiles.put(aOutputDir.relativize(aFile).toString().replace(File.separatorChar, '/'),
+								aAttributes);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+
+		retainAll(classFiles.keySet());
+
+		int nbComputed = 0;
+		for (final Entry<String, BasicFileAttributes> classFile : classFiles.entrySet()) {
+			final long timeStamp = classFile.getValue().lastModifiedTime().to(TimeUnit.NANOSECONDS);
+			final long size = classFile.getValue().size();
+			if (getVerdict(classFile.getKey(), timeStamp, size) != null) {
+				continue;
+			}
+
+			final byte[] content;
+			try {
+				content = Files.readAllBytes(aOutputDir.resolve(classFile.getKey()));
+
+			} catch (final IOException ex) {
+				// Removed in the meantime: the build will see it
+				continue;
+			}
+
+			putVerdict(classFile.getKey(), timeStamp, size, ClassFilePrefilter.isCandidate(content));
+			nbComputed++;
+		}
+
+		return nbComputed;
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.ow2.chameleon.eclipse.ipojo.Activator;
+
+/**
+ * Background queue of the manipulation reports: each report is logged once
+ * and converted into problem markers. All the pending reports are handled in
+ * a single workspace operation, the last report of a project replacing the
+ * previous ones.
+ *
+ * @author Thomas Calmant
+ */
+public final class ProblemReporterJob extends WorkspaceJob {
+
+	/** Maximum number of markers created per project */
+	public static final int MAX_MARKERS = 200;
+
+	/** iPOJO problem marker type */
+	public static final String PROBLEM_MARKER = Activator.PLUGIN_ID
+			+ ".problem";
+
+	/** Marker location attribute value */
+	private static final String MARKER_LOCATION = "iPOJO manipulation";
+
+	/** The queue job */
+	private static final ProblemReporterJob sJob = new ProblemReporterJob();
+
+	/**
+	 * Queues the report of a manipulation
+	 *
+	 * @param aProject
+	 *            Manipulated project
+	 * @param aReport
+	 *            Manipulation report
+	 */
+	public static void report(final IProject aProject, final IStatus aReport) {
+
+		synchronized (sJob.pPendingReports) {
+			// Keep the latest report only
+			sJob.pPendingReports.remove(aProject);
+			sJob.pPendingReports.put(aProject, aReport);
+		}
+
+		sJob.schedule();
+	}
+
+	/** Pending reports */
+	private final Map<IProject, IStatus> pPendingReports = new LinkedHashMap<IProject, IStatus>();
+
+	/**
+	 * Sets up the job
+	 */
+	private ProblemReporterJob() {
+
+		super("iPOJO problems report");
+		setSystem(true);
+		setPriority(DECORATE);
+	}
+
+	/**
+	 * Creates a problem marker on the given project
+	 *
+	 * @param aProject
+	 *            Manipulated project
+	 * @param aSeverity
+	 *            Eclipse status severity
+	 * @param aMessage
+	 *            Marker message
+	 * @throws CoreException
+	 *             Error creating the marker
+	 */
+	private void createMarker(final IProject aProject, final int aSeverity,
+			final String aMessage) throws CoreException {
+
+		final int markerSeverity;
+		if (aSeverity == IStatus.ERROR) {
+			markerSeverity = IMarker.SEVERITY_ERROR;
+		} else {
+			markerSeverity = IMarker.SEVERITY_WARNING;
+		}
+
+		final IMarker marker = aProject.createMarker(PROBLEM_MARKER);
+		marker.setAttributes(new String[] { IMarker.SEVERITY,
+				IMarker.MESSAGE, IMarker.LOCATION }, new Object[] {
+				markerSeverity, aMessage, MARKER_LOCATION });
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.eclipse.core.resources.WorkspaceJob#runInWorkspace(org.eclipse.core
+	 * .runtime.IProgressMonitor)
+	 */
+	@Override
+	public IStatus runInWorkspace(final IProgressMonitor aMonitor)
+			throws CoreException {
+
+		// Drain the queue
+		final Map<IProject, IStatus> reports;
+		synchronized (pPendingReports) {
+			reports = new LinkedHashMap<IProject, IStatus>(pPendingReports);
+			pPendingReports.clear();
+		}
+
+		final SubMonitor monitor = SubMonitor.convert(aMonitor, reports.size());
+		for (final Entry<IProject, IStatus> entry : reports.entrySet()) {
+
+			final IProject project = entry.getKey();
+			final IStatus report = entry.getValue();
+
+			// Log the whole report at once
+			if (!report.isOK()) {
+				Activator.logStatus(report);
+			}
+
+			try {
+				updateMarkers(project, report);
+
+			} catch (final CoreException ex) {
+				Activator.logError(project, "Can't update the iPOJO problem markers", ex);
+			}
+
+			monitor.worked(1);
+		}
+
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Replaces the iPOJO problem markers of the given project by those of the
+	 * given report
+	 *
+	 * @param aProject
+	 *            Manipulated project
+	 * @param aReport
+	 *            Manipulation report
+	 * @throws CoreException
+	 *             Error updating markers
+	 */
+	private void updateMarkers(final IProject aProject, final IStatus aReport)
+			throws CoreException {
+
+		if (!aProject.isAccessible()) {
+			return;
+		}
+
+		aProject.deleteMarkers(PROBLEM_MARKER, true, IResource.DEPTH_INFINITE);
+
+		final IStatus[] children = aReport.getChildren();
+		int nbMarkers = 0;
+		for (final IStatus child : children) {
+
+			if (child.getSeverity() < IStatus.WARNING) {
+				continue;
+			}
+
+			if (nbMarkers == MAX_MARKERS) {
+				// Too many problems: summarize the others
+				createMarker(aProject, aReport.getSeverity(),
+						(children.length - nbMarkers)
+								+ " more iPOJO problems, see the error log");
+				break;
+			}
+
+			createMarker(aProject, child.getSeverity(), child.getMessage());
+			nbMarkers++;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Class loader given to the manipulator, recording the types it loads.
+ *
+ * The manipulator only loads classes to compute the stack map frames of the
+ * manipulated classes: the frames depend on the hierarchy of these types. A
+ * stored manipulation result can only be reused if all the types loaded to
+ * compute it still have the same hierarchy (see {@link #describe(String)}).
+ *
+ * The classes are loaded by the parent class loader. A recording class loader
+ * is used by a single manipulation: it is not thread-safe.
+ *
+ * This class only depends on the JDK.
+ *
+ * @author Thomas Calmant
+ */
+public final class RecordingClassLoader extends ClassLoader {
+
+	/** Description of a type which can't be loaded */
+	private static final String UNRESOLVED = "?";
+
+	/** Types loaded since the last call to {@link #record(Set)} */
+	private Set<String> pRecorded;
+
+	/**
+	 * Sets up the class loader
+	 *
+	 * @param aParent The class loader of the manipulation class path
+	 */
+	public RecordingClassLoader(final ClassLoader aParent) {
+
+		super(aParent);
+	}
+
+	/**
+	 * Describes the hierarchy of a type: its kind, its super classes and all
+	 * the interfaces it implements. Two types with the same description give
+	 * the same stack map frames.
+	 *
+	 * @param aName Binary name of the type
+	 * @return The description of the type hierarchy
+	 */
+	public String describe(final String aName) {
+
+		final Class<?> type;
+		try {
+			type = getParent().loadClass(aName);
+
+		} catch (final ClassNotFoundException | LinkageError ex) {
+			return UNRESOLVED;
+		}
+
+		final StringBuilder builder = new StringBuilder(type.isInterface() ? "I" : "C");
+		final Set<String> interfaces = new TreeSet<String>();
+		for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+			builder.append(' ').append(current.getName());
+			addInterfaces(current, interfaces);
+		}
+
+		for (final String name : interfaces) {
+			builder.append(" +").append(name);
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Adds the names of the interfaces of a type, recursively
+	 *
+	 * @param aType       A type
+	 * @param aInterfaces The interface names
+	 */
+	private void addInterfaces(final Class<?> aType, final Set<String> aInterfaces) {
+
+		for (final Class<?> implemented : aType.getInterfaces()) {
+			if (aInterfaces.add(implemented.getName())) {
+				addInterfaces(implemented, aInterfaces);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.ClassLoader#loadClass(java.lang.String, boolean)
+	 */
+	@Override
+	protected Class<?> loadClass(final String aName, final boolean aResolve) throws ClassNotFoundException {
+
+		if (pRecorded != null) {
+			pRecorded.add(aName);
+		}
+
+		return super.loadClass(aName, aResolve);
+	}
+
+	/**
+	 * Sets the set receiving the names of the types loaded from now on
+	 *
+	 * @param aTypes The set of the current manipulation unit, null to stop
+	 *               recording
+	 */
+	public void record(final Set<String> aTypes) {
+
+		pRecorded = aTypes;
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.felix.ipojo.manipulator.ResourceStore;
+
+/**
+ * Resource store accepting the manipulated files staged off-heap by the
+ * {@link StagedResourcesWriter}
+ *
+ * @author Thomas Calmant
+ */
+public interface StagedResourceStore extends ResourceStore {
+
+	/**
+	 * Writes a staged resource. The buffer is only valid until the end of
+	 * {@link #close()}: it must not be kept after it.
+	 *
+	 * @param aPath    Output-relative path of the resource
+	 * @param aContent Read-only buffer of the resource content
+	 * @throws IOException Error writing the resource
+	 */
+	void write(String aPath, ByteBuffer aContent) throws IOException;
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.IOException;
+
+import org.apache.felix.ipojo.manipulator.ManipulationResultVisitor;
+import org.apache.felix.ipojo.manipulator.ManipulationVisitor;
+import org.apache.felix.ipojo.manipulator.Reporter;
+import org.apache.felix.ipojo.metadata.Element;
+
+/**
+ * Writes the manipulation results in a {@link StagedResourceStore}, like the
+ * iPOJO ManipulatedResourcesWriter, but without keeping the manipulated
+ * classes on the heap: each class is copied in a {@link StagingArea} as soon
+ * as it is manipulated.
+ *
+ * The store is opened, given the staged classes and closed once all the
+ * components have been manipulated, then the staging area is cleared.
+ *
+ * @author Thomas Calmant
+ */
+public class StagedResourcesWriter implements ManipulationVisitor {
+
+	/**
+	 * Stages the manipulated classes of a component
+	 */
+	private class StagedResultWriter implements ManipulationResultVisitor {
+
+		/** Component metadata */
+		private final Element pComponent;
+
+		/**
+		 * Sets up the writer
+		 *
+		 * @param aComponent Component metadata
+		 */
+		StagedResultWriter(final Element aComponent) {
+
+			pComponent = aComponent;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.apache.felix.ipojo.manipulator.ManipulationResultVisitor#
+		 * visitClassStructure(org.apache.felix.ipojo.metadata.Element)
+		 */
+		@Override
+		public void visitClassStructure(final Element aStructure) {
+
+			// Insert the manipulation structure in the component metadata
+			pComponent.addElement(aStructure);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.apache.felix.ipojo.manipulator.ManipulationResultVisitor#visitEnd()
+		 */
+		@Override
+		public void visitEnd() {
+
+			// Nothing to do
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.apache.felix.ipojo.manipulator.ManipulationResultVisitor#
+		 * visitManipulatedResource(java.lang.String, byte[])
+		 */
+		@Override
+		public void visitManipulatedResource(final String aType, final byte[] aResource) {
+
+			// The array can be collected from now on
+			pStagingArea.put(aType, aResource);
+		}
+	}
+
+	/** Status reporter */
+	private final Reporter pReporter;
+
+	/** The manipulated classes, off-heap */
+	private final StagingArea pStagingArea = new StagingArea();
+
+	/** The resource store */
+	private final StagedResourceStore pStore;
+
+	/**
+	 * Sets up the writer
+	 *
+	 * @param aStore    The resource store
+	 * @param aReporter Status reporter
+	 */
+	public StagedResourcesWriter(final StagedResourceStore aStore, final Reporter aReporter) {
+
+		pStore = aStore;
+		pReporter = aReporter;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.felix.ipojo.manipulator.ManipulationVisitor#visitEnd()
+	 */
+	@Override
+	public void visitEnd() {
+
+		try {
+			pStore.open();
+			for (final String path : pStagingArea.paths()) {
+				pStore.write(path, pStagingArea.get(path));
+			}
+			pStore.close();
+
+		} catch (final IOException ex) {
+			pReporter.error("Cannot store manipulation result: " + ex.getMessage());
+
+		} finally {
+			// The store doesn't use the buffers anymore
+			pStagingArea.clear();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.felix.ipojo.manipulator.ManipulationVisitor#
+	 * visitManipulationResult(org.apache.felix.ipojo.metadata.Element)
+	 */
+	@Override
+	public ManipulationResultVisitor visitManipulationResult(final Element aMetadata) {
+
+		pStore.writeMetadata(aMetadata);
+		return new StagedResultWriter(aMetadata);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.felix.ipojo.manipulator.ManipulationVisitor#visitMetadata(org
+	 * .apache.felix.ipojo.metadata.Element)
+	 */
+	@Override
+	public void visitMetadata(final Element aMetadata) {
+
+		pStore.writeMetadata(aMetadata);
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Off-heap storage of the manipulated files, until they are written.
+ *
+ * The files are copied into direct buffer segments, so that the byte arrays
+ * given by the manipulator can be collected as soon as they are staged. The
+ * segments are given back to a small shared pool when the area is cleared:
+ * the buffers returned by {@link #get(String)} can't be used anymore. Files
+ * bigger than a segment get their own direct buffer.
+ *
+ * @author Thomas Calmant
+ */
+public class StagingArea {
+
+	/** Maximum number of segments kept in the pool */
+	private static final int MAX_POOLED_SEGMENTS = 16;
+
+	/** Size of a segment: 1 MiB */
+	private static final int SEGMENT_SIZE = 1024 * 1024;
+
+	/** Pool of free segments */
+	private static final BlockingQueue<ByteBuffer> sPool = new ArrayBlockingQueue<ByteBuffer>(MAX_POOLED_SEGMENTS);
+
+	/** Segment being filled, null before the first file */
+	private ByteBuffer pCurrentSegment;
+
+	/** Staged files: output-relative path -&gt; content */
+	private final Map<String, ByteBuffer> pFiles = new LinkedHashMap<String, ByteBuffer>();
+
+	/** Segments used by this area */
+	private final List<ByteBuffer> pSegments = new ArrayList<ByteBuffer>();
+
+	/**
+	 * Forgets the staged files and gives the segments back to the pool
+	 */
+	public void clear() {
+
+		pFiles.clear();
+		pCurrentSegment = null;
+
+		for (final ByteBuffer segment : pSegments) {
+			segment.clear();
+			if (!sPool.offer(segment)) {
+				// Pool full: let the GC release it
+				break;
+			}
+		}
+		pSegments.clear();
+	}
+
+	/**
+	 * Retrieves the content of a staged file
+	 *
+	 * @param aPath Output-relative path of the file
+	 * @return A read-only buffer of the file content, or null if the file is
+	 *         not staged
+	 */
+	public ByteBuffer get(final String aPath) {
+
+		final ByteBuffer content = pFiles.get(aPath);
+		if (content == null) {
+			return null;
+		}
+
+		return content.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Tests if no file has been staged
+	 *
+	 * @return True if the area is empty
+	 */
+	public boolean isEmpty() {
+
+		return pFiles.isEmpty();
+	}
+
+	/**
+	 * Lists the staged files, in staging order
+	 *
+	 * @return The output-relative paths of the staged files
+	 */
+	public Set<String> paths() {
+
+		return Collections.unmodifiableSet(pFiles.keySet());
+	}
+
+	/**
+	 * Copies the given file content in the area, replacing the previous one
+	 *
+	 * @param aPath    Output-relative path of the file
+	 * @param aContent File content
+	 */
+	public void put(final String aPath, final byte[] aContent) {
+
+		if (aContent.length > SEGMENT_SIZE) {
+			// Dedicated buffer
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(aContent.length);
+			buffer.put(aContent).flip();
+			pFiles.put(aPath, buffer);
+			return;
+		}
+
+		if (pCurrentSegment == null || pCurrentSegment.remaining() < aContent.length) {
+			// New segment
+			pCurrentSegment = sPool.poll();
+			if (pCurrentSegment == null) {
+				pCurrentSegment = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+			}
+			pSegments.add(pCurrentSegment);
+		}
+
+		// Keep a view on the copied bytes
+		final ByteBuffer slice = pCurrentSegment.duplicate();
+		slice.limit(slice.position() + aContent.length);
+		pFiles.put(aPath, slice.slice());
+
+		pCurrentSegment.put(aContent);
+	}
+
+	/**
+	 * Returns the number of staged files
+	 *
+	 * @return The number of staged files
+	 */
+	public int size() {
+
+		return pFiles.size();
+	}
+}
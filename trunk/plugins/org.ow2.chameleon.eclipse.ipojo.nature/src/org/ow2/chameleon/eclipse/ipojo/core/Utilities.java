@@ -20,8 +20,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -59,6 +57,14 @@ public final class Utilities {
 	/** Default metadata file name */
 	public static final String METADATA_FILE = "metadata.xml";
 
+	/** Direct output folder I/O property */
+	public static final QualifiedName DIRECT_IO_PROPERTY = new QualifiedName(Activator.PLUGIN_ID,
+			"ipojo.output.directio");
+
+	/** Watched output folder property */
+	public static final QualifiedName WATCH_OUTPUT_PROPERTY = new QualifiedName(Activator.PLUGIN_ID,
+			"ipojo.output.watch");
+
 	/** Metadata file path property */
 	public static final QualifiedName METADATA_FILE_PROPERTY = new QualifiedName(Activator.PLUGIN_ID,
 			"ipojo.metadata.path");
@@ -195,6 +201,34 @@ public final class Utilities {
 		}
 	}
 
+	/**
+	 * Reads the raw content of the project manifest file
+	 * 
+	 * @param aProject Current manipulated project
+	 * @param aForce   Creates the manifest file if it doesn't exist yet
+	 * @return The manifest file content, empty if the file doesn't exist and
+	 *         aForce is false
+	 * @throws CoreException Error reading the manifest file
+	 */
+	public byte[] getManifestBytes(final IProject aProject, final boolean aForce) throws CoreException {
+
+		final IFile manifestFile = getManifestFile(aProject, aForce);
+		if (manifestFile == null) {
+			// Read-only access to a missing manifest
+			return new byte[0];
+		}
+
+		try {
+			return inputStreamToBytes(manifestFile.getContents(true));
+
+		} catch (final IOException e) {
+			// Propagate the error
+			final IStatus exceptionStatus = new Status(IStatus.WARNING, Activator.PLUGIN_ID,
+					"Couldn't read the manifest content", e);
+			throw new CoreException(exceptionStatus);
+		}
+	}
+
 	/**
 	 * Retrieves a reference to the manifest file. Try to create if needed.
 	 * 
@@ -246,6 +280,32 @@ public final class Utilities {
 		return result;
 	}
 
+	/**
+	 * Retrieves the metadata file on the local file system: the specified one
+	 * if it exists, else the first metadata.xml file of the project
+	 * 
+	 * @param aProject Current manipulated project
+	 * @return The metadata file, null if not found or not on the local file
+	 *         system
+	 */
+	public File getMetadataFile(final IProject aProject) {
+
+		final File specifiedFile = getSpecifiedMetadataFile(aProject);
+		if (specifiedFile != null && specifiedFile.isFile()) {
+			// The specified file exists
+			return specifiedFile;
+		}
+
+		// Find the first metadata file
+		final IFile metadataFile = findFile(aProject, METADATA_FILE);
+		if (metadataFile == null || metadataFile.getLocation() == null) {
+			// No metadata.xml file, or not a local one
+			return null;
+		}
+
+		return metadataFile.getLocation().toFile();
+	}
+
 	/**
 	 * Retrieves an input stream from the metadata file, null on error
 	 * 
@@ -343,37 +403,74 @@ public final class Utilities {
 	}
 
 	/**
-	 * Reads the given input stream and returns its content as a byte array
+	 * Reads the given input stream and returns its content as a byte array. The
+	 * stream is closed.
 	 * 
 	 * @param aInputStream Input stream
-	 * @return
-	 * @throws IOException
+	 * @return The stream content
+	 * @throws IOException Error reading the stream
 	 */
 	public byte[] inputStreamToBytes(final InputStream aInputStream) throws IOException {
 
-		final List<Byte> fileBytes = new ArrayList<Byte>();
-
-		final byte[] buffer = new byte[8192];
-		int readBytes = -1;
-		do {
-			// Fill the buffer
-			readBytes = aInputStream.read(buffer);
+		try {
+			final ByteArrayOutputStream fileBytes = new ByteArrayOutputStream(
+					Math.max(aInputStream.available(), 8192));
 
-			// Add what has been read
-			for (int i = 0; i < readBytes; i++) {
-				fileBytes.add(buffer[i]);
+			final byte[] buffer = new byte[8192];
+			int readBytes;
+			while ((readBytes = aInputStream.read(buffer)) != -1) {
+				fileBytes.write(buffer, 0, readBytes);
 			}
 
-		} while (readBytes != -1);
+			return fileBytes.toByteArray();
 
-		// Convert the array
-		final byte[] result = new byte[fileBytes.size()];
-		int i = 0;
-		for (final Byte readByte : fileBytes) {
-			result[i++] = readByte;
+		} finally {
+			aInputStream.close();
 		}
+	}
 
-		return result;
+	/**
+	 * Tests if the output folder of the given project must be read and written
+	 * directly on the file system
+	 * 
+	 * @param aResource Resource containing the property (the project)
+	 * @return True if the direct I/O mode is activated
+	 */
+	public boolean isDirectIO(final IResource aResource) {
+
+		if (aResource == null) {
+			return false;
+		}
+
+		try {
+			return Boolean.parseBoolean(aResource.getPersistentProperty(DIRECT_IO_PROPERTY));
+
+		} catch (final CoreException e) {
+			Activator.logError(aResource.getProject(), "Error reading a resource property", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Tests if the output folder of the given project is filled by external
+	 * tools and must be watched
+	 * 
+	 * @param aResource Resource containing the property (the project)
+	 * @return True if the watch mode is activated
+	 */
+	public boolean isWatchOutput(final IResource aResource) {
+
+		if (aResource == null) {
+			return false;
+		}
+
+		try {
+			return Boolean.parseBoolean(aResource.getPersistentProperty(WATCH_OUTPUT_PROPERTY));
+
+		} catch (final CoreException e) {
+			Activator.logError(aResource.getProject(), "Error reading a resource property", e);
+			return false;
+		}
 	}
 
 	/**
@@ -451,6 +548,56 @@ public final class Utilities {
 		setManifestContent(aProject, byteOutStream.toByteArray());
 	}
 
+	/**
+	 * Sets the "direct I/O" property to the given resource (useful on a project
+	 * only). The property is removed when deactivated.
+	 * 
+	 * @param aResource Resource where to apply the property.
+	 * @param aDirectIO The direct I/O mode flag
+	 * 
+	 * @return True on success, false on error
+	 */
+	public boolean setDirectIO(final IResource aResource, final boolean aDirectIO) {
+
+		if (aResource == null) {
+			return false;
+		}
+
+		try {
+			aResource.setPersistentProperty(DIRECT_IO_PROPERTY, aDirectIO ? Boolean.TRUE.toString() : null);
+			return true;
+
+		} catch (final CoreException e) {
+			Activator.logError(aResource.getProject(), "Error setting a resource property", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Sets the "watch output" property to the given resource (useful on a
+	 * project only). The property is removed when deactivated.
+	 * 
+	 * @param aResource    Resource where to apply the property.
+	 * @param aWatchOutput The watch mode flag
+	 * 
+	 * @return True on success, false on error
+	 */
+	public boolean setWatchOutput(final IResource aResource, final boolean aWatchOutput) {
+
+		if (aResource == null) {
+			return false;
+		}
+
+		try {
+			aResource.setPersistentProperty(WATCH_OUTPUT_PROPERTY, aWatchOutput ? Boolean.TRUE.toString() : null);
+			return true;
+
+		} catch (final CoreException e) {
+			Activator.logError(aResource.getProject(), "Error setting a resource property", e);
+			return false;
+		}
+	}
+
 	/**
 	 * Sets the "metadata file path" property to the given resource (useful on a
 	 * project only). Removes it if the given string is null or empty.
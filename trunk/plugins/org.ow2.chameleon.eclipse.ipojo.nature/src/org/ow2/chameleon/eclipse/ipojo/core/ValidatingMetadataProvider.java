@@ -0,0 +1,346 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.ValidatorHandler;
+
+import org.apache.felix.ipojo.manipulator.MetadataProvider;
+import org.apache.felix.ipojo.manipulator.Reporter;
+import org.apache.felix.ipojo.manipulator.util.Streams;
+import org.apache.felix.ipojo.metadata.Element;
+import org.apache.felix.ipojo.xml.parser.ParseException;
+import org.apache.felix.ipojo.xml.parser.SchemaResolver;
+import org.apache.felix.ipojo.xml.parser.XMLMetadataParser;
+import org.ow2.chameleon.eclipse.ipojo.Activator;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Metadata provider equivalent to the iPOJO StreamMetadataProvider using local
+ * schemas, but validating against a {@link Schema} compiled once for the
+ * plug-in lifetime and shared by all the builds.
+ *
+ * As with the iPOJO parser, a document is validated only if its root element
+ * gives an xsi:schemaLocation hint.
+ *
+ * @author Thomas Calmant
+ */
+public class ValidatingMetadataProvider implements MetadataProvider {
+
+	/**
+	 * Lazy holder of the shared schema
+	 */
+	private static final class SchemaHolder {
+
+		/** The compiled schema, null if it couldn't be built */
+		private static final Schema SCHEMA = buildSchema();
+	}
+
+	/**
+	 * Sends the parse events either to the validator or directly to the
+	 * metadata parser, depending on the root element
+	 */
+	private static final class SchemaSelector implements ContentHandler {
+
+		/** Document locator */
+		private Locator pLocator;
+
+		/** The metadata parser */
+		private final XMLMetadataParser pParser;
+
+		/** Prefix mappings received before the root element */
+		private final List<String[]> pPrefixes = new ArrayList<String[]>();
+
+		/** Selected handler, null before the root element */
+		private ContentHandler pTarget;
+
+		/** The validator, null if the schema is not available */
+		private final ValidatorHandler pValidator;
+
+		/**
+		 * Sets up the selector
+		 *
+		 * @param aParser    The metadata parser
+		 * @param aValidator The validator (can be null)
+		 */
+		private SchemaSelector(final XMLMetadataParser aParser, final ValidatorHandler aValidator) {
+
+			pParser = aParser;
+			pValidator = aValidator;
+		}
+
+		@Override
+		public void characters(final char[] aChars, final int aStart, final int aLength) throws SAXException {
+
+			pTarget.characters(aChars, aStart, aLength);
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+
+			if (pTarget != null) {
+				pTarget.endDocument();
+			}
+		}
+
+		@Override
+		public void endElement(final String aUri, final String aLocalName, final String aQName)
+				throws SAXException {
+
+			pTarget.endElement(aUri, aLocalName, aQName);
+		}
+
+		@Override
+		public void endPrefixMapping(final String aPrefix) throws SAXException {
+
+			pTarget.endPrefixMapping(aPrefix);
+		}
+
+		@Override
+		public void ignorableWhitespace(final char[] aChars, final int aStart, final int aLength)
+				throws SAXException {
+
+			if (pTarget != null) {
+				pTarget.ignorableWhitespace(aChars, aStart, aLength);
+			}
+		}
+
+		@Override
+		public void processingInstruction(final String aTarget, final String aData) throws SAXException {
+
+			if (pTarget != null) {
+				pTarget.processingInstruction(aTarget, aData);
+			}
+		}
+
+		@Override
+		public void setDocumentLocator(final Locator aLocator) {
+
+			pLocator = aLocator;
+		}
+
+		@Override
+		public void skippedEntity(final String aName) throws SAXException {
+
+			if (pTarget != null) {
+				pTarget.skippedEntity(aName);
+			}
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+
+			// Sent to the target with the root element
+		}
+
+		@Override
+		public void startElement(final String aUri, final String aLocalName, final String aQName,
+				final Attributes aAttributes) throws SAXException {
+
+			if (pTarget == null) {
+				// Root element: select the target
+				if (pValidator != null && (aAttributes.getIndex(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI,
+						"schemaLocation") != -1
+						|| aAttributes.getIndex(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI,
+								"noNamespaceSchemaLocation") != -1)) {
+					pValidator.setContentHandler(pParser);
+					pTarget = pValidator;
+				} else {
+					pTarget = pParser;
+				}
+
+				if (pLocator != null) {
+					pTarget.setDocumentLocator(pLocator);
+				}
+
+				pTarget.startDocument();
+				for (final String[] prefix : pPrefixes) {
+					pTarget.startPrefixMapping(prefix[0], prefix[1]);
+				}
+			}
+
+			pTarget.startElement(aUri, aLocalName, aQName, aAttributes);
+		}
+
+		@Override
+		public void startPrefixMapping(final String aPrefix, final String aUri) throws SAXException {
+
+			if (pTarget == null) {
+				pPrefixes.add(new String[] { aPrefix, aUri });
+			} else {
+				pTarget.startPrefixMapping(aPrefix, aUri);
+			}
+		}
+	}
+
+	/** Names of the schemas embedded in the manipulator */
+	private static final String[] SCHEMA_NAMES = { "core.xsd", "composite.xsd", "event-admin.xsd",
+			"extender-pattern.xsd", "jmx.xsd", "temporal.xsd", "whiteboard-pattern.xsd" };
+
+	/**
+	 * Compiles the schemas embedded in the manipulator. The core schema comes
+	 * first, so that the imports of the other schemas are already resolved.
+	 *
+	 * @return The compiled schema, or null on error
+	 */
+	private static Schema buildSchema() {
+
+		final ClassLoader loader = SchemaResolver.class.getClassLoader();
+		final List<Source> sources = new ArrayList<Source>();
+		for (final String name : SCHEMA_NAMES) {
+			final URL url = loader.getResource(SchemaResolver.XSD_PATH + "/" + name);
+			if (url != null) {
+				sources.add(new StreamSource(url.toExternalForm()));
+			}
+		}
+
+		final SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+		factory.setErrorHandler(new ErrorHandler() {
+
+			@Override
+			public void error(final SAXParseException aException) {
+
+				// The embedded composite schema has known errors
+				Activator.logTrace(null, "Error in an iPOJO schema: %s", aException.getMessage());
+			}
+
+			@Override
+			public void fatalError(final SAXParseException aException) throws SAXException {
+
+				throw aException;
+			}
+
+			@Override
+			public void warning(final SAXParseException aException) {
+
+				Activator.logTrace(null, "Warning in an iPOJO schema: %s", aException.getMessage());
+			}
+		});
+
+		try {
+			return factory.newSchema(sources.toArray(new Source[sources.size()]));
+
+		} catch (final SAXException ex) {
+			Activator.logError(null, "Can't compile the iPOJO schemas: the metadata won't be validated", ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Compiles the shared schema, if not yet done
+	 *
+	 * @return True if the schema is available
+	 */
+	public static boolean preloadSchema() {
+
+		return SchemaHolder.SCHEMA != null;
+	}
+
+	/** Metadata input stream */
+	private final InputStream pStream;
+
+	/** Manipulation reporter */
+	private final Reporter pReporter;
+
+	/**
+	 * Sets up the provider
+	 *
+	 * @param aStream   Metadata input stream, closed after parsing
+	 * @param aReporter Manipulation reporter
+	 */
+	public ValidatingMetadataProvider(final InputStream aStream, final Reporter aReporter) {
+
+		pStream = aStream;
+		pReporter = aReporter;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.felix.ipojo.manipulator.MetadataProvider#getMetadatas()
+	 */
+	@Override
+	public List<Element> getMetadatas() throws IOException {
+
+		final List<Element> metadata = new ArrayList<Element>();
+
+		try {
+			final XMLMetadataParser handler = new XMLMetadataParser();
+
+			final Schema schema = SchemaHolder.SCHEMA;
+			ValidatorHandler validator = null;
+			if (schema != null) {
+				validator = schema.newValidatorHandler();
+				validator.setErrorHandler(handler);
+			}
+
+			final SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setNamespaceAware(true);
+
+			final XMLReader parser = factory.newSAXParser().getXMLReader();
+			parser.setContentHandler(new SchemaSelector(handler, validator));
+			parser.setErrorHandler(handler);
+
+			// Parse the XML
+			parser.parse(new InputSource(pStream));
+			final Element[] meta = handler.getMetadata();
+
+			// Add parsed metadata
+			if (meta != null) {
+				metadata.addAll(Arrays.asList(meta));
+			}
+
+			// Output a warning message if no metadata was found
+			if (meta == null || meta.length == 0) {
+				pReporter.warn("Neither component types, nor instances in the XML metadata");
+			}
+
+		} catch (final IOException e) {
+			pReporter.error("Cannot open the metadata input stream: " + e.getMessage());
+		} catch (final ParseException e) {
+			pReporter.error("Parsing error when parsing the XML file: " + e.getMessage());
+		} catch (final SAXParseException e) {
+			pReporter.error("Error during metadata parsing at line " + e.getLineNumber() + " : " + e.getMessage());
+		} catch (final SAXException e) {
+			pReporter.error("Parsing error when parsing (Sax Error) the XML file: " + e.getMessage());
+		} catch (final ParserConfigurationException e) {
+			pReporter.error("Cannot create the XML parser: " + e.getMessage());
+		} finally {
+			Streams.close(pStream);
+		}
+
+		return metadata;
+	}
+}
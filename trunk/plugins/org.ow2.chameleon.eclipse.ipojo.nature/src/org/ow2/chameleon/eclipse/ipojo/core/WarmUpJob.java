@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.felix.ipojo.manipulator.Pojoization;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.ow2.chameleon.eclipse.ipojo.Activator;
+import org.ow2.chameleon.eclipse.ipojo.builder.IPojoNature;
+
+/**
+ * Background preparation of the manipulation pipeline, at plug-in start: loads
+ * the manipulator classes, compiles the iPOJO schemas, checks the persisted
+ * caches against the current files and fills the caches of the iPOJO
+ * projects, so that the first build doesn't pay for it.
+ *
+ * The job can be deactivated by setting the {@link #PREFERENCE_WARM_UP}
+ * preference of the plug-in to false (e.g. in plugin_customization.ini).
+ *
+ * @author Thomas Calmant
+ */
+public final class WarmUpJob extends Job {
+
+	/** Preference activating the warm-up (default: true) */
+	public static final String PREFERENCE_WARM_UP = "warmUp";
+
+	/** Delay before the warm-up, to let the workbench start (milliseconds) */
+	private static final long START_DELAY = 2000;
+
+	/** Classes loaded by the manipulation, besides the Pojoization one */
+	private static final String[] PRELOADED_CLASSES = {
+			"org.apache.felix.ipojo.manipulator.ManipulationEngine",
+			"org.apache.felix.ipojo.manipulator.metadata.AnnotationMetadataProvider",
+			"org.apache.felix.ipojo.manipulation.Manipulator",
+			"org.apache.felix.ipojo.manipulation.ClassManipulator",
+			"org.apache.felix.ipojo.manipulation.ClassChecker",
+			"org.objectweb.asm.ClassReader",
+			"org.objectweb.asm.ClassWriter" };
+
+	/**
+	 * Schedules the warm-up, if it is activated
+	 */
+	public static void start() {
+
+		if (Platform.getPreferencesService().getBoolean(Activator.PLUGIN_ID, PREFERENCE_WARM_UP, true, null)) {
+			new WarmUpJob().schedule(START_DELAY);
+		}
+	}
+
+	/**
+	 * Sets up the job
+	 */
+	private WarmUpJob() {
+
+		super("iPOJO manipulation warm-up");
+		setSystem(true);
+		setPriority(DECORATE);
+	}
+
+	/**
+	 * Lists the open projects having the iPOJO nature
+	 *
+	 * @return The iPOJO projects
+	 */
+	private List<IProject> findIPojoProjects() {
+
+		final List<IProject> projects = new ArrayList<IProject>();
+		for (final IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+			try {
+				if (project.isOpen() && project.hasNature(IPojoNature.NATURE_ID)) {
+					projects.add(project);
+				}
+
+			} catch (final CoreException ex) {
+				// Ignore this project
+			}
+		}
+
+		return projects;
+	}
+
+	/**
+	 * Loads and initializes the main classes of the manipulator
+	 */
+	private void preloadClasses() {
+
+		final ClassLoader loader = Pojoization.class.getClassLoader();
+		for (final String className : PRELOADED_CLASSES) {
+			try {
+				Class.forName(className, true, loader);
+
+			} catch (final ClassNotFoundException | LinkageError ex) {
+				Activator.logTrace(null, "Can't preload %s: %s", className, ex);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.
+	 * IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(final IProgressMonitor aMonitor) {
+
+		final List<IProject> projects = findIPojoProjects();
+		final IManipulationService service = Activator.getManipulationService();
+		if (projects.isEmpty() || service == null) {
+			// Nothing to prepare
+			return Status.OK_STATUS;
+		}
+
+		final SubMonitor monitor = SubMonitor.convert(aMonitor, getName(), projects.size() + 3);
+
+		preloadClasses();
+		monitor.worked(1);
+
+		ValidatingMetadataProvider.preloadSchema();
+		monitor.worked(1);
+
+		// Drop the stored classes which can't be reused anymore
+		final ManipulationCache manipulationCache = Activator.getManipulationCache();
+		if (manipulationCache != null) {
+			Activator.logTrace(null, "Manipulation cache checked: %d entries removed", manipulationCache.validate());
+		}
+		monitor.worked(1);
+
+		for (final IProject project : projects) {
+			if (monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+
+			try {
+				service.warmUp(project);
+
+			} catch (final CoreException ex) {
+				Activator.logTrace(project, "Warm-up failed: %s", ex);
+			}
+
+			monitor.worked(1);
+		}
+
+		Activator.logInfo(null, "Manipulation warmed up for %d project(s)", projects.size());
+		return Status.OK_STATUS;
+	}
+}
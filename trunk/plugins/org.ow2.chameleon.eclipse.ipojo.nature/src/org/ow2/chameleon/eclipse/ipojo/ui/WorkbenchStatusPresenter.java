@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.ui;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.ui.statushandlers.StatusManager;
+import org.ow2.chameleon.eclipse.ipojo.IStatusPresenter;
+
+/**
+ * Status presenter based on the workbench status manager
+ * 
+ * @author Thomas Calmant
+ */
+public class WorkbenchStatusPresenter implements IStatusPresenter {
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.ow2.chameleon.eclipse.ipojo.IStatusPresenter#log(org.eclipse.core.
+	 * runtime.IStatus)
+	 */
+	@Override
+	public void log(final IStatus aStatus) {
+
+		StatusManager.getManager().handle(aStatus);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.ow2.chameleon.eclipse.ipojo.IStatusPresenter#show(org.eclipse.core.
+	 * runtime.IStatus)
+	 */
+	@Override
+	public void show(final IStatus aStatus) {
+
+		StatusManager.getManager().handle(aStatus, StatusManager.SHOW);
+	}
+}
@@ -14,6 +14,7 @@
  */
 package org.ow2.chameleon.eclipse.ipojo.ui.properties;
 
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.layout.GridData;
@@ -24,17 +25,26 @@ import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.dialogs.PropertyPage;
+import org.ow2.chameleon.eclipse.ipojo.Activator;
+import org.ow2.chameleon.eclipse.ipojo.core.OutputWatcher;
 import org.ow2.chameleon.eclipse.ipojo.core.Utilities;
 
 /**
  * Project property page for iPOJO projects.
  * 
- * Allows to change the metadata.xml file to use for manipulation.
+ * Allows to change the metadata.xml file to use for manipulation, the way the
+ * output folder is accessed and if it must be watched.
  * 
  * @author Thomas Calmant
  */
 public class ProjectPropertyPage extends PropertyPage {
 
+	/** Direct output folder I/O check box */
+	private Button pDirectIO;
+
+	/** Watched output folder check box */
+	private Button pWatchOutput;
+
 	/** Metadata file path field */
 	private Text pMetadataPath;
 
@@ -77,6 +87,23 @@ public class ProjectPropertyPage extends PropertyPage {
 		// Add the path selector
 		createPathSelectionGroup(metadataGroup, pMetadataPath, resource);
 
+		// Manipulation options
+		final Group manipulationGroup = new Group(pageRoot, SWT.BORDER);
+		manipulationGroup.setText("Manipulation");
+		manipulationGroup.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true,
+				false));
+		manipulationGroup.setLayout(new GridLayout(1, false));
+
+		pDirectIO = new Button(manipulationGroup, SWT.CHECK);
+		pDirectIO.setText("Read and write the output folder directly "
+				+ "on the file system (faster on large projects)");
+		pDirectIO.setSelection(Utilities.INSTANCE.isDirectIO(resource));
+
+		pWatchOutput = new Button(manipulationGroup, SWT.CHECK);
+		pWatchOutput.setText("Watch the output folder and manipulate the "
+				+ "classes compiled by external tools");
+		pWatchOutput.setSelection(Utilities.INSTANCE.isWatchOutput(resource));
+
 		return pageRoot;
 	}
 
@@ -143,6 +170,8 @@ public class ProjectPropertyPage extends PropertyPage {
 
 		// Reset file path
 		pMetadataPath.setText("");
+		pDirectIO.setSelection(false);
+		pWatchOutput.setSelection(false);
 		super.performDefaults();
 	}
 
@@ -167,6 +196,21 @@ public class ProjectPropertyPage extends PropertyPage {
 			return false;
 		}
 
+		if (!Utilities.INSTANCE.setDirectIO(resource, pDirectIO.getSelection())) {
+			return false;
+		}
+
+		if (!Utilities.INSTANCE.setWatchOutput(resource,
+				pWatchOutput.getSelection())) {
+			return false;
+		}
+
+		// Apply the watch mode
+		final OutputWatcher watcher = Activator.getOutputWatcher();
+		if (watcher != null && resource instanceof IProject) {
+			watcher.update((IProject) resource);
+		}
+
 		return super.performOk();
 	}
 }
@@ -1,4 +1,6 @@
 module org.ow2.chameleon.eclipse.ipojo.tests {
 	requires junit;
 	requires java.logging;
+	requires java.management;
+	requires jdk.management;
 }
\ No newline at end of file
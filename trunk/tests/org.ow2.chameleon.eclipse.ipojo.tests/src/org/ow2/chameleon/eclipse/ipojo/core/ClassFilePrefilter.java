@@ -0,0 +1,428 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cheap class file parser telling if a class can hold iPOJO annotations.
+ *
+ * The iPOJO annotations (and the stereotypes, which are user-defined
+ * annotations) are all class-level annotations: a class without a class-level
+ * annotation outside the java.* packages can't describe a component. Only the
+ * constant pool offsets and the class attributes are read: no ASM visitor is
+ * involved.
+ *
+ * The parser is conservative: a class file it doesn't understand is a
+ * candidate.
+ *
+ * The same parser reads the interfaces table of a class, to recognize the
+ * classes which have already been manipulated.
+ *
+ * This class only depends on the JDK.
+ *
+ * @author Thomas Calmant
+ */
+public final class ClassFilePrefilter {
+
+	/** Class file magic number */
+	private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+	/** Prefix of the descriptors of the JDK annotations (Deprecated, ...) */
+	private static final byte[] JDK_ANNOTATION_PREFIX = "Ljava/".getBytes(StandardCharsets.US_ASCII);
+
+	/** Name of the runtime invisible annotations attribute */
+	private static final byte[] RUNTIME_INVISIBLE_ANNOTATIONS = "RuntimeInvisibleAnnotations"
+			.getBytes(StandardCharsets.US_ASCII);
+
+	/** Name of the runtime visible annotations attribute */
+	private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations"
+			.getBytes(StandardCharsets.US_ASCII);
+
+	/** Constant pool tags */
+	private static final int TAG_UTF8 = 1, TAG_INTEGER = 3, TAG_FLOAT = 4, TAG_LONG = 5, TAG_DOUBLE = 6,
+			TAG_CLASS = 7, TAG_STRING = 8, TAG_FIELDREF = 9, TAG_METHODREF = 10, TAG_INTERFACE_METHODREF = 11,
+			TAG_NAME_AND_TYPE = 12, TAG_METHOD_HANDLE = 15, TAG_METHOD_TYPE = 16, TAG_DYNAMIC = 17,
+			TAG_INVOKE_DYNAMIC = 18, TAG_MODULE = 19, TAG_PACKAGE = 20;
+
+	/**
+	 * Tells if the given class directly implements the given interface, i.e.
+	 * if the interface is in its interfaces table
+	 *
+	 * @param aClassBytes    Class file content
+	 * @param aInterfaceName Internal name of the interface, in ASCII
+	 * @return True if the class implements the interface, false if it doesn't
+	 *         or if the class file can't be parsed
+	 */
+	public static boolean implementsInterface(final byte[] aClassBytes, final byte[] aInterfaceName) {
+
+		try {
+			return new ClassFilePrefilter(aClassBytes).hasInterface(aInterfaceName);
+
+		} catch (final RuntimeException ex) {
+			// Truncated or unknown class file format
+			return false;
+		}
+	}
+
+	/**
+	 * Tells if the given class file may describe an iPOJO component, i.e. if
+	 * it has a class-level annotation outside the java.* packages
+	 *
+	 * @param aClassBytes Class file content
+	 * @return True if the class must be given to the manipulator
+	 */
+	public static boolean isCandidate(final byte[] aClassBytes) {
+
+		try {
+			return new ClassFilePrefilter(aClassBytes).hasCandidateAnnotation();
+
+		} catch (final RuntimeException ex) {
+			// Truncated or unknown class file format: let iPOJO handle it
+			return true;
+		}
+	}
+
+	/** Class file content */
+	private final byte[] pBytes;
+
+	/** Name indexes of the class constants (0 for other constants) */
+	private int[] pClassNameIndexes;
+
+	/** Offsets of the UTF-8 constants content (0 for other constants) */
+	private int[] pUtf8Offsets;
+
+	/**
+	 * Sets up the parser
+	 *
+	 * @param aClassBytes Class file content
+	 */
+	private ClassFilePrefilter(final byte[] aClassBytes) {
+
+		pBytes = aClassBytes;
+	}
+
+	/**
+	 * Checks if the class has a class-level annotation outside java.*
+	 *
+	 * @return True if the class is a candidate
+	 */
+	private boolean hasCandidateAnnotation() {
+
+		if (readInt(0) != CLASS_MAGIC) {
+			throw new IllegalArgumentException("Not a class file");
+		}
+
+		// Skip the constant pool
+		int offset = readConstantPool(8);
+
+		// Access flags, this, super
+		offset += 6;
+
+		// Interfaces
+		offset += 2 + 2 * readUnsignedShort(offset);
+
+		// Fields and methods
+		offset = skipMembers(offset);
+		offset = skipMembers(offset);
+
+		// Class attributes
+		final int nbAttributes = readUnsignedShort(offset);
+		offset += 2;
+		for (int i = 0; i < nbAttributes; i++) {
+
+			final int nameIndex = readUnsignedShort(offset);
+			final int length = readInt(offset + 2);
+			offset += 6;
+
+			if ((utf8Equals(nameIndex, RUNTIME_VISIBLE_ANNOTATIONS)
+					|| utf8Equals(nameIndex, RUNTIME_INVISIBLE_ANNOTATIONS)) && hasCandidateAnnotation(offset)) {
+				return true;
+			}
+
+			offset += length;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks the content of an annotations attribute
+	 *
+	 * @param aOffset Offset of the attribute content
+	 * @return True if an annotation type is outside java.*
+	 */
+	private boolean hasCandidateAnnotation(final int aOffset) {
+
+		final int nbAnnotations = readUnsignedShort(aOffset);
+		int offset = aOffset + 2;
+		for (int i = 0; i < nbAnnotations; i++) {
+
+			if (!utf8StartsWith(readUnsignedShort(offset), JDK_ANNOTATION_PREFIX)) {
+				return true;
+			}
+
+			offset = skipAnnotation(offset);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks if the class has the given interface in its interfaces table
+	 *
+	 * @param aInterfaceName Internal name of the interface
+	 * @return True if the class implements the interface
+	 */
+	private boolean hasInterface(final byte[] aInterfaceName) {
+
+		if (readInt(0) != CLASS_MAGIC) {
+			throw new IllegalArgumentException("Not a class file");
+		}
+
+		// Skip the constant pool, the access flags, this and super
+		int offset = readConstantPool(8) + 6;
+
+		final int nbInterfaces = readUnsignedShort(offset);
+		for (int i = 0; i < nbInterfaces; i++) {
+			offset += 2;
+			if (utf8Equals(pClassNameIndexes[readUnsignedShort(offset)], aInterfaceName)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Reads the constant pool, storing the offsets of the UTF-8 constants and
+	 * the name indexes of the class constants
+	 *
+	 * @param aOffset Offset of the constant pool count
+	 * @return The offset following the constant pool
+	 */
+	private int readConstantPool(final int aOffset) {
+
+		final int poolCount = readUnsignedShort(aOffset);
+		pUtf8Offsets = new int[poolCount];
+		pClassNameIndexes = new int[poolCount];
+
+		int offset = aOffset + 2;
+		for (int i = 1; i < poolCount; i++) {
+
+			final int tag = pBytes[offset];
+			switch (tag) {
+			case TAG_UTF8:
+				pUtf8Offsets[i] = offset + 1;
+				offset += 3 + readUnsignedShort(offset + 1);
+				break;
+
+			case TAG_CLASS:
+				pClassNameIndexes[i] = readUnsignedShort(offset + 1);
+				offset += 3;
+				break;
+
+			case TAG_STRING:
+			case TAG_METHOD_TYPE:
+			case TAG_MODULE:
+			case TAG_PACKAGE:
+				offset += 3;
+				break;
+
+			case TAG_METHOD_HANDLE:
+				offset += 4;
+				break;
+
+			case TAG_INTEGER:
+			case TAG_FLOAT:
+			case TAG_FIELDREF:
+			case TAG_METHODREF:
+			case TAG_INTERFACE_METHODREF:
+			case TAG_NAME_AND_TYPE:
+			case TAG_DYNAMIC:
+			case TAG_INVOKE_DYNAMIC:
+				offset += 5;
+				break;
+
+			case TAG_LONG:
+			case TAG_DOUBLE:
+				// Takes two entries
+				offset += 9;
+				i++;
+				break;
+
+			default:
+				throw new IllegalArgumentException("Unknown constant pool tag: " + tag);
+			}
+		}
+
+		return offset;
+	}
+
+	/**
+	 * Reads a big-endian 32 bits integer
+	 *
+	 * @param aOffset Offset of the integer
+	 * @return The integer
+	 */
+	private int readInt(final int aOffset) {
+
+		return (pBytes[aOffset] & 0xFF) << 24 | (pBytes[aOffset + 1] & 0xFF) << 16 | (pBytes[aOffset + 2] & 0xFF) << 8
+				| pBytes[aOffset + 3] & 0xFF;
+	}
+
+	/**
+	 * Reads a big-endian unsigned 16 bits integer
+	 *
+	 * @param aOffset Offset of the integer
+	 * @return The integer
+	 */
+	private int readUnsignedShort(final int aOffset) {
+
+		return (pBytes[aOffset] & 0xFF) << 8 | pBytes[aOffset + 1] & 0xFF;
+	}
+
+	/**
+	 * Compares the class bytes at the given offset with the given value
+	 *
+	 * @param aOffset Offset in the class bytes
+	 * @param aValue  Expected bytes
+	 * @return True if the bytes match
+	 */
+	private boolean regionMatches(final int aOffset, final byte[] aValue) {
+
+		for (int i = 0; i < aValue.length; i++) {
+			if (pBytes[aOffset + i] != aValue[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Skips an annotation structure
+	 *
+	 * @param aOffset Offset of the annotation type index
+	 * @return The offset following the annotation
+	 */
+	private int skipAnnotation(final int aOffset) {
+
+		final int nbPairs = readUnsignedShort(aOffset + 2);
+		int offset = aOffset + 4;
+		for (int i = 0; i < nbPairs; i++) {
+			// Element name index, then its value
+			offset = skipElementValue(offset + 2);
+		}
+
+		return offset;
+	}
+
+	/**
+	 * Skips an annotation element value
+	 *
+	 * @param aOffset Offset of the element value tag
+	 * @return The offset following the element value
+	 */
+	private int skipElementValue(final int aOffset) {
+
+		final char tag = (char) pBytes[aOffset];
+		switch (tag) {
+		case 'e':
+			// Enumeration: type and constant names
+			return aOffset + 5;
+
+		case '@':
+			return skipAnnotation(aOffset + 1);
+
+		case '[':
+			final int nbValues = readUnsignedShort(aOffset + 1);
+			int offset = aOffset + 3;
+			for (int i = 0; i < nbValues; i++) {
+				offset = skipElementValue(offset);
+			}
+			return offset;
+
+		case 'B':
+		case 'C':
+		case 'D':
+		case 'F':
+		case 'I':
+		case 'J':
+		case 'S':
+		case 'Z':
+		case 's':
+		case 'c':
+			// Constant index
+			return aOffset + 3;
+
+		default:
+			throw new IllegalArgumentException("Unknown element value tag: " + tag);
+		}
+	}
+
+	/**
+	 * Skips the fields or the methods table
+	 *
+	 * @param aOffset Offset of the members count
+	 * @return The offset following the table
+	 */
+	private int skipMembers(final int aOffset) {
+
+		final int nbMembers = readUnsignedShort(aOffset);
+		int offset = aOffset + 2;
+		for (int i = 0; i < nbMembers; i++) {
+
+			// Access flags, name and descriptor
+			final int nbAttributes = readUnsignedShort(offset + 6);
+			offset += 8;
+			for (int j = 0; j < nbAttributes; j++) {
+				offset += 6 + readInt(offset + 2);
+			}
+		}
+
+		return offset;
+	}
+
+	/**
+	 * Compares a UTF-8 constant to the given ASCII bytes
+	 *
+	 * @param aIndex Constant pool index
+	 * @param aValue ASCII value
+	 * @return True if the constant has the given value
+	 */
+	private boolean utf8Equals(final int aIndex, final byte[] aValue) {
+
+		final int offset = pUtf8Offsets[aIndex];
+		return offset != 0 && readUnsignedShort(offset) == aValue.length && regionMatches(offset + 2, aValue);
+	}
+
+	/**
+	 * Checks if a UTF-8 constant starts with the given ASCII bytes
+	 *
+	 * @param aIndex  Constant pool index
+	 * @param aPrefix ASCII prefix
+	 * @return True if the constant starts with the given prefix
+	 */
+	private boolean utf8StartsWith(final int aIndex, final byte[] aPrefix) {
+
+		final int offset = pUtf8Offsets[aIndex];
+		if (offset == 0) {
+			throw new IllegalArgumentException("Not a UTF-8 constant: " + aIndex);
+		}
+
+		return readUnsignedShort(offset) >= aPrefix.length && regionMatches(offset + 2, aPrefix);
+	}
+}
@@ -0,0 +1,575 @@
+/*
+ * Copyright 2015 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.eclipse.ipojo.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Workspace-level store of manipulated classes, addressed by the content of
+ * the original class and the fingerprint of the class path used to
+ * manipulate it.
+ *
+ * When a project contains a class which has already been manipulated in
+ * another project, the stored result is given to the manipulator instead of
+ * the original class: being already manipulated, it isn't transformed again.
+ * A class is stored with its manipulated inner classes, which must also be
+ * identical to be reused, and with the hierarchy of the types loaded to
+ * compute its stack map frames (see {@link RecordingClassLoader}), which must
+ * resolve the same way in the reusing project.
+ *
+ * The store is kept in the plug-in state location, one file per class. Its
+ * size is limited by the {@link #PREFERENCE_CACHE_SIZE} preference (in MiB, 0
+ * to deactivate it), the least recently used classes being evicted first.
+ *
+ * This class only depends on the JDK.
+ *
+ * @author Thomas Calmant
+ */
+public final class ManipulationCache {
+
+	/**
+	 * A stored manipulation result
+	 */
+	public static final class Entry {
+
+		/** Hierarchy of the types loaded by the manipulation: name -&gt; description */
+		private final Map<String, String> pHierarchies;
+
+		/** Manipulated inner classes */
+		private final List<InnerEntry> pInners;
+
+		/** Manipulated class */
+		private final byte[] pOutput;
+
+		/**
+		 * Sets up the entry
+		 *
+		 * @param aOutput      Manipulated class
+		 * @param aInners      Manipulated inner classes
+		 * @param aHierarchies Hierarchy of the types loaded by the manipulation
+		 *                     (see {@link RecordingClassLoader#describe(String)})
+		 */
+		public Entry(final byte[] aOutput, final List<InnerEntry> aInners, final Map<String, String> aHierarchies) {
+
+			pOutput = aOutput;
+			pInners = aInners;
+			pHierarchies = aHierarchies;
+		}
+
+		/**
+		 * Returns the hierarchy of the types loaded by the manipulation
+		 *
+		 * @return type name -&gt; hierarchy description
+		 */
+		public Map<String, String> getHierarchies() {
+
+			return Collections.unmodifiableMap(pHierarchies);
+		}
+
+		/**
+		 * Returns the manipulated inner classes
+		 *
+		 * @return the inner classes
+		 */
+		public List<InnerEntry> getInners() {
+
+			return Collections.unmodifiableList(pInners);
+		}
+
+		/**
+		 * Returns the manipulated class
+		 *
+		 * @return the manipulated class content
+		 */
+		public byte[] getOutput() {
+
+			return pOutput;
+		}
+
+		/**
+		 * Computes the size of the entry
+		 *
+		 * @return The number of stored bytes
+		 */
+		private long size() {
+
+			long size = pOutput.length;
+			for (final InnerEntry inner : pInners) {
+				size += inner.pInputHash.length + inner.pOutput.length + inner.pPath.length();
+			}
+
+			for (final Map.Entry<String, String> hierarchy : pHierarchies.entrySet()) {
+				size += hierarchy.getKey().length() + hierarchy.getValue().length();
+			}
+
+			return size;
+		}
+	}
+
+	/**
+	 * A stored inner class
+	 */
+	public static final class InnerEntry {
+
+		/** Hash of the original inner class */
+		private final byte[] pInputHash;
+
+		/** Manipulated inner class */
+		private final byte[] pOutput;
+
+		/** Output-relative path of the inner class */
+		private final String pPath;
+
+		/**
+		 * Sets up the entry
+		 *
+		 * @param aPath      Output-relative path of the inner class
+		 * @param aInputHash Hash of the original inner class
+		 * @param aOutput    Manipulated inner class
+		 */
+		public InnerEntry(final String aPath, final byte[] aInputHash, final byte[] aOutput) {
+
+			pPath = aPath;
+			pInputHash = aInputHash;
+			pOutput = aOutput;
+		}
+
+		/**
+		 * Returns the hash of the original inner class
+		 *
+		 * @return the hash of the original class
+		 */
+		public byte[] getInputHash() {
+
+			return pInputHash;
+		}
+
+		/**
+		 * Returns the manipulated inner class
+		 *
+		 * @return the manipulated content
+		 */
+		public byte[] getOutput() {
+
+			return pOutput;
+		}
+
+		/**
+		 * Returns the output-relative path of the inner class
+		 *
+		 * @return the path of the inner class
+		 */
+		public String getPath() {
+
+			return pPath;
+		}
+	}
+
+	/** Name of the store folder, in the plug-in state location */
+	public static final String CACHE_FOLDER = "manipulated";
+
+	/** Default maximum size of the store, in MiB */
+	public static final long DEFAULT_CACHE_SIZE = 64;
+
+	/** Store file extension */
+	private static final String ENTRY_EXTENSION = ".entry";
+
+	/** Temporary store file extension */
+	private static final String TEMP_EXTENSION = ".tmp";
+
+	/** Store file format version */
+	private static final int FORMAT_VERSION = 2;
+
+	/** Hexadecimal digits */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/** Internal name of the interface implemented by the manipulated classes */
+	private static final byte[] POJO_INTERFACE = "org/apache/felix/ipojo/Pojo".getBytes(StandardCharsets.US_ASCII);
+
+	/** Preference giving the maximum size of the store, in MiB */
+	public static final String PREFERENCE_CACHE_SIZE = "manipulationCacheSize";
+
+	/**
+	 * Computes the fingerprint of a class path: the manipulator version and
+	 * the JAR files, identified by their path, size and modification date.
+	 *
+	 * The class folders are ignored, so that projects compiling the same
+	 * sources can share their results: the types read from them are checked
+	 * on reuse, with the hierarchies stored in the entries.
+	 *
+	 * @param aClasspath          A resolved class path
+	 * @param aManipulatorVersion Version of the manipulator, can be null
+	 * @return The class path fingerprint
+	 */
+	public static long fingerprint(final Iterable<String> aClasspath, final String aManipulatorVersion) {
+
+		long hash = FORMAT_VERSION;
+		if (aManipulatorVersion != null) {
+			hash = mix(hash, aManipulatorVersion);
+		}
+
+		for (final String entry : aClasspath) {
+			final File file = new File(entry);
+			if (!file.isDirectory()) {
+				hash = mix(hash, entry);
+				hash = 31 * hash + file.length();
+				hash = 31 * hash + file.lastModified();
+			}
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Computes the SHA-256 hash of a class file
+	 *
+	 * @param aContent A class file content
+	 * @return The hash of the content
+	 */
+	public static byte[] hash(final byte[] aContent) {
+
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(aContent);
+
+		} catch (final NoSuchAlgorithmException ex) {
+			// Mandatory algorithm
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Tests if the given class file has already been manipulated
+	 *
+	 * @param aClassFile A class file
+	 * @return True if the iPOJO Pojo interface is in the interfaces table of
+	 *         the class
+	 */
+	public static boolean isManipulated(final byte[] aClassFile) {
+
+		return ClassFilePrefilter.implementsInterface(aClassFile, POJO_INTERFACE);
+	}
+
+	/**
+	 * Computes the key of a class in the store
+	 *
+	 * @param aInputHash   Hash of the original class
+	 * @param aFingerprint Fingerprint of the manipulation class path
+	 * @return The store key
+	 */
+	public static String key(final byte[] aInputHash, final long aFingerprint) {
+
+		final StringBuilder builder = new StringBuilder(aInputHash.length * 2 + 17);
+		for (final byte value : aInputHash) {
+			builder.append(HEX_DIGITS[(value >> 4) & 0xF]).append(HEX_DIGITS[value & 0xF]);
+		}
+
+		return builder.append('-').append(Long.toHexString(aFingerprint)).toString();
+	}
+
+	/**
+	 * Mixes a string in a hash
+	 *
+	 * @param aHash  Current hash
+	 * @param aValue Value to add
+	 * @return The new hash
+	 */
+	private static long mix(final long aHash, final String aValue) {
+
+		long hash = aHash;
+		for (int i = 0; i < aValue.length(); i++) {
+			hash = 31 * hash + aValue.charAt(i);
+		}
+
+		return hash;
+	}
+
+	/** Store folder */
+	private final File pFolder;
+
+	/** Stored entries, least recently used first: key -&gt; file size */
+	private final Map<String, Long> pIndex = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+	/** Maximum size of the store, in bytes */
+	private final long pMaxSize;
+
+	/** Current size of the store, in bytes */
+	private long pSize;
+
+	/**
+	 * Sets up the store. Its index must then be loaded with {@link #load()}.
+	 *
+	 * @param aFolder  Store folder
+	 * @param aMaxSize Maximum size of the store, in bytes
+	 */
+	public ManipulationCache(final File aFolder, final long aMaxSize) {
+
+		pFolder = aFolder;
+		pMaxSize = aMaxSize;
+	}
+
+	/**
+	 * Forgets all the stored classes
+	 */
+	public synchronized void clear() {
+
+		for (final String key : pIndex.keySet()) {
+			getFile(key).delete();
+		}
+
+		pIndex.clear();
+		pSize = 0;
+	}
+
+	/**
+	 * Removes the least recently used entries until the store fits its
+	 * maximum size
+	 */
+	private void evict() {
+
+		final Iterator<Map.Entry<String, Long>> iterator = pIndex.entrySet().iterator();
+		while (pSize > pMaxSize && iterator.hasNext()) {
+			final Map.Entry<String, Long> eldest = iterator.next();
+			getFile(eldest.getKey()).delete();
+			pSize -= eldest.getValue();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Retrieves a stored manipulation result. An unreadable entry is removed
+	 * from the store.
+	 *
+	 * @param aKey Store key (see {@link #key(byte[], long)})
+	 * @return The stored result, or null
+	 */
+	public synchronized Entry get(final String aKey) {
+
+		// Not containsKey(): only get() moves the entry to the end of the order
+		if (pIndex.get(aKey) == null) {
+			return null;
+		}
+
+		final File file = getFile(aKey);
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+
+			if (input.readInt() != FORMAT_VERSION) {
+				throw new IOException("Unknown format");
+			}
+
+			final byte[] output = readBytes(input);
+
+			final int nbInners = input.readInt();
+			final List<InnerEntry> inners = new ArrayList<InnerEntry>(nbInners);
+			for (int i = 0; i < nbInners; i++) {
+				final String path = input.readUTF();
+				final byte[] inputHash = readBytes(input);
+				inners.add(new InnerEntry(path, inputHash, readBytes(input)));
+			}
+
+			final int nbHierarchies = input.readInt();
+			final Map<String, String> hierarchies = new LinkedHashMap<String, String>();
+			for (int i = 0; i < nbHierarchies; i++) {
+				final String type = input.readUTF();
+				hierarchies.put(type, input.readUTF());
+			}
+
+			// Keep the order of use after a restart
+			file.setLastModified(System.currentTimeMillis());
+			return new Entry(output, inners, hierarchies);
+
+		} catch (final IOException ex) {
+			// Corrupted entry
+			pSize -= pIndex.remove(aKey);
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Computes the store file of an entry
+	 *
+	 * @param aKey Store key
+	 * @return The store file
+	 */
+	private File getFile(final String aKey) {
+
+		return new File(pFolder, aKey + ENTRY_EXTENSION);
+	}
+
+	/**
+	 * Loads the index of the store, ordered by last use
+	 */
+	public synchronized void load() {
+
+		final File[] files = pFolder.listFiles((aDir, aName) -> aName.endsWith(ENTRY_EXTENSION));
+		if (files == null) {
+			return;
+		}
+
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (final File file : files) {
+			final String name = file.getName();
+			final long size = file.length();
+			pIndex.put(name.substring(0, name.length() - ENTRY_EXTENSION.length()), size);
+			pSize += size;
+		}
+
+		evict();
+	}
+
+	/**
+	 * Stores a manipulation result, replacing the previous one: a result is
+	 * only stored when the stored one couldn't be reused
+	 *
+	 * @param aKey   Store key (see {@link #key(byte[], long)})
+	 * @param aEntry The manipulation result
+	 * @throws IOException Error writing the store file
+	 */
+	public synchronized void put(final String aKey, final Entry aEntry) throws IOException {
+
+		if (aEntry.size() > pMaxSize) {
+			return;
+		}
+
+		pFolder.mkdirs();
+		final File file = getFile(aKey);
+		final File tempFile = new File(pFolder, aKey + TEMP_EXTENSION);
+
+		try {
+			try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+
+				output.writeInt(FORMAT_VERSION);
+				writeBytes(output, aEntry.pOutput);
+
+				output.writeInt(aEntry.pInners.size());
+				for (final InnerEntry inner : aEntry.pInners) {
+					output.writeUTF(inner.pPath);
+					writeBytes(output, inner.pInputHash);
+					writeBytes(output, inner.pOutput);
+				}
+
+				output.writeInt(aEntry.pHierarchies.size());
+				for (final Map.Entry<String, String> hierarchy : aEntry.pHierarchies.entrySet()) {
+					output.writeUTF(hierarchy.getKey());
+					output.writeUTF(hierarchy.getValue());
+				}
+			}
+
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		} catch (final IOException ex) {
+			tempFile.delete();
+			throw ex;
+		}
+
+		final long size = file.length();
+		final Long previousSize = pIndex.put(aKey, size);
+		if (previousSize != null) {
+			pSize -= previousSize;
+		}
+
+		pSize += size;
+		evict();
+	}
+
+	/**
+	 * Checks the index against the store files: the entries whose file is
+	 * missing, unreadable or of another format version are removed, as the
+	 * temporary files left by an interrupted store
+	 *
+	 * @return The number of removed entries
+	 */
+	public synchronized int validate() {
+
+		int nbRemoved = 0;
+		final Iterator<Map.Entry<String, Long>> iterator = pIndex.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry<String, Long> indexEntry = iterator.next();
+			final File file = getFile(indexEntry.getKey());
+
+			boolean valid;
+			try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				valid = file.length() == indexEntry.getValue() && input.readInt() == FORMAT_VERSION;
+
+			} catch (final IOException ex) {
+				valid = false;
+			}
+
+			if (!valid) {
+				file.delete();
+				pSize -= indexEntry.getValue();
+				iterator.remove();
+				nbRemoved++;
+			}
+		}
+
+		final File[] tempFiles = pFolder.listFiles((aDir, aName) -> aName.endsWith(TEMP_EXTENSION));
+		if (tempFiles != null) {
+			for (final File tempFile : tempFiles) {
+				tempFile.delete();
+			}
+		}
+
+		return nbRemoved;
+	}
+
+	/**
+	 * Reads a length-prefixed byte array
+	 *
+	 * @param aInput Input stream
+	 * @return The read array
+	 * @throws IOException Error reading the stream
+	 */
+	private byte[] readBytes(final DataInputStream aInput) throws IOException {
+
+		final byte[] content = new byte[aInput.readInt()];
+		aInput.readFully(content);
+		return content;
+	}
+
+	/**
+	 * Writes a length-prefixed byte array
+	 *
+	 * @param aOutput  Output stream
+	 * @param aContent Array to write
+	 * @throws IOException Error writing the stream
+	 */
+	private void writeBytes(final DataOutputStream aOutput, final byte[] aContent) throws IOException {
+
+		aOutput.writeInt(aContent.length);
+		aOutput.write(aContent);
+	}
+}
@@ -10,11 +10,13 @@ import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
-import java.util.jar.Attributes;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.Attributes.Name;
 import java.util.jar.Manifest;
 
@@ -34,7 +36,13 @@ import java.util.jar.Manifest;
  * without any consideration of their meening and their format
  * 
  * The formting of the attributes as a set of sized lines is always the
- * reponsability of the java Manifest class (since 1.4)
+ * reponsability of the java Manifest class (since 1.4), except for the new
+ * attributes, encoded by the ManifestLineEncoder class following the same
+ * rules
+ * 
+ * The individual sections ("Name: ..." entries, signature digests) are read in
+ * the same pass and kept as they are, as byte spans written back after the
+ * main attributes, in their original order or sorted by name.
  * 
  * 
  * @author ogattaz
@@ -49,8 +57,15 @@ public class SortedManifestStreamer {
 	public class Attribute implements Comparable<Attribute> {
 
 		byte[] pContent;
+
+		/** 64-bit hash of the content, updated with it */
+		long pContentHash;
+
 		final String pId;
 
+		/** Interned name of the attribute */
+		final Name pName;
+
 		/**
 		 * @param aId
 		 * @param aContent
@@ -58,42 +73,27 @@ public class SortedManifestStreamer {
 		Attribute(final byte[] aContent) {
 			super();
 			pId = extractId(aContent);
+			pName = internName(pId);
 			pContent = aContent;
+			pContentHash = hashContent(FNV_OFFSET_BASIS, aContent);
 		}
 
 		/**
-		 * @param aId
-		 * @param aValue
-		 * @throws IOException
+		 * @param aBuffer the buffer containing the lines of the attribute
+		 * @param aOffset the offset of the first line
+		 * @param aLength the length of the lines
 		 */
-		Attribute(final String aId, final String aValue) throws IOException {
-			this(toAttributeContent(aId, aValue));
+		Attribute(final byte[] aBuffer, final int aOffset, final int aLength) {
+			this(Arrays.copyOfRange(aBuffer, aOffset, aOffset + aLength));
 		}
 
 		/**
-		 * @param aContent
-		 * @return
+		 * @param aId
+		 * @param aValue
 		 * @throws IOException
 		 */
-		int appendContent(final byte[] aContent) throws IOException {
-
-			validBuffer(aContent, "appendContent");
-
-			if (aContent[0] != ' ') {
-				throw new RuntimeException(String.format(
-						"Unable to add a content of the attribute [%s] the new content doesn't start with a space character",
-						getId()));
-			}
-
-			byte[] wNewContent = new byte[pContent.length + aContent.length];
-			// previous content
-			System.arraycopy(pContent, 0, wNewContent, 0, pContent.length);
-			// appended content
-			System.arraycopy(aContent, 0, wNewContent, pContent.length, aContent.length);
-
-			pContent = wNewContent;
-
-			return aContent.length;
+		Attribute(final String aId, final String aValue) throws IOException {
+			this(toAttributeContent(aId, aValue));
 		}
 
 		/**
@@ -109,8 +109,13 @@ public class SortedManifestStreamer {
 		 */
 		@Override
 		public boolean equals(Object aObject) {
+			if (aObject == this) {
+				return true;
+			}
 			if (aObject instanceof Attribute) {
-				return Arrays.equals(pContent, ((Attribute) aObject).pContent);
+				Attribute wOther = (Attribute) aObject;
+				// different hashes: no need to compare the whole content
+				return pContentHash == wOther.pContentHash && Arrays.equals(pContent, wOther.pContent);
 			} else {
 				return super.equals(aObject);
 			}
@@ -138,6 +143,13 @@ public class SortedManifestStreamer {
 			return pContent;
 		}
 
+		/**
+		 * @return the 64-bit FNV-1a hash of the content of the attribute
+		 */
+		public long getContentHash() {
+			return pContentHash;
+		}
+
 		/**
 		 * @return the if of the attribute
 		 */
@@ -149,7 +161,7 @@ public class SortedManifestStreamer {
 		 * @return the Name of the attribute
 		 */
 		public Name getName() {
-			return new Name(getId());
+			return pName;
 		}
 
 		/**
@@ -159,6 +171,14 @@ public class SortedManifestStreamer {
 			return new String(getValue(getContent()), StandardCharsets.UTF_8).replace(LINE_BREAK, "");
 		}
 
+		/**
+		 *
+		 */
+		@Override
+		public int hashCode() {
+			return (int) (pContentHash ^ (pContentHash >>> 32));
+		}
+
 		/**
 		 * @param aContent
 		 * @return
@@ -193,6 +213,7 @@ public class SortedManifestStreamer {
 						getId(), wId));
 			}
 			pContent = aContent;
+			pContentHash = hashContent(FNV_OFFSET_BASIS, aContent);
 
 			return aContent.length;
 		}
@@ -247,7 +268,7 @@ public class SortedManifestStreamer {
 	 * Simplified reader.
 	 * 
 	 * As the manifest files are never too big to be put in memory (!...) all the
-	 * bytes are read at first.
+	 * bytes are read at first, then the sections are split in one pass.
 	 * 
 	 * Manifest Specification:
 	 * 
@@ -270,178 +291,116 @@ public class SortedManifestStreamer {
 	 */
 	class ManifestReader {
 
-		private final InputStream pInputStream;
-		private int pMax = 0;
-		private byte[] pMf = null;
-		private int pMfLen = 0;
+		private final byte[] pMf;
 		private int pPos = 0;
 
 		/**
-		 * @param aInputStream
-		 * @throws IOException
+		 * @param aContent the whole content of the manifest
 		 */
-		ManifestReader(final InputStream aInputStream) throws IOException {
+		ManifestReader(final byte[] aContent) {
 			super();
 
-			pInputStream = aInputStream;
+			pMf = aContent;
 		}
 
 		/**
-		 * @param wLine
+		 * 
+		 * Manifest Specification:
+		 * 
+		 * newline: CR LF | LF | CR (not followed by LF)
+		 * 
+		 * @param aPos the position of the beginning of a line
+		 * @return the position of the beginning of the next line
+		 * @see https://docs.oracle.com/en/java/javase/17/docs/specs/jar/jar.html
 		 */
-		void dumpLine(byte[] wLine) {
-			int wMax = wLine.length;
-			StringBuilder wSB = new StringBuilder();
-			wSB.append('[');
-			for (int wIdx = 0; wIdx < wMax; wIdx++) {
-				byte wByte = wLine[wIdx];
-				if (wByte == ' ') {
-					wSB.append(".");
-				} else if (wByte == '\n') {
-					wSB.append("\\n");
-				} else if (wByte == '\r') {
-					wSB.append("\\r");
-				} else {
-					wSB.append((char) wByte);
+		private int endOfLine(final int aPos) {
+			int wPos = aPos;
+			while (wPos < pMf.length) {
+				byte wByte = pMf[wPos++];
+				// LF
+				if (wByte == '\n') {
+					break;
 				}
-			}
-			wSB.append(']');
-			System.out.println(wSB.toString());
-		}
-
-		/**
-		 * @param aBuffer
-		 * @return the index of the last LF | CR found in the given buffer
-		 * @throws IOException
-		 */
-		private int findLastCrOrLf(final byte[] aBuffer) throws IOException {
-
-			for (int wIdx = aBuffer.length - 1; wIdx > 0; wIdx--) {
-				if (aBuffer[wIdx] == '\r' || aBuffer[wIdx] == '\n') {
-					return wIdx;
+				// CR | CR LF
+				if (wByte == '\r') {
+					if (wPos < pMf.length && pMf[wPos] == '\n') {
+						wPos++;
+					}
+					break;
 				}
 			}
-			throw new IOException("no CR or LF in the given buffer");
+			return wPos;
 		}
 
 		/**
-		 * @param aLine
-		 * @return
+		 * @param aPos the position of the beginning of a line
+		 * @return true if the line is empty or if the end of the content is
+		 *         reached
 		 */
-		boolean isEndLine(final byte[] aLine) {
-			return aLine != null && aLine.length <= 2 && (aLine[0] == '\r' || aLine[0] == '\n');
+		boolean isEndLine(final int aPos) {
+			return aPos >= pMf.length || pMf[aPos] == '\r' || pMf[aPos] == '\n';
 		}
 
 		/**
-		 * @param aLine
-		 * @return
+		 * @param aPos the position of the beginning of a line
+		 * @return true if the line continues the previous one
 		 */
-		boolean isLineAttribute(final byte[] aLine) {
-
-			return aLine != null && aLine.length > 2 && aLine[0] != ' ';
+		boolean isFollowLine(final int aPos) {
+			return aPos < pMf.length && pMf[aPos] == ' ';
 		}
 
 		/**
-		 * @return
+		 * @return the attributes of the main section
 		 */
 		OrderedAttributes read() throws IOException {
 			OrderedAttributes wSortedAttributes = new OrderedAttributes();
 
 			pPos = 0;
-			boolean wContinue = true;
-			Attribute wAttribute = null;
-			while (wContinue) {
+			while (!isEndLine(pPos)) {
 
-				if (pPos == pMax) {
-					readInStream();
+				if (isFollowLine(pPos)) {
+					throw new IOException("wrong manifest content, a follow line appeared before an attribute line");
 				}
 
-				byte[] wLine = readOneLine();
-
-				wContinue = !isEndLine(wLine);
-
-				if (wContinue) {
-					if (isLineAttribute(wLine)) {
-						wAttribute = new Attribute(wLine);
-						wSortedAttributes.put(wAttribute.getName(), wAttribute);
-					} else {
-						if (wAttribute == null) {
-							throw new IOException(
-									"wrong manifest content, a follow line appeared before an attribute line");
-						}
-						wAttribute.appendContent(wLine);
-					}
+				// the attribute line and its follow lines
+				int wStart = pPos;
+				pPos = endOfLine(pPos);
+				while (isFollowLine(pPos)) {
+					pPos = endOfLine(pPos);
 				}
+
+				Attribute wAttribute = new Attribute(pMf, wStart, pPos - wStart);
+				wSortedAttributes.put(wAttribute.getName(), wAttribute);
 			}
+
+			// the empty line closing the main section
+			pPos = endOfLine(pPos);
+
 			return wSortedAttributes;
 		}
 
 		/**
-		 * read up to 8192 bytes in the inpustream
-		 * 
-		 * @return the number of bytes set or added in pMf
-		 * @throws IOException
+		 * @return the individual sections following the main section, in their
+		 *         original order
 		 */
-		private int readInStream() throws IOException {
-
-			byte[] wBuffer = pInputStream.readNBytes(8192);
+		List<Section> readSections() {
+			List<Section> wSections = new ArrayList<Section>();
 
-			//
-			if (pMf != null && pMax < pMfLen) {
-				int wRemainder = pMfLen - pMax;
-				byte[] wSigmaBuffer = new byte[wBuffer.length + wRemainder];
-				// previous content
-				System.arraycopy(pMf, pMax, wSigmaBuffer, 0, wRemainder);
-				// appended content
-				System.arraycopy(wBuffer, 0, wSigmaBuffer, wRemainder, wBuffer.length);
-				pMf = wSigmaBuffer;
-			} else {
-				pMf = wBuffer;
+			while (pPos < pMf.length) {
 
-			}
-			pMfLen = pMf.length;
-			// search last LF | CR
-			pMax = findLastCrOrLf(pMf) + 1;
-			pPos = 0;
-			return wBuffer.length;
-		}
+				if (isEndLine(pPos)) {
+					// additional empty line
+					pPos = endOfLine(pPos);
+					continue;
+				}
 
-		/**
-		 * 
-		 * Manifest Specification:
-		 * 
-		 * newline: CR LF | LF | CR (not followed by LF)
-		 * 
-		 * @return
-		 * @see https://docs.oracle.com/en/java/javase/17/docs/specs/jar/jar.html
-		 */
-		private byte[] readOneLine() {
-			byte wByte = 0;
-			int wPos = pPos;
-			int wPosStart = wPos;
-			while (pPos < pMax) {
-				wPos++;
-				wByte = pMf[wPos];
-				// LF | CR
-				if (wByte == '\n' || wByte == '\r') {
-					break;
+				int wStart = pPos;
+				while (!isEndLine(pPos)) {
+					pPos = endOfLine(pPos);
 				}
+				wSections.add(new Section(Arrays.copyOfRange(pMf, wStart, pPos)));
 			}
-			// CR LF
-			if (wByte == '\r' && wPos < pMax && pMf[wPos + 1] == '\n') {
-				wPos++;
-			}
-
-			int wLen = wPos - wPosStart + 1;
-			byte[] wLine = new byte[wLen];
-			System.arraycopy(pMf, wPosStart, wLine, 0, wLen);
-
-			// debug => dumpLine(wLine);
-
-			// for the next line
-			pPos = wPos + 1;
-
-			return wLine;
+			return wSections;
 		}
 	}
 
@@ -457,6 +416,10 @@ public class SortedManifestStreamer {
 		@Override
 		public int compare(Name aName1, Name aName2) {
 
+			// the names are interned
+			if (aName1 == aName2) {
+				return 0;
+			}
 			return aName1.toString().compareTo(aName2.toString());
 		}
 	}
@@ -469,6 +432,9 @@ public class SortedManifestStreamer {
 
 		private static final long serialVersionUID = 394914480441542464L;
 
+		/** rank of the iPOJO attribute, -2 if it has to be computed again */
+		private int pIPojoRank = -2;
+
 		/**
 		 * 
 		 */
@@ -477,12 +443,21 @@ public class SortedManifestStreamer {
 			super(new NameComparator());
 		}
 
+		/**
+		 *
+		 */
+		@Override
+		public void clear() {
+			pIPojoRank = -2;
+			super.clear();
+		}
+
 		/**
 		 * @param aKey
 		 * @return
 		 */
 		boolean containsKey(final String aKey) {
-			return super.containsKey(new Attributes.Name(aKey));
+			return super.containsKey(internName(aKey));
 		}
 
 		/**
@@ -490,7 +465,27 @@ public class SortedManifestStreamer {
 		 * @return
 		 */
 		Attribute get(final String aKey) {
-			return super.get(new Name(aKey));
+			return super.get(internName(aKey));
+		}
+
+		/**
+		 * @return the rank of the iPOJO attribute in the sorted names, -1 if
+		 *         absent. Computed once until the set of names changes.
+		 */
+		int getIPojoRank() {
+
+			if (pIPojoRank == -2) {
+				pIPojoRank = -1;
+				int wRank = 0;
+				for (Name wKey : keySet()) {
+					if (wKey == NAME_IPOJO) {
+						pIPojoRank = wRank;
+						break;
+					}
+					wRank++;
+				}
+			}
+			return pIPojoRank;
 		}
 
 		/**
@@ -519,7 +514,32 @@ public class SortedManifestStreamer {
 		 */
 		String getStringValue(final String aKey) {
 
-			return get(new Name(aKey)).getStringValue();
+			return get(aKey).getStringValue();
+		}
+
+		/**
+		 *
+		 */
+		@Override
+		public Attribute put(final Name aKey, final Attribute aValue) {
+			Attribute wPrevious = super.put(aKey, aValue);
+			if (wPrevious == null) {
+				// a new name: the ranks changed
+				pIPojoRank = -2;
+			}
+			return wPrevious;
+		}
+
+		/**
+		 *
+		 */
+		@Override
+		public Attribute remove(final Object aKey) {
+			Attribute wRemoved = super.remove(aKey);
+			if (wRemoved != null) {
+				pIPojoRank = -2;
+			}
+			return wRemoved;
 		}
 
 		/**
@@ -527,7 +547,7 @@ public class SortedManifestStreamer {
 		 * @return
 		 */
 		Attribute remove(final String aKey) {
-			return super.remove(new Attributes.Name(ATTRIBUTE_IPOJO_NAME));
+			return remove(internName(aKey));
 		}
 
 		/**
@@ -570,6 +590,111 @@ public class SortedManifestStreamer {
 		}
 	}
 
+	/**
+	 * An individual section of the manifest, kept as it has been read
+	 * 
+	 * @author ogattaz
+	 *
+	 */
+	public class Section implements Comparable<Section> {
+
+		private final byte[] pContent;
+		private final String pName;
+
+		/**
+		 * @param aContent the lines of the section
+		 */
+		Section(final byte[] aContent) {
+			super();
+			pContent = aContent;
+			pName = extractName(aContent);
+		}
+
+		/**
+		 *
+		 */
+		@Override
+		public int compareTo(Section o) {
+			return pName.compareTo(o.pName);
+		}
+
+		/**
+		 * @param aContent
+		 * @return the value of the "Name" attribute starting the section, an
+		 *         empty string if the section doesn't start with it
+		 */
+		private String extractName(final byte[] aContent) {
+
+			int wPos = indexOfBytes(aContent, ATTRIBUTE_ID_SEPARATOR_BYTES);
+			if (wPos == -1 || !ATTRIBUTE_NAME.equalsIgnoreCase(new String(aContent, 0, wPos, StandardCharsets.UTF_8))) {
+				return "";
+			}
+
+			// the value, without the line breaks of the follow lines
+			ByteArrayOutputStream wValue = new ByteArrayOutputStream();
+			int wIdx = wPos + ATTRIBUTE_ID_SEPARATOR_BYTES.length;
+			while (wIdx < aContent.length) {
+				byte wByte = aContent[wIdx];
+				if (wByte == '\r' || wByte == '\n') {
+					wIdx++;
+					if (wByte == '\r' && wIdx < aContent.length && aContent[wIdx] == '\n') {
+						wIdx++;
+					}
+					if (wIdx < aContent.length && aContent[wIdx] == ' ') {
+						// follow line
+						wIdx++;
+						continue;
+					}
+					break;
+				}
+				wValue.write(wByte);
+				wIdx++;
+			}
+			return new String(wValue.toByteArray(), StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @return the lines of the section
+		 */
+		public byte[] getContent() {
+			return pContent;
+		}
+
+		/**
+		 * @return the name of the entry described by the section
+		 */
+		public String getName() {
+			return pName;
+		}
+
+		/**
+		 *
+		 */
+		@Override
+		public String toString() {
+			return new String(pContent, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @param aOutputStream
+		 * @return the number of written bytes
+		 * @throws IOException
+		 */
+		int write(final OutputStream aOutputStream) throws IOException {
+
+			aOutputStream.write(pContent);
+			int wSize = pContent.length;
+
+			// the last line of the manifest may have no line break
+			byte wLast = pContent[pContent.length - 1];
+			if (wLast != '\n' && wLast != '\r') {
+				aOutputStream.write(LINE_BREAK_BYTES);
+				wSize += LINE_BREAK_BYTES.length;
+			}
+			return wSize;
+		}
+	}
+
 	public static final String ATTRIBUTE_CREATED_BY = "Created-By";
 
 	public static final String ATTRIBUTE_ID_SEPARATOR = ": ";
@@ -581,6 +706,8 @@ public class SortedManifestStreamer {
 
 	public static final String ATTRIBUTE_MFVERSION = "Manifest-Version";
 
+	public static final String ATTRIBUTE_NAME = "Name";
+
 	public static final String LINE_BREAK = "\r\n";
 	public static final String LINE_BREAK_AND_FOLLOW = "\r\n ";
 	public static final byte[] LINE_BREAK_AND_FOLLOW_BYTES = LINE_BREAK_AND_FOLLOW.getBytes();
@@ -591,6 +718,19 @@ public class SortedManifestStreamer {
 	public static final String MANIFEST_VERSION_10 = "1.0";
 	public static final byte[] MANIFEST_VERSION_10_BYTES = MANIFEST_VERSION_10.getBytes();
 
+	// FNV-1a 64-bit parameters
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	// The interned attribute names : id -> Name
+	private static final Map<String, Name> sNames = new ConcurrentHashMap<>();
+
+	private static final Name NAME_IPOJO = internName(ATTRIBUTE_IPOJO_NAME);
+
+	// The encoders of the attribute lines, reusing their buffer
+	private static final ThreadLocal<ManifestLineEncoder> sLineEncoders = ThreadLocal
+			.withInitial(ManifestLineEncoder::new);
+
 	/**
 	 * @param aBuffer
 	 * @return
@@ -618,6 +758,20 @@ public class SortedManifestStreamer {
 		return sw.toString();
 	}
 
+	/**
+	 * @param aHash    the hash of the previous bytes, or FNV_OFFSET_BASIS
+	 * @param aContent the bytes to add to the hash
+	 * @return the 64-bit FNV-1a hash
+	 */
+	static long hashContent(final long aHash, final byte[] aContent) {
+		long wHash = aHash;
+		for (byte wByte : aContent) {
+			wHash ^= (wByte & 0xff);
+			wHash *= FNV_PRIME;
+		}
+		return wHash;
+	}
+
 	/**
 	 * @param aBuffer
 	 * @param aPattern
@@ -652,6 +806,18 @@ public class SortedManifestStreamer {
 		return new ByteArrayInputStream(MANIFEST_MINIMAL.getBytes(StandardCharsets.UTF_8));
 	}
 
+	/**
+	 * @param aManifest
+	 * @return the main section of the manifest, without its individual sections
+	 * @throws IOException
+	 */
+	private static InputStream mainSectionToStream(final Manifest aManifest) throws IOException {
+
+		Manifest wMainSection = new Manifest();
+		wMainSection.getMainAttributes().putAll(aManifest.getMainAttributes());
+		return manifestToStream(wMainSection);
+	}
+
 	/**
 	 * @param aManifest
 	 * @return
@@ -670,6 +836,14 @@ public class SortedManifestStreamer {
 		return isFromFirstData;
 	}
 
+	/**
+	 * @param aId the id of an attribute
+	 * @return the unique Name instance of the attribute
+	 */
+	static Name internName(final String aId) {
+		return sNames.computeIfAbsent(aId, Name::new);
+	}
+
 	/**
 	 * @param aInputStream
 	 * @return
@@ -693,6 +867,25 @@ public class SortedManifestStreamer {
 	}
 
 	/**
+	 * @param aInputStream
+	 * @return all the bytes of the stream
+	 * @throws IOException
+	 */
+	private static byte[] readAllBytes(final InputStream aInputStream) throws IOException {
+
+		ByteArrayOutputStream wOutputStream = new ByteArrayOutputStream(8192);
+		byte[] wBuffer = new byte[8192];
+		int wRead;
+		while ((wRead = aInputStream.read(wBuffer)) != -1) {
+			wOutputStream.write(wBuffer, 0, wRead);
+		}
+		return wOutputStream.toByteArray();
+	}
+
+	/**
+	 * Encodes the lines of an attribute as the Manifest class writes them,
+	 * without writing and parsing a whole manifest
+	 * 
 	 * @param aId
 	 * @param aValue
 	 * @return
@@ -700,20 +893,21 @@ public class SortedManifestStreamer {
 	 */
 	private static byte[] toAttributeContent(final String aId, final String aValue) throws IOException {
 
-		Manifest wManifest = newMinimalManifest();
-
-		wManifest.getMainAttributes().put(new Name(aId), aValue);
-
-		SortedManifestStreamer wManifestReformator = new SortedManifestStreamer(wManifest);
-
-		Attribute wNewAttribute = wManifestReformator.getMainAttributes().get(aId);
+		// checks the validity of the id
+		internName(aId);
 
-		return wNewAttribute.getContent();
+		return sLineEncoders.get().encode(aId, aValue).toByteArray();
 	}
 
+	// The individual sections, in their original order
+	private final List<Section> pSections;
+
 	// The map of Arribute : private member of ManifestReformator
 	private final OrderedAttributes pSortedAttributes;
 
+	// Write the individual sections sorted by name
+	private boolean pSortedSections = false;
+
 	/**
 	 * @throws Exception
 	 */
@@ -728,8 +922,18 @@ public class SortedManifestStreamer {
 	 * @throws IOException
 	 */
 	public SortedManifestStreamer(final InputStream aInputStream) throws IOException {
+		this(readAllBytes(aInputStream));
+	}
+
+	/**
+	 * @param aContent the content of a manifest file
+	 * @throws IOException
+	 */
+	public SortedManifestStreamer(final byte[] aContent) throws IOException {
 		super();
-		pSortedAttributes = new ManifestReader(aInputStream).read();
+		ManifestReader wReader = new ManifestReader(aContent);
+		pSortedAttributes = wReader.read();
+		pSections = wReader.readSections();
 	}
 
 	/**
@@ -769,18 +973,7 @@ public class SortedManifestStreamer {
 	 */
 	public int getIPojoAttributeRank() {
 
-		if (!this.hasIPojoAttribute()) {
-			return -1;
-		}
-		int wRank = 0;
-		for (Object wKey : getMainAttributes().keySet()) {
-			if (String.valueOf(wKey).equals(ATTRIBUTE_IPOJO_NAME)) {
-				return wRank;
-			}
-			wRank++;
-		}
-
-		return -1;
+		return getMainAttributes().getIPojoRank();
 	}
 
 	/**
@@ -797,6 +990,19 @@ public class SortedManifestStreamer {
 		return getMainAttributes().getOrderedAttributes();
 	}
 
+	/**
+	 * @return the individual sections, in the order they are written
+	 */
+	public List<Section> getSections() {
+
+		if (!pSortedSections) {
+			return Collections.unmodifiableList(pSections);
+		}
+		List<Section> wSections = new ArrayList<Section>(pSections);
+		Collections.sort(wSections);
+		return wSections;
+	}
+
 	/**
 	 * @return
 	 */
@@ -842,7 +1048,8 @@ public class SortedManifestStreamer {
 	 * @return
 	 */
 	public boolean isIPojoAttributeLastOne() {
-		return getIPojoAttributeRank() + 1 == getMainAttributes().size();
+		int wRank = getIPojoAttributeRank();
+		return wRank != -1 && wRank + 1 == getMainAttributes().size();
 	}
 
 	/**
@@ -876,7 +1083,8 @@ public class SortedManifestStreamer {
 	 * @throws Exception
 	 */
 	public boolean isIPojoAttributesSameAsIn(final Manifest aManifest) throws IOException {
-		return isIPojoAttributesSameAsIn(new SortedManifestStreamer(aManifest));
+		// only the main section is compared
+		return isIPojoAttributesSameAsIn(new SortedManifestStreamer(mainSectionToStream(aManifest)));
 	}
 
 	/**
@@ -889,6 +1097,13 @@ public class SortedManifestStreamer {
 		return isIPojoAttributeSameAsIn(aManipulator) && isImportPackageAttributeSameAsIn(aManipulator);
 	}
 
+	/**
+	 * @return true if the individual sections are written sorted by name
+	 */
+	public boolean isSortedSections() {
+		return pSortedSections;
+	}
+
 	/**
 	 * @return
 	 */
@@ -906,7 +1121,8 @@ public class SortedManifestStreamer {
 	 */
 	public boolean replaceAllIPojoAttributes(final Manifest aManifest) throws IOException {
 
-		return replaceAllIPojoAttributes(new SortedManifestStreamer(aManifest));
+		// only the main section is used
+		return replaceAllIPojoAttributes(new SortedManifestStreamer(mainSectionToStream(aManifest)));
 	}
 
 	// -------------
@@ -1040,6 +1256,14 @@ public class SortedManifestStreamer {
 		return replaceIPojoAttribute(new Attribute(ATTRIBUTE_IPOJO_NAME, aValue));
 	}
 
+	/**
+	 * @param aSorted true to write the individual sections sorted by name,
+	 *                false to keep their original order
+	 */
+	public void setSortedSections(final boolean aSorted) {
+		pSortedSections = aSorted;
+	}
+
 	/**
 	 * @return the number of attributes
 	 */
@@ -1077,7 +1301,21 @@ public class SortedManifestStreamer {
 	 */
 	public int write(final OutputStream aOutputStream) throws IOException {
 
-		return getMainAttributes().write(aOutputStream);
+		int wSize = getMainAttributes().write(aOutputStream);
+
+		if (!pSections.isEmpty()) {
+			// the empty line closing the main section, then each section
+			// followed by its own empty line
+			aOutputStream.write(LINE_BREAK_BYTES);
+			wSize += LINE_BREAK_BYTES.length;
+
+			for (Section wSection : getSections()) {
+				wSize += wSection.write(aOutputStream);
+				aOutputStream.write(LINE_BREAK_BYTES);
+				wSize += LINE_BREAK_BYTES.length;
+			}
+		}
+		return wSize;
 	}
 
 }
@@ -1,5 +1,8 @@
 package tech.cohorte.pico.tooling;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
 public class CCTTimer {
 
 	public static final String DESCR_EL = "[";
@@ -16,6 +19,22 @@ public class CCTTimer {
 	public static final boolean START = true;
 	private static final boolean STARTED = true;
 
+	/**
+	 * @return the number of bytes allocated by the current thread since its
+	 *         start, -1 if the JVM doesn't support the allocation counters
+	 */
+	public static long currentThreadAllocatedBytes() {
+
+		ThreadMXBean wThreadBean = ManagementFactory.getThreadMXBean();
+		if (wThreadBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean wSunThreadBean = (com.sun.management.ThreadMXBean) wThreadBean;
+			if (wSunThreadBean.isThreadAllocatedMemorySupported() && wSunThreadBean.isThreadAllocatedMemoryEnabled()) {
+				return wSunThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * @param aHeapSize
 	 * @return
@@ -52,6 +71,11 @@ public class CCTTimer {
 		return new CCTTimer(STARTED);
 	}
 
+	/** Bytes allocated by the current thread at the start of the timer **/
+	private long pAllocStart = -1;
+	/** Bytes allocated by the current thread at the stop of the timer **/
+	private long pAllocStop = -1;
+
 	private long pHeapStart = 0;
 	private long pHeapStop = 0;
 	private String pName = null;
@@ -154,6 +178,19 @@ public class CCTTimer {
 		return 128;
 	}
 
+	/**
+	 * @return the number of bytes allocated by the thread which started the timer
+	 *         between the start and stop times, -1 if not available.
+	 */
+	public long getAllocatedBytes() {
+
+		if (pAllocStart < 0) {
+			return -1;
+		}
+		long wAllocNow = pAllocStop >= 0 ? pAllocStop : currentThreadAllocatedBytes();
+		return wAllocNow < 0 ? -1 : wAllocNow - pAllocStart;
+	}
+
 	/**
 	 * @return the duration in milliseconds
 	 */
@@ -328,6 +365,8 @@ public class CCTTimer {
 	 */
 	public void reset(final long aTimeRefNano) {
 
+		pAllocStart = -1;
+		pAllocStop = -1;
 		pHeapStart = 0;
 		pHeapStop = 0;
 		pStartNano = 0;
@@ -342,6 +381,8 @@ public class CCTTimer {
 	 */
 	public CCTTimer start() {
 
+		pAllocStart = currentThreadAllocatedBytes();
+		pAllocStop = -1;
 		pHeapStart = Runtime.getRuntime().freeMemory();
 		pStartNano = System.nanoTime();
 		pStopNano = 0;
@@ -369,8 +410,9 @@ public class CCTTimer {
 	 */
 	public long stop() {
 
-		pHeapStop = Runtime.getRuntime().freeMemory();
 		pStopNano = System.nanoTime();
+		pHeapStop = Runtime.getRuntime().freeMemory();
+		pAllocStop = currentThreadAllocatedBytes();
 		return getDurationNs();
 	}
 
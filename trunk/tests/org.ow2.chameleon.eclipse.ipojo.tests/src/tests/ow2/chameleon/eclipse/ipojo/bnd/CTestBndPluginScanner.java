@@ -0,0 +1,257 @@
+package tests.ow2.chameleon.eclipse.ipojo.bnd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logBanner;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfo;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfoBegin;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfoEnd;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logSevere;
+import static tech.cohorte.pico.tooling.CCTMethodUtils.getMethodName;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.ow2.chameleon.eclipse.ipojo.m2e.BndPluginScanner;
+
+import tech.cohorte.pico.tooling.CCTExceptionUtils;
+import tech.cohorte.pico.tooling.CCTTimer;
+
+/**
+ * Checks the detection of the iPOJO Bnd plug-in in Bnd files, through include
+ * chains, and the reuse of the scan results of unchanged files.
+ *
+ * @author ogattaz
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CTestBndPluginScanner {
+
+	/**
+	 * The checks of a test
+	 */
+	@FunctionalInterface
+	private interface CCheck {
+		void run() throws Exception;
+	}
+
+	private static final String PLUGIN_CLASS = "org.apache.felix.ipojo.bnd.PojoizationPlugin";
+
+	private static final int sNbTest = countNbTest(CTestBndPluginScanner.class);
+
+	private static final AtomicInteger sSuccessCounter = new AtomicInteger(0);
+
+	private static final AtomicInteger sTestCounter = new AtomicInteger(0);
+
+	private static Path sTempDir = null;
+
+	private static CCTTimer sTimer = null;
+
+	private static final String TESTNAME = CTestBndPluginScanner.class.getSimpleName();
+
+	/**
+	 * @param aTestClass
+	 * @return the number of method having the annotation @Test
+	 */
+	private static int countNbTest(final Class<?> aTestClass) {
+
+		int wNbTest = 0;
+		for (Method wMethod : aTestClass.getMethods()) {
+			Test wTestAnnotation = wMethod.getAnnotation(Test.class);
+			if (wTestAnnotation != null) {
+				wNbTest++;
+			}
+		}
+		return wNbTest;
+	}
+
+	/**
+	 *
+	 */
+	@AfterClass
+	public static void destroy() throws Exception {
+		String wMethod = getMethodName(1);
+
+		try (Stream<Path> wPaths = Files.walk(sTempDir)) {
+			wPaths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+
+		logBanner(CTestBndPluginScanner.class, wMethod, Level.INFO,
+				"Test of [%s] done. Success=[%d/%d] duration=[%s]", TESTNAME, sSuccessCounter.get(), sNbTest,
+				sTimer.getDurationStrMicroSec());
+	}
+
+	/**
+	 *
+	 */
+	@BeforeClass
+	public static void initialize() throws Exception {
+		String wMethod = getMethodName(1);
+
+		sTimer = CCTTimer.newStartedTimer();
+		sTempDir = Files.createTempDirectory(TESTNAME);
+
+		logBanner(CTestBndPluginScanner.class, wMethod, Level.INFO, "Tests of [%s] Begin. NbTest=[%d]", TESTNAME,
+				sNbTest);
+	}
+
+	/**
+	 * @param aName
+	 * @param aLines
+	 * @return the written file
+	 * @throws Exception
+	 */
+	private static File writeBndFile(final String aName, final String... aLines) throws Exception {
+
+		Path wPath = sTempDir.resolve(aName);
+		Files.createDirectories(wPath.getParent());
+		Files.write(wPath, String.join("\n", aLines).getBytes(StandardCharsets.ISO_8859_1));
+		return wPath.toFile();
+	}
+
+	/**
+	 *
+	 */
+	public CTestBndPluginScanner() {
+		super();
+	}
+
+	/**
+	 * @param aScanner
+	 * @param aFile
+	 * @param aExpected
+	 * @return the files read by the scanner
+	 */
+	private Set<File> checkFile(final BndPluginScanner aScanner, final File aFile, final boolean aExpected) {
+		String wMethod = getMethodName(1);
+
+		Set<File> wVisited = new LinkedHashSet<>();
+		boolean wUses = aScanner.usesPlugin(aFile, wVisited);
+
+		logInfo(this, wMethod, "file=[%s] uses=[%b] visited=[%d]", aFile.getName(), wUses, wVisited.size());
+
+		if (aExpected) {
+			assertTrue(aFile.getName() + " must declare the plug-in", wUses);
+		} else {
+			assertFalse(aFile.getName() + " must not declare the plug-in", wUses);
+		}
+		return wVisited;
+	}
+
+	/**
+	 * @param aChecks
+	 * @throws Exception
+	 */
+	private void runTest(final CCheck aChecks) throws Exception {
+		String wMethod = getMethodName(2);
+		CCTTimer wTimer = CCTTimer.newStartedTimer();
+
+		logInfoBegin(this, wMethod, "test=[%d/%d)", sTestCounter.incrementAndGet(), sNbTest);
+
+		try {
+			aChecks.run();
+
+			logInfo(this, wMethod, "Done. Success=[%d/%d] duration=[%s]", sSuccessCounter.incrementAndGet(), sNbTest,
+					wTimer.getDurationStrMicroSec());
+		}
+		//
+		catch (final Throwable e) {
+			logSevere(this, wMethod, "UNEXPECTED ERROR: %s", CCTExceptionUtils.eCauseMessagesInString(e));
+			throw e;
+		}
+		//
+		finally {
+			logInfoEnd(this, wMethod);
+		}
+	}
+
+	/**
+	 * The plug-in declared directly, in the different property forms
+	 */
+	@Test
+	public void test05DirectDeclaration() throws Exception {
+		runTest(() -> {
+			BndPluginScanner wScanner = new BndPluginScanner(PLUGIN_CLASS);
+
+			checkFile(wScanner, writeBndFile("direct/colon.bnd", "Bundle-Name: test",
+					"-plugin: " + PLUGIN_CLASS + ";use-local-schemas=true"), true);
+			checkFile(wScanner, writeBndFile("direct/equals.bnd", "_plugin=" + PLUGIN_CLASS), true);
+			checkFile(wScanner, writeBndFile("direct/merged.bnd", "-plugin.ipojo " + PLUGIN_CLASS), true);
+			checkFile(wScanner, writeBndFile("direct/continued.bnd", "-plugin: aQute.lib.spring.SpringComponent,\\",
+					"    " + PLUGIN_CLASS), true);
+		});
+	}
+
+	/**
+	 * Comments and other instructions naming the plug-in don't count
+	 */
+	@Test
+	public void test10NoDeclaration() throws Exception {
+		runTest(() -> {
+			BndPluginScanner wScanner = new BndPluginScanner(PLUGIN_CLASS);
+
+			checkFile(wScanner, writeBndFile("none/comments.bnd", "# -plugin: " + PLUGIN_CLASS,
+					"! -plugin: " + PLUGIN_CLASS, "Private-Package: " + PLUGIN_CLASS), false);
+			checkFile(wScanner, writeBndFile("none/other.bnd", "-pluginpath: " + PLUGIN_CLASS), false);
+			checkFile(wScanner, new File(sTempDir.toFile(), "none/missing.bnd"), false);
+		});
+	}
+
+	/**
+	 * Include chains are followed, include loops are cut
+	 */
+	@Test
+	public void test15Includes() throws Exception {
+		runTest(() -> {
+			BndPluginScanner wScanner = new BndPluginScanner(PLUGIN_CLASS);
+
+			writeBndFile("chain/sub/ipojo.bnd", "_plugin: " + PLUGIN_CLASS);
+			writeBndFile("chain/middle.bnd", "-include: ~${.}/sub/ipojo.bnd");
+			File wRoot = writeBndFile("chain/root.bnd", "-include: -optional.bnd, middle.bnd");
+			Set<File> wVisited = checkFile(wScanner, wRoot, true);
+			assertEquals(4, wVisited.size());
+
+			writeBndFile("loop/a.bnd", "-include: b.bnd");
+			File wLoop = writeBndFile("loop/b.bnd", "-include: a.bnd");
+			checkFile(wScanner, wLoop, false);
+
+			List<File> wIncludes = wScanner.parseIncludes(sTempDir.toFile(), "a.bnd, ${unknown}/b.bnd, http://host/c.bnd");
+			assertEquals(1, wIncludes.size());
+			assertEquals(new File(sTempDir.toFile(), "a.bnd"), wIncludes.get(0));
+		});
+	}
+
+	/**
+	 * Modified files are scanned again
+	 */
+	@Test
+	public void test20Modification() throws Exception {
+		runTest(() -> {
+			BndPluginScanner wScanner = new BndPluginScanner(PLUGIN_CLASS);
+
+			File wFile = writeBndFile("modified/ipojo.bnd", "Bundle-Name: test");
+			long wStamp = wFile.lastModified();
+			checkFile(wScanner, wFile, false);
+
+			writeBndFile("modified/ipojo.bnd", "-plugin: " + PLUGIN_CLASS);
+			assertTrue(wFile.setLastModified(wStamp + 2000));
+			checkFile(wScanner, wFile, true);
+		});
+	}
+}
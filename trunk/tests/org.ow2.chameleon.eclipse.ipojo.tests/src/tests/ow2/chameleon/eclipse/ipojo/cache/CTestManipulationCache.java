@@ -0,0 +1,348 @@
+package tests.ow2.chameleon.eclipse.ipojo.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logBanner;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfo;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfoBegin;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfoEnd;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logSevere;
+import static tech.cohorte.pico.tooling.CCTMethodUtils.getMethodName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.ow2.chameleon.eclipse.ipojo.core.ManipulationCache;
+
+import tech.cohorte.pico.tooling.CCTExceptionUtils;
+import tech.cohorte.pico.tooling.CCTTimer;
+
+/**
+ * Checks the ManipulationCache without Eclipse: the least recently used
+ * entries are evicted first, the entries are read back with the hierarchies
+ * of their loaded types, and only the classes having the iPOJO Pojo interface
+ * in their interfaces table are seen as manipulated.
+ *
+ * @author ogattaz
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CTestManipulationCache {
+
+	/**
+	 * The checks of a test
+	 */
+	@FunctionalInterface
+	private interface CCheck {
+		void run() throws Exception;
+	}
+
+	private static final int ENTRY_OUTPUT_SIZE = 1000;
+
+	private static final String POJO_INTERFACE = "org/apache/felix/ipojo/Pojo";
+
+	private static final int sNbTest = countNbTest(CTestManipulationCache.class);
+
+	private static final AtomicInteger sSuccessCounter = new AtomicInteger(0);
+
+	private static final AtomicInteger sTestCounter = new AtomicInteger(0);
+
+	private static CCTTimer sTimer = null;
+
+	private static final String TESTNAME = CTestManipulationCache.class.getSimpleName();
+
+	/**
+	 * @param aName        the internal name of the class
+	 * @param aInterfaces  the internal names of its interfaces
+	 * @param aReferences  the internal names of other referenced classes
+	 * @return a minimal class file, starting its constant pool with a long
+	 *         constant (two entries)
+	 * @throws IOException
+	 */
+	private static byte[] classFile(final String aName, final String[] aInterfaces, final String... aReferences)
+			throws IOException {
+
+		List<String> wClasses = new ArrayList<>();
+		wClasses.add(aName);
+		wClasses.add("java/lang/Object");
+		wClasses.addAll(Arrays.asList(aInterfaces));
+		wClasses.addAll(Arrays.asList(aReferences));
+
+		ByteArrayOutputStream wBytes = new ByteArrayOutputStream();
+		DataOutputStream wOutput = new DataOutputStream(wBytes);
+		wOutput.writeInt(0xCAFEBABE);
+		wOutput.writeShort(0);
+		wOutput.writeShort(52);
+
+		// the long takes the entries 1 and 2, then an UTF-8 and a class per name
+		wOutput.writeShort(3 + 2 * wClasses.size());
+		wOutput.writeByte(5);
+		wOutput.writeLong(42L);
+		for (int wIdx = 0; wIdx < wClasses.size(); wIdx++) {
+			wOutput.writeByte(1);
+			wOutput.writeUTF(wClasses.get(wIdx));
+			wOutput.writeByte(7);
+			wOutput.writeShort(3 + 2 * wIdx);
+		}
+
+		// access flags, this, super
+		wOutput.writeShort(0x21);
+		wOutput.writeShort(4);
+		wOutput.writeShort(6);
+
+		wOutput.writeShort(aInterfaces.length);
+		for (int wIdx = 0; wIdx < aInterfaces.length; wIdx++) {
+			wOutput.writeShort(8 + 2 * wIdx);
+		}
+
+		// no field, method nor attribute
+		wOutput.writeShort(0);
+		wOutput.writeShort(0);
+		wOutput.writeShort(0);
+		wOutput.flush();
+		return wBytes.toByteArray();
+	}
+
+	/**
+	 * @param aTestClass
+	 * @return the number of method having the annotation @Test
+	 */
+	private static int countNbTest(final Class<?> aTestClass) {
+
+		int wNbTest = 0;
+		for (Method wMethod : aTestClass.getMethods()) {
+			Test wTestAnnotation = wMethod.getAnnotation(Test.class);
+			if (wTestAnnotation != null) {
+				wNbTest++;
+			}
+		}
+		return wNbTest;
+	}
+
+	/**
+	 * @param aFolder
+	 */
+	private static void deleteFolder(final File aFolder) {
+
+		File[] wFiles = aFolder.listFiles();
+		if (wFiles != null) {
+			for (File wFile : wFiles) {
+				wFile.delete();
+			}
+		}
+		aFolder.delete();
+	}
+
+	/**
+	 *
+	 */
+	@AfterClass
+	public static void destroy() throws Exception {
+		String wMethod = getMethodName(1);
+
+		logBanner(CTestManipulationCache.class, wMethod, Level.INFO,
+				"Test of [%s] done. Success=[%d/%d] duration=[%s]", TESTNAME, sSuccessCounter.get(), sNbTest,
+				sTimer.getDurationStrMicroSec());
+	}
+
+	/**
+	 * @param aFill
+	 * @return an entry without inner class nor loaded type
+	 */
+	private static ManipulationCache.Entry entry(final int aFill) {
+
+		byte[] wOutput = new byte[ENTRY_OUTPUT_SIZE];
+		Arrays.fill(wOutput, (byte) aFill);
+		return new ManipulationCache.Entry(wOutput, Collections.<ManipulationCache.InnerEntry> emptyList(),
+				Collections.<String, String> emptyMap());
+	}
+
+	/**
+	 *
+	 */
+	@BeforeClass
+	public static void initialize() throws Exception {
+		String wMethod = getMethodName(1);
+
+		sTimer = CCTTimer.newStartedTimer();
+
+		logBanner(CTestManipulationCache.class, wMethod, Level.INFO, "Tests of [%s] Begin. NbTest=[%d]", TESTNAME,
+				sNbTest);
+	}
+
+	/**
+	 * @param aName
+	 * @return the store key of a class named after the given string
+	 */
+	private static String key(final String aName) {
+
+		return ManipulationCache.key(ManipulationCache.hash(aName.getBytes()), 1L);
+	}
+
+	/**
+	 *
+	 */
+	public CTestManipulationCache() {
+		super();
+	}
+
+	/**
+	 * @param aChecks
+	 * @throws Exception
+	 */
+	private void runTest(final CCheck aChecks) throws Exception {
+		String wMethod = getMethodName(2);
+		CCTTimer wTimer = CCTTimer.newStartedTimer();
+
+		logInfoBegin(this, wMethod, "test=[%d/%d)", sTestCounter.incrementAndGet(), sNbTest);
+
+		try {
+			aChecks.run();
+
+			logInfo(this, wMethod, "Done. Success=[%d/%d] duration=[%s]", sSuccessCounter.incrementAndGet(), sNbTest,
+					wTimer.getDurationStrMicroSec());
+		}
+		//
+		catch (final Throwable e) {
+			logSevere(this, wMethod, "UNEXPECTED ERROR: %s", CCTExceptionUtils.eCauseMessagesInString(e));
+			throw e;
+		}
+		//
+		finally {
+			logInfoEnd(this, wMethod);
+		}
+	}
+
+	/**
+	 * A read entry becomes the most recently used one: the eldest unread entry
+	 * is evicted first
+	 */
+	@Test
+	public void test05EvictionOrder() throws Exception {
+		runTest(() -> {
+			String wMethod = getMethodName(1);
+
+			File wProbeFolder = Files.createTempDirectory("ipojo-cache-probe").toFile();
+			File wFolder = Files.createTempDirectory("ipojo-cache").toFile();
+			try {
+				// the size of a store file, to fit exactly three entries
+				ManipulationCache wProbe = new ManipulationCache(wProbeFolder, Long.MAX_VALUE);
+				wProbe.put(key("probe"), entry(0));
+				long wEntrySize = new File(wProbeFolder, key("probe") + ".entry").length();
+				assertTrue(wEntrySize > ENTRY_OUTPUT_SIZE);
+
+				ManipulationCache wCache = new ManipulationCache(wFolder, 3 * wEntrySize);
+				wCache.load();
+				wCache.put(key("A"), entry(1));
+				wCache.put(key("B"), entry(2));
+				wCache.put(key("C"), entry(3));
+
+				// A becomes the most recently used entry
+				assertNotNull(wCache.get(key("A")));
+
+				wCache.put(key("D"), entry(4));
+
+				logInfo(this, wMethod, "EntrySize=[%d] files=[%s]", wEntrySize, Arrays.toString(wFolder.list()));
+
+				assertNull("B must be evicted first", wCache.get(key("B")));
+				assertArrayEquals(entry(1).getOutput(), wCache.get(key("A")).getOutput());
+				assertNotNull(wCache.get(key("C")));
+				assertNotNull(wCache.get(key("D")));
+				assertFalse(new File(wFolder, key("B") + ".entry").exists());
+
+			} finally {
+				deleteFolder(wProbeFolder);
+				deleteFolder(wFolder);
+			}
+		});
+	}
+
+	/**
+	 * The entries are read back after a restart, with the hierarchies of their
+	 * loaded types, and a new result replaces the stored one
+	 */
+	@Test
+	public void test10StoreAndReplace() throws Exception {
+		runTest(() -> {
+			File wFolder = Files.createTempDirectory("ipojo-cache").toFile();
+			try {
+				Map<String, String> wHierarchies = new TreeMap<>();
+				wHierarchies.put("java.util.ArrayList", "C java.util.ArrayList java.util.AbstractList +java.util.List");
+				wHierarchies.put("org.example.Missing", "?");
+
+				List<ManipulationCache.InnerEntry> wInners = new ArrayList<>();
+				wInners.add(new ManipulationCache.InnerEntry("org/example/Foo$1.class",
+						ManipulationCache.hash(new byte[] { 1 }), new byte[] { 2, 3 }));
+
+				ManipulationCache wCache = new ManipulationCache(wFolder, Long.MAX_VALUE);
+				wCache.put(key("Foo"), new ManipulationCache.Entry(new byte[] { 4, 5, 6 }, wInners, wHierarchies));
+
+				// restart
+				ManipulationCache wReloaded = new ManipulationCache(wFolder, Long.MAX_VALUE);
+				wReloaded.load();
+				ManipulationCache.Entry wEntry = wReloaded.get(key("Foo"));
+				assertNotNull(wEntry);
+				assertArrayEquals(new byte[] { 4, 5, 6 }, wEntry.getOutput());
+				assertEquals(wHierarchies, wEntry.getHierarchies());
+				assertEquals(1, wEntry.getInners().size());
+				assertEquals("org/example/Foo$1.class", wEntry.getInners().get(0).getPath());
+				assertArrayEquals(new byte[] { 2, 3 }, wEntry.getInners().get(0).getOutput());
+
+				// the result of a new manipulation replaces the stored one
+				wReloaded.put(key("Foo"), entry(7));
+				assertArrayEquals(entry(7).getOutput(), wReloaded.get(key("Foo")).getOutput());
+				assertTrue(wReloaded.get(key("Foo")).getHierarchies().isEmpty());
+
+			} finally {
+				deleteFolder(wFolder);
+			}
+		});
+	}
+
+	/**
+	 * Only the Pojo interface in the interfaces table marks a manipulated class
+	 */
+	@Test
+	public void test15ManipulatedClasses() throws Exception {
+		runTest(() -> {
+			String[] wNone = {};
+
+			assertTrue(ManipulationCache.isManipulated(classFile("org/example/Foo", new String[] { POJO_INTERFACE })));
+			assertTrue(ManipulationCache.isManipulated(
+					classFile("org/example/Foo", new String[] { "java/io/Serializable", POJO_INTERFACE })));
+
+			// referencing the Pojo interface isn't implementing it
+			assertFalse(ManipulationCache.isManipulated(classFile("org/example/Foo", wNone, POJO_INTERFACE)));
+			assertFalse(ManipulationCache.isManipulated(
+					classFile("org/example/Foo", new String[] { "java/io/Serializable" }, POJO_INTERFACE)));
+			assertFalse(ManipulationCache.isManipulated(classFile(POJO_INTERFACE + "Checker", wNone)));
+			assertFalse(ManipulationCache.isManipulated(classFile("org/example/Foo", wNone)));
+
+			// unreadable class files
+			byte[] wBytes = classFile("org/example/Foo", new String[] { POJO_INTERFACE });
+			assertFalse(ManipulationCache.isManipulated(Arrays.copyOf(wBytes, wBytes.length - 10)));
+			assertFalse(ManipulationCache.isManipulated(new byte[0]));
+		});
+	}
+}
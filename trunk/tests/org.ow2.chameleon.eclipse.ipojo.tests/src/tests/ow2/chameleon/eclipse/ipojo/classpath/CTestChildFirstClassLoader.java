@@ -0,0 +1,315 @@
+package tests.ow2.chameleon.eclipse.ipojo.classpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logBanner;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfo;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfoBegin;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfoEnd;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logSevere;
+import static tech.cohorte.pico.tooling.CCTMethodUtils.getMethodName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.ow2.chameleon.eclipse.ipojo.core.ChildFirstClassLoader;
+
+import tech.cohorte.pico.tooling.CCTExceptionUtils;
+import tech.cohorte.pico.tooling.CCTTimer;
+
+/**
+ * Checks the ChildFirstClassLoader without Eclipse: the classes of the output
+ * and class folders of a project hide the classes of the same name in its JAR
+ * files, and the folders are read in classpath order.
+ *
+ * @author ogattaz
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CTestChildFirstClassLoader {
+
+	/**
+	 * The checks of a test, given a temporary folder
+	 */
+	@FunctionalInterface
+	private interface CCheck {
+		void run(Path aFolder) throws Exception;
+	}
+
+	private static final String JAR_ONLY_CLASS = "org/example/JarOnly";
+
+	private static final String SAME_CLASS = "org/example/Same";
+
+	private static final int sNbTest = countNbTest(CTestChildFirstClassLoader.class);
+
+	private static final AtomicInteger sSuccessCounter = new AtomicInteger(0);
+
+	private static final AtomicInteger sTestCounter = new AtomicInteger(0);
+
+	private static CCTTimer sTimer = null;
+
+	private static final String TESTNAME = CTestChildFirstClassLoader.class.getSimpleName();
+
+	/**
+	 * @param aName the internal name of the class
+	 * @return a minimal class file
+	 * @throws IOException
+	 */
+	private static byte[] classFile(final String aName) throws IOException {
+
+		ByteArrayOutputStream wBytes = new ByteArrayOutputStream();
+		DataOutputStream wOutput = new DataOutputStream(wBytes);
+		wOutput.writeInt(0xCAFEBABE);
+		wOutput.writeShort(0);
+		wOutput.writeShort(52);
+
+		// an UTF-8 and a class per name
+		wOutput.writeShort(5);
+		wOutput.writeByte(1);
+		wOutput.writeUTF(aName);
+		wOutput.writeByte(7);
+		wOutput.writeShort(1);
+		wOutput.writeByte(1);
+		wOutput.writeUTF("java/lang/Object");
+		wOutput.writeByte(7);
+		wOutput.writeShort(3);
+
+		// access flags, this, super
+		wOutput.writeShort(0x21);
+		wOutput.writeShort(2);
+		wOutput.writeShort(4);
+
+		// no interface, field, method nor attribute
+		wOutput.writeShort(0);
+		wOutput.writeShort(0);
+		wOutput.writeShort(0);
+		wOutput.writeShort(0);
+		wOutput.flush();
+		return wBytes.toByteArray();
+	}
+
+	/**
+	 * @param aTestClass
+	 * @return the number of method having the annotation @Test
+	 */
+	private static int countNbTest(final Class<?> aTestClass) {
+
+		int wNbTest = 0;
+		for (Method wMethod : aTestClass.getMethods()) {
+			Test wTestAnnotation = wMethod.getAnnotation(Test.class);
+			if (wTestAnnotation != null) {
+				wNbTest++;
+			}
+		}
+		return wNbTest;
+	}
+
+	/**
+	 * @param aFolder
+	 * @throws IOException
+	 */
+	private static void deleteFolder(final Path aFolder) throws IOException {
+
+		try (Stream<Path> wPaths = Files.walk(aFolder)) {
+			wPaths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	/**
+	 *
+	 */
+	@AfterClass
+	public static void destroy() throws Exception {
+		String wMethod = getMethodName(1);
+
+		logBanner(CTestChildFirstClassLoader.class, wMethod, Level.INFO,
+				"Test of [%s] done. Success=[%d/%d] duration=[%s]", TESTNAME, sSuccessCounter.get(), sNbTest,
+				sTimer.getDurationStrMicroSec());
+	}
+
+	/**
+	 *
+	 */
+	@BeforeClass
+	public static void initialize() throws Exception {
+		String wMethod = getMethodName(1);
+
+		sTimer = CCTTimer.newStartedTimer();
+
+		logBanner(CTestChildFirstClassLoader.class, wMethod, Level.INFO, "Tests of [%s] Begin. NbTest=[%d]",
+				TESTNAME, sNbTest);
+	}
+
+	/**
+	 * @param aClass
+	 * @return the URL of the folder or the JAR file the class was loaded from
+	 */
+	private static URL location(final Class<?> aClass) {
+
+		return aClass.getProtectionDomain().getCodeSource().getLocation();
+	}
+
+	/**
+	 * @param aFolder
+	 * @param aClasses the internal names of the classes
+	 * @return the output folder
+	 * @throws IOException
+	 */
+	private static Path newFolder(final Path aFolder, final String... aClasses) throws IOException {
+
+		for (String wClass : aClasses) {
+			Path wFile = aFolder.resolve(wClass + ".class");
+			Files.createDirectories(wFile.getParent());
+			Files.write(wFile, classFile(wClass));
+		}
+		return aFolder;
+	}
+
+	/**
+	 * @param aJar
+	 * @param aClasses the internal names of the classes
+	 * @return the JAR file
+	 * @throws IOException
+	 */
+	private static Path newJar(final Path aJar, final String... aClasses) throws IOException {
+
+		try (JarOutputStream wOutput = new JarOutputStream(new FileOutputStream(aJar.toFile()))) {
+			for (String wClass : aClasses) {
+				wOutput.putNextEntry(new JarEntry(wClass + ".class"));
+				wOutput.write(classFile(wClass));
+				wOutput.closeEntry();
+			}
+		}
+		return aJar;
+	}
+
+	/**
+	 *
+	 */
+	public CTestChildFirstClassLoader() {
+		super();
+	}
+
+	/**
+	 * @param aChecks
+	 * @throws Exception
+	 */
+	private void runTest(final CCheck aChecks) throws Exception {
+		String wMethod = getMethodName(2);
+		CCTTimer wTimer = CCTTimer.newStartedTimer();
+
+		logInfoBegin(this, wMethod, "test=[%d/%d)", sTestCounter.incrementAndGet(), sNbTest);
+
+		Path wFolder = Files.createTempDirectory("ipojo-classpath");
+		try {
+			aChecks.run(wFolder);
+
+			logInfo(this, wMethod, "Done. Success=[%d/%d] duration=[%s]", sSuccessCounter.incrementAndGet(), sNbTest,
+					wTimer.getDurationStrMicroSec());
+		}
+		//
+		catch (final Throwable e) {
+			logSevere(this, wMethod, "UNEXPECTED ERROR: %s", CCTExceptionUtils.eCauseMessagesInString(e));
+			throw e;
+		}
+		//
+		finally {
+			deleteFolder(wFolder);
+			logInfoEnd(this, wMethod);
+		}
+	}
+
+	/**
+	 * A class of an output folder hides the class of the same name of a JAR
+	 * file, the other classes are loaded from the JAR file
+	 */
+	@Test
+	public void test05FolderHidesJar() throws Exception {
+		runTest((aFolder) -> {
+			String wMethod = getMethodName(1);
+
+			Path wJar = newJar(aFolder.resolve("lib.jar"), SAME_CLASS, JAR_ONLY_CLASS);
+			Path wOutput = newFolder(aFolder.resolve("bin"), SAME_CLASS);
+
+			try (URLClassLoader wJarLoader = new URLClassLoader(new URL[] { wJar.toUri().toURL() }, null);
+					ChildFirstClassLoader wLoader = new ChildFirstClassLoader(Arrays.asList(wOutput.toString()),
+							wJarLoader)) {
+
+				Class<?> wSame = wLoader.loadClass(SAME_CLASS.replace('/', '.'));
+				logInfo(this, wMethod, "Same=[%s]", location(wSame));
+				assertSame(wLoader, wSame.getClassLoader());
+				assertEquals(wOutput.toUri().toURL(), location(wSame));
+
+				// loaded once
+				assertSame(wSame, wLoader.loadClass(SAME_CLASS.replace('/', '.')));
+
+				Class<?> wJarOnly = wLoader.loadClass(JAR_ONLY_CLASS.replace('/', '.'));
+				assertSame(wJarLoader, wJarOnly.getClassLoader());
+
+				// the JDK classes come from the parent class loaders
+				assertSame(Object.class, wLoader.loadClass("java.lang.Object"));
+			}
+		});
+	}
+
+	/**
+	 * The folders are read in classpath order
+	 */
+	@Test
+	public void test10FoldersOrder() throws Exception {
+		runTest((aFolder) -> {
+			Path wFirst = newFolder(aFolder.resolve("first"), SAME_CLASS);
+			Path wSecond = newFolder(aFolder.resolve("second"), SAME_CLASS, JAR_ONLY_CLASS);
+
+			try (ChildFirstClassLoader wLoader = new ChildFirstClassLoader(
+					Arrays.asList(wFirst.toString(), wSecond.toString()), null)) {
+
+				assertEquals(wFirst.toUri().toURL(), location(wLoader.loadClass(SAME_CLASS.replace('/', '.'))));
+				assertEquals(wSecond.toUri().toURL(), location(wLoader.loadClass(JAR_ONLY_CLASS.replace('/', '.'))));
+			}
+		});
+	}
+
+	/**
+	 * A class found nowhere can't be loaded
+	 */
+	@Test
+	public void test15MissingClass() throws Exception {
+		runTest((aFolder) -> {
+			Path wJar = newJar(aFolder.resolve("lib.jar"), JAR_ONLY_CLASS);
+			Path wOutput = newFolder(aFolder.resolve("bin"), SAME_CLASS);
+
+			try (URLClassLoader wJarLoader = new URLClassLoader(new URL[] { wJar.toUri().toURL() }, null);
+					ChildFirstClassLoader wLoader = new ChildFirstClassLoader(Arrays.asList(wOutput.toString()),
+							wJarLoader)) {
+
+				wLoader.loadClass("org.example.Missing");
+				fail("org.example.Missing must not be found");
+
+			} catch (final ClassNotFoundException e) {
+				// expected
+			}
+		});
+	}
+}
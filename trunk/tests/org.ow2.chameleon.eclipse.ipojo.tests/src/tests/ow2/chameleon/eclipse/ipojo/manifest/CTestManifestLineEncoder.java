@@ -0,0 +1,303 @@
+package tests.ow2.chameleon.eclipse.ipojo.manifest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logBanner;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfo;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfoBegin;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfoEnd;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logSevere;
+import static tech.cohorte.pico.tooling.CCTMethodUtils.getMethodName;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.ow2.chameleon.eclipse.ipojo.core.ManifestLineEncoder;
+
+import tech.cohorte.pico.tooling.CCTExceptionUtils;
+import tech.cohorte.pico.tooling.CCTTimer;
+
+/**
+ * Checks that the attribute lines written by the ManifestLineEncoder are the
+ * ones written by the java Manifest class, byte for byte, for random names and
+ * values mixing 1 to 4 bytes characters and malformed surrogates.
+ *
+ * @author ogattaz
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CTestManifestLineEncoder {
+
+	/**
+	 * The checks of a test
+	 */
+	@FunctionalInterface
+	private interface CCheck {
+		void run() throws Exception;
+	}
+
+	// the characters allowed in an attribute name
+	private static final String NAME_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+	private static final int NB_RANDOM_CASES = 5000;
+
+	// a fixed seed: a failure can be replayed
+	private static final long RANDOM_SEED = 0x1F0A_2015L;
+
+	private static final byte[] VERSION_LINE = "Manifest-Version: 1.0\r\n".getBytes(StandardCharsets.UTF_8);
+
+	private static final int sNbTest = countNbTest(CTestManifestLineEncoder.class);
+
+	private static final AtomicInteger sSuccessCounter = new AtomicInteger(0);
+
+	private static final AtomicInteger sTestCounter = new AtomicInteger(0);
+
+	private static CCTTimer sTimer = null;
+
+	private static final String TESTNAME = CTestManifestLineEncoder.class.getSimpleName();
+
+	/**
+	 * @param aTestClass
+	 * @return the number of method having the annotation @Test
+	 */
+	private static int countNbTest(final Class<?> aTestClass) {
+
+		int wNbTest = 0;
+		for (Method wMethod : aTestClass.getMethods()) {
+			Test wTestAnnotation = wMethod.getAnnotation(Test.class);
+			if (wTestAnnotation != null) {
+				wNbTest++;
+			}
+		}
+		return wNbTest;
+	}
+
+	/**
+	 *
+	 */
+	@AfterClass
+	public static void destroy() throws Exception {
+		String wMethod = getMethodName(1);
+
+		logBanner(CTestManifestLineEncoder.class, wMethod, Level.INFO,
+				"Test of [%s] done. Success=[%d/%d] duration=[%s]", TESTNAME, sSuccessCounter.get(), sNbTest,
+				sTimer.getDurationStrMicroSec());
+	}
+
+	/**
+	 *
+	 */
+	@BeforeClass
+	public static void initialize() throws Exception {
+		String wMethod = getMethodName(1);
+
+		sTimer = CCTTimer.newStartedTimer();
+
+		logBanner(CTestManifestLineEncoder.class, wMethod, Level.INFO, "Tests of [%s] Begin. NbTest=[%d]", TESTNAME,
+				sNbTest);
+	}
+
+	/**
+	 * @param aName
+	 * @param aValue
+	 * @return the lines written by a Manifest holding only the attribute
+	 * @throws Exception
+	 */
+	private static byte[] jdkAttributeLines(final String aName, final String aValue) throws Exception {
+
+		// the main section isn't written without version
+		Manifest wManifest = new Manifest();
+		wManifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		wManifest.getMainAttributes().put(new Attributes.Name(aName), aValue);
+
+		ByteArrayOutputStream wOutputStream = new ByteArrayOutputStream();
+		wManifest.write(wOutputStream);
+		byte[] wBytes = wOutputStream.toByteArray();
+
+		// without the version line and the empty line ending the main section
+		return Arrays.copyOfRange(wBytes, VERSION_LINE.length, wBytes.length - 2);
+	}
+
+	/**
+	 * @param aRandom
+	 * @return a random attribute name, 1 to 70 chars long
+	 */
+	private static String randomName(final Random aRandom) {
+
+		int wLength = 1 + aRandom.nextInt(70);
+		StringBuilder wSB = new StringBuilder(wLength);
+		for (int wIdx = 0; wIdx < wLength; wIdx++) {
+			wSB.append(NAME_CHARS.charAt(aRandom.nextInt(NAME_CHARS.length())));
+		}
+		return wSB.toString();
+	}
+
+	/**
+	 * @param aRandom
+	 * @return a random value, 0 to 500 chars long
+	 */
+	private static String randomValue(final Random aRandom) {
+
+		int wLength = aRandom.nextInt(501);
+		StringBuilder wSB = new StringBuilder(wLength);
+		while (wSB.length() < wLength) {
+			switch (aRandom.nextInt(6)) {
+			case 0:
+			case 1:
+				// 1 byte
+				wSB.append((char) (0x20 + aRandom.nextInt(0x5F)));
+				break;
+			case 2:
+				// 2 bytes
+				wSB.append((char) (0x80 + aRandom.nextInt(0x800 - 0x80)));
+				break;
+			case 3:
+				// 3 bytes, outside the surrogates
+				wSB.append((char) (0xE000 + aRandom.nextInt(0x10000 - 0xE000)));
+				break;
+			case 4:
+				// 4 bytes
+				wSB.appendCodePoint(0x10000 + aRandom.nextInt(0x110000 - 0x10000));
+				break;
+			default:
+				// lone high or low surrogate
+				wSB.append((char) (0xD800 + aRandom.nextInt(0x800)));
+				break;
+			}
+		}
+		return wSB.toString();
+	}
+
+	/**
+	 *
+	 */
+	public CTestManifestLineEncoder() {
+		super();
+	}
+
+	/**
+	 * @param aEncoder
+	 * @param aName
+	 * @param aValue
+	 * @throws Exception
+	 */
+	private void checkSameAsJdk(final ManifestLineEncoder aEncoder, final String aName, final String aValue)
+			throws Exception {
+
+		byte[] wExpected = jdkAttributeLines(aName, aValue);
+		byte[] wEncoded = aEncoder.encode(aName, aValue).toByteArray();
+
+		assertArrayEquals(String.format("name=[%s] value length=[%d]", aName, aValue.length()), wExpected, wEncoded);
+		assertEquals(wExpected.length, aEncoder.length());
+	}
+
+	/**
+	 * @param aChecks
+	 * @throws Exception
+	 */
+	private void runTest(final CCheck aChecks) throws Exception {
+		String wMethod = getMethodName(2);
+		CCTTimer wTimer = CCTTimer.newStartedTimer();
+
+		logInfoBegin(this, wMethod, "test=[%d/%d)", sTestCounter.incrementAndGet(), sNbTest);
+
+		try {
+			aChecks.run();
+
+			logInfo(this, wMethod, "Done. Success=[%d/%d] duration=[%s]", sSuccessCounter.incrementAndGet(), sNbTest,
+					wTimer.getDurationStrMicroSec());
+		}
+		//
+		catch (final Throwable e) {
+			logSevere(this, wMethod, "UNEXPECTED ERROR: %s", CCTExceptionUtils.eCauseMessagesInString(e));
+			throw e;
+		}
+		//
+		finally {
+			logInfoEnd(this, wMethod);
+		}
+	}
+
+	/**
+	 * Multibyte characters around the line boundaries, 72 bytes for the first
+	 * line then 71 bytes
+	 */
+	@Test
+	public void test05LineBoundaries() throws Exception {
+		runTest(() -> {
+			ManifestLineEncoder wEncoder = new ManifestLineEncoder();
+
+			String[] wChars = { "a", "é", "€", "😀" };
+			for (String wChar : wChars) {
+				// "Bundle-Name: " is 13 bytes long
+				for (int wNbPadding = 50; wNbPadding < 140; wNbPadding++) {
+					StringBuilder wValue = new StringBuilder();
+					for (int wIdx = 0; wIdx < wNbPadding; wIdx++) {
+						wValue.append('x');
+					}
+					wValue.append(wChar).append(wChar).append('y');
+					checkSameAsJdk(wEncoder, "Bundle-Name", wValue.toString());
+				}
+			}
+
+			checkSameAsJdk(wEncoder, "Empty", "");
+			checkSameAsJdk(wEncoder, "Lone", "𐀀\udc00\ud800x\ud800");
+		});
+	}
+
+	/**
+	 * Random names and values
+	 */
+	@Test
+	public void test10RandomAttributes() throws Exception {
+		runTest(() -> {
+			String wMethod = getMethodName(1);
+
+			ManifestLineEncoder wEncoder = new ManifestLineEncoder();
+			Random wRandom = new Random(RANDOM_SEED);
+			for (int wIdx = 0; wIdx < NB_RANDOM_CASES; wIdx++) {
+				checkSameAsJdk(wEncoder, randomName(wRandom), randomValue(wRandom));
+			}
+
+			logInfo(this, wMethod, "NbCases=[%d] seed=[%x]", NB_RANDOM_CASES, RANDOM_SEED);
+		});
+	}
+
+	/**
+	 * The buffer is reused and the lines are read back by the Manifest class
+	 */
+	@Test
+	public void test15ReuseAndReadBack() throws Exception {
+		runTest(() -> {
+			ManifestLineEncoder wEncoder = new ManifestLineEncoder();
+
+			StringBuilder wLong = new StringBuilder();
+			while (wLong.length() < 5000) {
+				wLong.append("été € ");
+			}
+			checkSameAsJdk(wEncoder, "iPOJO-Components", wLong.toString());
+			checkSameAsJdk(wEncoder, "Short", "value");
+
+			ByteArrayOutputStream wOutputStream = new ByteArrayOutputStream();
+			wOutputStream.write("Manifest-Version: 1.0\r\n".getBytes(StandardCharsets.UTF_8));
+			wEncoder.encode("iPOJO-Components", wLong.toString()).writeTo(wOutputStream);
+			wOutputStream.write("\r\n".getBytes(StandardCharsets.UTF_8));
+
+			Manifest wManifest = new Manifest(new ByteArrayInputStream(wOutputStream.toByteArray()));
+			assertEquals(wLong.toString(), wManifest.getMainAttributes().getValue("iPOJO-Components"));
+		});
+	}
+}
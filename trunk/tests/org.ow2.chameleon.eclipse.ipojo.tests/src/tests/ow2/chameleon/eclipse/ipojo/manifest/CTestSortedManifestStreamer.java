@@ -1,5 +1,6 @@
 package tests.ow2.chameleon.eclipse.ipojo.manifest;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -15,10 +16,16 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
 import java.util.logging.Level;
 
 import org.junit.AfterClass;
@@ -525,4 +532,152 @@ public class CTestSortedManifestStreamer {
 		}
 	}
 
+	/**
+	 * The content hashes follow the content, the cached rank of the iPOJO
+	 * attribute follows the set of attributes
+	 */
+	@Test
+	public void test40HashAndRank() throws Exception {
+		String wMethod = getMethodName(1);
+		CCTTimer wTimer = CCTTimer.newStartedTimer();
+
+		logInfoBegin(this, wMethod, "test=[%d/%d)", sTestCounter.incrementAndGet(), sNbTest);
+
+		try {
+			// load the manifests "a" and "b" (with the same IPojo attribute)
+			SortedManifestStreamer wSortedManifestStreamerA = newFromResource("/a", "MANIFEST.MF");
+			SortedManifestStreamer wSortedManifestStreamerB = newFromResource("/b", "MANIFEST.MF");
+
+			Attribute wIPojoAttributeA = wSortedManifestStreamerA.getIPojoAttribute();
+			Attribute wIPojoAttributeB = wSortedManifestStreamerB.getIPojoAttribute();
+			// same content, same hash
+			assertEquals(wIPojoAttributeA.getContentHash(), wIPojoAttributeB.getContentHash());
+			assertEquals(wIPojoAttributeA.hashCode(), wIPojoAttributeB.hashCode());
+			logInfo(this, wMethod, "IPojoAttribute.hash=[%016x] >>> assert equals OK", wIPojoAttributeA.getContentHash());
+
+			// the hash of a read attribute (appended lines) is the one of a built attribute
+			SortedManifestStreamer wSortedManifestStreamerY = new SortedManifestStreamer();
+			wSortedManifestStreamerY.replaceIPojoAttribute(String.join(" ", Collections.nCopies(64, "component")));
+			SortedManifestStreamer wSortedManifestStreamerZ = new SortedManifestStreamer(
+					SortedManifestStreamer.newManifest(new ByteArrayInputStream(wSortedManifestStreamerY.toBytes())));
+			Attribute wIPojoAttributeY = wSortedManifestStreamerY.getIPojoAttribute();
+			Attribute wIPojoAttributeZ = wSortedManifestStreamerZ.getIPojoAttribute();
+			assertEquals(wIPojoAttributeY, wIPojoAttributeZ);
+			assertEquals(wIPojoAttributeY.getContentHash(), wIPojoAttributeZ.getContentHash());
+
+			// a modified content changes the hash
+			wSortedManifestStreamerB.replaceIPojoAttribute("modified");
+			assertFalse(wIPojoAttributeA.getContentHash() == wSortedManifestStreamerB.getIPojoAttribute().getContentHash());
+			assertFalse(wSortedManifestStreamerA.isIPojoAttributeSameAsIn(wSortedManifestStreamerB));
+
+			// load the manifest "c" (without IPojo attribute)
+			SortedManifestStreamer wSortedManifestStreamerC = newFromResource("/c", "MANIFEST.MF");
+			assertEquals(-1, wSortedManifestStreamerC.getIPojoAttributeRank());
+			assertFalse(wSortedManifestStreamerC.isIPojoAttributeLastOne());
+
+			// the cached rank is updated when the attribute is added
+			wSortedManifestStreamerC.replaceIPojoAttribute("jhflqsjdfqlsdfjqlsdjfhlsjfdhj");
+			List<String> wIds = new ArrayList<>();
+			for (Attribute wAttribute : wSortedManifestStreamerC.getOrderedMainAttributes()) {
+				wIds.add(wAttribute.getId());
+			}
+			Collections.sort(wIds);
+			int wExpectedRank = wIds.indexOf(SortedManifestStreamer.ATTRIBUTE_IPOJO_NAME);
+			assertEquals(wExpectedRank, wSortedManifestStreamerC.getIPojoAttributeRank());
+			assertEquals(wExpectedRank + 1 == wIds.size(), wSortedManifestStreamerC.isIPojoAttributeLastOne());
+			logInfo(this, wMethod, "ReformatorC.IPojoAttribute.rank=[%d] >>> assert equals %d OK",
+					wSortedManifestStreamerC.getIPojoAttributeRank(), wExpectedRank);
+
+			// and when it is removed
+			wSortedManifestStreamerC.removeIPojoAttribute();
+			assertEquals(-1, wSortedManifestStreamerC.getIPojoAttributeRank());
+
+			logInfo(this, wMethod, "Done. Success=[%d/%d] duration=[%s]", sSuccessCounter.incrementAndGet(), sNbTest,
+					wTimer.getDurationStrMicroSec());
+		}
+		//
+		catch (final Throwable e) {
+			logSevere(this, wMethod, "UNEXPECTED ERROR: %s", CCTExceptionUtils.eCauseMessagesInString(e));
+			throw e;
+		}
+		//
+		finally {
+			logInfoEnd(this, wMethod);
+		}
+	}
+
+	/**
+	 * The individual sections are read in the same pass and written back as
+	 * they are, in their original order or sorted by name
+	 */
+	@Test
+	public void test45Sections() throws Exception {
+		String wMethod = getMethodName(1);
+		CCTTimer wTimer = CCTTimer.newStartedTimer();
+
+		logInfoBegin(this, wMethod, "test=[%d/%d)", sTestCounter.incrementAndGet(), sNbTest);
+
+		try {
+			String wMain = "Manifest-Version: 1.0\r\nBundle-Name: test\r\niPOJO-Components: component\r\n\r\n";
+			String wSectionB = "Name: b/B.class\r\nSHA-256-Digest: bbbb\r\n";
+			String wSectionA = "Name: a/A.cl\r\n ass\r\nSHA-256-Digest: aaaa\r\n";
+			byte[] wContent = (wMain + wSectionB + "\r\n" + wSectionA + "\r\n").getBytes(StandardCharsets.UTF_8);
+
+			SortedManifestStreamer wSortedManifestStreamer = new SortedManifestStreamer(wContent);
+			assertEquals(3, wSortedManifestStreamer.size());
+			assertEquals(2, wSortedManifestStreamer.getSections().size());
+			assertEquals("b/B.class", wSortedManifestStreamer.getSections().get(0).getName());
+			assertEquals("a/A.class", wSortedManifestStreamer.getSections().get(1).getName());
+
+			// original order: the content is unchanged
+			assertArrayEquals(wContent, wSortedManifestStreamer.toBytes());
+			logInfo(this, wMethod, "Sections.size=[%d] >>> round trip OK", wSortedManifestStreamer.getSections().size());
+
+			// sorted order
+			wSortedManifestStreamer.setSortedSections(true);
+			assertEquals("a/A.class", wSortedManifestStreamer.getSections().get(0).getName());
+			byte[] wSorted = (wMain + wSectionA + "\r\n" + wSectionB + "\r\n").getBytes(StandardCharsets.UTF_8);
+			assertArrayEquals(wSorted, wSortedManifestStreamer.toBytes());
+
+			// the sections are kept when the iPOJO attribute is replaced
+			wSortedManifestStreamer.replaceIPojoAttribute("other");
+			Manifest wManifest = SortedManifestStreamer
+					.newManifest(new ByteArrayInputStream(wSortedManifestStreamer.toBytes()));
+			assertEquals("other", wManifest.getMainAttributes().getValue(SortedManifestStreamer.ATTRIBUTE_IPOJO_NAME));
+			assertEquals("aaaa", wManifest.getAttributes("a/A.class").getValue("SHA-256-Digest"));
+			assertEquals("bbbb", wManifest.getAttributes("b/B.class").getValue("SHA-256-Digest"));
+
+			// LF line breaks, no final line break, attributes bigger than a read buffer
+			String wBigValue = String.join(",", Collections.nCopies(4096, "component"));
+			Manifest wBigManifest = SortedManifestStreamer.newMinimalManifest();
+			wBigManifest.getMainAttributes().putValue(SortedManifestStreamer.ATTRIBUTE_IPOJO_NAME, wBigValue);
+			wBigManifest.getEntries().put("c/C.class", new Attributes());
+			wBigManifest.getAttributes("c/C.class").putValue("SHA-256-Digest", "cccc");
+			SortedManifestStreamer wBigStreamer = new SortedManifestStreamer(wBigManifest);
+			Manifest wBigCopy = SortedManifestStreamer.newManifest(new ByteArrayInputStream(wBigStreamer.toBytes()));
+			assertEquals(wBigValue, wBigCopy.getMainAttributes().getValue(SortedManifestStreamer.ATTRIBUTE_IPOJO_NAME));
+			assertEquals("cccc", wBigCopy.getAttributes("c/C.class").getValue("SHA-256-Digest"));
+
+			SortedManifestStreamer wLfStreamer = new SortedManifestStreamer(
+					"Manifest-Version: 1.0\nBundle-Name: test\n\nName: d/D.class\nSHA-256-Digest: dddd"
+							.getBytes(StandardCharsets.UTF_8));
+			assertEquals(2, wLfStreamer.size());
+			assertEquals("d/D.class", wLfStreamer.getSections().get(0).getName());
+			Manifest wLfManifest = SortedManifestStreamer.newManifest(new ByteArrayInputStream(wLfStreamer.toBytes()));
+			assertEquals("dddd", wLfManifest.getAttributes("d/D.class").getValue("SHA-256-Digest"));
+
+			logInfo(this, wMethod, "Done. Success=[%d/%d] duration=[%s]", sSuccessCounter.incrementAndGet(), sNbTest,
+					wTimer.getDurationStrMicroSec());
+		}
+		//
+		catch (final Throwable e) {
+			logSevere(this, wMethod, "UNEXPECTED ERROR: %s", CCTExceptionUtils.eCauseMessagesInString(e));
+			throw e;
+		}
+		//
+		finally {
+			logInfoEnd(this, wMethod);
+		}
+	}
+
 }
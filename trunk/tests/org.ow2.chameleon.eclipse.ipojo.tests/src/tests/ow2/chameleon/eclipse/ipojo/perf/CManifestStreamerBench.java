@@ -0,0 +1,208 @@
+package tests.ow2.chameleon.eclipse.ipojo.perf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.ow2.chameleon.eclipse.ipojo.core.SortedManifestStreamer;
+
+/**
+ * Micro-benchmark of the SortedManifestStreamer : the class files and the
+ * manifest of a synthetic project are kept in memory.
+ *
+ * The iPOJO manipulator can't be loaded in this test bundle (its jars embed a
+ * split ASM package), so the ManifestUpdater can't be run here : this class
+ * only follows the order of the ResourceStore calls (accept, read,
+ * writeMetadata, open, write, close) and reproduces the manifest update done
+ * in EclipseResourceStore.open(), using the SortedManifestStreamer.
+ *
+ * @author ogattaz
+ *
+ */
+public class CManifestStreamerBench {
+
+	static final String IPOJO_CREATED_BY = "iPOJO 1.12.1";
+
+	static final String[] IPOJO_IMPORTS = { "org.apache.felix.ipojo;version=\"[1.12.1,2.0.0)\"",
+			"org.apache.felix.ipojo.architecture;version=\"[1.12.1,2.0.0)\"",
+			"org.osgi.service.cm;version=1.2", "org.osgi.service.log;version=1.3" };
+
+	private final Map<String, byte[]> pClasses;
+
+	private byte[] pManifest;
+
+	private int pNbManifestWrites = 0;
+
+	private final List<String> pMetadata = new ArrayList<>();
+
+	private boolean pOpened = false;
+
+	private final Map<String, byte[]> pWrittenClasses = new LinkedHashMap<>();
+
+	/**
+	 * @param aScenario the synthetic project to load
+	 * @throws IOException
+	 */
+	public CManifestStreamerBench(final CPerfScenario aScenario) throws IOException {
+		super();
+		pClasses = aScenario.newClassFiles();
+		pManifest = aScenario.newInitialManifest();
+	}
+
+	/**
+	 * Visits all the class files of the output folder
+	 *
+	 * @param aVisitor
+	 */
+	public void accept(final Consumer<String> aVisitor) {
+
+		for (String wPath : pClasses.keySet()) {
+			aVisitor.accept(wPath);
+		}
+	}
+
+	/**
+	 * Builds the manifest "generated" by iPOJO : the original one plus the
+	 * components, the iPOJO imports and the Created-By header (like the
+	 * SortedManifestBuilder does)
+	 *
+	 * @return the updated manifest
+	 * @throws IOException
+	 */
+	private Manifest buildUpdatedManifest() throws IOException {
+
+		Manifest wManifest = SortedManifestStreamer.newManifest(new ByteArrayInputStream(pManifest));
+		Attributes wAttributes = wManifest.getMainAttributes();
+
+		TreeSet<String> wImports = new TreeSet<>();
+		String wCurrentImports = wAttributes.getValue(SortedManifestStreamer.ATTRIBUTE_IMPORT_PACKAGE);
+		if (wCurrentImports != null && !wCurrentImports.isEmpty()) {
+			for (String wImport : wCurrentImports.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)")) {
+				wImports.add(wImport.trim());
+			}
+		}
+		for (String wImport : IPOJO_IMPORTS) {
+			wImports.add(wImport);
+		}
+		wAttributes.putValue(SortedManifestStreamer.ATTRIBUTE_IMPORT_PACKAGE, String.join(",", wImports));
+
+		StringBuilder wComponents = new StringBuilder();
+		for (String wMetadata : pMetadata) {
+			wComponents.append(wMetadata);
+		}
+		wAttributes.putValue(SortedManifestStreamer.ATTRIBUTE_IPOJO_NAME, wComponents.toString());
+		wAttributes.putValue(SortedManifestStreamer.ATTRIBUTE_CREATED_BY, IPOJO_CREATED_BY);
+
+		return wManifest;
+	}
+
+	/**
+	 *
+	 */
+	public void close() {
+		pOpened = false;
+	}
+
+	/**
+	 * @return the current manifest content
+	 */
+	public byte[] getManifest() {
+		return pManifest;
+	}
+
+	/**
+	 * @return the number of times the manifest has been rewritten
+	 */
+	public int getNbManifestWrites() {
+		return pNbManifestWrites;
+	}
+
+	/**
+	 * @return the map of the written class files
+	 */
+	public Map<String, byte[]> getWrittenClasses() {
+		return pWrittenClasses;
+	}
+
+	/**
+	 * Reproduces the manifest update of EclipseResourceStore.open() : the
+	 * manifest is only rewritten if the iPOJO attributes changed
+	 *
+	 * @throws IOException
+	 */
+	public void open() throws IOException {
+
+		pOpened = true;
+
+		// the plugin parses the manifest file in a java.util.jar.Manifest (see
+		// Utilities.getManifestContent) before giving it to the streamer
+		final Manifest wCurrentManifest = SortedManifestStreamer.newManifest(new ByteArrayInputStream(pManifest));
+
+		// new SortedManifestStreamer instance => clone of the original manifest
+		SortedManifestStreamer wSortedManifestStreamer = new SortedManifestStreamer(wCurrentManifest);
+
+		// Update manifest
+		final Manifest wUpdatedManifest = buildUpdatedManifest();
+
+		// test if the attributes are modified
+		if (!wSortedManifestStreamer.isIPojoAttributesSameAsIn(wUpdatedManifest)) {
+
+			// replace all the iPojo attributes with those generated by iPojo
+			wSortedManifestStreamer.replaceAllIPojoAttributes(wUpdatedManifest);
+
+			pManifest = wSortedManifestStreamer.toBytes();
+			pNbManifestWrites++;
+		}
+	}
+
+	/**
+	 * @param aPath
+	 * @return the content of the class file
+	 * @throws IOException
+	 */
+	public byte[] read(final String aPath) throws IOException {
+
+		byte[] wContent = pWrittenClasses.get(aPath);
+		if (wContent == null) {
+			wContent = pClasses.get(aPath);
+		}
+		if (wContent == null) {
+			throw new IOException(String.format("Unknown class file [%s]", aPath));
+		}
+		return wContent.clone();
+	}
+
+	/**
+	 * Clears the metadata before a new pass on the same bench
+	 */
+	public void reset() {
+		pMetadata.clear();
+	}
+
+	/**
+	 * @param aPath
+	 * @param aContent
+	 * @throws IOException
+	 */
+	public void write(final String aPath, final byte[] aContent) throws IOException {
+
+		if (!pOpened) {
+			throw new IOException("The bench isn't opened");
+		}
+		pWrittenClasses.put(aPath, aContent);
+	}
+
+	/**
+	 * @param aComponentMetadata the rendered metadata of a component
+	 */
+	public void writeMetadata(final String aComponentMetadata) {
+		pMetadata.add(aComponentMetadata);
+	}
+}
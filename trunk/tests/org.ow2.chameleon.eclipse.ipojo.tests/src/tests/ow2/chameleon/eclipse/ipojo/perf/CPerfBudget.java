@@ -0,0 +1,187 @@
+package tests.ow2.chameleon.eclipse.ipojo.perf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * The performance budget of the scenarios : a baseline (stored in the
+ * "baseline.properties" resource) multiplied by a tolerance factor.
+ *
+ * System properties :
+ * <ul>
+ * <li>ipojo.perf.budget.time : the tolerance factor applied to the baseline
+ * durations (default 3.0)</li>
+ * <li>ipojo.perf.budget.alloc : the tolerance factor applied to the baseline
+ * allocations (default 1.5)</li>
+ * <li>ipojo.perf.record : the path of a properties file where the measures are
+ * recorded, to build a new baseline. The budget isn't checked in this
+ * mode.</li>
+ * </ul>
+ *
+ * @author ogattaz
+ *
+ */
+public class CPerfBudget {
+
+	public static final String BASELINE_RESOURCE = "baseline.properties";
+
+	public static final String KEY_ALLOC = ".alloc.bytes";
+
+	public static final String KEY_TIME = ".time.ns";
+
+	public static final String PROP_BUDGET_ALLOC = "ipojo.perf.budget.alloc";
+
+	public static final String PROP_BUDGET_TIME = "ipojo.perf.budget.time";
+
+	public static final String PROP_RECORD = "ipojo.perf.record";
+
+	private static final double DEFAULT_BUDGET_ALLOC = 1.5;
+
+	private static final double DEFAULT_BUDGET_TIME = 3.0;
+
+	/**
+	 * @param aProperty
+	 * @param aDefault
+	 * @return the factor read in the system properties
+	 */
+	private static double getFactor(final String aProperty, final double aDefault) {
+
+		String wValue = System.getProperty(aProperty);
+		if (wValue == null || wValue.isBlank()) {
+			return aDefault;
+		}
+		try {
+			return Double.parseDouble(wValue.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(String.format("Invalid factor [%s] in [%s]", wValue, aProperty), e);
+		}
+	}
+
+	/**
+	 * @return a budget using the baseline resource and the system properties
+	 * @throws IOException
+	 */
+	public static CPerfBudget newBudget() throws IOException {
+
+		Properties wBaseline = new Properties();
+		try (InputStream wIn = CPerfBudget.class.getResourceAsStream(BASELINE_RESOURCE)) {
+			if (wIn != null) {
+				wBaseline.load(wIn);
+			}
+		}
+
+		String wRecordPath = System.getProperty(PROP_RECORD);
+		Path wRecord = (wRecordPath == null || wRecordPath.isBlank()) ? null : Paths.get(wRecordPath.trim());
+
+		return new CPerfBudget(wBaseline, getFactor(PROP_BUDGET_TIME, DEFAULT_BUDGET_TIME),
+				getFactor(PROP_BUDGET_ALLOC, DEFAULT_BUDGET_ALLOC), wRecord);
+	}
+
+	private final double pAllocFactor;
+
+	private final Properties pBaseline;
+
+	private final Properties pMeasures = new Properties();
+
+	private final Path pRecordPath;
+
+	private final double pTimeFactor;
+
+	/**
+	 * @param aBaseline
+	 * @param aTimeFactor
+	 * @param aAllocFactor
+	 * @param aRecordPath
+	 */
+	private CPerfBudget(final Properties aBaseline, final double aTimeFactor, final double aAllocFactor,
+			final Path aRecordPath) {
+		super();
+		pBaseline = aBaseline;
+		pTimeFactor = aTimeFactor;
+		pAllocFactor = aAllocFactor;
+		pRecordPath = aRecordPath;
+	}
+
+	/**
+	 * @param aScenario
+	 * @param aSuffix
+	 * @return the baseline value, -1 if not stored
+	 */
+	private long getBaseline(final CPerfScenario aScenario, final String aSuffix) {
+
+		String wValue = pBaseline.getProperty(aScenario.getName() + aSuffix);
+		return wValue == null ? -1 : Long.parseLong(wValue.trim());
+	}
+
+	/**
+	 * @param aScenario
+	 * @return the maximum allocation allowed for the scenario, -1 if no limit
+	 */
+	public long getMaxAllocBytes(final CPerfScenario aScenario) {
+
+		long wBaseline = getBaseline(aScenario, KEY_ALLOC);
+		return wBaseline < 0 ? -1 : (long) (wBaseline * pAllocFactor);
+	}
+
+	/**
+	 * @param aScenario
+	 * @return the maximum duration allowed for the scenario, -1 if no limit
+	 */
+	public long getMaxTimeNs(final CPerfScenario aScenario) {
+
+		long wBaseline = getBaseline(aScenario, KEY_TIME);
+		return wBaseline < 0 ? -1 : (long) (wBaseline * pTimeFactor);
+	}
+
+	/**
+	 * @return true if the measures are recorded instead of being checked
+	 */
+	public boolean isRecording() {
+		return pRecordPath != null;
+	}
+
+	/**
+	 * @param aScenario
+	 * @param aTimeNs
+	 * @param aAllocBytes
+	 */
+	public void record(final CPerfScenario aScenario, final long aTimeNs, final long aAllocBytes) {
+
+		pMeasures.setProperty(aScenario.getName() + KEY_TIME, String.valueOf(aTimeNs));
+		if (aAllocBytes >= 0) {
+			pMeasures.setProperty(aScenario.getName() + KEY_ALLOC, String.valueOf(aAllocBytes));
+		}
+	}
+
+	/**
+	 * Writes the recorded measures in the file given by "ipojo.perf.record", if
+	 * any
+	 *
+	 * @throws IOException
+	 */
+	public void save() throws IOException {
+
+		if (pRecordPath == null || pMeasures.isEmpty()) {
+			return;
+		}
+		try (OutputStream wOut = Files.newOutputStream(pRecordPath)) {
+			pMeasures.store(wOut, "iPOJO nature performance baseline");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("Budget time=[x%.2f] alloc=[x%.2f] record=[%s]", pTimeFactor, pAllocFactor,
+				pRecordPath);
+	}
+}
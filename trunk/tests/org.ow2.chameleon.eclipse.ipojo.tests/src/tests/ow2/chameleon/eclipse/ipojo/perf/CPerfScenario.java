@@ -0,0 +1,231 @@
+package tests.ow2.chameleon.eclipse.ipojo.perf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Describes a synthetic iPOJO project : N components, each having M fields,
+ * and a bundle manifest importing K packages.
+ *
+ * The generated content is deterministic : two instances built with the same
+ * parameters produce the same bytes.
+ *
+ * @author ogattaz
+ *
+ */
+public class CPerfScenario {
+
+	private static final String COMPONENT_PACKAGE = "org/example/perf/components";
+
+	private static final String IMPORTED_PACKAGE_PREFIX = "org.example.perf.imported.p";
+
+	private static final String[] FIELD_TYPES = { "java.lang.String", "int", "long", "boolean",
+			"java.util.List", "java.util.Map" };
+
+	/**
+	 * @param aName
+	 * @param aNbComponents
+	 * @param aNbFields
+	 * @param aNbImports
+	 * @return a new scenario
+	 */
+	public static CPerfScenario newScenario(final String aName, final int aNbComponents, final int aNbFields,
+			final int aNbImports) {
+		return new CPerfScenario(aName, aNbComponents, aNbFields, aNbImports);
+	}
+
+	private final String pName;
+
+	private final int pNbComponents;
+
+	private final int pNbFields;
+
+	private final int pNbImports;
+
+	/**
+	 * @param aName
+	 * @param aNbComponents
+	 * @param aNbFields
+	 * @param aNbImports
+	 */
+	private CPerfScenario(final String aName, final int aNbComponents, final int aNbFields, final int aNbImports) {
+		super();
+		pName = aName;
+		pNbComponents = aNbComponents;
+		pNbFields = aNbFields;
+		pNbImports = aNbImports;
+	}
+
+	/**
+	 * @param aIdx the index of the component
+	 * @return the path of the class file of the component, relative to the
+	 *         output folder
+	 */
+	public String getClassPath(final int aIdx) {
+		return String.format("%s/Component%05d.class", COMPONENT_PACKAGE, aIdx);
+	}
+
+	/**
+	 * @param aIdx the index of the component
+	 * @return the name of the class of the component
+	 */
+	public String getClassName(final int aIdx) {
+		String wPath = getClassPath(aIdx);
+		return wPath.substring(0, wPath.length() - ".class".length()).replace('/', '.');
+	}
+
+	/**
+	 * @return the map "class path" to "class bytes" of the synthetic output folder
+	 */
+	public Map<String, byte[]> newClassFiles() {
+
+		Map<String, byte[]> wClasses = new LinkedHashMap<>();
+		for (int wIdx = 0; wIdx < pNbComponents; wIdx++) {
+			wClasses.put(getClassPath(wIdx), newClassBytes(wIdx));
+		}
+		return wClasses;
+	}
+
+	/**
+	 * Generates a pseudo class file : the magic number followed by the names
+	 * and the types of the fields, like a constant pool would hold them.
+	 *
+	 * @param aIdx the index of the component
+	 * @return the bytes of the pseudo class file
+	 */
+	private byte[] newClassBytes(final int aIdx) {
+
+		ByteArrayOutputStream wOut = new ByteArrayOutputStream(64 + pNbFields * 48);
+		wOut.write(0xCA);
+		wOut.write(0xFE);
+		wOut.write(0xBA);
+		wOut.write(0xBE);
+		for (int wFieldIdx = 0; wFieldIdx < pNbFields; wFieldIdx++) {
+			byte[] wField = String.format("%s:%s;", getFieldName(wFieldIdx), getFieldType(aIdx, wFieldIdx))
+					.getBytes();
+			wOut.write(wField, 0, wField.length);
+		}
+		return wOut.toByteArray();
+	}
+
+	/**
+	 * @param aIdx the index of the component
+	 * @return the rendered iPOJO metadata of the component, in the format used
+	 *         in the "iPOJO-Components" manifest header
+	 */
+	public String newComponentMetadata(final int aIdx) {
+
+		StringBuilder wSB = new StringBuilder(128 + pNbFields * 64);
+		wSB.append("component { $classname=\"").append(getClassName(aIdx)).append("\" ");
+		wSB.append("$name=\"perf-component-").append(aIdx).append("\" ");
+		wSB.append("manipulation { $classname=\"").append(getClassName(aIdx)).append("\" ");
+		for (int wFieldIdx = 0; wFieldIdx < pNbFields; wFieldIdx++) {
+			wSB.append("field { $name=\"").append(getFieldName(wFieldIdx)).append("\" $type=\"")
+					.append(getFieldType(aIdx, wFieldIdx)).append("\" }");
+		}
+		wSB.append("method { $name=\"$init\" }}}");
+		return wSB.toString();
+	}
+
+	/**
+	 * @return the list of the packages imported by the initial manifest
+	 */
+	public List<String> getImportedPackages() {
+
+		List<String> wPackages = new ArrayList<>(pNbImports);
+		for (int wIdx = 0; wIdx < pNbImports; wIdx++) {
+			wPackages.add(String.format("%s%04d;version=\"[1.%d,2)\"", IMPORTED_PACKAGE_PREFIX, wIdx, wIdx % 10));
+		}
+		// the manifests written by hand are rarely sorted
+		Collections.reverse(wPackages);
+		return wPackages;
+	}
+
+	/**
+	 * @return the bytes of the initial manifest of the project, without any
+	 *         iPOJO attribute
+	 * @throws IOException
+	 */
+	public byte[] newInitialManifest() throws IOException {
+
+		Manifest wManifest = new Manifest();
+		Attributes wAttributes = wManifest.getMainAttributes();
+		wAttributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		wAttributes.putValue("Bundle-ManifestVersion", "2");
+		wAttributes.putValue("Bundle-Name", "Perf scenario " + pName);
+		wAttributes.putValue("Bundle-SymbolicName", "org.example.perf." + pName);
+		wAttributes.putValue("Bundle-Version", "1.0.0.qualifier");
+		wAttributes.putValue("Bundle-RequiredExecutionEnvironment", "JavaSE-1.8");
+		wAttributes.putValue("Export-Package", COMPONENT_PACKAGE.replace('/', '.'));
+		if (pNbImports > 0) {
+			wAttributes.putValue("Import-Package", String.join(",", getImportedPackages()));
+		}
+
+		ByteArrayOutputStream wOut = new ByteArrayOutputStream();
+		wManifest.write(wOut);
+		return wOut.toByteArray();
+	}
+
+	/**
+	 * @param aFieldIdx
+	 * @return
+	 */
+	private String getFieldName(final int aFieldIdx) {
+		return "pField" + aFieldIdx;
+	}
+
+	/**
+	 * @param aIdx
+	 * @param aFieldIdx
+	 * @return
+	 */
+	private String getFieldType(final int aIdx, final int aFieldIdx) {
+		return FIELD_TYPES[(aIdx + aFieldIdx) % FIELD_TYPES.length];
+	}
+
+	/**
+	 * @return the name of the scenario
+	 */
+	public String getName() {
+		return pName;
+	}
+
+	/**
+	 * @return the number of components
+	 */
+	public int getNbComponents() {
+		return pNbComponents;
+	}
+
+	/**
+	 * @return the number of fields per component
+	 */
+	public int getNbFields() {
+		return pNbFields;
+	}
+
+	/**
+	 * @return the number of imported packages
+	 */
+	public int getNbImports() {
+		return pNbImports;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("Scenario[%s] components=[%d] fields=[%d] imports=[%d]", pName, pNbComponents,
+				pNbFields, pNbImports);
+	}
+}
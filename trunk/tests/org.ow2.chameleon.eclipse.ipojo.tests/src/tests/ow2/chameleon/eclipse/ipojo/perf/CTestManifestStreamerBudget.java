@@ -0,0 +1,284 @@
+package tests.ow2.chameleon.eclipse.ipojo.perf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logBanner;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfo;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfoBegin;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfoEnd;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logSevere;
+import static tech.cohorte.pico.tooling.CCTMethodUtils.getMethodName;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.ow2.chameleon.eclipse.ipojo.core.SortedManifestStreamer;
+
+import tech.cohorte.pico.tooling.CCTExceptionUtils;
+import tech.cohorte.pico.tooling.CCTTimer;
+
+/**
+ * Performance regression budget of the SortedManifestStreamer.
+ *
+ * Each scenario generates a synthetic project, runs the streamer bench several
+ * times and compares the median duration and allocation to the baseline.
+ *
+ * These are micro-benchmarks of the manifest streaming : the manipulation is
+ * faked (a marker is appended to the class files) and neither the
+ * ManifestUpdater nor the iPOJO Pojoization are run.
+ *
+ * @author ogattaz
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CTestManifestStreamerBudget {
+
+	/** appended to the class files in place of a real manipulation */
+	private static final byte[] MANIPULATION_MARK = "$iPOJO$".getBytes();
+
+	private static final int NB_MEASURES = 5;
+
+	private static final int NB_WARMUP = 2;
+
+	private static final int sNbTest = countNbTest(CTestManifestStreamerBudget.class);
+
+	private static final AtomicInteger sSuccessCounter = new AtomicInteger(0);
+
+	private static final AtomicInteger sTestCounter = new AtomicInteger(0);
+
+	private static CPerfBudget sBudget = null;
+
+	private static CCTTimer sTimer = null;
+
+	private static final String TESTNAME = CTestManifestStreamerBudget.class.getSimpleName();
+
+	/**
+	 * @param aTestClass
+	 * @return the number of method having the annotation @Test
+	 */
+	private static int countNbTest(final Class<?> aTestClass) {
+
+		int wNbTest = 0;
+		for (Method wMethod : aTestClass.getMethods()) {
+			Test wTestAnnotation = wMethod.getAnnotation(Test.class);
+			if (wTestAnnotation != null) {
+				wNbTest++;
+			}
+		}
+		return wNbTest;
+	}
+
+	/**
+	 *
+	 */
+	@AfterClass
+	public static void destroy() throws Exception {
+		String wMethod = getMethodName(1);
+
+		sBudget.save();
+
+		logBanner(CTestManifestStreamerBudget.class, wMethod, Level.INFO,
+				"Test of [%s] done. Success=[%d/%d] duration=[%s]", TESTNAME, sSuccessCounter.get(), sNbTest,
+				sTimer.getDurationStrMicroSec());
+	}
+
+	/**
+	 *
+	 */
+	@BeforeClass
+	public static void initialize() throws Exception {
+		String wMethod = getMethodName(1);
+
+		sTimer = CCTTimer.newStartedTimer();
+
+		sBudget = CPerfBudget.newBudget();
+
+		logBanner(CTestManifestStreamerBudget.class, wMethod, Level.INFO, "Tests of [%s] Begin. NbTest=[%d] %s",
+				TESTNAME, sNbTest, sBudget);
+	}
+
+	/**
+	 * @param aValues
+	 * @return the median of the values
+	 */
+	private static long median(final long[] aValues) {
+
+		long[] wSorted = aValues.clone();
+		Arrays.sort(wSorted);
+		return wSorted[wSorted.length / 2];
+	}
+
+	/**
+	 * Runs the bench in the order of the calls of the iPOJO manipulator : visit
+	 * and read all the classes, write the metadata, then open the bench
+	 * (manifest update), write the "manipulated" classes and close the bench.
+	 *
+	 * @param aScenario
+	 * @param aBench
+	 * @throws Exception
+	 */
+	private static void runBench(final CPerfScenario aScenario, final CManifestStreamerBench aBench)
+			throws Exception {
+
+		aBench.reset();
+
+		final List<String> wPaths = new ArrayList<>(aScenario.getNbComponents());
+		aBench.accept(wPaths::add);
+
+		final List<byte[]> wManipulated = new ArrayList<>(wPaths.size());
+		for (int wIdx = 0; wIdx < wPaths.size(); wIdx++) {
+			byte[] wOriginal = aBench.read(wPaths.get(wIdx));
+			byte[] wResult = Arrays.copyOf(wOriginal, wOriginal.length + MANIPULATION_MARK.length);
+			System.arraycopy(MANIPULATION_MARK, 0, wResult, wOriginal.length, MANIPULATION_MARK.length);
+			wManipulated.add(wResult);
+			aBench.writeMetadata(aScenario.newComponentMetadata(wIdx));
+		}
+
+		aBench.open();
+		for (int wIdx = 0; wIdx < wPaths.size(); wIdx++) {
+			aBench.write(wPaths.get(wIdx), wManipulated.get(wIdx));
+		}
+		aBench.close();
+	}
+
+	/**
+	 *
+	 */
+	public CTestManifestStreamerBudget() {
+		super();
+	}
+
+	/**
+	 * Measures the scenario and checks the budget
+	 *
+	 * @param aScenario
+	 * @throws Exception
+	 */
+	private void checkScenario(final CPerfScenario aScenario) throws Exception {
+
+		// functional sanity : the first pass writes the manifest, the second one
+		// doesn't as the iPOJO attributes are the same
+		CManifestStreamerBench wBench = new CManifestStreamerBench(aScenario);
+		runBench(aScenario, wBench);
+		assertEquals(1, wBench.getNbManifestWrites());
+		assertEquals(aScenario.getNbComponents(), wBench.getWrittenClasses().size());
+		runBench(aScenario, wBench);
+		assertEquals(1, wBench.getNbManifestWrites());
+
+		SortedManifestStreamer wResult = new SortedManifestStreamer(
+				SortedManifestStreamer.newManifest(new ByteArrayInputStream(wBench.getManifest())));
+		assertTrue(wResult.hasIPojoAttribute());
+		assertEquals(CManifestStreamerBench.IPOJO_CREATED_BY, wResult.getCreateByAttribute().getStringValue());
+
+		for (int wIdx = 0; wIdx < NB_WARMUP; wIdx++) {
+			runBench(aScenario, new CManifestStreamerBench(aScenario));
+		}
+
+		long[] wTimes = new long[NB_MEASURES];
+		long[] wAllocs = new long[NB_MEASURES];
+		CCTTimer wTimer = new CCTTimer();
+		for (int wIdx = 0; wIdx < NB_MEASURES; wIdx++) {
+			CManifestStreamerBench wMeasuredBench = new CManifestStreamerBench(aScenario);
+			wTimer.start();
+			runBench(aScenario, wMeasuredBench);
+			wTimes[wIdx] = wTimer.stop();
+			wAllocs[wIdx] = wTimer.getAllocatedBytes();
+		}
+
+		checkBudget(aScenario, median(wTimes), median(wAllocs));
+	}
+
+	/**
+	 * Compares the measures to the budget of the scenario, or records them
+	 *
+	 * @param aScenario
+	 * @param aTime     the median duration
+	 * @param aAlloc    the median allocation
+	 */
+	private void checkBudget(final CPerfScenario aScenario, final long aTime, final long aAlloc) {
+		String wMethod = getMethodName(1);
+
+		long wTime = aTime;
+		long wAlloc = aAlloc;
+		long wMaxTime = sBudget.getMaxTimeNs(aScenario);
+		long wMaxAlloc = sBudget.getMaxAllocBytes(aScenario);
+
+		logInfo(this, wMethod, "%s time=[%s] (max=[%s]) alloc=[%s] (max=[%s])", aScenario,
+				CCTTimer.nanoSecToMicroSecStr(wTime), CCTTimer.nanoSecToMicroSecStr(wMaxTime),
+				CCTTimer.heapSizeToStr(wAlloc), CCTTimer.heapSizeToStr(wMaxAlloc));
+
+		if (sBudget.isRecording()) {
+			sBudget.record(aScenario, wTime, wAlloc);
+			return;
+		}
+		if (wMaxTime >= 0) {
+			assertTrue(String.format("%s exceeds its time budget: [%d ns] > [%d ns]", aScenario, wTime, wMaxTime),
+					wTime <= wMaxTime);
+		}
+		if (wMaxAlloc >= 0 && wAlloc >= 0) {
+			assertTrue(String.format("%s exceeds its allocation budget: [%d bytes] > [%d bytes]", aScenario, wAlloc,
+					wMaxAlloc), wAlloc <= wMaxAlloc);
+		}
+	}
+
+	/**
+	 * @param aScenario
+	 * @throws Exception
+	 */
+	private void runScenarioTest(final CPerfScenario aScenario) throws Exception {
+		String wMethod = getMethodName(2);
+		CCTTimer wTimer = CCTTimer.newStartedTimer();
+
+		logInfoBegin(this, wMethod, "test=[%d/%d) %s", sTestCounter.incrementAndGet(), sNbTest, aScenario);
+
+		try {
+			checkScenario(aScenario);
+
+			logInfo(this, wMethod, "Done. Success=[%d/%d] duration=[%s]", sSuccessCounter.incrementAndGet(), sNbTest,
+					wTimer.getDurationStrMicroSec());
+		}
+		//
+		catch (final Throwable e) {
+			logSevere(this, wMethod, "UNEXPECTED ERROR: %s", CCTExceptionUtils.eCauseMessagesInString(e));
+			throw e;
+		}
+		//
+		finally {
+			logInfoEnd(this, wMethod);
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test05SmallProject() throws Exception {
+		runScenarioTest(CPerfScenario.newScenario("small", 10, 5, 10));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test10MediumProject() throws Exception {
+		runScenarioTest(CPerfScenario.newScenario("medium", 200, 20, 50));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test15LargeProject() throws Exception {
+		runScenarioTest(CPerfScenario.newScenario("large", 1000, 30, 200));
+	}
+}
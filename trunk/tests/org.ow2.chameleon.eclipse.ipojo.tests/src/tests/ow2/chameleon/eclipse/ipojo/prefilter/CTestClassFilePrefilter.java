@@ -0,0 +1,296 @@
+package tests.ow2.chameleon.eclipse.ipojo.prefilter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logBanner;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfo;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfoBegin;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logInfoEnd;
+import static tech.cohorte.pico.tooling.CCTLoggerUtils.logSevere;
+import static tech.cohorte.pico.tooling.CCTMethodUtils.getMethodName;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.ow2.chameleon.eclipse.ipojo.core.ClassFilePrefilter;
+
+import tech.cohorte.pico.tooling.CCTExceptionUtils;
+import tech.cohorte.pico.tooling.CCTTimer;
+
+/**
+ * Checks the verdicts of the ClassFilePrefilter on classes compiled with this
+ * test : only the classes having a class-level annotation outside java.* are
+ * candidates to the iPOJO manipulation.
+ *
+ * @author ogattaz
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CTestClassFilePrefilter {
+
+	/**
+	 * Stands for an iPOJO annotation, kept in the class file only (like
+	 * the iPOJO ones)
+	 */
+	@Retention(RetentionPolicy.CLASS)
+	@Target(ElementType.TYPE)
+	@interface CComponent {
+		CKind kind() default CKind.SIMPLE;
+
+		String name() default "";
+
+		int[] ranks() default {};
+
+		CStereotype[] stereotypes() default {};
+	}
+
+	/**
+	 * Annotated with @Deprecated and @FunctionalInterface only
+	 */
+	@Deprecated
+	@FunctionalInterface
+	interface CJdkAnnotated {
+		void run();
+	}
+
+	/**
+	 * Enumeration used as annotation value
+	 */
+	enum CKind {
+		IMMEDIATE, SIMPLE
+	}
+
+	/**
+	 * Annotated after a JDK annotation holding values
+	 */
+	@Deprecated(since = "1.0", forRemoval = false)
+	@CComponent(kind = CKind.IMMEDIATE, name = "comp", ranks = { 1, 2 }, stereotypes = @CStereotype(1.5))
+	static class CMixedComponent {
+	}
+
+	/**
+	 * No annotation, but a rich constant pool (long, double, lambda)
+	 */
+	static class CPlainClass {
+		static final double RATIO = 1.5d;
+
+		long pValue = 123456789012L;
+
+		Supplier<String> supplier() {
+			return () -> String.valueOf(pValue * RATIO);
+		}
+	}
+
+	/**
+	 * Only a method and a field are annotated
+	 */
+	static class CMemberAnnotated {
+
+		@CStereotype(2.0)
+		int pField;
+
+		@CStereotype(3.0)
+		void method() {
+		}
+	}
+
+	/**
+	 * Annotated with a custom annotation visible at runtime
+	 */
+	@CStereotype(1.0)
+	static class CSimpleComponent {
+	}
+
+	/**
+	 * Stands for a stereotype, visible at runtime
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target({ ElementType.TYPE, ElementType.FIELD, ElementType.METHOD })
+	@interface CStereotype {
+		double value();
+	}
+
+	private static final int sNbTest = countNbTest(CTestClassFilePrefilter.class);
+
+	private static final AtomicInteger sSuccessCounter = new AtomicInteger(0);
+
+	private static final AtomicInteger sTestCounter = new AtomicInteger(0);
+
+	private static CCTTimer sTimer = null;
+
+	private static final String TESTNAME = CTestClassFilePrefilter.class.getSimpleName();
+
+	/**
+	 * @param aTestClass
+	 * @return the number of method having the annotation @Test
+	 */
+	private static int countNbTest(final Class<?> aTestClass) {
+
+		int wNbTest = 0;
+		for (Method wMethod : aTestClass.getMethods()) {
+			Test wTestAnnotation = wMethod.getAnnotation(Test.class);
+			if (wTestAnnotation != null) {
+				wNbTest++;
+			}
+		}
+		return wNbTest;
+	}
+
+	/**
+	 *
+	 */
+	@AfterClass
+	public static void destroy() throws Exception {
+		String wMethod = getMethodName(1);
+
+		logBanner(CTestClassFilePrefilter.class, wMethod, Level.INFO,
+				"Test of [%s] done. Success=[%d/%d] duration=[%s]", TESTNAME, sSuccessCounter.get(), sNbTest,
+				sTimer.getDurationStrMicroSec());
+	}
+
+	/**
+	 *
+	 */
+	@BeforeClass
+	public static void initialize() throws Exception {
+		String wMethod = getMethodName(1);
+
+		sTimer = CCTTimer.newStartedTimer();
+
+		logBanner(CTestClassFilePrefilter.class, wMethod, Level.INFO, "Tests of [%s] Begin. NbTest=[%d]", TESTNAME,
+				sNbTest);
+	}
+
+	/**
+	 * @param aClass
+	 * @return the content of the class file of the given class
+	 * @throws IOException
+	 */
+	private static byte[] readClassBytes(final Class<?> aClass) throws IOException {
+
+		String wName = aClass.getName();
+		String wResource = wName.substring(wName.lastIndexOf('.') + 1).concat(".class");
+		try (InputStream wStream = aClass.getResourceAsStream(wResource)) {
+			return wStream.readAllBytes();
+		}
+	}
+
+	/**
+	 *
+	 */
+	public CTestClassFilePrefilter() {
+		super();
+	}
+
+	/**
+	 * @param aClass
+	 * @param aExpected
+	 * @throws Exception
+	 */
+	private void checkClass(final Class<?> aClass, final boolean aExpected) throws Exception {
+		String wMethod = getMethodName(1);
+
+		byte[] wBytes = readClassBytes(aClass);
+		boolean wCandidate = ClassFilePrefilter.isCandidate(wBytes);
+
+		logInfo(this, wMethod, "class=[%s] size=[%d] candidate=[%b]", aClass.getSimpleName(), wBytes.length,
+				wCandidate);
+
+		if (aExpected) {
+			assertTrue(aClass.getSimpleName() + " must be a candidate", wCandidate);
+		} else {
+			assertFalse(aClass.getSimpleName() + " must not be a candidate", wCandidate);
+		}
+	}
+
+	/**
+	 * @param aChecks
+	 * @throws Exception
+	 */
+	private void runTest(final CCheck aChecks) throws Exception {
+		String wMethod = getMethodName(2);
+		CCTTimer wTimer = CCTTimer.newStartedTimer();
+
+		logInfoBegin(this, wMethod, "test=[%d/%d)", sTestCounter.incrementAndGet(), sNbTest);
+
+		try {
+			aChecks.run();
+
+			logInfo(this, wMethod, "Done. Success=[%d/%d] duration=[%s]", sSuccessCounter.incrementAndGet(), sNbTest,
+					wTimer.getDurationStrMicroSec());
+		}
+		//
+		catch (final Throwable e) {
+			logSevere(this, wMethod, "UNEXPECTED ERROR: %s", CCTExceptionUtils.eCauseMessagesInString(e));
+			throw e;
+		}
+		//
+		finally {
+			logInfoEnd(this, wMethod);
+		}
+	}
+
+	/**
+	 * The checks of a test
+	 */
+	@FunctionalInterface
+	private interface CCheck {
+		void run() throws Exception;
+	}
+
+	/**
+	 * Classes having a custom class-level annotation are candidates
+	 */
+	@Test
+	public void test05AnnotatedClasses() throws Exception {
+		runTest(() -> {
+			checkClass(CSimpleComponent.class, true);
+			checkClass(CMixedComponent.class, true);
+		});
+	}
+
+	/**
+	 * Classes without custom class-level annotation are skipped
+	 */
+	@Test
+	public void test10PlainClasses() throws Exception {
+		runTest(() -> {
+			checkClass(CPlainClass.class, false);
+			checkClass(CMemberAnnotated.class, false);
+			checkClass(CJdkAnnotated.class, false);
+			checkClass(CKind.class, false);
+			// annotation types only annotated by the JDK : the manipulator reads
+			// the stereotype definitions by name, not through the visit
+			checkClass(CStereotype.class, false);
+			checkClass(CComponent.class, false);
+		});
+	}
+
+	/**
+	 * Unreadable class files are left to the manipulator
+	 */
+	@Test
+	public void test15InvalidClassFiles() throws Exception {
+		runTest(() -> {
+			assertTrue(ClassFilePrefilter.isCandidate(new byte[0]));
+			assertTrue(ClassFilePrefilter.isCandidate("not a class file".getBytes()));
+
+			byte[] wBytes = readClassBytes(CPlainClass.class);
+			assertTrue(ClassFilePrefilter.isCandidate(Arrays.copyOf(wBytes, wBytes.length / 2)));
+		});
+	}
+}